@@ -0,0 +1,215 @@
+package com.energybox.backendcodingchallenge.benchmark;
+
+import com.energybox.backendcodingchallenge.BackendCodingChallengeApplication;
+import com.energybox.backendcodingchallenge.cache.LastReadingCache;
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.history.ReadingHistoryStore;
+import com.energybox.backendcodingchallenge.history.RollupStore;
+import com.energybox.backendcodingchallenge.ingest.LastReadingBuffer;
+import com.energybox.backendcodingchallenge.ingest.ReadingWatermarks;
+import com.energybox.backendcodingchallenge.metrics.IngestedReadings;
+import com.energybox.backendcodingchallenge.model.BulkSensorItem;
+import com.energybox.backendcodingchallenge.model.GatewayRequest;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.repository.SensorRepository;
+import com.energybox.backendcodingchallenge.service.GatewayService;
+import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import com.energybox.backendcodingchallenge.wal.ReadingWal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The services under benchmark, wired either to {@link InMemoryGraph} or to a Neo4j database.
+ *
+ * In memory, the services and their in-process collaborators (type dictionary, topology registry, last
+ * reading cache and buffer, history and rollups, watermarks) are built with their constructors as the
+ * application would build them, and the graph is seeded directly. Against Neo4j the application context is
+ * started without a web server and seeded through the services; the database is given by
+ * {@code -Dbenchmark.neo4j.uri}, {@code -Dbenchmark.neo4j.username} and {@code -Dbenchmark.neo4j.password}
+ * and should be empty, since the seeded nodes are not removed afterwards.
+ */
+public final class BenchmarkServices implements AutoCloseable {
+
+    public static final String MEMORY = "memory";
+
+    public static final String NEO4J = "neo4j";
+
+    private static final int SEED_CHUNK_SIZE = 1000;
+
+    public final SensorService sensorService;
+
+    public final GatewayService gatewayService;
+
+    public final TopologyRegistry topologyRegistry;
+
+    // ids of the seeded sensors
+    public final long[] sensorIds;
+
+    private final AutoCloseable resources;
+
+    private final Path historyDir;
+
+    private BenchmarkServices(SensorService sensorService, GatewayService gatewayService, TopologyRegistry topologyRegistry,
+                              long[] sensorIds, AutoCloseable resources, Path historyDir) {
+        this.sensorService = sensorService;
+        this.gatewayService = gatewayService;
+        this.topologyRegistry = topologyRegistry;
+        this.sensorIds = sensorIds;
+        this.resources = resources;
+        this.historyDir = historyDir;
+    }
+
+    /**
+     * @param backend {@link #MEMORY} or {@link #NEO4J}.
+     * @param topology Whether to load the topology registry, so reads are answered from it.
+     * @param writeBehind Whether readings go through the write-behind buffer.
+     */
+    public static BenchmarkServices start(String backend, int sensors, int gateways, int typesPerSensor,
+                                          boolean topology, boolean writeBehind) throws IOException {
+        Path historyDir = Files.createTempDirectory("benchmark-history");
+        switch (backend) {
+            case MEMORY:
+                return inMemory(historyDir, sensors, gateways, typesPerSensor, topology, writeBehind);
+            case NEO4J:
+                return neo4j(historyDir, sensors, gateways, typesPerSensor, topology, writeBehind);
+            default:
+                throw new IllegalArgumentException("Unknown backend " + backend + ", expected memory or neo4j");
+        }
+    }
+
+    private static BenchmarkServices inMemory(Path historyDir, int sensors, int gateways, int typesPerSensor,
+                                              boolean topology, boolean writeBehind) throws IOException {
+        InMemoryGraph graph = new InMemoryGraph().seed(sensors, gateways, typesPerSensor);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WorkerThreads workerThreads = WorkerThreads.platform();
+        SensorRepository sensorRepository = graph.sensorRepository();
+
+        SensorTypeDictionary dictionary = new SensorTypeDictionary(graph.sensorTypeRepository(), meterRegistry);
+        dictionary.preload();
+        TopologyRegistry topologyRegistry = new TopologyRegistry(graph.topologyRepository(), dictionary, meterRegistry,
+                workerThreads, topology, Long.MAX_VALUE);
+        if (topology) {
+            topologyRegistry.reconcile();
+        }
+        LastReadingBuffer lastReadingBuffer = new LastReadingBuffer(sensorRepository, dictionary, meterRegistry,
+                workerThreads, writeBehind, 1000, 10_000);
+        ReadingHistoryStore readingHistoryStore = new ReadingHistoryStore(dictionary, meterRegistry, true,
+                historyDir.toString(), 1024, 64);
+        readingHistoryStore.load();
+        RollupStore rollupStore = new RollupStore(meterRegistry, true, 120, 168, 90);
+        LastReadingCache lastReadingCache = new LastReadingCache(dictionary, meterRegistry, true, 100_000, 30_000);
+        ReadingWal readingWal = new ReadingWal(meterRegistry, false, historyDir.resolve("wal").toString(), "batch", 100, 16);
+        ReadingWatermarks readingWatermarks = new ReadingWatermarks(meterRegistry, true, 8);
+
+        // the export, bulk provisioning and batch assignment repositories are not on the benchmarked paths
+        SensorService sensorService = new SensorService(sensorRepository, graph.lastReadingRepository(),
+                graph.gatewayRepository(), dictionary, lastReadingBuffer, readingHistoryStore, rollupStore, null,
+                topologyRegistry, lastReadingCache, null, null, readingWal, readingWatermarks,
+                new IngestedReadings(dictionary, meterRegistry));
+        GatewayService gatewayService = new GatewayService(graph.gatewayRepository(), topologyRegistry);
+
+        long[] sensorIds = graph.sensorIds().stream().mapToLong(Long::longValue).toArray();
+        AutoCloseable resources = () -> {
+            lastReadingBuffer.shutdown();
+            topologyRegistry.shutdown();
+            readingHistoryStore.close();
+        };
+        return new BenchmarkServices(sensorService, gatewayService, topologyRegistry, sensorIds, resources, historyDir);
+    }
+
+    private static BenchmarkServices neo4j(Path historyDir, int sensors, int gateways, int typesPerSensor,
+                                           boolean topology, boolean writeBehind) {
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(BackendCodingChallengeApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.neo4j.uri=" + System.getProperty("benchmark.neo4j.uri", "bolt://localhost:7687"),
+                        "spring.neo4j.authentication.username=" + System.getProperty("benchmark.neo4j.username", "neo4j"),
+                        "spring.neo4j.authentication.password=" + System.getProperty("benchmark.neo4j.password", "ram"),
+                        "sensors.topology.enabled=" + topology,
+                        "sensors.topology.reconcile-interval-ms=" + Long.MAX_VALUE,
+                        "sensors.readings.write-behind.enabled=" + writeBehind,
+                        "sensors.history.dir=" + historyDir)
+                .run();
+        SensorService sensorService = context.getBean(SensorService.class);
+        GatewayService gatewayService = context.getBean(GatewayService.class);
+        TopologyRegistry topologyRegistry = context.getBean(TopologyRegistry.class);
+
+        long[] sensorIds = seed(sensorService, gatewayService, sensors, gateways, typesPerSensor);
+        if (topology) {
+            topologyRegistry.reconcile();
+        }
+        return new BenchmarkServices(sensorService, gatewayService, topologyRegistry, sensorIds, context::close, historyDir);
+    }
+
+    /**
+     * Seeds the same topology as {@link InMemoryGraph#seed} through the services, in chunks.
+     */
+    private static long[] seed(SensorService sensorService, GatewayService gatewayService,
+                               int sensors, int gateways, int typesPerSensor) {
+        List<Long> gatewayIds = new ArrayList<>(gateways);
+        for (int g = 0; g < gateways; g++) {
+            GatewayRequest request = new GatewayRequest();
+            request.setName("gateway-" + g);
+            gatewayIds.add(gatewayService.createGateway(request).getGateWayId());
+        }
+        List<Long> sensorIds = new ArrayList<>(sensors);
+        for (int from = 0; from < sensors; from += SEED_CHUNK_SIZE) {
+            List<BulkSensorItem> items = new ArrayList<>();
+            List<ReadingRequest> readings = new ArrayList<>();
+            for (int s = from; s < Math.min(sensors, from + SEED_CHUNK_SIZE); s++) {
+                BulkSensorItem item = new BulkSensorItem();
+                item.setKey(String.valueOf(s));
+                item.setName("sensor-" + s);
+                item.setLocationCode("location-" + s % 97);
+                item.setType(typesOf(s, typesPerSensor));
+                item.setGatewayId(gatewayIds.isEmpty() ? null : gatewayIds.get(s % gatewayIds.size()));
+                items.add(item);
+            }
+            sensorService.createSensorsInBulk(items).getSensorIds().forEach((key, id) -> {
+                sensorIds.add(id);
+                for (String type : typesOf(Integer.parseInt(key), typesPerSensor)) {
+                    ReadingRequest reading = new ReadingRequest();
+                    reading.setSensorId(id);
+                    reading.setSensorType(type);
+                    reading.setReading(Double.valueOf(key));
+                    readings.add(reading);
+                }
+            });
+            sensorService.addOrUpdateReadings(readings);
+        }
+        return sensorIds.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static Set<String> typesOf(int sensor, int typesPerSensor) {
+        return Stream.iterate(0, t -> t + 1).limit(typesPerSensor)
+                .map(t -> InMemoryGraph.TYPE_NAMES.get((sensor + t) % InMemoryGraph.TYPE_NAMES.size()))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            resources.close();
+        } finally {
+            try (Stream<Path> files = Files.walk(historyDir)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.energybox.backendcodingchallenge.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares two JMH result files written with {@code -rf json} and exits with status 1 if a benchmark got
+ * slower than the threshold in percent, taking the score error of both runs into account:
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.energybox.backendcodingchallenge.benchmark.CompareResults \
+ *     baseline.json current.json 10
+ * </pre>
+ *
+ * Benchmarks are matched by name and parameters; benchmarks in only one of the files are listed but not
+ * compared.
+ */
+public class CompareResults {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <current.json> [threshold percent, default 10]");
+            System.exit(2);
+        }
+        Map<String, JsonNode> baseline = read(new File(args[0]));
+        Map<String, JsonNode> current = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        boolean regressed = false;
+        System.out.printf("%-90s %12s %12s %9s  %s%n", "benchmark", "baseline", "current", "change", "unit");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            JsonNode before = baseline.get(entry.getKey());
+            JsonNode metric = entry.getValue().get("primaryMetric");
+            if (before == null) {
+                System.out.printf("%-90s %12s %12.3f %9s  %s%n", entry.getKey(), "-", metric.get("score").asDouble(),
+                        "new", metric.get("scoreUnit").asText());
+                continue;
+            }
+            JsonNode beforeMetric = before.get("primaryMetric");
+            double oldScore = beforeMetric.get("score").asDouble();
+            double newScore = metric.get("score").asDouble();
+            double change = (newScore - oldScore) / oldScore * 100;
+            // throughput gets worse as it drops, times as they grow
+            double worse = "thrpt".equals(entry.getValue().get("mode").asText()) ? -change : change;
+            double noise = (error(beforeMetric) + error(metric)) / oldScore * 100;
+            boolean slower = worse > threshold && worse > noise;
+            regressed |= slower;
+            System.out.printf("%-90s %12.3f %12.3f %+8.1f%%  %s%s%n", entry.getKey(), oldScore, newScore, change,
+                    metric.get("scoreUnit").asText(), slower ? "  REGRESSION" : "");
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                System.out.printf("%-90s %12s %12s %9s%n", key, "", "-", "removed");
+            }
+        }
+        System.exit(regressed ? 1 : 0);
+    }
+
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText()
+                    .replace("com.energybox.backendcodingchallenge.benchmark.", ""));
+            JsonNode params = result.get("params");
+            if (params != null) {
+                for (Iterator<Map.Entry<String, JsonNode>> it = params.fields(); it.hasNext(); ) {
+                    Map.Entry<String, JsonNode> param = it.next();
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+                }
+            }
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double error(JsonNode metric) {
+        double error = metric.path("scoreError").asDouble(0);
+        return Double.isNaN(error) ? 0 : error;
+    }
+}
@@ -0,0 +1,66 @@
+package com.energybox.backendcodingchallenge.benchmark;
+
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gateways by sensor type, answered by the topology registry or, with {@code topology=false}, by the repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GatewayServiceBenchmark {
+
+    @Param({BenchmarkServices.MEMORY})
+    public String backend;
+
+    @Param({"10000"})
+    public int sensors;
+
+    @Param({"100"})
+    public int gateways;
+
+    @Param({"3"})
+    public int typesPerSensor;
+
+    @Param({"true", "false"})
+    public boolean topology;
+
+    private BenchmarkServices services;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        services = BenchmarkServices.start(backend, sensors, gateways, typesPerSensor, topology, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.close();
+    }
+
+    @Benchmark
+    public List<Gateway> fetchGatewaysBySensorType() {
+        return services.gatewayService.fetchGatewaysBySensorType(
+                InMemoryGraph.TYPE_NAMES.get(ThreadLocalRandom.current().nextInt(InMemoryGraph.TYPE_NAMES.size())));
+    }
+}
@@ -0,0 +1,273 @@
+package com.energybox.backendcodingchallenge.benchmark;
+
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import com.energybox.backendcodingchallenge.repository.GatewayRepository;
+import com.energybox.backendcodingchallenge.repository.LastReadingRepository;
+import com.energybox.backendcodingchallenge.repository.SensorRepository;
+import com.energybox.backendcodingchallenge.repository.SensorTypeRepository;
+import com.energybox.backendcodingchallenge.repository.TopologyRepository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-in for the graph, answering the repository methods the benchmarked paths call with the
+ * same results as their Cypher queries. The repositories are proxies dispatching on the method name; a
+ * method the benchmarks do not need throws {@link UnsupportedOperationException}.
+ */
+public class InMemoryGraph {
+
+    public static final List<String> TYPE_NAMES = List.of("electricity", "humidity", "temperature", "pressure",
+            "co2", "occupancy", "light", "noise");
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final ConcurrentSkipListMap<Long, Sensor> sensors = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentSkipListMap<Long, Gateway> gateways = new ConcurrentSkipListMap<>();
+
+    private final Set<String> types = ConcurrentHashMap.newKeySet();
+
+    // sensor id -> type name -> last reading
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<String, LastReading>> lastReadings = new ConcurrentHashMap<>();
+
+    /**
+     * Creates {@code gatewayCount} gateways and {@code sensorCount} sensors spread over them round-robin, each
+     * with {@code typesPerSensor} of {@link #TYPE_NAMES} and a last reading per type.
+     */
+    public InMemoryGraph seed(int sensorCount, int gatewayCount, int typesPerSensor) {
+        List<Gateway> created = new ArrayList<>(gatewayCount);
+        for (int g = 0; g < gatewayCount; g++) {
+            created.add(saveGateway(new Gateway("gateway-" + g)));
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (int s = 0; s < sensorCount; s++) {
+            Sensor sensor = new Sensor("sensor-" + s, "location-" + s % 97);
+            for (int t = 0; t < typesPerSensor; t++) {
+                sensor.getTypes().add(new SensorType(TYPE_NAMES.get((s + t) % TYPE_NAMES.size())));
+            }
+            sensor.setGateway(created.isEmpty() ? null : created.get(s % created.size()));
+            saveSensor(sensor);
+            for (SensorType type : sensor.getTypes()) {
+                upsertLastReading(sensor.getId(), type.getName(), now, (double) s);
+                sensor.addReading(type, lastReading(type.getName(), now, (double) s));
+            }
+        }
+        return this;
+    }
+
+    public List<Long> sensorIds() {
+        return new ArrayList<>(sensors.keySet());
+    }
+
+    public List<Sensor> sensors(int limit) {
+        return sensors.values().stream().limit(limit).collect(Collectors.toList());
+    }
+
+    public SensorRepository sensorRepository() {
+        return proxy(SensorRepository.class, (method, args) -> {
+            switch (method) {
+                case "save":
+                    return saveSensor((Sensor) args[0]);
+                case "existsById":
+                    return sensors.containsKey((Long) args[0]);
+                case "findById":
+                    return Optional.ofNullable(sensors.get((Long) args[0]));
+                case "upsertLastReading":
+                    return upsertLastReading((Long) args[0], (String) args[1], (LocalDateTime) args[2], (Double) args[3]);
+                case "upsertLastReadings":
+                    return upsertLastReadings(cast(args[0]));
+                case "findExistingIds":
+                    return existing(sensors, cast(args[0]));
+                default:
+                    return unsupported(SensorRepository.class, method);
+            }
+        });
+    }
+
+    public LastReadingRepository lastReadingRepository() {
+        return proxy(LastReadingRepository.class, (method, args) -> {
+            if ("findLastReadings".equals(method)) {
+                return findLastReadings((Long) args[0]);
+            }
+            return unsupported(LastReadingRepository.class, method);
+        });
+    }
+
+    public GatewayRepository gatewayRepository() {
+        return proxy(GatewayRepository.class, (method, args) -> {
+            switch (method) {
+                case "save":
+                    return saveGateway((Gateway) args[0]);
+                case "existsById":
+                    return gateways.containsKey((Long) args[0]);
+                case "findById":
+                    return Optional.ofNullable(gateways.get((Long) args[0]));
+                case "findGatewaysWithSensorType":
+                    return findGatewaysWithSensorType((String) args[0]);
+                case "findExistingIds":
+                    return existing(gateways, cast(args[0]));
+                default:
+                    return unsupported(GatewayRepository.class, method);
+            }
+        });
+    }
+
+    public SensorTypeRepository sensorTypeRepository() {
+        return proxy(SensorTypeRepository.class, (method, args) -> {
+            switch (method) {
+                case "findAll":
+                    return types.stream().map(SensorType::new).collect(Collectors.toList());
+                case "findByName":
+                    return types.contains((String) args[0]) ? new SensorType((String) args[0]) : null;
+                case "mergeByName":
+                    types.add((String) args[0]);
+                    return new SensorType((String) args[0]);
+                case "mergeByNames":
+                    Collection<String> names = cast(args[0]);
+                    types.addAll(names);
+                    return names.stream().map(SensorType::new).collect(Collectors.toList());
+                default:
+                    return unsupported(SensorTypeRepository.class, method);
+            }
+        });
+    }
+
+    public TopologyRepository topologyRepository() {
+        return new TopologyRepository(null) {
+            @Override
+            public void forEachGateway(GatewayRowConsumer consumer) {
+                gateways.values().forEach(gateway -> consumer.accept(gateway.getId(), gateway.getName()));
+            }
+
+            @Override
+            public void forEachTypeName(Consumer<String> consumer) {
+                types.forEach(consumer);
+            }
+
+            @Override
+            public void forEachSensor(SensorRowConsumer consumer) {
+                for (Sensor sensor : sensors.values()) {
+                    consumer.accept(sensor.getId(), sensor.getName(), sensor.getLocationCode(),
+                            sensor.getGateway() == null ? null : sensor.getGateway().getId(),
+                            sensor.getTypes().stream().map(SensorType::getName).collect(Collectors.toList()));
+                }
+            }
+        };
+    }
+
+    private Sensor saveSensor(Sensor sensor) {
+        if (sensor.getId() == null) {
+            sensor.setId(ids.incrementAndGet());
+        }
+        sensor.getTypes().forEach(type -> types.add(type.getName()));
+        sensors.put(sensor.getId(), sensor);
+        return sensor;
+    }
+
+    private Gateway saveGateway(Gateway gateway) {
+        if (gateway.getId() == null) {
+            gateway.setId(ids.incrementAndGet());
+        }
+        gateways.put(gateway.getId(), gateway);
+        return gateway;
+    }
+
+    private long upsertLastReading(Long sensorId, String typeName, LocalDateTime timestamp, Double reading) {
+        if (!sensors.containsKey(sensorId)) {
+            return 0;
+        }
+        lastReadings.computeIfAbsent(sensorId, id -> new ConcurrentHashMap<>()).merge(typeName, lastReading(typeName, timestamp, reading),
+                (stored, next) -> stored.getTimestamp().isAfter(timestamp) ? stored : next);
+        return 1;
+    }
+
+    private List<Long> upsertLastReadings(List<Map<String, Object>> rows) {
+        Set<Long> written = new LinkedHashSet<>();
+        for (Map<String, Object> row : rows) {
+            Long sensorId = (Long) row.get("sensorId");
+            if (upsertLastReading(sensorId, (String) row.get("sensorType"), (LocalDateTime) row.get("timestamp"),
+                    (Double) row.get("reading")) == 1) {
+                written.add(sensorId);
+            }
+        }
+        return new ArrayList<>(written);
+    }
+
+    private List<LastReading> findLastReadings(Long sensorId) {
+        Map<String, LastReading> readings = lastReadings.get(sensorId);
+        return readings == null ? List.of() : new ArrayList<>(readings.values());
+    }
+
+    private List<Gateway> findGatewaysWithSensorType(String typeName) {
+        return sensors.values().stream()
+                .filter(sensor -> sensor.getGateway() != null)
+                .filter(sensor -> sensor.getTypes().stream().anyMatch(type -> type.getName().equals(typeName)))
+                .map(Sensor::getGateway)
+                .distinct()
+                .sorted(Comparator.comparing(Gateway::getId))
+                .collect(Collectors.toList());
+    }
+
+    private static List<Long> existing(Map<Long, ?> nodes, Collection<Long> ids) {
+        return ids.stream().filter(nodes::containsKey).collect(Collectors.toList());
+    }
+
+    private static LastReading lastReading(String typeName, LocalDateTime timestamp, Double reading) {
+        LastReading lastReading = new LastReading(timestamp, reading);
+        lastReading.setTypeName(typeName);
+        return lastReading;
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args, type);
+            }
+            return handler.invoke(method.getName(), args);
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, invocationHandler));
+    }
+
+    private static Object objectMethod(Object proxy, Method method, Object[] args, Class<?> type) {
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            default:
+                return "InMemory" + type.getSimpleName();
+        }
+    }
+
+    private static Object unsupported(Class<?> type, String method) {
+        throw new UnsupportedOperationException(type.getSimpleName() + "." + method + " is not supported in memory");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object value) {
+        return (T) value;
+    }
+}
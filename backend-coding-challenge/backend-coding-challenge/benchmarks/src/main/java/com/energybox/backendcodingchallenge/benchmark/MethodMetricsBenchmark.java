@@ -0,0 +1,121 @@
+package com.energybox.backendcodingchallenge.benchmark;
+
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.metrics.MethodMetrics;
+import com.energybox.backendcodingchallenge.service.SensorService;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the method timers, with {@code timed=true} calling through a proxy advised by {@link MethodMetrics}
+ * the way the application context builds it, into a Prometheus registry publishing percentile histograms.
+ * {@code echo} is a service method doing nothing, so it shows the overhead alone; {@code getLastReadings} puts
+ * it next to a lookup answered from memory; {@code recordTimer} is the cost of the timer itself. Run with
+ * {@code -prof gc} to see the allocation per call.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MethodMetricsBenchmark {
+
+    @Param({"10000"})
+    public int sensors;
+
+    @Param({"false", "true"})
+    public boolean timed;
+
+    private BenchmarkServices services;
+
+    private PrometheusMeterRegistry meterRegistry;
+
+    private SensorService sensorService;
+
+    private Echo echo;
+
+    private Timer timer;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        services = BenchmarkServices.start(BenchmarkServices.MEMORY, sensors, 100, 3, true, true);
+        meterRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        // what management.metrics.distribution.percentiles-histogram sets in the application
+        meterRegistry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+            }
+        });
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(MethodMetrics.pointcut(),
+                new MethodMetrics(() -> meterRegistry));
+        sensorService = timed ? proxy(services.sensorService, advisor) : services.sensorService;
+        echo = timed ? proxy(new Echo(), advisor) : new Echo();
+        timer = Timer.builder(MethodMetrics.SERVICE_TIMER).tag("class", "Echo").tag("method", "record")
+                .tag("exception", "none").register(meterRegistry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.close();
+        meterRegistry.close();
+    }
+
+    @Benchmark
+    public long echo() {
+        return echo.echo(42L);
+    }
+
+    @Benchmark
+    public List<LastReading> getLastReadings() {
+        return sensorService.getLastReadings(
+                services.sensorIds[ThreadLocalRandom.current().nextInt(services.sensorIds.length)]);
+    }
+
+    @Benchmark
+    public void recordTimer() {
+        timer.record(1_500, TimeUnit.NANOSECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(T target, DefaultPointcutAdvisor advisor) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(advisor);
+        return (T) proxyFactory.getProxy();
+    }
+
+    @Service
+    public static class Echo {
+
+        public long echo(long value) {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.energybox.backendcodingchallenge.benchmark;
+
+import com.energybox.backendcodingchallenge.model.SensorRequest;
+import com.energybox.backendcodingchallenge.model.SensorResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating single sensors with two types. Every created sensor stays in the graph and the topology registry,
+ * so the services are rebuilt for every iteration to keep the iterations alike.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SensorCreateBenchmark {
+
+    @Param({BenchmarkServices.MEMORY})
+    public String backend;
+
+    @Param({"10000"})
+    public int sensors;
+
+    @Param({"100"})
+    public int gateways;
+
+    private final SensorRequest request = new SensorRequest();
+
+    private BenchmarkServices services;
+
+    @Setup(Level.Iteration)
+    public void setUp() throws IOException {
+        request.setName("sensor");
+        request.setLocationCode("location");
+        request.setType(Set.of("electricity", "humidity"));
+        services = BenchmarkServices.start(backend, sensors, gateways, 3, true, false);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws Exception {
+        services.close();
+    }
+
+    @Benchmark
+    public SensorResponse createSensors() {
+        return services.sensorService.createSensors(request);
+    }
+}
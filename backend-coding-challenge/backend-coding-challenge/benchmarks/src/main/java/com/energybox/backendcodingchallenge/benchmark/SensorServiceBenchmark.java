@@ -0,0 +1,76 @@
+package com.energybox.backendcodingchallenge.benchmark;
+
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single readings and last reading lookups of random seeded sensors, with and without the write-behind buffer.
+ * The topology registry is loaded, as it is once the application is ready.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SensorServiceBenchmark {
+
+    @Param({BenchmarkServices.MEMORY})
+    public String backend;
+
+    @Param({"10000"})
+    public int sensors;
+
+    @Param({"100"})
+    public int gateways;
+
+    @Param({"3"})
+    public int typesPerSensor;
+
+    @Param({"true", "false"})
+    public boolean writeBehind;
+
+    private BenchmarkServices services;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        services = BenchmarkServices.start(backend, sensors, gateways, typesPerSensor, true, writeBehind);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        services.close();
+    }
+
+    @Benchmark
+    public void addOrUpdateReading() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int sensor = random.nextInt(services.sensorIds.length);
+        // one of the types the sensor was seeded with
+        String type = InMemoryGraph.TYPE_NAMES.get((sensor + random.nextInt(typesPerSensor)) % InMemoryGraph.TYPE_NAMES.size());
+        services.sensorService.addOrUpdateReading(services.sensorIds[sensor], type, random.nextDouble());
+    }
+
+    @Benchmark
+    public List<LastReading> getLastReadings() {
+        return services.sensorService.getLastReadings(
+                services.sensorIds[ThreadLocalRandom.current().nextInt(services.sensorIds.length)]);
+    }
+}
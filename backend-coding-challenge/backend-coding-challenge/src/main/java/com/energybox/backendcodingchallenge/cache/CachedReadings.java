@@ -0,0 +1,50 @@
+package com.energybox.backendcodingchallenge.cache;
+
+import java.util.Arrays;
+
+/**
+ * The last readings of one sensor in parallel primitive arrays: type code, epoch millis and value.
+ * Instances are immutable, an update copies the arrays. A missing reading value is stored as NaN.
+ */
+final class CachedReadings {
+
+    static final CachedReadings EMPTY = new CachedReadings(new int[0], new long[0], new double[0]);
+
+    final int[] typeCodes;
+
+    final long[] timestamps;
+
+    final double[] readings;
+
+    CachedReadings(int[] typeCodes, long[] timestamps, double[] readings) {
+        this.typeCodes = typeCodes;
+        this.timestamps = timestamps;
+        this.readings = readings;
+    }
+
+    int size() {
+        return typeCodes.length;
+    }
+
+    /**
+     * @return A copy holding the given reading in place of the previous reading of its type,
+     * or this if the previous reading is newer.
+     */
+    CachedReadings with(int typeCode, long timestamp, double reading) {
+        int index = 0;
+        while (index < typeCodes.length && typeCodes[index] != typeCode) {
+            index++;
+        }
+        if (index < typeCodes.length && timestamps[index] > timestamp) {
+            return this;
+        }
+        int length = Math.max(typeCodes.length, index + 1);
+        int[] newTypeCodes = Arrays.copyOf(typeCodes, length);
+        long[] newTimestamps = Arrays.copyOf(timestamps, length);
+        double[] newReadings = Arrays.copyOf(readings, length);
+        newTypeCodes[index] = typeCode;
+        newTimestamps[index] = timestamp;
+        newReadings[index] = reading;
+        return new CachedReadings(newTypeCodes, newTimestamps, newReadings);
+    }
+}
@@ -0,0 +1,174 @@
+package com.energybox.backendcodingchallenge.cache;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+/**
+ * Read-through cache of the last readings of each sensor.
+ *
+ * Entries are bounded by {@code max-entries}, evicted with Caffeine's frequency-aware W-TinyLFU policy
+ * and expire {@code ttl-ms} after they were loaded or last written, which bounds how long a change made
+ * by another instance can go unseen. Accepted readings are written through to cached entries; a sensor
+ * that is not cached is left alone and loaded on its next read. Concurrent misses of a sensor share one
+ * load, which runs outside of the cache so the callers waiting for it park instead of blocking on a lock
+ * of the cache; a load that overlaps a write-through is returned but not cached.
+ *
+ * Readings are held as type codes, epoch millis and doubles rather than {@link LastReading} objects.
+ * Hits, misses and evictions are exposed as {@code cache.gets} and {@code cache.evictions} with
+ * {@code cache=last-readings}.
+ */
+@Component
+public class LastReadingCache {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final SensorTypeDictionary sensorTypeDictionary;
+
+    private final boolean enabled;
+
+    private final Cache<Long, CachedReadings> cache;
+
+    // loads running per sensor, shared by concurrent misses
+    private final ConcurrentHashMap<Long, Load> loads = new ConcurrentHashMap<>();
+
+    public LastReadingCache(SensorTypeDictionary sensorTypeDictionary,
+                            MeterRegistry meterRegistry,
+                            @Value("${sensors.readings.cache.enabled:true}") boolean enabled,
+                            @Value("${sensors.readings.cache.max-entries:100000}") long maxEntries,
+                            @Value("${sensors.readings.cache.ttl-ms:30000}") long ttlMs) {
+        this.sensorTypeDictionary = sensorTypeDictionary;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "last-readings");
+    }
+
+    /**
+     * Returns the last readings of a sensor, calling the loader on a miss. Exceptions thrown by the
+     * loader are passed on and nothing is cached.
+     */
+    public List<LastReading> get(long sensorId, LongFunction<List<LastReading>> loader) {
+        if (!enabled) {
+            return loader.apply(sensorId);
+        }
+        CachedReadings readings = cache.getIfPresent(sensorId);
+        if (readings != null) {
+            return expand(readings);
+        }
+        Load load = new Load();
+        Load other = loads.putIfAbsent(sensorId, load);
+        if (other != null) {
+            try {
+                return expand(other.result.join());
+            } catch (CompletionException e) {
+                throw (RuntimeException) e.getCause();
+            }
+        }
+        try {
+            readings = compact(loader.apply(sensorId));
+        } catch (RuntimeException e) {
+            loads.remove(sensorId, load);
+            load.result.completeExceptionally(e);
+            throw e;
+        }
+        cache.put(sensorId, readings);
+        loads.remove(sensorId, load);
+        // an update that saw the load may have missed the entry, which is older than the update then
+        if (load.stale) {
+            cache.invalidate(sensorId);
+        }
+        load.result.complete(readings);
+        return expand(readings);
+    }
+
+    /**
+     * Returns the cached last readings of a sensor without loading them, for callers that load a miss
+     * on their own and hand the result to {@link #put}.
+     *
+     * @return The readings, or null if the sensor is not cached.
+     */
+    public List<LastReading> getIfPresent(long sensorId) {
+        if (!enabled) {
+            return null;
+        }
+        CachedReadings readings = cache.getIfPresent(sensorId);
+        return readings == null ? null : expand(readings);
+    }
+
+    /**
+     * Caches the last readings of a sensor loaded outside of {@link #get}.
+     */
+    public void put(long sensorId, List<LastReading> lastReadings) {
+        if (enabled) {
+            cache.put(sensorId, compact(lastReadings));
+        }
+    }
+
+    private List<LastReading> expand(CachedReadings readings) {
+        List<LastReading> result = new ArrayList<>(readings.size());
+        for (int i = 0; i < readings.size(); i++) {
+            LastReading reading = new LastReading(
+                    LocalDateTime.ofInstant(Instant.ofEpochMilli(readings.timestamps[i]), ZONE),
+                    Double.isNaN(readings.readings[i]) ? null : readings.readings[i]);
+            reading.setTypeName(sensorTypeDictionary.name(readings.typeCodes[i]));
+            result.add(reading);
+        }
+        return result;
+    }
+
+    /**
+     * Writes an accepted reading through to the cached entry of its sensor, if there is one.
+     */
+    public void update(long sensorId, int typeCode, LocalDateTime timestamp, Double reading) {
+        if (!enabled) {
+            return;
+        }
+        long epochMillis = timestamp.atZone(ZONE).toInstant().toEpochMilli();
+        double value = reading == null ? Double.NaN : reading;
+        Load load = loads.get(sensorId);
+        if (load != null) {
+            load.stale = true;
+        }
+        cache.asMap().computeIfPresent(sensorId, (id, readings) -> readings.with(typeCode, epochMillis, value));
+    }
+
+    private CachedReadings compact(List<LastReading> lastReadings) {
+        CachedReadings readings = CachedReadings.EMPTY;
+        for (LastReading lastReading : lastReadings) {
+            if (lastReading.getTypeName() == null || lastReading.getTimestamp() == null) {
+                continue;
+            }
+            readings = readings.with(sensorTypeDictionary.code(lastReading.getTypeName()),
+                    lastReading.getTimestamp().atZone(ZONE).toInstant().toEpochMilli(),
+                    lastReading.getReading() == null ? Double.NaN : lastReading.getReading());
+        }
+        return readings;
+    }
+
+    private static final class Load {
+
+        final CompletableFuture<CachedReadings> result = new CompletableFuture<>();
+
+        volatile boolean stale;
+    }
+}
@@ -6,9 +6,11 @@ import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
 import com.energybox.backendcodingchallenge.model.GatewayRequest;
 import com.energybox.backendcodingchallenge.model.GatewayResponse;
 import com.energybox.backendcodingchallenge.service.GatewayService;
+import com.energybox.backendcodingchallenge.util.PageCursors;
 import io.swagger.annotations.ApiOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -18,8 +20,10 @@ import java.util.List;
 
 /**
  * Controller for managing gateway operations.
+ * Replaced by {@code ReactiveGatewayController} with the reactive profile, in a build with the reactive Maven profile.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping( value = "/gateways" )
 public class GatewayController {
 
@@ -105,19 +109,66 @@ public class GatewayController {
     }
 
     /**
-     * Fetches all gateways.
+     * Fetches the gateways that have sensors of every type in {@code all} and of at least one type in {@code any},
+     * e.g. {@code all=electricity,humidity} for gateways with both electricity and humidity sensors.
      *
-     * @return a ResponseEntity containing a list of all gateways
+     * @param all comma separated sensor types a gateway must all have
+     * @param any comma separated sensor types of which a gateway must have at least one
+     * @return a ResponseEntity containing the matching gateways, or 400 Bad Request if neither list is given
+     */
+    @ApiOperation(value = "Fetch gateways matching a combination of sensor types", response = Gateway.class, responseContainer = "List")
+    @RequestMapping(value = "/by-types", method = RequestMethod.GET)
+    public ResponseEntity<List<Gateway>> fetchGatewaysBySensorTypes(
+            @RequestParam(required = false) List<String> all,
+            @RequestParam(required = false) List<String> any
+    ) {
+        List<String> allTypes = all == null ? List.of() : all;
+        List<String> anyTypes = any == null ? List.of() : any;
+        if (allTypes.isEmpty() && anyTypes.isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        logger.info("Received request to fetch gateways with all of {} and any of {}", allTypes, anyTypes);
+
+        try {
+            List<Gateway> result = service.fetchGatewaysBySensorTypes(allTypes, anyTypes);
+            logger.info("Successfully fetched {} gateways", result.size());
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while fetching gateways for sensor types", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Fetches a page of gateways ordered by ID.
+     * When more gateways may follow, the cursor of the next page is returned in the
+     * {@value PageCursors#NEXT_HEADER} header.
+     *
+     * @param cursor the cursor returned with the previous page, if any
+     * @param limit  the maximum number of gateways to return
+     * @return a ResponseEntity containing a page of gateways
      */
     @ApiOperation( value = "fetch all gateways ", response = Gateway.class )
     @RequestMapping( value = "", method = RequestMethod.GET )
-    public ResponseEntity<List<Gateway>> fetchAllGateways() throws InvalidRequestException, GatewayNotFoundException {
-        logger.info("Received request to fetch all gateways");
+    public ResponseEntity<List<Gateway>> fetchAllGateways(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + PageCursors.DEFAULT_LIMIT) int limit
+    ) throws InvalidRequestException, GatewayNotFoundException {
+        logger.info("Received request to fetch gateways after cursor: {}", cursor);
 
         try {
-            List<Gateway> result = service.fetchAllGateways();
+            long afterId = PageCursors.decode(cursor);
+            List<Gateway> result = service.fetchGateways(afterId, PageCursors.checkLimit(limit));
             logger.info("Successfully fetched {} gateways", result.size());
-            return new ResponseEntity<>(result, HttpStatus.OK);
+            if (result.size() < limit) {
+                return new ResponseEntity<>(result, HttpStatus.OK);
+            }
+            return ResponseEntity.ok()
+                    .header(PageCursors.NEXT_HEADER, PageCursors.encode(result.get(result.size() - 1).getId()))
+                    .body(result);
+        } catch (InvalidRequestException e) {
+            logger.warn(e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
             logger.error("Error occurred while fetching all gateways", e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
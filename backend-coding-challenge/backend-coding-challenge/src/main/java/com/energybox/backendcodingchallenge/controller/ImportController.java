@@ -0,0 +1,71 @@
+package com.energybox.backendcodingchallenge.controller;
+
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
+import com.energybox.backendcodingchallenge.importer.FileImporter;
+import com.energybox.backendcodingchallenge.model.ImportProgress;
+import com.energybox.backendcodingchallenge.model.ImportRequest;
+import io.swagger.annotations.ApiOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controller for importing sensors, gateway assignments and readings from files of the import directory.
+ */
+@RestController
+@RequestMapping( value = "/admin/imports" )
+public class ImportController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportController.class);
+
+    private final FileImporter fileImporter;
+
+    public ImportController(FileImporter fileImporter) {
+        this.fileImporter = fileImporter;
+    }
+
+    /**
+     * Starts importing a file in the background.
+     *
+     * @return 202 Accepted with the progress of the import, or 400 Bad Request if the file cannot be imported
+     */
+    @ApiOperation( value = "start importing a CSV or NDJSON file", response = ImportProgress.class )
+    @RequestMapping( method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE )
+    public ResponseEntity<ImportProgress> startImport(@RequestBody ImportRequest importRequest) {
+        try {
+            ImportProgress progress = fileImporter.start(importRequest);
+            logger.info("Started import {} of {}", progress.getId(), importRequest.getFile());
+            return new ResponseEntity<>(progress, HttpStatus.ACCEPTED);
+        } catch (InvalidRequestException e) {
+            logger.info("Rejected import of {}: {}", importRequest.getFile(), e.getMessage());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while starting the import of {}", importRequest.getFile(), e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * @return the progress of an import, or 404 Not Found if the id is unknown
+     */
+    @ApiOperation( value = "fetch the progress of an import", response = ImportProgress.class )
+    @RequestMapping( value = "/{id}", method = RequestMethod.GET )
+    public ResponseEntity<ImportProgress> getImport(@PathVariable("id") String id) {
+        ImportProgress progress = fileImporter.progress(id);
+        return progress == null ? new ResponseEntity<>(HttpStatus.NOT_FOUND) : ResponseEntity.ok(progress);
+    }
+
+    /**
+     * @return the progress of the recent imports, oldest first
+     */
+    @ApiOperation( value = "fetch the progress of recent imports", response = ImportProgress.class, responseContainer = "List" )
+    @RequestMapping( method = RequestMethod.GET )
+    public ResponseEntity<List<ImportProgress>> getImports() {
+        return ResponseEntity.ok(fileImporter.imports());
+    }
+}
@@ -0,0 +1,60 @@
+package com.energybox.backendcodingchallenge.controller;
+
+import com.energybox.backendcodingchallenge.model.QueryProfile;
+import com.energybox.backendcodingchallenge.profiler.QueryProfiler;
+import io.swagger.annotations.ApiOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Controller for inspecting the plans kept by the query profiler.
+ */
+@RestController
+@RequestMapping( value = "/admin/queries" )
+public class QueryProfilerController {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryProfilerController.class);
+
+    private final QueryProfiler queryProfiler;
+
+    public QueryProfilerController(QueryProfiler queryProfiler) {
+        this.queryProfiler = queryProfiler;
+    }
+
+    /**
+     * Fetches the worst profiled plans, one per repository query.
+     *
+     * @return the plans, the most database hits first
+     */
+    @ApiOperation( value = "fetch the worst profiled query plans", response = QueryProfile.class, responseContainer = "List" )
+    @RequestMapping( value = "/plans", method = RequestMethod.GET )
+    public ResponseEntity<List<QueryProfile>> getWorstPlans() {
+        try {
+            return new ResponseEntity<>(queryProfiler.worstPlans(), HttpStatus.OK);
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while fetching the query plans", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Drops the kept plans, for example after an index was added.
+     */
+    @ApiOperation( value = "drop the profiled query plans" )
+    @RequestMapping( value = "/plans", method = RequestMethod.DELETE )
+    public ResponseEntity<Void> clearPlans() {
+        try {
+            queryProfiler.clearPlans();
+            logger.info("Dropped the profiled query plans");
+            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while dropping the query plans", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -5,91 +5,222 @@ import com.energybox.backendcodingchallenge.domain.LastReading;
 import com.energybox.backendcodingchallenge.domain.Sensor;
 import com.energybox.backendcodingchallenge.domain.SensorType;
 import com.energybox.backendcodingchallenge.exception.*;
+import com.energybox.backendcodingchallenge.history.JsonSampleWriter;
+import com.energybox.backendcodingchallenge.idempotency.IdempotencyStore;
+import com.energybox.backendcodingchallenge.ingest.IngestExecutor;
 import com.energybox.backendcodingchallenge.model.*;
 import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.util.PageCursors;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.swagger.annotations.ApiOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 
 /**
  * Controller for managing sensors.
+ * Replaced by {@code ReactiveSensorController} with the reactive profile, in a build with the reactive Maven profile.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping( value =  "/sensors")
 public class SensorController {
 
     private static final Logger logger = LoggerFactory.getLogger(SensorController.class);
 
+    static final int MAX_READING_BATCH_SIZE = 10_000;
+
+    static final int MAX_SENSOR_BULK_SIZE = 10_000;
+
+    static final int MAX_ASSIGNMENT_BATCH_SIZE = 10_000;
+
+    static final int MAX_ROLLUP_BUCKETS = 10_000;
+
+    private static final ObjectWriter SUMMARY_WRITER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+            .writerFor(SensorSummary.class);
+
     private final SensorService sensorService;
 
-    public SensorController(SensorService service) {
+    private final IngestExecutor ingestExecutor;
+
+    private final IdempotencyStore idempotencyStore;
+
+    public SensorController(SensorService service, IngestExecutor ingestExecutor, IdempotencyStore idempotencyStore) {
         this.sensorService = service;
+        this.ingestExecutor = ingestExecutor;
+        this.idempotencyStore = idempotencyStore;
     }
 
     /**
      * Creates a new sensor.
+     * A retry with the same {@code Idempotency-Key} header gets the response of the first call back
+     * instead of creating another sensor.
      *
      * @param sensorRequest The details of the sensor to be created.
+     * @param idempotencyKey Optional key identifying the call across retries.
      * @return The created sensor response.
      * @throws InvalidRequestException if the sensor type or ID is invalid.
      */
     @ApiOperation(value = "create a sensor", response = Sensor.class)
     @RequestMapping(value = "/add", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<SensorResponse> createSensor(
-            @RequestBody SensorRequest sensorRequest
+            @RequestBody SensorRequest sensorRequest,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey
     ) throws InvalidRequestException {
         logger.info("Received request to create sensor with name: {}", sensorRequest.getName());
 
         if (sensorRequest.getName().isEmpty() || sensorRequest.getLocationCode().isEmpty())
             throw new InvalidRequestException("Sensor Name or Location Code is missing in the request");
+        if (!IdempotencyStore.isValidKey(idempotencyKey))
+            throw new InvalidRequestException("Idempotency-Key must not be blank or longer than " + IdempotencyStore.MAX_KEY_LENGTH + " characters");
 
+        return idempotencyStore.execute("create-sensor", idempotencyKey, sensorRequest, () -> {
+            try {
+                SensorResponse sensorResponse = sensorService.createSensors(sensorRequest);
+                logger.info("Successfully created sensor with ID: {}", sensorResponse.getSensorId());
+                sensorResponse.setStatus(HttpStatus.OK);
+                return new ResponseEntity<>(sensorResponse, HttpStatus.OK);
+            } catch (RuntimeException e) {
+                logger.error("Error occurred while creating sensor with name: {}", sensorRequest.getName(), e);
+                return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+            }
+        });
+    }
+
+    /**
+     * Creates many sensors in one call, optionally connecting each one to a gateway.
+     * Invalid sensors, duplicate keys and unknown gateways are reported in the response instead of failing the request.
+     * Returns 400 Bad Request if the request is empty or holds more than {@value #MAX_SENSOR_BULK_SIZE} sensors.
+     */
+    @ApiOperation(value = "creates many sensors at once", response = BulkSensorResponse.class)
+    @RequestMapping(value = "/bulk", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BulkSensorResponse> createSensorsInBulk(@RequestBody BulkSensorRequest bulkRequest) {
+        List<BulkSensorItem> sensors = bulkRequest.getSensors();
+        if (sensors == null || sensors.isEmpty() || sensors.size() > MAX_SENSOR_BULK_SIZE) {
+            logger.info("Rejected bulk sensor request of size: {}", sensors == null ? 0 : sensors.size());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
         try {
-            SensorResponse sensorResponse = sensorService.createSensors(sensorRequest);
-            logger.info("Successfully created sensor with ID: {}", sensorResponse.getSensorId());
-            sensorResponse.setStatus(HttpStatus.OK);
-            return new ResponseEntity<>(sensorResponse, HttpStatus.OK);
+            BulkSensorResponse response = sensorService.createSensorsInBulk(sensors);
+            logger.info("Created {} of {} sensors", response.getCreated(), response.getReceived());
+            response.setStatus(HttpStatus.OK);
+            return ResponseEntity.ok(response);
         } catch (RuntimeException e) {
-            logger.error("Error occurred while creating sensor with name: {}", sensorRequest.getName(), e);
+            logger.error("Error occurred while creating {} sensors", sensors.size(), e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
     /**
-     * Fetches all sensors in the DB.
+     * Fetches a page of sensors ordered by ID.
+     *
+     * Only the id, name and location code are returned unless {@code expand} is set, in which case
+     * the full sensors are loaded together with their types, gateway and last readings.
+     * When more sensors may follow, the cursor of the next page is returned in the
+     * {@value PageCursors#NEXT_HEADER} header. Returns 400 Bad Request for an invalid cursor or limit.
      *
-     * @return A list of all sensors.
+     * @param expand Whether to include the relationships of each sensor.
+     * @param cursor The cursor returned with the previous page, if any.
+     * @param limit  The maximum number of sensors to return.
+     * @return A page of sensors.
      */
-    @ApiOperation(value = "fetch all sensors", response = Sensor.class, responseContainer = "List")
+    @ApiOperation(value = "fetch all sensors", response = SensorSummary.class, responseContainer = "List")
     @RequestMapping(value = "", method = RequestMethod.GET)
-    public ResponseEntity<List<Sensor>> fetchAllSensors() {
-        logger.info("Fetching all sensors");
-        List<Sensor> response = sensorService.fetchAllSensors();
+    public ResponseEntity<List<?>> fetchAllSensors(@RequestParam(defaultValue = "false") boolean expand,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(defaultValue = "" + PageCursors.DEFAULT_LIMIT) int limit) {
+        logger.info("Fetching sensors after cursor: {}", cursor);
+        long afterId;
+        try {
+            afterId = PageCursors.decode(cursor);
+            PageCursors.checkLimit(limit);
+        } catch (InvalidRequestException e) {
+            logger.warn(e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<?> response;
+        Long lastId;
+        if (expand) {
+            List<Sensor> sensors = sensorService.fetchSensors(afterId, limit);
+            lastId = sensors.isEmpty() ? null : sensors.get(sensors.size() - 1).getId();
+            response = sensors;
+        } else {
+            List<SensorSummary> summaries = sensorService.fetchSensorSummaries(afterId, limit);
+            lastId = summaries.isEmpty() ? null : summaries.get(summaries.size() - 1).getId();
+            response = summaries;
+        }
         if (response.isEmpty()) {
             logger.info("No sensors found");
             return ResponseEntity.noContent().build();
         }
         logger.info("Successfully retrieved {} sensors", response.size());
-        return ResponseEntity.ok(response);
+        if (response.size() < limit) {
+            return ResponseEntity.ok(response);
+        }
+        return ResponseEntity.ok()
+                .header(PageCursors.NEXT_HEADER, PageCursors.encode(lastId))
+                .body(response);
+    }
+
+    /**
+     * Streams the id, name and location code of every sensor as newline delimited JSON,
+     * writing each sensor as soon as it is read from the database.
+     */
+    @ApiOperation(value = "streams all sensors as newline delimited JSON")
+    @RequestMapping(value = "/export", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> exportSensors() {
+        StreamingResponseBody body = out -> {
+            BufferedOutputStream buffered = new BufferedOutputStream(out, 16 * 1024);
+            long count = sensorService.exportSensorSummaries(summary -> {
+                try {
+                    SUMMARY_WRITER.writeValue(buffered, summary);
+                    buffered.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            buffered.flush();
+            logger.info("Exported {} sensors", count);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
     }
 
     /**
      * Fetches sensors by their type.
      *
      * @param sensorType The type of the sensors to be fetched.
+     * @param expand     Whether to include the relationships of each sensor.
      * @return A list of sensors of the specified type.
      */
-    @ApiOperation(value = "fetch all sensors of input type", response = Sensor.class, responseContainer = "List")
+    @ApiOperation(value = "fetch all sensors of input type", response = SensorSummary.class, responseContainer = "List")
     @RequestMapping(value = "type/{sensorType}", method = RequestMethod.GET)
-    public ResponseEntity<List<Sensor>> fetchSensorBySensorType(@PathVariable String sensorType) {
+    public ResponseEntity<List<?>> fetchSensorBySensorType(@PathVariable String sensorType,
+                                                           @RequestParam(defaultValue = "false") boolean expand) {
         logger.info("Fetching sensors of type: {}", sensorType);
 
-        List<Sensor> sensors = sensorService.getSensorsByType(sensorType);
+        List<?> sensors = expand ? sensorService.getSensorsByType(sensorType)
+                : sensorService.getSensorSummariesByType(sensorType);
 
         if (sensors.isEmpty()) {
             logger.info("No sensors found for type: {}", sensorType);
@@ -100,6 +231,32 @@ public class SensorController {
         return ResponseEntity.ok(sensors); // 200 OK
     }
 
+    /**
+     * Fetches the sensors that have every type in {@code all} and at least one type in {@code any}.
+     * Returns 400 Bad Request if neither is given.
+     *
+     * @param all Comma separated types a sensor must all have.
+     * @param any Comma separated types of which a sensor must have at least one.
+     * @return A list of sensor summaries ordered by ID.
+     */
+    @ApiOperation(value = "fetch the sensors matching a combination of types", response = SensorSummary.class, responseContainer = "List")
+    @RequestMapping(value = "/by-types", method = RequestMethod.GET)
+    public ResponseEntity<List<SensorSummary>> fetchSensorsBySensorTypes(
+            @RequestParam(required = false) List<String> all,
+            @RequestParam(required = false) List<String> any) {
+        List<String> allTypes = all == null ? List.of() : all;
+        List<String> anyTypes = any == null ? List.of() : any;
+        if (allTypes.isEmpty() && anyTypes.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        logger.info("Fetching sensors with all of {} and any of {}", allTypes, anyTypes);
+        List<SensorSummary> sensors = sensorService.getSensorSummariesByTypes(allTypes, anyTypes);
+        if (sensors.isEmpty()) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok(sensors);
+    }
+
     /**
      * Fetches a sensor by its ID.
      *
@@ -171,14 +328,41 @@ public class SensorController {
         }
     }
 
+    /**
+     * Assigns many sensors to gateways in one transaction, moving already connected sensors when {@code move} is set.
+     * The outcome of every assignment is reported in the response.
+     * Returns 400 Bad Request if the batch is empty or larger than {@value #MAX_ASSIGNMENT_BATCH_SIZE} assignments.
+     */
+    @ApiOperation(value = "assigns or moves many sensors to gateways", response = BatchGatewayAssignmentResponse.class)
+    @RequestMapping(value = "/to-gateway/batch", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchGatewayAssignmentResponse> assignSensorsToGateways(@RequestBody BatchGatewayAssignmentRequest batchRequest) {
+        List<SensorGatewayRequest> assignments = batchRequest.getAssignments();
+        if (assignments == null || assignments.isEmpty() || assignments.size() > MAX_ASSIGNMENT_BATCH_SIZE) {
+            logger.info("Rejected gateway assignment batch of size: {}", assignments == null ? 0 : assignments.size());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            BatchGatewayAssignmentResponse response = sensorService.assignSensorsToGateways(assignments, batchRequest.isMove());
+            logger.info("Changed the gateway of {} of {} sensors", response.getChanged(), response.getReceived());
+            response.setStatus(HttpStatus.OK);
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while assigning {} sensors to gateways", assignments.size(), e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     /**
      * Retrieves all sensors that are connected to a specific/input gateway.
+     * Relationships are only included when {@code expand} is set.
      */
-    @ApiOperation(value = "fetches all the sensors attached to the requested gateway", response = Sensor.class)
+    @ApiOperation(value = "fetches all the sensors attached to the requested gateway", response = SensorSummary.class)
     @RequestMapping(value = "/gateway-id/{gatewayId}", method = RequestMethod.GET)
-    public ResponseEntity<List<Sensor>> getSensorsByGateway(@PathVariable Long gatewayId) {
+    public ResponseEntity<List<?>> getSensorsByGateway(@PathVariable Long gatewayId,
+                                                       @RequestParam(defaultValue = "false") boolean expand) {
         try {
-            List<Sensor> sensors = sensorService.getSensorsByGateway(gatewayId);
+            List<?> sensors = expand ? sensorService.getSensorsByGateway(gatewayId)
+                    : sensorService.getSensorSummariesByGateway(gatewayId);
             return ResponseEntity.ok(sensors);
         } catch (RuntimeException e) {
             // Handle runtime exceptions and return an appropriate response
@@ -205,16 +389,149 @@ public class SensorController {
     /**
      * Adds or updates the most recent reading for a specified sensor.
      * Creates or updates a {LastReading} for the given sensor ID and typeName.
-     * Returns 404 Not Found if the sensor or sensor type is not found.
+     * Returns 404 Not Found if the sensor or sensor type is not found and 400 Bad Request if the reading is missing
+     * or its timestamp is ahead of the server clock.
+     *
+     * When partitioned ingest is enabled the reading is only queued on the partition of its sensor and
+     * 202 Accepted is returned; readings of unknown sensors, or timestamped ahead of the server clock, are then
+     * dropped by the partition worker.
+     * Returns 400 Bad Request if a field is missing and 429 Too Many Requests if the partition queue is full.
+     *
+     * A retry with the same {@code Idempotency-Key} header gets the response of the first call back without
+     * writing the reading again.
      */
     @ApiOperation(value = "returns all reading s associated with the sensor", response = LastReading.class)
     @RequestMapping(value = "/add-last-readings/", method = RequestMethod.PUT)
-    public ResponseEntity<Void> addLastReading(@RequestBody ReadingRequest readingRequest) {
+    public ResponseEntity<Void> addLastReading(@RequestBody ReadingRequest readingRequest,
+                                               @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        if (!IdempotencyStore.isValidKey(idempotencyKey)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return idempotencyStore.execute("add-last-reading", idempotencyKey, readingRequest, () -> addLastReading(readingRequest));
+    }
+
+    private ResponseEntity<Void> addLastReading(ReadingRequest readingRequest) {
+        if (ingestExecutor.isEnabled()) {
+            if (readingRequest.getSensorId() == null || readingRequest.getSensorType() == null
+                    || readingRequest.getSensorType().isBlank() || readingRequest.getReading() == null) {
+                return ResponseEntity.badRequest().build();
+            }
+            if (!ingestExecutor.submit(readingRequest)) {
+                logger.info("Rejected reading of sensor {}, its ingest partition is full", readingRequest.getSensorId());
+                return new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS);
+            }
+            return ResponseEntity.accepted().build();
+        }
+        if (readingRequest.getReading() == null) {
+            return ResponseEntity.badRequest().build();
+        }
         try {
-            sensorService.addOrUpdateReading(readingRequest.getSensorId(), readingRequest.getSensorType(), readingRequest.getReading());
+            sensorService.addOrUpdateReading(readingRequest.getSensorId(), readingRequest.getSensorType(), readingRequest.getReading(),
+                    readingRequest.getTimestamp(), readingRequest.getSequence());
             return ResponseEntity.ok().build();
         } catch (SensorNotFoundException | SensorTypeNotFoundException e) {
             return ResponseEntity.notFound().build();
+        } catch (InvalidRequestException e) {
+            return ResponseEntity.badRequest().build();
         }
     }
+
+    /**
+     * Adds or updates the most recent readings for many sensors in one call.
+     * Readings for unknown sensors are reported in the response instead of failing the batch.
+     * Returns 400 Bad Request if the batch is empty or larger than {@value #MAX_READING_BATCH_SIZE} readings.
+     */
+    @ApiOperation(value = "adds or updates the last readings of many sensors", response = BatchReadingResponse.class)
+    @RequestMapping(value = "/readings/batch", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<BatchReadingResponse> addLastReadings(@RequestBody BatchReadingRequest batchRequest) {
+        List<ReadingRequest> readings = batchRequest.getReadings();
+        if (readings == null || readings.isEmpty() || readings.size() > MAX_READING_BATCH_SIZE) {
+            logger.info("Rejected reading batch of size: {}", readings == null ? 0 : readings.size());
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            BatchReadingResponse response = sensorService.addOrUpdateReadings(readings);
+            logger.info("Accepted {} of {} readings", response.getAccepted(), response.getReceived());
+            response.setStatus(HttpStatus.OK);
+            return ResponseEntity.ok(response);
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while storing a batch of {} readings", readings.size(), e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Streams the recorded readings of a sensor and type between two points in time.
+     * Samples are written as they are read from the history store, as newline delimited JSON
+     * by default or as a JSON array with {@code format=json}. Timestamps are epoch milliseconds.
+     * Returns 404 Not Found if the sensor does not exist.
+     */
+    @ApiOperation(value = "streams the recorded readings of a sensor and type within a time range")
+    @RequestMapping(value = "/{sensorId}/readings", method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> streamReadings(
+            @PathVariable Long sensorId,
+            @RequestParam String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        long fromMillis = from == null ? Long.MIN_VALUE : toEpochMillis(from);
+        long toMillis = to == null ? Long.MAX_VALUE : toEpochMillis(to);
+        boolean array = "json".equalsIgnoreCase(format);
+        if (fromMillis >= toMillis || !(array || "ndjson".equalsIgnoreCase(format))) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            sensorService.checkSensorExists(sensorId);
+        } catch (SensorNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+
+        StreamingResponseBody body = out -> {
+            JsonSampleWriter writer = new JsonSampleWriter(out, array);
+            writer.start();
+            long count = sensorService.streamReadingHistory(sensorId, type, fromMillis, toMillis, writer);
+            writer.finish();
+            logger.info("Streamed {} {} readings of sensor {}", count, type, sensorId);
+        };
+        return ResponseEntity.ok()
+                .contentType(array ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Returns min/max/avg/count/last aggregates of a sensor and type, one bucket per step.
+     * Defaults to the last 24 hours in hourly steps. The step is an ISO-8601 duration such as {@code PT15M}.
+     * Returns 400 Bad Request for an invalid range or step, or if more than {@value #MAX_ROLLUP_BUCKETS} buckets are requested.
+     */
+    @ApiOperation(value = "returns aggregated readings of a sensor and type per time bucket", response = RollupResponse.class)
+    @RequestMapping(value = "/{sensorId}/rollups", method = RequestMethod.GET)
+    public ResponseEntity<RollupResponse> getRollups(
+            @PathVariable Long sensorId,
+            @RequestParam String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "PT1H") String step) {
+        long stepMillis;
+        try {
+            stepMillis = Duration.parse(step).toMillis();
+        } catch (DateTimeParseException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        long toMillis = to == null ? System.currentTimeMillis() : toEpochMillis(to);
+        long fromMillis = from == null ? toMillis - Duration.ofDays(1).toMillis() : toEpochMillis(from);
+        if (stepMillis <= 0 || fromMillis >= toMillis || (toMillis - fromMillis) / stepMillis > MAX_ROLLUP_BUCKETS) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            sensorService.checkSensorExists(sensorId);
+            RollupResponse response = sensorService.getReadingRollups(sensorId, type, fromMillis, toMillis, stepMillis);
+            return ResponseEntity.ok(response);
+        } catch (SensorNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
 }
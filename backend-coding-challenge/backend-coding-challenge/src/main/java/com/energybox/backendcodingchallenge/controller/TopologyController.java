@@ -0,0 +1,63 @@
+package com.energybox.backendcodingchallenge.controller;
+
+import com.energybox.backendcodingchallenge.model.TopologyConsistencyReport;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import io.swagger.annotations.ApiOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controller for inspecting the in-memory topology registry.
+ */
+@RestController
+@RequestMapping( value = "/admin/topology" )
+public class TopologyController {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopologyController.class);
+
+    private final TopologyRegistry topologyRegistry;
+
+    public TopologyController(TopologyRegistry topologyRegistry) {
+        this.topologyRegistry = topologyRegistry;
+    }
+
+    /**
+     * Compares the registry with the database.
+     *
+     * @return the differences found, or 503 Service Unavailable if the registry is not loaded yet
+     */
+    @ApiOperation( value = "compare the topology registry with the database", response = TopologyConsistencyReport.class )
+    @RequestMapping( value = "/consistency", method = RequestMethod.GET )
+    public ResponseEntity<TopologyConsistencyReport> checkConsistency() {
+        try {
+            TopologyConsistencyReport report = topologyRegistry.checkConsistency();
+            if (!report.isReady()) {
+                return new ResponseEntity<>(report, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            logger.info("Topology consistency check found the registry {}", report.isConsistent() ? "consistent" : "inconsistent");
+            return new ResponseEntity<>(report, HttpStatus.OK);
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while checking the topology registry", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Reloads the registry from the database right away instead of waiting for the next reconciliation.
+     *
+     * @return the number of sensors and gateways that had drifted from the database
+     */
+    @ApiOperation( value = "reload the topology registry from the database" )
+    @RequestMapping( value = "/reconcile", method = RequestMethod.POST )
+    public ResponseEntity<Integer> reconcile() {
+        try {
+            return new ResponseEntity<>(topologyRegistry.reconcile(), HttpStatus.OK);
+        } catch (RuntimeException e) {
+            logger.error("Error occurred while reconciling the topology registry", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.energybox.backendcodingchallenge.dictionary;
+
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import com.energybox.backendcodingchallenge.repository.SensorTypeRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Process-wide dictionary of sensor types, mapping each type name to a compact int code.
+ *
+ * Codes are assigned in order of first use and are only valid within this process; anything
+ * written to disk or to the database keeps the type name. Looking up a known name is a single
+ * {@link ConcurrentHashMap#get} and looking up a code is an array read, neither takes a lock.
+ *
+ * Whether a type is stored in the database is tracked separately: {@link #ensureStored(String)}
+ * merges the SensorType node the first time a type is used and is free afterwards. The types
+ * already in the database are loaded once the application is ready.
+ */
+@Component
+public class SensorTypeDictionary {
+
+    private static final Logger logger = LoggerFactory.getLogger(SensorTypeDictionary.class);
+
+    public static final int UNKNOWN = -1;
+
+    private final SensorTypeRepository sensorTypeRepository;
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+    // code -> name, replaced by a larger copy when full and published through the volatile write
+    private volatile String[] names = new String[16];
+
+    private int size;
+
+    private final Set<Integer> stored = ConcurrentHashMap.newKeySet();
+
+    // serialises the rare first merges, a merge happens once per type and process; a lock rather than
+    // a monitor, so a virtual thread waiting on the merge unmounts
+    private final ReentrantLock storeLock = new ReentrantLock();
+
+    public SensorTypeDictionary(SensorTypeRepository sensorTypeRepository, MeterRegistry meterRegistry) {
+        this.sensorTypeRepository = sensorTypeRepository;
+        Gauge.builder("sensors.types.dictionary.size", codes, ConcurrentHashMap::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Loads the types that are already in the database, so they are neither assigned a code on the
+     * request path nor merged again. A failure is logged and the types are picked up on first use.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        try {
+            int loaded = 0;
+            for (SensorType sensorType : sensorTypeRepository.findAll()) {
+                stored.add(code(sensorType.getName()));
+                loaded++;
+            }
+            logger.info("Loaded {} sensor types into the dictionary", loaded);
+        } catch (RuntimeException e) {
+            logger.error("Failed to preload the sensor type dictionary, types are loaded on first use", e);
+        }
+    }
+
+    /**
+     * Returns the code of a type name, assigning the next free code if the name is new.
+     * Concurrent first calls for the same name all get the same code.
+     */
+    public int code(String typeName) {
+        Integer code = codes.get(typeName);
+        return code != null ? code : codes.computeIfAbsent(typeName, this::assign);
+    }
+
+    /**
+     * @return The code of a type name, or {@link #UNKNOWN} if the name has never been seen.
+     */
+    public int find(String typeName) {
+        Integer code = codes.get(typeName);
+        return code == null ? UNKNOWN : code;
+    }
+
+    /**
+     * @return The name of a code returned by {@link #code(String)}.
+     */
+    public String name(int code) {
+        return names[code];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    /**
+     * Makes sure the SensorType node of a type exists, merging it on the first call for the type only.
+     * Concurrent first calls wait for a single merge; a failed merge is retried on the next call.
+     *
+     * @return True if this call merged the type.
+     */
+    public boolean ensureStored(String typeName) {
+        int code = code(typeName);
+        if (stored.contains(code)) {
+            return false;
+        }
+        storeLock.lock();
+        try {
+            if (stored.contains(code)) {
+                return false;
+            }
+            sensorTypeRepository.mergeByName(typeName);
+            stored.add(code);
+            return true;
+        } finally {
+            storeLock.unlock();
+        }
+    }
+
+    /**
+     * @return Whether the SensorType node of a type is known to exist, without merging it.
+     */
+    public boolean isStored(String typeName) {
+        int code = find(typeName);
+        return code != UNKNOWN && stored.contains(code);
+    }
+
+    /**
+     * Records that the SensorType node of a type was merged by a caller that does not go through
+     * {@link #ensureStored(String)}, such as the reactive type repository.
+     *
+     * @return True if the type was not known to be stored before.
+     */
+    public boolean markStored(String typeName) {
+        return stored.add(code(typeName));
+    }
+
+    /**
+     * Makes sure the SensorType nodes of several types exist, merging all types that are not stored yet
+     * with a single query.
+     *
+     * @return The names merged by this call.
+     */
+    public List<String> ensureStored(Collection<String> typeNames) {
+        List<String> missing = new ArrayList<>();
+        for (String typeName : typeNames) {
+            if (!stored.contains(code(typeName))) {
+                missing.add(typeName);
+            }
+        }
+        if (missing.isEmpty()) {
+            return missing;
+        }
+        storeLock.lock();
+        try {
+            missing.removeIf(typeName -> stored.contains(code(typeName)));
+            if (!missing.isEmpty()) {
+                sensorTypeRepository.mergeByNames(missing);
+                missing.forEach(typeName -> stored.add(code(typeName)));
+            }
+        } finally {
+            storeLock.unlock();
+        }
+        return missing;
+    }
+
+    private synchronized int assign(String typeName) {
+        int code = size++;
+        String[] current = names;
+        if (code == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[code] = typeName;
+        names = current;
+        return code;
+    }
+}
@@ -13,6 +13,7 @@ public class LastReading {
     @Id
     @GeneratedValue
     private Long id;
+    private String typeName;
     private LocalDateTime timestamp;
     private Double reading;       // reading
 
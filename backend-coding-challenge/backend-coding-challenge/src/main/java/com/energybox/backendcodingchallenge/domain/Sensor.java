@@ -3,9 +3,7 @@ package com.energybox.backendcodingchallenge.domain;
 import lombok.Data;
 import org.springframework.data.neo4j.core.schema.*;
 
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -25,8 +23,9 @@ public class Sensor {
     private Set<SensorType> types = new HashSet<>();
     @Relationship(type = "CONNECTED_TO", direction = Relationship.Direction.OUTGOING)
     private Gateway gateway;
+    // one per type, told apart by their typeName; a map keyed by SensorType cannot be read back
     @Relationship(type = "HAS_LAST_READING", direction = Relationship.Direction.OUTGOING)
-    private Map<SensorType, LastReading> lastReadings = new HashMap<>();
+    private Set<LastReading> lastReadings = new HashSet<>();
 
     public Sensor(String name, String locationCode){
         this.name = name;
@@ -35,6 +34,8 @@ public class Sensor {
 
     // Method to add a reading
     public void addReading(SensorType type, LastReading reading) {
-        lastReadings.put(type, reading);
+        reading.setTypeName(type.getName());
+        lastReadings.removeIf(stored -> type.getName().equals(stored.getTypeName()));
+        lastReadings.add(reading);
     }
 }
@@ -0,0 +1,10 @@
+package com.energybox.backendcodingchallenge.exception;
+
+/**
+ * Raised by the query profiler in strict mode when a repository query scans more nodes of a label than allowed.
+ */
+public class QueryPlanException extends RuntimeException {
+    public QueryPlanException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,46 @@
+package com.energybox.backendcodingchallenge.history;
+
+/**
+ * Reads a bit stream written by {@link BitOutput}.
+ */
+final class BitInput {
+
+    private long[] words;
+
+    private long position;
+
+    BitInput(long[] words) {
+        this.words = words;
+    }
+
+    void reset(long[] words) {
+        this.words = words;
+        this.position = 0;
+    }
+
+    boolean readBit() {
+        long word = words[(int) (position >>> 6)];
+        boolean bit = ((word >>> (63 - (position & 63))) & 1) == 1;
+        position++;
+        return bit;
+    }
+
+    /**
+     * Reads {@code count} bits, 1 <= count <= 64, as an unsigned value.
+     */
+    long readBits(int count) {
+        int wordIndex = (int) (position >>> 6);
+        int used = (int) (position & 63);
+        int available = 64 - used;
+        long value;
+        if (count <= available) {
+            value = words[wordIndex] << used >>> (64 - count);
+        } else {
+            int overflow = count - available;
+            long high = words[wordIndex] << used >>> used;
+            value = (high << overflow) | (words[wordIndex + 1] >>> (64 - overflow));
+        }
+        position += count;
+        return value;
+    }
+}
@@ -0,0 +1,67 @@
+package com.energybox.backendcodingchallenge.history;
+
+import java.util.Arrays;
+
+/**
+ * Growable bit stream backed by a {@code long[]}. Bits are written most significant first.
+ */
+final class BitOutput {
+
+    private long[] words;
+
+    private long bitLength;
+
+    BitOutput(int initialWords) {
+        this.words = new long[Math.max(1, initialWords)];
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * Writes the lowest {@code count} bits of {@code value}, 1 <= count <= 64.
+     */
+    void writeBits(long value, int count) {
+        if (count < 64) {
+            value &= (1L << count) - 1;
+        }
+        int wordIndex = (int) (bitLength >>> 6);
+        int used = (int) (bitLength & 63);
+        ensureCapacity(wordIndex + 2);
+        int free = 64 - used;
+        if (count <= free) {
+            words[wordIndex] |= value << (free - count);
+        } else {
+            int overflow = count - free;
+            words[wordIndex] |= value >>> overflow;
+            words[wordIndex + 1] |= value << (64 - overflow);
+        }
+        bitLength += count;
+    }
+
+    long bitLength() {
+        return bitLength;
+    }
+
+    int wordCount() {
+        return (int) ((bitLength + 63) >>> 6);
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * Returns a copy of the written words, trimmed to the bits in use.
+     */
+    long[] toArray() {
+        return Arrays.copyOf(words, wordCount());
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > words.length) {
+            words = Arrays.copyOf(words, Math.max(required, words.length * 2));
+        }
+    }
+}
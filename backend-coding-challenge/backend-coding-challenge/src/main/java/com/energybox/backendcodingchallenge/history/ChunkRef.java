@@ -0,0 +1,32 @@
+package com.energybox.backendcodingchallenge.history;
+
+/**
+ * Location and time range of a sealed chunk inside a segment file.
+ */
+final class ChunkRef {
+
+    final int segment;
+
+    final long dataOffset;
+
+    final int wordCount;
+
+    final int count;
+
+    final long minTimestamp;
+
+    final long maxTimestamp;
+
+    ChunkRef(int segment, long dataOffset, int wordCount, int count, long minTimestamp, long maxTimestamp) {
+        this.segment = segment;
+        this.dataOffset = dataOffset;
+        this.wordCount = wordCount;
+        this.count = count;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+    }
+
+    boolean overlaps(long from, long to) {
+        return minTimestamp < to && maxTimestamp >= from;
+    }
+}
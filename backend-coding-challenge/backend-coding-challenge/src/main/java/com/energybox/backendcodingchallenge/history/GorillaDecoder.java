@@ -0,0 +1,98 @@
+package com.energybox.backendcodingchallenge.history;
+
+/**
+ * Iterates over the samples of a chunk written by {@link GorillaEncoder}.
+ * A decoder can be reset and reused for another chunk to keep scans allocation free.
+ */
+final class GorillaDecoder {
+
+    private final BitInput in = new BitInput(new long[0]);
+
+    private int remaining;
+
+    private boolean first;
+
+    private long timestamp;
+
+    private long delta;
+
+    private long valueBits;
+
+    private int leading;
+
+    private int trailing;
+
+    void reset(long[] words, int count) {
+        in.reset(words);
+        remaining = count;
+        first = true;
+        delta = 0;
+        leading = 0;
+        trailing = 0;
+    }
+
+    /**
+     * Moves to the next sample.
+     *
+     * @return false once every sample of the chunk has been read.
+     */
+    boolean next() {
+        if (remaining == 0) {
+            return false;
+        }
+        remaining--;
+        if (first) {
+            first = false;
+            timestamp = in.readBits(64);
+            valueBits = in.readBits(64);
+            return true;
+        }
+        readTimestamp();
+        readValue();
+        return true;
+    }
+
+    long timestamp() {
+        return timestamp;
+    }
+
+    double value() {
+        return Double.longBitsToDouble(valueBits);
+    }
+
+    private void readTimestamp() {
+        long deltaOfDelta;
+        if (!in.readBit()) {
+            deltaOfDelta = 0;
+        } else if (!in.readBit()) {
+            deltaOfDelta = signed(in.readBits(7), 7);
+        } else if (!in.readBit()) {
+            deltaOfDelta = signed(in.readBits(9), 9);
+        } else if (!in.readBit()) {
+            deltaOfDelta = signed(in.readBits(12), 12);
+        } else if (!in.readBit()) {
+            deltaOfDelta = signed(in.readBits(32), 32);
+        } else {
+            deltaOfDelta = in.readBits(64);
+        }
+        delta += deltaOfDelta;
+        timestamp += delta;
+    }
+
+    private void readValue() {
+        if (!in.readBit()) {
+            return;
+        }
+        if (in.readBit()) {
+            leading = (int) in.readBits(5);
+            int meaningful = (int) in.readBits(6) + 1;
+            trailing = 64 - leading - meaningful;
+        }
+        int meaningful = 64 - leading - trailing;
+        valueBits ^= in.readBits(meaningful) << trailing;
+    }
+
+    private static long signed(long value, int bits) {
+        return value << (64 - bits) >> (64 - bits);
+    }
+}
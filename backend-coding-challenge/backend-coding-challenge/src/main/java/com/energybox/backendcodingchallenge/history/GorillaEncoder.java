@@ -0,0 +1,140 @@
+package com.energybox.backendcodingchallenge.history;
+
+/**
+ * Appends samples to a chunk using the Gorilla encoding: timestamps as delta-of-delta in
+ * variable width buckets and values as the XOR against the previous value.
+ * A steady sensor costs one bit per value and one to a dozen bits per timestamp.
+ */
+final class GorillaEncoder {
+
+    private final BitOutput out;
+
+    private int count;
+
+    private long firstTimestamp;
+
+    private long lastTimestamp;
+
+    private long minTimestamp;
+
+    private long maxTimestamp;
+
+    private long previousDelta;
+
+    private long previousValueBits;
+
+    private int previousLeading = Integer.MAX_VALUE;
+
+    private int previousTrailing;
+
+    GorillaEncoder(int expectedSamples) {
+        this.out = new BitOutput(Math.max(2, expectedSamples / 32));
+    }
+
+    void append(long timestamp, double value) {
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            out.writeBits(timestamp, 64);
+            out.writeBits(valueBits, 64);
+            firstTimestamp = timestamp;
+            minTimestamp = timestamp;
+            maxTimestamp = timestamp;
+        } else {
+            writeTimestamp(timestamp);
+            writeValue(valueBits);
+            minTimestamp = Math.min(minTimestamp, timestamp);
+            maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+        lastTimestamp = timestamp;
+        previousValueBits = valueBits;
+        count++;
+    }
+
+    private void writeTimestamp(long timestamp) {
+        long delta = timestamp - lastTimestamp;
+        long deltaOfDelta = delta - previousDelta;
+        previousDelta = delta;
+        if (deltaOfDelta == 0) {
+            out.writeBit(false);
+        } else if (fits(deltaOfDelta, 7)) {
+            out.writeBits(0b10, 2);
+            out.writeBits(deltaOfDelta, 7);
+        } else if (fits(deltaOfDelta, 9)) {
+            out.writeBits(0b110, 3);
+            out.writeBits(deltaOfDelta, 9);
+        } else if (fits(deltaOfDelta, 12)) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(deltaOfDelta, 12);
+        } else if (fits(deltaOfDelta, 32)) {
+            out.writeBits(0b11110, 5);
+            out.writeBits(deltaOfDelta, 32);
+        } else {
+            out.writeBits(0b11111, 5);
+            out.writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    private void writeValue(long valueBits) {
+        long xor = valueBits ^ previousValueBits;
+        if (xor == 0) {
+            out.writeBit(false);
+            return;
+        }
+        out.writeBit(true);
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading != Integer.MAX_VALUE && leading >= previousLeading && trailing >= previousTrailing) {
+            // the meaningful bits fit in the previous window
+            out.writeBit(false);
+            out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+            int meaningful = 64 - leading - trailing;
+            out.writeBit(true);
+            out.writeBits(leading, 5);
+            out.writeBits(meaningful - 1, 6);
+            out.writeBits(xor >>> trailing, meaningful);
+            previousLeading = leading;
+            previousTrailing = trailing;
+        }
+    }
+
+    private static boolean fits(long value, int bits) {
+        long bound = 1L << (bits - 1);
+        return value >= -bound && value < bound;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long firstTimestamp() {
+        return firstTimestamp;
+    }
+
+    long minTimestamp() {
+        return minTimestamp;
+    }
+
+    long maxTimestamp() {
+        return maxTimestamp;
+    }
+
+    long bitLength() {
+        return out.bitLength();
+    }
+
+    int wordCount() {
+        return out.wordCount();
+    }
+
+    long[] words() {
+        return out.words();
+    }
+
+    /**
+     * Returns a trimmed copy of the encoded bits that stays valid after further appends.
+     */
+    long[] snapshot() {
+        return out.toArray();
+    }
+}
@@ -0,0 +1,238 @@
+package com.energybox.backendcodingchallenge.history;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only segment files holding sealed history chunks.
+ *
+ * Each record is laid out as: magic, sensor id, type name (length prefixed UTF-8), min timestamp,
+ * max timestamp, sample count, word count, followed by the encoded words. A segment is rolled over
+ * once it grows past the configured size. A torn record at the end of a segment is cut off on startup.
+ */
+final class HistorySegments implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistorySegments.class);
+
+    private static final int MAGIC = 0x48495354; // "HIST"
+
+    private static final int FIXED_HEADER_BYTES = 4 + 8 + 2 + 8 + 8 + 4 + 4;
+
+    private static final String PREFIX = "history-";
+
+    private static final String SUFFIX = ".seg";
+
+    interface ChunkVisitor {
+        void visit(long sensorId, String typeName, ChunkRef ref);
+    }
+
+    private final Path directory;
+
+    private final long maxSegmentBytes;
+
+    private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+
+    private FileChannel writer;
+
+    private int writerSegment = -1;
+
+    private long writerPosition;
+
+    HistorySegments(Path directory, long maxSegmentBytes) {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * Reads the headers of every existing segment and reports each chunk to the visitor.
+     */
+    synchronized void load(ChunkVisitor visitor) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        for (int segment : listSegments()) {
+            Path path = segmentPath(segment);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long valid = loadSegment(segment, channel, visitor);
+                if (valid < channel.size()) {
+                    logger.warn("Truncating torn history record in {} at offset {}", path, valid);
+                    channel.truncate(valid);
+                }
+                writerSegment = segment;
+                writerPosition = valid;
+            }
+        }
+    }
+
+    private long loadSegment(int segment, FileChannel channel, ChunkVisitor visitor) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES + Short.MAX_VALUE);
+        while (position + FIXED_HEADER_BYTES <= size) {
+            header.clear().limit(14);
+            channel.read(header, position);
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                break;
+            }
+            long sensorId = header.getLong();
+            int nameLength = header.getShort() & 0xFFFF;
+            long recordHeader = FIXED_HEADER_BYTES + nameLength;
+            if (position + recordHeader > size) {
+                break;
+            }
+            header.clear().limit(nameLength + 24);
+            channel.read(header, position + 14);
+            header.flip();
+            byte[] name = new byte[nameLength];
+            header.get(name);
+            long minTimestamp = header.getLong();
+            long maxTimestamp = header.getLong();
+            int count = header.getInt();
+            int wordCount = header.getInt();
+            long dataOffset = position + recordHeader;
+            if (dataOffset + wordCount * 8L > size) {
+                break;
+            }
+            visitor.visit(sensorId, new String(name, StandardCharsets.UTF_8),
+                    new ChunkRef(segment, dataOffset, wordCount, count, minTimestamp, maxTimestamp));
+            position = dataOffset + wordCount * 8L;
+        }
+        return position;
+    }
+
+    /**
+     * Appends a sealed chunk to the current segment.
+     */
+    synchronized ChunkRef write(long sensorId, String typeName, GorillaEncoder chunk) {
+        byte[] name = typeName.getBytes(StandardCharsets.UTF_8);
+        int wordCount = chunk.wordCount();
+        ByteBuffer record = ByteBuffer.allocate(FIXED_HEADER_BYTES + name.length + wordCount * 8);
+        record.putInt(MAGIC)
+                .putLong(sensorId)
+                .putShort((short) name.length)
+                .put(name)
+                .putLong(chunk.minTimestamp())
+                .putLong(chunk.maxTimestamp())
+                .putInt(chunk.count())
+                .putInt(wordCount);
+        int dataStart = record.position();
+        record.asLongBuffer().put(chunk.words(), 0, wordCount);
+        record.position(0);
+        long recordStart = -1;
+        try {
+            ensureWriter(record.capacity());
+            recordStart = writerPosition;
+            while (record.hasRemaining()) {
+                writerPosition += writer.write(record, writerPosition);
+            }
+            return new ChunkRef(writerSegment, recordStart + dataStart, wordCount, chunk.count(),
+                    chunk.minTimestamp(), chunk.maxTimestamp());
+        } catch (IOException e) {
+            if (recordStart >= 0) {
+                // the next record overwrites the torn one, which would otherwise hide the records after it on load
+                writerPosition = recordStart;
+            }
+            throw new UncheckedIOException("Failed to write history chunk for sensor " + sensorId, e);
+        }
+    }
+
+    /**
+     * Forces the chunks written to the current segment to disk.
+     */
+    synchronized void force() throws IOException {
+        if (writer != null) {
+            writer.force(false);
+        }
+    }
+
+    /**
+     * Reads the words of a chunk into {@code buffer}, which must hold at least {@code ref.wordCount * 8} bytes.
+     */
+    void read(ChunkRef ref, ByteBuffer buffer, long[] words) {
+        try {
+            FileChannel channel = readers.computeIfAbsent(ref.segment, this::openReader);
+            buffer.clear().limit(ref.wordCount * 8);
+            long position = ref.dataOffset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of history segment " + ref.segment);
+                }
+                position += read;
+            }
+            buffer.flip();
+            buffer.asLongBuffer().get(words, 0, ref.wordCount);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void ensureWriter(int recordBytes) throws IOException {
+        if (writer != null && writerPosition + recordBytes <= maxSegmentBytes) {
+            return;
+        }
+        if (writer == null && writerSegment >= 0 && writerPosition + recordBytes <= maxSegmentBytes) {
+            // continue the last segment found on startup
+            writer = FileChannel.open(segmentPath(writerSegment), StandardOpenOption.WRITE);
+            return;
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        Files.createDirectories(directory);
+        writerSegment++;
+        writerPosition = 0;
+        writer = FileChannel.open(segmentPath(writerSegment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private FileChannel openReader(int segment) {
+        try {
+            return FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%08d%s", PREFIX, segment, SUFFIX));
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) {
+            writer.force(false);
+            writer.close();
+            writer = null;
+        }
+        for (FileChannel reader : readers.values()) {
+            reader.close();
+        }
+        readers.clear();
+    }
+}
@@ -0,0 +1,89 @@
+package com.energybox.backendcodingchallenge.history;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes history samples straight to an output stream, either as newline delimited JSON
+ * or as the elements of a single JSON array. Nothing is kept once a sample is written.
+ */
+public class JsonSampleWriter implements SampleConsumer {
+
+    private static final byte[] TIMESTAMP = "{\"timestamp\":".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] READING = ",\"reading\":".getBytes(StandardCharsets.US_ASCII);
+
+    private final BufferedOutputStream out;
+
+    private final boolean array;
+
+    private final byte[] digits = new byte[20];
+
+    private boolean first = true;
+
+    public JsonSampleWriter(OutputStream out, boolean array) {
+        this.out = new BufferedOutputStream(out, 16 * 1024);
+        this.array = array;
+    }
+
+    public void start() throws IOException {
+        if (array) {
+            out.write('[');
+        }
+    }
+
+    @Override
+    public void accept(long timestamp, double value) {
+        try {
+            if (array && !first) {
+                out.write(',');
+            }
+            first = false;
+            out.write(TIMESTAMP);
+            writeLong(timestamp);
+            out.write(READING);
+            if (Double.isFinite(value)) {
+                out.write(Double.toString(value).getBytes(StandardCharsets.US_ASCII));
+            } else {
+                out.write("null".getBytes(StandardCharsets.US_ASCII));
+            }
+            out.write('}');
+            if (!array) {
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void finish() throws IOException {
+        if (array) {
+            out.write(']');
+        }
+        out.flush();
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == 0) {
+            out.write('0');
+            return;
+        }
+        if (value == Long.MIN_VALUE) {
+            out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        if (value < 0) {
+            out.write('-');
+            value = -value;
+        }
+        int position = digits.length;
+        while (value > 0) {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        out.write(digits, position, digits.length - position);
+    }
+}
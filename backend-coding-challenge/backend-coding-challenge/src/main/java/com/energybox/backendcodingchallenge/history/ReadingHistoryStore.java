@@ -0,0 +1,344 @@
+package com.energybox.backendcodingchallenge.history;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only reading history per sensor and sensor type.
+ *
+ * Samples are Gorilla encoded into chunks of {@code chunk-size} samples. Full chunks are handed to the
+ * {@code history-sealer} thread, which appends them to segment files on local disk and forces them; only their
+ * location and time range stay in memory. Until then a chunk is kept in memory and still scanned. A chunk that
+ * cannot be written is logged, counted in {@code sensors.history.write.failures} and retried with the next chunk
+ * of its series, so a disk error never fails the reading that filled it.
+ *
+ * Open chunks are sealed when the application shuts down. A crash loses the open chunk of every series, up to
+ * {@code chunk-size - 1} samples each, and any full chunk not written yet. Series are keyed by type code in
+ * memory, segment files hold the type name.
+ */
+@Component
+public class ReadingHistoryStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadingHistoryStore.class);
+
+    private final boolean enabled;
+
+    private final int chunkSize;
+
+    private final HistorySegments segments;
+
+    private final SensorTypeDictionary sensorTypeDictionary;
+
+    private final ConcurrentHashMap<SeriesKey, Series> series = new ConcurrentHashMap<>();
+
+    private final AtomicLong samples = new AtomicLong();
+
+    private final AtomicLong sealedBytes = new AtomicLong();
+
+    private final AtomicLong sealedSamples = new AtomicLong();
+
+    private final Counter writeFailures;
+
+    private final ExecutorService sealer;
+
+    public ReadingHistoryStore(SensorTypeDictionary sensorTypeDictionary,
+                               MeterRegistry meterRegistry,
+                               @Value("${sensors.history.enabled:true}") boolean enabled,
+                               @Value("${sensors.history.dir:data/history}") String directory,
+                               @Value("${sensors.history.chunk-size:1024}") int chunkSize,
+                               @Value("${sensors.history.segment-size-mb:64}") long segmentSizeMb) {
+        this.sensorTypeDictionary = sensorTypeDictionary;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.segments = new HistorySegments(Paths.get(directory), segmentSizeMb * 1024 * 1024);
+
+        Gauge.builder("sensors.history.samples", samples, AtomicLong::get)
+                .description("Samples appended since startup")
+                .register(meterRegistry);
+        Gauge.builder("sensors.history.series", series, ConcurrentHashMap::size)
+                .register(meterRegistry);
+        Gauge.builder("sensors.history.bytes.per.sample", this, ReadingHistoryStore::bytesPerSample)
+                .description("Average encoded size of the samples in sealed chunks")
+                .register(meterRegistry);
+        this.writeFailures = Counter.builder("sensors.history.write.failures")
+                .description("Chunks that failed to be written to a segment file and were kept for a retry")
+                .register(meterRegistry);
+        // a platform thread like the WAL syncer, it spends its time in file writes and fsync
+        this.sealer = enabled ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "history-sealer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        segments.load((sensorId, typeName, ref) -> {
+            seriesFor(sensorId, sensorTypeDictionary.code(typeName)).sealed.add(ref);
+            sealedSamples.addAndGet(ref.count);
+            sealedBytes.addAndGet(ref.wordCount * 8L);
+        });
+        logger.info("Loaded reading history for {} series", series.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends a sample to the history of a sensor and type. Never does file I/O; a full chunk is sealed
+     * by the {@code history-sealer} thread.
+     */
+    public void append(long sensorId, int typeCode, long timestamp, double value) {
+        if (!enabled) {
+            return;
+        }
+        Series target = seriesFor(sensorId, typeCode);
+        boolean full;
+        synchronized (target) {
+            if (target.open == null) {
+                target.open = new GorillaEncoder(chunkSize);
+            }
+            target.open.append(timestamp, value);
+            full = target.open.count() >= chunkSize;
+            if (full) {
+                target.full.add(target.open);
+                target.open = null;
+            }
+        }
+        samples.incrementAndGet();
+        if (full) {
+            try {
+                sealer.execute(() -> seal(target));
+            } catch (RejectedExecutionException e) {
+                // shutting down, close() seals what is left
+            }
+        }
+    }
+
+    /**
+     * Streams the samples of a sensor and type with {@code from <= timestamp < to} to the consumer,
+     * chunk by chunk, without materialising the range.
+     *
+     * @return The number of samples passed to the consumer.
+     */
+    public long scan(long sensorId, int typeCode, long from, long to, SampleConsumer consumer) {
+        Series source = series.get(new SeriesKey(sensorId, typeCode));
+        if (source == null) {
+            return 0;
+        }
+        List<ChunkRef> refs = new ArrayList<>();
+        List<long[]> fullWords = new ArrayList<>();
+        List<Integer> fullCounts = new ArrayList<>();
+        long[] openWords = null;
+        int openCount = 0;
+        synchronized (source) {
+            for (ChunkRef ref : source.sealed) {
+                if (ref.overlaps(from, to)) {
+                    refs.add(ref);
+                }
+            }
+            for (GorillaEncoder chunk : source.full) {
+                if (overlaps(chunk, from, to)) {
+                    fullWords.add(chunk.snapshot());
+                    fullCounts.add(chunk.count());
+                }
+            }
+            GorillaEncoder open = source.open;
+            if (open != null && overlaps(open, from, to)) {
+                openWords = open.snapshot();
+                openCount = open.count();
+            }
+        }
+
+        long emitted = 0;
+        GorillaDecoder decoder = new GorillaDecoder();
+        ByteBuffer buffer = null;
+        long[] words = null;
+        for (ChunkRef ref : refs) {
+            if (words == null || words.length < ref.wordCount) {
+                words = new long[ref.wordCount];
+                buffer = ByteBuffer.allocate(ref.wordCount * 8);
+            }
+            segments.read(ref, buffer, words);
+            decoder.reset(words, ref.count);
+            emitted += emit(decoder, from, to, consumer);
+        }
+        for (int i = 0; i < fullWords.size(); i++) {
+            decoder.reset(fullWords.get(i), fullCounts.get(i));
+            emitted += emit(decoder, from, to, consumer);
+        }
+        if (openWords != null) {
+            decoder.reset(openWords, openCount);
+            emitted += emit(decoder, from, to, consumer);
+        }
+        return emitted;
+    }
+
+    private static boolean overlaps(GorillaEncoder chunk, long from, long to) {
+        return chunk.maxTimestamp() >= from && chunk.minTimestamp() < to;
+    }
+
+    private static long emit(GorillaDecoder decoder, long from, long to, SampleConsumer consumer) {
+        long emitted = 0;
+        while (decoder.next()) {
+            long timestamp = decoder.timestamp();
+            if (timestamp >= from && timestamp < to) {
+                consumer.accept(timestamp, decoder.value());
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    /**
+     * Writes the full chunks of a series in order, holding the series lock only to take and record each one.
+     * A chunk that fails stays first in line with the ones after it, for the next seal of the series.
+     *
+     * @return Whether every full chunk was written.
+     */
+    private boolean seal(Series target) {
+        String typeName = sensorTypeDictionary.name(target.typeCode);
+        boolean written = false;
+        while (true) {
+            GorillaEncoder chunk;
+            synchronized (target) {
+                chunk = target.full.peek();
+            }
+            if (chunk == null) {
+                break;
+            }
+            ChunkRef ref;
+            try {
+                ref = segments.write(target.sensorId, typeName, chunk);
+            } catch (RuntimeException e) {
+                int waiting;
+                synchronized (target) {
+                    waiting = target.full.size();
+                }
+                writeFailures.increment();
+                logger.error("Failed to write a history chunk of sensor {} and type {}, keeping {} chunks in memory",
+                        target.sensorId, typeName, waiting, e);
+                return false;
+            }
+            synchronized (target) {
+                target.full.poll();
+                target.sealed.add(ref);
+            }
+            sealedSamples.addAndGet(chunk.count());
+            sealedBytes.addAndGet(chunk.wordCount() * 8L);
+            written = true;
+        }
+        if (written) {
+            try {
+                segments.force();
+            } catch (IOException e) {
+                writeFailures.increment();
+                logger.error("Failed to force the reading history segment", e);
+            }
+        }
+        return true;
+    }
+
+    double bytesPerSample() {
+        long count = sealedSamples.get();
+        return count == 0 ? 0 : (double) sealedBytes.get() / count;
+    }
+
+    private Series seriesFor(long sensorId, int typeCode) {
+        return series.computeIfAbsent(new SeriesKey(sensorId, typeCode), key -> new Series(sensorId, typeCode));
+    }
+
+    /**
+     * Waits for chunks being sealed, then seals the open chunks so no sample is lost across a restart.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        sealer.shutdown();
+        try {
+            sealer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long lost = 0;
+        for (Series target : series.values()) {
+            synchronized (target) {
+                if (target.open != null && target.open.count() > 0) {
+                    target.full.add(target.open);
+                    target.open = null;
+                }
+            }
+            if (!seal(target)) {
+                synchronized (target) {
+                    for (GorillaEncoder chunk : target.full) {
+                        lost += chunk.count();
+                    }
+                }
+            }
+        }
+        if (lost > 0) {
+            logger.error("Lost {} history samples that could not be written at shutdown", lost);
+        }
+        segments.close();
+    }
+
+    /**
+     * Blocks until the chunks handed to the sealer so far are written.
+     */
+    void awaitSealed() throws Exception {
+        sealer.submit(() -> { }).get();
+    }
+
+    long writeFailures() {
+        return (long) writeFailures.count();
+    }
+
+    private static final class Series {
+
+        final long sensorId;
+
+        final int typeCode;
+
+        final List<ChunkRef> sealed = new ArrayList<>();
+
+        /**
+         * Full chunks waiting for the sealer, oldest first.
+         */
+        final ArrayDeque<GorillaEncoder> full = new ArrayDeque<>();
+
+        GorillaEncoder open;
+
+        Series(long sensorId, int typeCode) {
+            this.sensorId = sensorId;
+            this.typeCode = typeCode;
+        }
+    }
+}
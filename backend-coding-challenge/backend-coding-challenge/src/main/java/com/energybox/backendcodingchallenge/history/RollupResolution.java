@@ -0,0 +1,33 @@
+package com.energybox.backendcodingchallenge.history;
+
+/**
+ * Bucket widths maintained by the {@link RollupStore}, finest first.
+ */
+public enum RollupResolution {
+    MINUTE(60_000L),
+    HOUR(3_600_000L),
+    DAY(86_400_000L);
+
+    private final long widthMillis;
+
+    RollupResolution(long widthMillis) {
+        this.widthMillis = widthMillis;
+    }
+
+    public long getWidthMillis() {
+        return widthMillis;
+    }
+
+    /**
+     * Returns the coarsest resolution whose buckets are not wider than the requested step.
+     */
+    public static RollupResolution forStep(long stepMillis) {
+        RollupResolution result = MINUTE;
+        for (RollupResolution resolution : values()) {
+            if (resolution.widthMillis <= stepMillis) {
+                result = resolution;
+            }
+        }
+        return result;
+    }
+}
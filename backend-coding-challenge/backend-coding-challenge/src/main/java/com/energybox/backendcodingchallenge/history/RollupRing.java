@@ -0,0 +1,98 @@
+package com.energybox.backendcodingchallenge.history;
+
+import java.util.Arrays;
+
+/**
+ * Fixed number of consecutive time buckets kept in primitive arrays.
+ * A sample either updates its bucket, recycles the slot of a bucket that fell out of the ring,
+ * or is dropped when it is older than the ring's retention.
+ */
+final class RollupRing {
+
+    interface BucketVisitor {
+        void visit(long start, double min, double max, double sum, long count, double last);
+    }
+
+    private final long width;
+
+    private final long[] starts;
+
+    private final double[] min;
+
+    private final double[] max;
+
+    private final double[] sum;
+
+    private final double[] last;
+
+    private final long[] lastTimestamp;
+
+    private final long[] count;
+
+    private long newestBucket = Long.MIN_VALUE;
+
+    RollupRing(long width, int slots) {
+        this.width = width;
+        this.starts = new long[slots];
+        this.min = new double[slots];
+        this.max = new double[slots];
+        this.sum = new double[slots];
+        this.last = new double[slots];
+        this.lastTimestamp = new long[slots];
+        this.count = new long[slots];
+        Arrays.fill(starts, Long.MIN_VALUE);
+    }
+
+    void add(long timestamp, double value) {
+        long bucket = Math.floorDiv(timestamp, width);
+        if (newestBucket != Long.MIN_VALUE && bucket <= newestBucket - starts.length) {
+            return;
+        }
+        newestBucket = Math.max(newestBucket, bucket);
+        int slot = (int) Math.floorMod(bucket, (long) starts.length);
+        long start = bucket * width;
+        if (starts[slot] != start) {
+            starts[slot] = start;
+            min[slot] = value;
+            max[slot] = value;
+            sum[slot] = value;
+            last[slot] = value;
+            lastTimestamp[slot] = timestamp;
+            count[slot] = 1;
+            return;
+        }
+        min[slot] = Math.min(min[slot], value);
+        max[slot] = Math.max(max[slot], value);
+        sum[slot] += value;
+        count[slot]++;
+        if (timestamp >= lastTimestamp[slot]) {
+            last[slot] = value;
+            lastTimestamp[slot] = timestamp;
+        }
+    }
+
+    /**
+     * Visits the non-empty buckets overlapping {@code [from, to)}, oldest first.
+     */
+    void forEach(long from, long to, BucketVisitor visitor) {
+        if (newestBucket == Long.MIN_VALUE) {
+            return;
+        }
+        long firstBucket = Math.max(Math.floorDiv(from, width), newestBucket - starts.length + 1);
+        long lastBucket = Math.min(Math.floorDiv(to - 1, width), newestBucket);
+        for (long bucket = firstBucket; bucket <= lastBucket; bucket++) {
+            int slot = (int) Math.floorMod(bucket, (long) starts.length);
+            long start = bucket * width;
+            if (starts[slot] == start) {
+                visitor.visit(start, min[slot], max[slot], sum[slot], count[slot], last[slot]);
+            }
+        }
+    }
+
+    /**
+     * Returns the start of the oldest bucket the ring can still hold.
+     */
+    long retainedFrom() {
+        return newestBucket == Long.MIN_VALUE ? Long.MAX_VALUE : (newestBucket - starts.length + 1) * width;
+    }
+}
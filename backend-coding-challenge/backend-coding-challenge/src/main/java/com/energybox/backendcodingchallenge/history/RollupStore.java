@@ -0,0 +1,126 @@
+package com.energybox.backendcodingchallenge.history;
+
+import com.energybox.backendcodingchallenge.model.RollupBucket;
+import com.energybox.backendcodingchallenge.model.RollupResponse;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Incrementally maintained min/max/sum/count/last aggregates per sensor and type code.
+ *
+ * Every sample updates one minute, one hour and one day bucket. Each resolution keeps a ring of
+ * buckets in primitive arrays, so the memory per series is fixed by the configured slot counts.
+ */
+@Component
+public class RollupStore {
+
+    private final boolean enabled;
+
+    private final int[] slots;
+
+    private final ConcurrentHashMap<SeriesKey, RollupRing[]> rollups = new ConcurrentHashMap<>();
+
+    public RollupStore(MeterRegistry meterRegistry,
+                       @Value("${sensors.rollups.enabled:true}") boolean enabled,
+                       @Value("${sensors.rollups.minute-slots:120}") int minuteSlots,
+                       @Value("${sensors.rollups.hour-slots:168}") int hourSlots,
+                       @Value("${sensors.rollups.day-slots:90}") int daySlots) {
+        this.enabled = enabled;
+        this.slots = new int[]{minuteSlots, hourSlots, daySlots};
+        Gauge.builder("sensors.rollups.series", rollups, ConcurrentHashMap::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds a sample to every resolution of its sensor and type.
+     */
+    public void add(long sensorId, int typeCode, long timestamp, double value) {
+        if (!enabled) {
+            return;
+        }
+        RollupRing[] rings = rollups.computeIfAbsent(new SeriesKey(sensorId, typeCode), key -> newRings());
+        synchronized (rings) {
+            for (RollupRing ring : rings) {
+                ring.add(timestamp, value);
+            }
+        }
+    }
+
+    /**
+     * Returns the coarsest resolution whose buckets fit in the step and can be merged into it evenly.
+     * Finer resolutions keep shorter histories, so this is also the one covering the longest range.
+     */
+    public RollupResolution resolutionFor(long stepMillis) {
+        RollupResolution resolution = RollupResolution.forStep(stepMillis);
+        while (resolution.ordinal() > 0 && stepMillis % resolution.getWidthMillis() != 0) {
+            resolution = RollupResolution.values()[resolution.ordinal() - 1];
+        }
+        return resolution;
+    }
+
+    /**
+     * Returns the aggregates of a sensor and type in {@code [from, to)}, merged into buckets of {@code stepMillis}.
+     *
+     * Of the resolutions that divide the step, the coarsest one still covering {@code from} answers the query.
+     * If none does, the one reaching back furthest is used and the response reports where its buckets start.
+     */
+    public RollupResponse query(long sensorId, int typeCode, long from, long to, long stepMillis) {
+        RollupResponse response = new RollupResponse();
+        response.setResolution(resolutionFor(stepMillis));
+        response.setStepMillis(stepMillis);
+        List<RollupBucket> buckets = response.getBuckets();
+        RollupRing[] rings = rollups.get(new SeriesKey(sensorId, typeCode));
+        if (rings == null) {
+            return response;
+        }
+        synchronized (rings) {
+            RollupRing ring = rings[response.getResolution().ordinal()];
+            for (int i = response.getResolution().ordinal(); i >= 0; i--) {
+                RollupResolution resolution = RollupResolution.values()[i];
+                if (stepMillis % resolution.getWidthMillis() != 0) {
+                    continue;
+                }
+                if (rings[i].retainedFrom() < ring.retainedFrom()) {
+                    ring = rings[i];
+                    response.setResolution(resolution);
+                }
+                if (ring.retainedFrom() <= from) {
+                    break;
+                }
+            }
+            long retainedFrom = ring.retainedFrom();
+            if (retainedFrom > from && retainedFrom != Long.MAX_VALUE) {
+                response.setRetainedFrom(retainedFrom);
+            }
+            ring.forEach(from, to, (start, min, max, sum, count, last) -> {
+                long stepStart = Math.floorDiv(start, stepMillis) * stepMillis;
+                RollupBucket current = buckets.isEmpty() ? null : buckets.get(buckets.size() - 1);
+                if (current == null || current.getStart() != stepStart) {
+                    buckets.add(new RollupBucket(stepStart, min, max, sum / count, sum, count, last));
+                    return;
+                }
+                current.setMin(Math.min(current.getMin(), min));
+                current.setMax(Math.max(current.getMax(), max));
+                current.setSum(current.getSum() + sum);
+                current.setCount(current.getCount() + count);
+                current.setAvg(current.getSum() / current.getCount());
+                current.setLast(last);
+            });
+        }
+        return response;
+    }
+
+    private RollupRing[] newRings() {
+        RollupResolution[] resolutions = RollupResolution.values();
+        RollupRing[] rings = new RollupRing[resolutions.length];
+        for (int i = 0; i < resolutions.length; i++) {
+            rings[i] = new RollupRing(resolutions[i].getWidthMillis(), slots[i]);
+        }
+        return rings;
+    }
+}
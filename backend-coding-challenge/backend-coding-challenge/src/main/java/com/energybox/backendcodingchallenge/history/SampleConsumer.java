@@ -0,0 +1,10 @@
+package com.energybox.backendcodingchallenge.history;
+
+/**
+ * Receives the samples of a history scan one by one, without boxing.
+ */
+@FunctionalInterface
+public interface SampleConsumer {
+
+    void accept(long timestamp, double value);
+}
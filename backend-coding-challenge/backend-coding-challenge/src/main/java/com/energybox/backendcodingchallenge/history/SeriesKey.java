@@ -0,0 +1,33 @@
+package com.energybox.backendcodingchallenge.history;
+
+/**
+ * Identifies the series of one sensor and sensor type, the type by its dictionary code.
+ */
+final class SeriesKey {
+
+    private final long sensorId;
+
+    private final int typeCode;
+
+    SeriesKey(long sensorId, int typeCode) {
+        this.sensorId = sensorId;
+        this.typeCode = typeCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SeriesKey)) {
+            return false;
+        }
+        SeriesKey other = (SeriesKey) o;
+        return sensorId == other.sensorId && typeCode == other.typeCode;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(sensorId) + typeCode;
+    }
+}
@@ -0,0 +1,228 @@
+package com.energybox.backendcodingchallenge.idempotency;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the responses of calls made with an {@code Idempotency-Key} header, so a client retrying a call
+ * gets the first response back instead of running it again.
+ *
+ * Responses are kept per operation and key in a Caffeine cache bounded by {@code max-entries} and expire
+ * {@code ttl-ms} after they were stored. Concurrent calls with the same key wait for the first one instead of
+ * running in parallel; the first call runs outside of the cache, so the others park on its future rather
+ * than block on a lock of the cache. A repeat with a different request body is answered with 422 Unprocessable Entity.
+ * 5xx and 429 responses are not remembered, so a retry runs again. Replayed responses carry an
+ * {@code Idempotent-Replayed: true} header.
+ *
+ * Hits, misses, evictions and the number of remembered responses are exposed as {@code cache.gets},
+ * {@code cache.evictions} and {@code cache.size} with {@code cache=idempotency}, together with the
+ * {@code sensors.idempotency.hit.ratio} gauge and the {@code sensors.idempotency.conflicts} counter.
+ */
+@Component
+public class IdempotencyStore {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final boolean enabled;
+
+    private final Cache<String, Remembered> cache;
+
+    // calls running per cache key, completed with what they remembered or null
+    private final ConcurrentHashMap<String, CompletableFuture<Remembered>> running = new ConcurrentHashMap<>();
+
+    private final Counter conflicts;
+
+    public IdempotencyStore(MeterRegistry meterRegistry,
+                            @Value("${sensors.idempotency.enabled:true}") boolean enabled,
+                            @Value("${sensors.idempotency.max-entries:100000}") long maxEntries,
+                            @Value("${sensors.idempotency.ttl-ms:86400000}") long ttlMs) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlMs, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "idempotency");
+        Gauge.builder("sensors.idempotency.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of keyed calls answered with a remembered response")
+                .register(meterRegistry);
+        this.conflicts = meterRegistry.counter("sensors.idempotency.conflicts");
+    }
+
+    /**
+     * @return Whether the key can be used, that is it is absent or not blank and at most {@value #MAX_KEY_LENGTH} characters long.
+     */
+    public static boolean isValidKey(String key) {
+        return key == null || (!key.isBlank() && key.length() <= MAX_KEY_LENGTH);
+    }
+
+    /**
+     * Runs a call once per operation and key, answering repeats with the remembered response.
+     * Calls without a key always run.
+     *
+     * @param operation Name of the call, so the same key can be used for different operations.
+     * @param key The value of the {@code Idempotency-Key} header, or null.
+     * @param request The request body, compared with the body of the first call by its hash code before the call.
+     * @param call Makes the call. If it throws, nothing is remembered.
+     */
+    public <T> ResponseEntity<T> execute(String operation, String key, Object request, Supplier<ResponseEntity<T>> call) {
+        if (!enabled || key == null) {
+            return call.get();
+        }
+        String cacheKey = operation + '\n' + key;
+        // the call may fill in the request, so it is fingerprinted up front
+        int requestHash = Objects.hashCode(request);
+        while (true) {
+            Remembered remembered = cache.getIfPresent(cacheKey);
+            if (remembered != null) {
+                return replay(remembered, requestHash);
+            }
+            CompletableFuture<Remembered> mine = new CompletableFuture<>();
+            CompletableFuture<Remembered> other = running.putIfAbsent(cacheKey, mine);
+            if (other == null) {
+                return runFirst(cacheKey, requestHash, call, mine);
+            }
+            remembered = other.join();
+            // a call that failed or was not remembered leaves the next one to run
+            if (remembered != null) {
+                return replay(remembered, requestHash);
+            }
+        }
+    }
+
+    private <T> ResponseEntity<T> runFirst(String cacheKey, int requestHash, Supplier<ResponseEntity<T>> call,
+                                           CompletableFuture<Remembered> mine) {
+        // a call that finished between the lookup and claiming the key has already been remembered
+        Remembered finished = cache.asMap().get(cacheKey);
+        if (finished != null) {
+            finish(cacheKey, mine, finished);
+            return replay(finished, requestHash);
+        }
+        ResponseEntity<T> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException | Error e) {
+            finish(cacheKey, mine, null);
+            throw e;
+        }
+        finish(cacheKey, mine, remember(cacheKey, requestHash, response));
+        return response;
+    }
+
+    /**
+     * Non-blocking version of {@link #execute}, for the reactive controllers. A repeat of a call that is still
+     * running continues once that call completes instead of waiting for it on the calling thread.
+     *
+     * @param call Starts the call. If it throws or its stage fails, nothing is remembered.
+     * @return The response of the call or the remembered one.
+     */
+    public <T> CompletableFuture<ResponseEntity<T>> executeAsync(String operation, String key, Object request,
+                                                                 Supplier<? extends CompletionStage<ResponseEntity<T>>> call) {
+        if (!enabled || key == null) {
+            return call.get().toCompletableFuture();
+        }
+        return executeAsync(operation + '\n' + key, Objects.hashCode(request), call);
+    }
+
+    private <T> CompletableFuture<ResponseEntity<T>> executeAsync(String cacheKey, int requestHash,
+                                                                  Supplier<? extends CompletionStage<ResponseEntity<T>>> call) {
+        Remembered remembered = cache.getIfPresent(cacheKey);
+        if (remembered != null) {
+            return CompletableFuture.completedFuture(replay(remembered, requestHash));
+        }
+        CompletableFuture<Remembered> mine = new CompletableFuture<>();
+        CompletableFuture<Remembered> other = running.putIfAbsent(cacheKey, mine);
+        if (other != null) {
+            // a call that failed or was not remembered leaves the next one to run
+            return other.thenCompose(first -> first != null
+                    ? CompletableFuture.completedFuture(replay(first, requestHash))
+                    : executeAsync(cacheKey, requestHash, call));
+        }
+        Remembered finished = cache.asMap().get(cacheKey);
+        if (finished != null) {
+            finish(cacheKey, mine, finished);
+            return CompletableFuture.completedFuture(replay(finished, requestHash));
+        }
+        CompletionStage<ResponseEntity<T>> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException | Error e) {
+            finish(cacheKey, mine, null);
+            throw e;
+        }
+        return response.toCompletableFuture().whenComplete((result, error) ->
+                finish(cacheKey, mine, error == null ? remember(cacheKey, requestHash, result) : null));
+    }
+
+    /**
+     * Caches a response unless the call should run again on a retry.
+     *
+     * @return What was remembered, or null.
+     */
+    private Remembered remember(String cacheKey, int requestHash, ResponseEntity<?> response) {
+        if (response.getStatusCode().is5xxServerError() || response.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+            return null;
+        }
+        Remembered remembered = new Remembered(requestHash, response);
+        cache.put(cacheKey, remembered);
+        return remembered;
+    }
+
+    private void finish(String cacheKey, CompletableFuture<Remembered> mine, Remembered remembered) {
+        running.remove(cacheKey, mine);
+        mine.complete(remembered);
+    }
+
+    private <T> ResponseEntity<T> replay(Remembered remembered, int requestHash) {
+        ResponseEntity<T> response = cast(remembered.response);
+        if (remembered.requestHash != requestHash) {
+            conflicts.increment();
+            return new ResponseEntity<>(HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.addAll(response.getHeaders());
+        headers.set(REPLAYED_HEADER, "true");
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ResponseEntity<T> cast(ResponseEntity<?> response) {
+        return (ResponseEntity<T>) response;
+    }
+
+    private static final class Remembered {
+
+        final int requestHash;
+
+        final ResponseEntity<?> response;
+
+        Remembered(int requestHash, ResponseEntity<?> response) {
+            this.requestHash = requestHash;
+            this.response = response;
+        }
+    }
+}
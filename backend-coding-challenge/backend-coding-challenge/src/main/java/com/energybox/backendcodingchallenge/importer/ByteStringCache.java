@@ -0,0 +1,60 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Small direct-mapped cache from UTF-8 bytes to the String they decode to, so values repeated on many rows,
+ * such as type names, are decoded once instead of once per row. A colliding value replaces the cached one.
+ * Not thread-safe.
+ */
+final class ByteStringCache {
+
+    private final byte[][] keys;
+
+    private final String[] values;
+
+    private final int mask;
+
+    /**
+     * @param capacity The number of slots, rounded up to a power of two.
+     */
+    ByteStringCache(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.keys = new byte[slots][];
+        this.values = new String[slots];
+        this.mask = slots - 1;
+    }
+
+    String get(ByteBuffer buffer, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        byte[] key = keys[slot];
+        if (key != null && matches(key, buffer, start, end)) {
+            return values[slot];
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            bytes[i - start] = buffer.get(i);
+        }
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        keys[slot] = bytes;
+        values[slot] = value;
+        return value;
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
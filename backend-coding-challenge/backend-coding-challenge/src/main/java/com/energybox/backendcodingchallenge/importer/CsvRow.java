@@ -0,0 +1,246 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+/**
+ * A comma separated line of a mapped file, split into fields without copying it.
+ *
+ * The same instance is reset for every line. Numbers are parsed straight from the bytes, strings are only
+ * decoded when asked for and can be shared across rows through a {@link ByteStringCache}. Fields may be
+ * enclosed in double quotes, with a doubled quote standing for a quote inside the field. Not thread-safe.
+ */
+final class CsvRow {
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    // exact powers of ten, dividing an exact mantissa by one of them is correctly rounded
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private ByteBuffer buffer;
+
+    private int[] starts = new int[16];
+
+    private int[] ends = new int[16];
+
+    // fields holding a doubled quote, which have to be unescaped when decoded
+    private boolean[] escaped = new boolean[16];
+
+    private int size;
+
+    void reset(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.size = 0;
+        int index = start;
+        while (true) {
+            ensureCapacity(size + 1);
+            if (index < end && buffer.get(index) == '"') {
+                int fieldStart = ++index;
+                boolean hasEscape = false;
+                while (index < end) {
+                    if (buffer.get(index) == '"') {
+                        if (index + 1 < end && buffer.get(index + 1) == '"') {
+                            hasEscape = true;
+                            index += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    index++;
+                }
+                if (index >= end) {
+                    throw new IllegalArgumentException("Unterminated quoted field in column " + (size + 1));
+                }
+                starts[size] = fieldStart;
+                ends[size] = index;
+                escaped[size] = hasEscape;
+                size++;
+                index++;
+                if (index < end && buffer.get(index) != ',') {
+                    throw new IllegalArgumentException("Unexpected character after quoted field in column " + size);
+                }
+            } else {
+                int fieldStart = index;
+                while (index < end && buffer.get(index) != ',') {
+                    index++;
+                }
+                starts[size] = fieldStart;
+                ends[size] = index;
+                escaped[size] = false;
+                size++;
+            }
+            if (index >= end) {
+                return;
+            }
+            index++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isBlank(int field) {
+        for (int i = starts[field]; i < ends[field]; i++) {
+            if (buffer.get(i) != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long longValue(int field) {
+        int index = starts[field];
+        int end = ends[field];
+        boolean negative = index < end && buffer.get(index) == '-';
+        if (negative) {
+            index++;
+        }
+        if (index == end) {
+            throw invalid(field, "a number");
+        }
+        long value = 0;
+        for (; index < end; index++) {
+            int digit = buffer.get(index) - '0';
+            if (digit < 0 || digit > 9) {
+                throw invalid(field, "a number");
+            }
+            if (value > (Long.MAX_VALUE - digit) / 10) {
+                throw invalid(field, "a number in range");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses plain decimals of up to 15 significant digits from the bytes and hands anything else,
+     * such as exponents, to {@link Double#parseDouble(String)}.
+     */
+    double doubleValue(int field) {
+        int index = starts[field];
+        int end = ends[field];
+        boolean negative = index < end && buffer.get(index) == '-';
+        if (negative) {
+            index++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; index < end; index++) {
+            byte b = buffer.get(index);
+            if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            int digit = b - '0';
+            if (digit < 0 || digit > 9) {
+                return parseDouble(field);
+            }
+            mantissa = mantissa * 10 + digit;
+            if (++digits > 15) {
+                return parseDouble(field);
+            }
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0 || mantissa > MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+            return parseDouble(field);
+        }
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    /**
+     * Reads a timestamp given either as epoch milliseconds or as an ISO-8601 local date-time.
+     */
+    LocalDateTime timestamp(int field) {
+        int index = starts[field];
+        int end = ends[field];
+        boolean digitsOnly = index < end;
+        for (int i = index; i < end && digitsOnly; i++) {
+            byte b = buffer.get(i);
+            digitsOnly = b >= '0' && b <= '9';
+        }
+        if (digitsOnly) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(longValue(field)), ZONE);
+        }
+        return LocalDateTime.parse(string(field));
+    }
+
+    String string(int field) {
+        int start = starts[field];
+        int end = ends[field];
+        byte[] bytes = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            bytes[length++] = buffer.get(i);
+            if (escaped[field] && buffer.get(i) == '"') {
+                i++;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes a field through the cache, for values that repeat across rows.
+     */
+    String string(int field, ByteStringCache cache) {
+        return escaped[field] ? string(field) : cache.get(buffer, starts[field], ends[field]);
+    }
+
+    /**
+     * Adds the non-empty parts of a field split at {@code separator} to the collection.
+     */
+    void split(int field, char separator, ByteStringCache cache, Collection<String> into) {
+        if (escaped[field]) {
+            for (String part : string(field).split(Pattern.quote(String.valueOf(separator)))) {
+                if (!part.isEmpty()) {
+                    into.add(part);
+                }
+            }
+            return;
+        }
+        int partStart = starts[field];
+        for (int i = partStart; i <= ends[field]; i++) {
+            if (i == ends[field] || buffer.get(i) == separator) {
+                if (i > partStart) {
+                    into.add(cache.get(buffer, partStart, i));
+                }
+                partStart = i + 1;
+            }
+        }
+    }
+
+    private double parseDouble(int field) {
+        try {
+            return Double.parseDouble(string(field));
+        } catch (NumberFormatException e) {
+            throw invalid(field, "a number");
+        }
+    }
+
+    private IllegalArgumentException invalid(int field, String expected) {
+        return new IllegalArgumentException("Column " + (field + 1) + " is not " + expected + ": " + string(field));
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > starts.length) {
+            starts = Arrays.copyOf(starts, starts.length * 2);
+            ends = Arrays.copyOf(ends, ends.length * 2);
+            escaped = Arrays.copyOf(escaped, escaped.length * 2);
+        }
+    }
+}
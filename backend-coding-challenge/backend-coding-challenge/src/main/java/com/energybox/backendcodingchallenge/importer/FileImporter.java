@@ -0,0 +1,427 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
+import com.energybox.backendcodingchallenge.ingest.LastReadingBuffer;
+import com.energybox.backendcodingchallenge.model.BatchGatewayAssignmentResponse;
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.BulkSensorItem;
+import com.energybox.backendcodingchallenge.model.BulkSensorResponse;
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentOutcome;
+import com.energybox.backendcodingchallenge.model.ImportKind;
+import com.energybox.backendcodingchallenge.model.ImportProgress;
+import com.energybox.backendcodingchallenge.model.ImportRequest;
+import com.energybox.backendcodingchallenge.model.ReadingFailure;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.model.SensorFailure;
+import com.energybox.backendcodingchallenge.model.SensorGatewayRequest;
+import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports sensors, gateway assignments and readings from local CSV or NDJSON files.
+ *
+ * Files are read through memory mapped windows. CSV rows are split in place and their numbers parsed
+ * straight from the mapped bytes; NDJSON rows are bound by Jackson. Parsed rows are grouped into batches of
+ * {@code batch-size} and handed through a queue of {@code queue-capacity} batches to a writer thread, which
+ * passes each batch to the same {@link SensorService} bulk method the REST API uses. A full queue blocks
+ * the reader, so memory stays bounded however large the file is.
+ *
+ * Rows that cannot be parsed or are rejected by the service are counted and the first
+ * {@value #MAX_REPORTED_FAILURES} reported. After every batch the committed offset moves past its rows;
+ * an import that failed can be resumed from there without writing any row twice. Sensor batches are capped
+ * at one bulk transaction so a failed batch has written nothing, and reading batches are flushed from the
+ * write-behind buffer before their offset is committed.
+ */
+@Component
+public class FileImporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileImporter.class);
+
+    static final int MAX_REPORTED_FAILURES = 100;
+
+    static final int MAX_TRACKED_IMPORTS = 100;
+
+    private static final int STRING_CACHE_SIZE = 1024;
+
+    private static final long POLL_MS = 100;
+
+    private static final Batch END = new Batch(0);
+
+    private final SensorService sensorService;
+
+    private final LastReadingBuffer lastReadingBuffer;
+
+    private final ObjectMapper objectMapper;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Path importDir;
+
+    private final int batchSize;
+
+    private final int queueCapacity;
+
+    private final int windowSize;
+
+    private final long progressIntervalMs;
+
+    private final Map<String, ImportJob> jobs = Collections.synchronizedMap(new LinkedHashMap<String, ImportJob>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, ImportJob> eldest) {
+            return size() > MAX_TRACKED_IMPORTS;
+        }
+    });
+
+    private final ExecutorService executor;
+
+    public FileImporter(SensorService sensorService,
+                        LastReadingBuffer lastReadingBuffer,
+                        ObjectMapper objectMapper,
+                        MeterRegistry meterRegistry,
+                        WorkerThreads workerThreads,
+                        @Value("${sensors.import.dir:data/imports}") String importDir,
+                        @Value("${sensors.import.batch-size:1000}") int batchSize,
+                        @Value("${sensors.import.queue-capacity:8}") int queueCapacity,
+                        @Value("${sensors.import.window-size-mb:64}") int windowSizeMb,
+                        @Value("${sensors.import.progress-interval-ms:5000}") long progressIntervalMs) {
+        this.sensorService = sensorService;
+        this.lastReadingBuffer = lastReadingBuffer;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.importDir = Paths.get(importDir).toAbsolutePath().normalize();
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.windowSize = windowSizeMb * 1024 * 1024;
+        this.progressIntervalMs = progressIntervalMs;
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(
+                runnable -> workerThreads.newThread("file-importer-" + threads.incrementAndGet(), runnable));
+    }
+
+    /**
+     * Starts importing a file of the import directory in the background.
+     *
+     * @return The progress of the import, to be polled by its id.
+     * @throws InvalidRequestException If the file is outside the import directory, missing, of an unknown
+     * format, or the offset is not the start of a line.
+     */
+    public ImportProgress start(ImportRequest request) {
+        if (request.getFile() == null || request.getFile().isBlank() || request.getKind() == null) {
+            throw new InvalidRequestException("File and kind must be provided");
+        }
+        Path file = importDir.resolve(request.getFile()).normalize();
+        if (!file.startsWith(importDir)) {
+            throw new InvalidRequestException("File must be inside the import directory");
+        }
+        ImportJob job = open(file, request.getKind(), request.getOffset(), request.isMove());
+        executor.execute(() -> execute(job));
+        return job.snapshot();
+    }
+
+    /**
+     * Imports a file in the calling thread and returns once it is done, for the command line runner.
+     *
+     * @throws InvalidRequestException If the file is missing, of an unknown format, or the offset is not the
+     * start of a line.
+     */
+    public ImportProgress run(Path file, ImportKind kind, long offset, boolean move) {
+        ImportJob job = open(file.toAbsolutePath().normalize(), kind, offset, move);
+        execute(job);
+        return job.snapshot();
+    }
+
+    /**
+     * @return The progress of an import, or null if the id is unknown.
+     */
+    public ImportProgress progress(String id) {
+        ImportJob job = jobs.get(id);
+        return job == null ? null : job.snapshot();
+    }
+
+    /**
+     * @return The progress of the last {@value #MAX_TRACKED_IMPORTS} imports, oldest first.
+     */
+    public List<ImportProgress> imports() {
+        List<ImportProgress> imports = new ArrayList<>();
+        synchronized (jobs) {
+            jobs.values().forEach(job -> imports.add(job.snapshot()));
+        }
+        return imports;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private ImportJob open(Path file, ImportKind kind, long offset, boolean move) {
+        if (!Files.isRegularFile(file)) {
+            throw new InvalidRequestException("File not found: " + file.getFileName());
+        }
+        String name = file.getFileName().toString().toLowerCase();
+        boolean csv = name.endsWith(".csv");
+        if (!csv && !name.endsWith(".ndjson") && !name.endsWith(".jsonl")) {
+            throw new InvalidRequestException("Only .csv, .ndjson and .jsonl files can be imported");
+        }
+        MappedLineReader reader;
+        try {
+            reader = new MappedLineReader(file, offset, windowSize);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException(e.getMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), file.toString(), kind, csv, move, reader);
+        jobs.put(job.id, job);
+        logger.info("Import {} of {} {} started at offset {}", job.id, kind, file, offset);
+        return job;
+    }
+
+    private void execute(ImportJob job) {
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Future<?> writer = executor.submit(() -> write(job, queue));
+        try (MappedLineReader reader = job.reader) {
+            read(job, reader, queue);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Import {} failed to read {} at offset {}", job.id, job.file, job.reader.position(), e);
+            job.fail(e);
+        }
+        try {
+            writer.get();
+        } catch (Exception e) {
+            job.fail(e);
+        }
+        job.complete();
+
+        ImportProgress summary = job.snapshot();
+        logger.info("Import {} of {} {} {} in {} ms: {} rows read, {} accepted, {} failed, {} rows/s, {} MB/s, committed offset {}",
+                summary.getId(), summary.getKind(), summary.getFile(), summary.getStatus(), summary.getElapsedMs(),
+                summary.getRowsRead(), summary.getRowsAccepted(), summary.getRowsFailed(),
+                Math.round(summary.getRowsPerSecond()), String.format("%.1f", summary.getMegabytesPerSecond()),
+                summary.getCommittedOffset());
+    }
+
+    /**
+     * Parses the rows of the file into batches and queues them, blocking while the queue is full.
+     */
+    private void read(ImportJob job, MappedLineReader reader, BlockingQueue<Batch> queue) throws IOException {
+        CsvRow row = new CsvRow();
+        ByteStringCache strings = new ByteStringCache(STRING_CACHE_SIZE);
+        ObjectReader json = objectMapper.readerFor(ImportRows.type(job.kind));
+        boolean header = job.csv && reader.position() == 0;
+        int batchSize = batchSize(job.kind);
+
+        Batch batch = new Batch(batchSize);
+        while (!job.isFailed() && reader.next()) {
+            if (reader.lineStart() == reader.lineEnd()) {
+                continue;
+            }
+            if (header) {
+                header = false;
+                continue;
+            }
+            job.rowRead();
+            try {
+                Object item;
+                if (job.csv) {
+                    row.reset(reader.buffer(), reader.lineStart(), reader.lineEnd());
+                    item = ImportRows.parse(job.kind, row, strings);
+                } else {
+                    ByteBuffer line = reader.buffer().duplicate();
+                    line.limit(reader.lineEnd()).position(reader.lineStart());
+                    item = json.readValue(new ByteBufferBackedInputStream(line));
+                }
+                batch.add(item, reader.lineOffset());
+            } catch (IllegalArgumentException | JsonProcessingException e) {
+                job.failure(reader.lineOffset(), e.getMessage());
+                meterRegistry.counter("sensors.import.rows", "kind", job.kind.name(), "result", "failed").increment();
+            }
+            if (batch.size() == batchSize) {
+                batch.endOffset = reader.position();
+                if (!enqueue(job, queue, batch)) {
+                    return;
+                }
+                batch = new Batch(batchSize);
+            }
+        }
+        // also queued when empty, so the offset of trailing unparseable rows is committed
+        batch.endOffset = reader.position();
+        if (enqueue(job, queue, batch)) {
+            enqueue(job, queue, END);
+        }
+    }
+
+    /**
+     * Sensors are written in transactions of {@link SensorService#SENSOR_BULK_CHUNK_SIZE}; a larger batch could
+     * fail after some of its transactions committed, and resuming would create those sensors again.
+     */
+    private int batchSize(ImportKind kind) {
+        return kind == ImportKind.SENSORS ? Math.min(batchSize, SensorService.SENSOR_BULK_CHUNK_SIZE) : batchSize;
+    }
+
+    private boolean enqueue(ImportJob job, BlockingQueue<Batch> queue, Batch batch) {
+        try {
+            while (!queue.offer(batch, POLL_MS, TimeUnit.MILLISECONDS)) {
+                if (job.isFailed()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the queued batches in order and commits the offset after each of them.
+     */
+    private void write(ImportJob job, BlockingQueue<Batch> queue) {
+        Timer batchTimer = meterRegistry.timer("sensors.import.batch", "kind", job.kind.name());
+        long lastLog = System.currentTimeMillis();
+        try {
+            while (true) {
+                Batch batch = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (batch == END) {
+                    return;
+                }
+                if (batch == null) {
+                    if (job.isFailed()) {
+                        return;
+                    }
+                    continue;
+                }
+                if (!batch.items.isEmpty()) {
+                    batchTimer.record(() -> writeBatch(job, batch));
+                }
+                job.committed(batch.endOffset);
+
+                long now = System.currentTimeMillis();
+                if (now - lastLog >= progressIntervalMs) {
+                    lastLog = now;
+                    ImportProgress progress = job.snapshot();
+                    logger.info("Import {}: {}% of {} written, {} rows accepted, {} failed, {} rows/s",
+                            job.id, Math.round(job.completion() * 100), job.file, progress.getRowsAccepted(),
+                            progress.getRowsFailed(), Math.round(progress.getRowsPerSecond()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail(e);
+        } catch (RuntimeException e) {
+            logger.error("Import {} failed to write the batch after offset {}", job.id, job.committedOffset(), e);
+            job.fail(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeBatch(ImportJob job, Batch batch) {
+        long accepted = 0;
+        switch (job.kind) {
+            case SENSORS: {
+                BulkSensorResponse response = sensorService.createSensorsInBulk((List<BulkSensorItem>) (List<?>) batch.items);
+                accepted = response.getCreated();
+                for (SensorFailure failure : response.getFailures()) {
+                    if (SensorService.SENSOR_WRITE_FAILED.equals(failure.getReason())) {
+                        throw new IllegalStateException("Failed to store the sensors of the batch");
+                    }
+                }
+                for (SensorFailure failure : response.getFailures()) {
+                    job.failure(batch.offsets[failure.getIndex()], failure.getReason());
+                }
+                break;
+            }
+            case ASSIGNMENTS: {
+                BatchGatewayAssignmentResponse response = sensorService.assignSensorsToGateways(
+                        (List<SensorGatewayRequest>) (List<?>) batch.items, job.move);
+                for (int i = 0; i < response.getResults().size(); i++) {
+                    GatewayAssignmentOutcome outcome = response.getResults().get(i).getOutcome();
+                    if (outcome == GatewayAssignmentOutcome.ASSIGNED || outcome == GatewayAssignmentOutcome.MOVED
+                            || outcome == GatewayAssignmentOutcome.UNCHANGED) {
+                        accepted++;
+                    } else {
+                        job.failure(batch.offsets[i], outcome.name());
+                    }
+                }
+                break;
+            }
+            case READINGS: {
+                BatchReadingResponse response = sensorService.addOrUpdateReadings((List<ReadingRequest>) (List<?>) batch.items);
+                accepted = response.getAccepted();
+                for (ReadingFailure failure : response.getFailures()) {
+                    job.failure(batch.offsets[failure.getIndex()], failure.getReason());
+                }
+                // the offset is committed next, so the buffered last readings have to be in the database first
+                if (!lastReadingBuffer.flush()) {
+                    throw new IllegalStateException("Failed to flush the last readings of the batch");
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unsupported import kind " + job.kind);
+        }
+        long failed = batch.items.size() - accepted;
+        job.accepted(accepted);
+        meterRegistry.counter("sensors.import.rows", "kind", job.kind.name(), "result", "accepted").increment(accepted);
+        meterRegistry.counter("sensors.import.rows", "kind", job.kind.name(), "result", "failed").increment(failed);
+    }
+
+    /**
+     * Parsed rows of a contiguous range of the file, with the offset of each row and the end of the range.
+     */
+    private static final class Batch {
+
+        final List<Object> items;
+
+        final long[] offsets;
+
+        long endOffset;
+
+        Batch(int capacity) {
+            this.items = new ArrayList<>(capacity);
+            this.offsets = new long[capacity];
+        }
+
+        void add(Object item, long offset) {
+            offsets[items.size()] = offset;
+            items.add(item);
+        }
+
+        int size() {
+            return items.size();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import com.energybox.backendcodingchallenge.model.ImportFailure;
+import com.energybox.backendcodingchallenge.model.ImportKind;
+import com.energybox.backendcodingchallenge.model.ImportProgress;
+import com.energybox.backendcodingchallenge.model.ImportStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one running or finished import, shared by its reading and writing threads.
+ */
+final class ImportJob {
+
+    final String id;
+
+    final String file;
+
+    final ImportKind kind;
+
+    final boolean csv;
+
+    final boolean move;
+
+    final MappedLineReader reader;
+
+    private final long startOffset;
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile long endNanos;
+
+    private volatile ImportStatus status = ImportStatus.RUNNING;
+
+    private volatile String error;
+
+    private volatile long committedOffset;
+
+    private final AtomicLong rowsRead = new AtomicLong();
+
+    private final AtomicLong rowsAccepted = new AtomicLong();
+
+    private final AtomicLong rowsFailed = new AtomicLong();
+
+    private final List<ImportFailure> failures = new ArrayList<>();
+
+    ImportJob(String id, String file, ImportKind kind, boolean csv, boolean move, MappedLineReader reader) {
+        this.id = id;
+        this.file = file;
+        this.kind = kind;
+        this.csv = csv;
+        this.move = move;
+        this.reader = reader;
+        this.startOffset = reader.position();
+        this.committedOffset = startOffset;
+    }
+
+    boolean isFailed() {
+        return status == ImportStatus.FAILED;
+    }
+
+    void rowRead() {
+        rowsRead.incrementAndGet();
+    }
+
+    void accepted(long rows) {
+        rowsAccepted.addAndGet(rows);
+    }
+
+    void failure(long offset, String reason) {
+        rowsFailed.incrementAndGet();
+        synchronized (failures) {
+            if (failures.size() < FileImporter.MAX_REPORTED_FAILURES) {
+                failures.add(new ImportFailure(offset, reason));
+            }
+        }
+    }
+
+    void committed(long offset) {
+        committedOffset = offset;
+    }
+
+    long committedOffset() {
+        return committedOffset;
+    }
+
+    /**
+     * @return The share of the bytes from the start offset to the end of the file that has been written.
+     */
+    double completion() {
+        long total = reader.size() - startOffset;
+        return total == 0 ? 1.0 : (double) (committedOffset - startOffset) / total;
+    }
+
+    void fail(Throwable cause) {
+        if (status == ImportStatus.RUNNING) {
+            error = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            endNanos = System.nanoTime();
+            status = ImportStatus.FAILED;
+        }
+    }
+
+    void complete() {
+        if (status == ImportStatus.RUNNING) {
+            endNanos = System.nanoTime();
+            status = ImportStatus.COMPLETED;
+        }
+    }
+
+    ImportProgress snapshot() {
+        ImportProgress progress = new ImportProgress();
+        progress.setId(id);
+        progress.setFile(file);
+        progress.setKind(kind);
+        progress.setStatus(status);
+        progress.setSizeBytes(reader.size());
+        progress.setStartOffset(startOffset);
+        progress.setCommittedOffset(committedOffset);
+        progress.setRowsRead(rowsRead.get());
+        progress.setRowsAccepted(rowsAccepted.get());
+        progress.setRowsFailed(rowsFailed.get());
+        progress.setError(error);
+        synchronized (failures) {
+            progress.getFailures().addAll(failures);
+        }
+
+        long elapsedNanos = (status == ImportStatus.RUNNING ? System.nanoTime() : endNanos) - startNanos;
+        progress.setElapsedMs(elapsedNanos / 1_000_000);
+        if (elapsedNanos > 0) {
+            double seconds = elapsedNanos / 1e9;
+            progress.setRowsPerSecond((rowsAccepted.get() + rowsFailed.get()) / seconds);
+            progress.setMegabytesPerSecond((committedOffset - startOffset) / (1024.0 * 1024.0) / seconds);
+        }
+        return progress;
+    }
+}
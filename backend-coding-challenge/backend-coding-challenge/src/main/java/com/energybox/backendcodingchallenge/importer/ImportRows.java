@@ -0,0 +1,91 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import com.energybox.backendcodingchallenge.model.BulkSensorItem;
+import com.energybox.backendcodingchallenge.model.ImportKind;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.model.SensorGatewayRequest;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Maps the columns of a CSV import row to the request objects {@code SensorService} takes.
+ * Blank optional columns are left null; the service validates the values as it does for REST requests.
+ */
+final class ImportRows {
+
+    private ImportRows() {
+    }
+
+    static Object parse(ImportKind kind, CsvRow row, ByteStringCache strings) {
+        switch (kind) {
+            case SENSORS:
+                return sensor(row, strings);
+            case ASSIGNMENTS:
+                return assignment(row);
+            case READINGS:
+                return reading(row, strings);
+            default:
+                throw new IllegalArgumentException("Unsupported import kind " + kind);
+        }
+    }
+
+    /**
+     * key, name, locationCode, types separated by '|', gatewayId
+     */
+    static BulkSensorItem sensor(CsvRow row, ByteStringCache strings) {
+        expectColumns(row, 5);
+        BulkSensorItem item = new BulkSensorItem();
+        item.setKey(row.isBlank(0) ? null : row.string(0));
+        item.setName(row.isBlank(1) ? null : row.string(1));
+        item.setLocationCode(row.isBlank(2) ? null : row.string(2, strings));
+        Set<String> types = new HashSet<>();
+        row.split(3, '|', strings, types);
+        item.setType(types);
+        item.setGatewayId(row.isBlank(4) ? null : row.longValue(4));
+        return item;
+    }
+
+    /**
+     * sensorId, gatewayId
+     */
+    static SensorGatewayRequest assignment(CsvRow row) {
+        expectColumns(row, 2);
+        SensorGatewayRequest request = new SensorGatewayRequest();
+        request.setSensorId(row.isBlank(0) ? null : row.longValue(0));
+        request.setGatewayId(row.isBlank(1) ? null : row.longValue(1));
+        return request;
+    }
+
+    /**
+     * sensorId, sensorType, timestamp as epoch millis or ISO-8601 local date-time, reading
+     */
+    static ReadingRequest reading(CsvRow row, ByteStringCache strings) {
+        expectColumns(row, 4);
+        ReadingRequest request = new ReadingRequest();
+        request.setSensorId(row.isBlank(0) ? null : row.longValue(0));
+        request.setSensorType(row.isBlank(1) ? null : row.string(1, strings));
+        request.setTimestamp(row.isBlank(2) ? null : row.timestamp(2));
+        request.setReading(row.isBlank(3) ? null : row.doubleValue(3));
+        return request;
+    }
+
+    static Class<?> type(ImportKind kind) {
+        switch (kind) {
+            case SENSORS:
+                return BulkSensorItem.class;
+            case ASSIGNMENTS:
+                return SensorGatewayRequest.class;
+            case READINGS:
+                return ReadingRequest.class;
+            default:
+                throw new IllegalArgumentException("Unsupported import kind " + kind);
+        }
+    }
+
+    private static void expectColumns(CsvRow row, int columns) {
+        if (row.size() != columns) {
+            throw new IllegalArgumentException("Expected " + columns + " columns but found " + row.size());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import com.energybox.backendcodingchallenge.model.ImportKind;
+import com.energybox.backendcodingchallenge.model.ImportProgress;
+import com.energybox.backendcodingchallenge.model.ImportStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Paths;
+
+/**
+ * Runs a single import at startup when {@code sensors.import.file} is set, for example
+ * {@code --sensors.import.file=sensors.csv --sensors.import.kind=sensors}, and exits with 0 if it completed
+ * or 1 if it failed, unless {@code sensors.import.exit} is false.
+ */
+@Component
+@ConditionalOnProperty("sensors.import.file")
+public class ImportRunner implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportRunner.class);
+
+    private final FileImporter fileImporter;
+
+    private final ConfigurableApplicationContext context;
+
+    private final String file;
+
+    private final ImportKind kind;
+
+    private final long offset;
+
+    private final boolean move;
+
+    private final boolean exit;
+
+    public ImportRunner(FileImporter fileImporter,
+                        ConfigurableApplicationContext context,
+                        @Value("${sensors.import.file}") String file,
+                        @Value("${sensors.import.kind}") ImportKind kind,
+                        @Value("${sensors.import.offset:0}") long offset,
+                        @Value("${sensors.import.move:false}") boolean move,
+                        @Value("${sensors.import.exit:true}") boolean exit) {
+        this.fileImporter = fileImporter;
+        this.context = context;
+        this.file = file;
+        this.kind = kind;
+        this.offset = offset;
+        this.move = move;
+        this.exit = exit;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        ImportProgress progress = fileImporter.run(Paths.get(file), kind, offset, move);
+        if (progress.getStatus() != ImportStatus.COMPLETED) {
+            logger.error("Import of {} failed: {}; resume with --sensors.import.offset={}",
+                    file, progress.getError(), progress.getCommittedOffset());
+        }
+        if (exit) {
+            int code = progress.getStatus() == ImportStatus.COMPLETED ? 0 : 1;
+            System.exit(SpringApplication.exit(context, () -> code));
+        }
+    }
+}
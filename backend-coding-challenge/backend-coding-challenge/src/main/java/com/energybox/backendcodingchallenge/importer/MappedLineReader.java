@@ -0,0 +1,143 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the lines of a file through read-only memory mapped windows of at most {@code windowSize} bytes.
+ *
+ * Lines are not copied: after {@link #next()} the current line is the range {@link #lineStart()} to
+ * {@link #lineEnd()} of {@link #buffer()}, without its line terminator. A line crossing the end of a window
+ * is read from a new window starting at the line, so a single line must fit into one window.
+ * Not thread-safe.
+ */
+final class MappedLineReader implements Closeable {
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private final int windowSize;
+
+    private MappedByteBuffer window;
+
+    private long windowStart;
+
+    // file offset of the next line
+    private long position;
+
+    private long lineOffset;
+
+    private int lineStart;
+
+    private int lineEnd;
+
+    /**
+     * @param offset The offset to start reading at, 0 or the offset right after a line break.
+     * @throws IllegalArgumentException If the offset is outside the file or not the start of a line.
+     */
+    MappedLineReader(Path file, long offset, int windowSize) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        try {
+            if (offset < 0 || offset > size) {
+                throw new IllegalArgumentException("Offset " + offset + " is outside the file of " + size + " bytes");
+            }
+            if (offset > 0 && !isLineBreak(offset - 1)) {
+                throw new IllegalArgumentException("Offset " + offset + " is not the start of a line");
+            }
+        } catch (IllegalArgumentException e) {
+            channel.close();
+            throw e;
+        }
+        this.position = offset;
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return The offset of the line after the current one, everything before it has been read.
+     */
+    long position() {
+        return position;
+    }
+
+    /**
+     * Moves to the next line.
+     *
+     * @return False if the end of the file has been reached.
+     * @throws IOException If a line does not fit into a window.
+     */
+    boolean next() throws IOException {
+        if (position >= size) {
+            return false;
+        }
+        if (window == null || position >= windowStart + window.limit()) {
+            map(position);
+        }
+        while (true) {
+            int start = (int) (position - windowStart);
+            int limit = window.limit();
+            int index = start;
+            while (index < limit && window.get(index) != '\n') {
+                index++;
+            }
+            if (index < limit || windowStart + limit == size) {
+                lineOffset = position;
+                lineStart = start;
+                lineEnd = index > start && window.get(index - 1) == '\r' ? index - 1 : index;
+                position = windowStart + Math.min(index + 1, limit);
+                return true;
+            }
+            if (start == 0) {
+                throw new IOException("Line at offset " + position + " is longer than " + windowSize + " bytes");
+            }
+            map(position);
+        }
+    }
+
+    ByteBuffer buffer() {
+        return window;
+    }
+
+    int lineStart() {
+        return lineStart;
+    }
+
+    int lineEnd() {
+        return lineEnd;
+    }
+
+    /**
+     * @return The file offset of the current line.
+     */
+    long lineOffset() {
+        return lineOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping itself is released once the buffer is collected
+        window = null;
+        channel.close();
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+    }
+
+    private boolean isLineBreak(long offset) throws IOException {
+        ByteBuffer single = ByteBuffer.allocate(1);
+        channel.read(single, offset);
+        return single.get(0) == '\n';
+    }
+}
@@ -0,0 +1,306 @@
+package com.energybox.backendcodingchallenge.ingest;
+
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.ReadingFailure;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import com.energybox.backendcodingchallenge.wal.ReadingWal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes single readings on a fixed set of partition threads instead of the request threads.
+ *
+ * Every reading is hashed by its sensor id, or by the gateway of its sensor when {@code partition-by} is
+ * {@code gateway}, to one of {@code partitions} single-threaded workers with its own bounded queue of
+ * {@code queue-capacity} readings. All readings of a sensor go to the same worker, so no two threads write
+ * the same Sensor node. A worker drains up to {@code batch-size} queued readings at a time and writes them
+ * with {@link SensorService#addOrUpdateReadings(List, boolean)}, a single UNWIND statement per batch.
+ *
+ * A reading is stamped when it is queued. When a queue is full {@link #submit} waits up to
+ * {@code block-timeout-ms} for room and then gives up, so the caller can answer 429 Too Many Requests.
+ * Queued readings are written before the application shuts down; readings of unknown sensors are
+ * dropped and counted. With the reading WAL enabled a reading is logged before it is queued, so an
+ * accepted reading survives a crash before its batch is written. A batch that cannot be written is kept and
+ * retried, backing off up to {@value #MAX_RETRY_BACKOFF_MS} ms, until it is written; meanwhile its partition
+ * queue fills up and new readings are rejected. Only when the application shuts down is a failing batch given
+ * up after {@value #WRITE_ATTEMPTS} attempts, leaving its WAL tickets pending so the readings are replayed at
+ * the next startup.
+ */
+@Component
+public class IngestExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestExecutor.class);
+
+    private static final long POLL_MS = 100;
+
+    static final int WRITE_ATTEMPTS = 3;
+
+    private static final long RETRY_BACKOFF_MS = 100;
+
+    static final long MAX_RETRY_BACKOFF_MS = 5000;
+
+    private final SensorService sensorService;
+
+    private final TopologyRegistry topologyRegistry;
+
+    private final ReadingWal readingWal;
+
+    private final boolean enabled;
+
+    private final boolean partitionByGateway;
+
+    private final int batchSize;
+
+    private final long blockTimeoutMs;
+
+    private final Partition[] partitions;
+
+    private final Counter rejected;
+
+    private final Counter written;
+
+    private final Counter failed;
+
+    private volatile boolean running = true;
+
+    public IngestExecutor(SensorService sensorService,
+                          TopologyRegistry topologyRegistry,
+                          ReadingWal readingWal,
+                          MeterRegistry meterRegistry,
+                          WorkerThreads workerThreads,
+                          @Value("${sensors.ingest.enabled:false}") boolean enabled,
+                          @Value("${sensors.ingest.partitions:4}") int partitions,
+                          @Value("${sensors.ingest.queue-capacity:10000}") int queueCapacity,
+                          @Value("${sensors.ingest.batch-size:500}") int batchSize,
+                          @Value("${sensors.ingest.partition-by:sensor}") String partitionBy,
+                          @Value("${sensors.ingest.block-timeout-ms:0}") long blockTimeoutMs) {
+        if (enabled && partitions < 1) {
+            throw new IllegalArgumentException("sensors.ingest.partitions must be at least 1: " + partitions);
+        }
+        if (!"sensor".equals(partitionBy) && !"gateway".equals(partitionBy)) {
+            throw new IllegalArgumentException("sensors.ingest.partition-by must be sensor or gateway: " + partitionBy);
+        }
+        this.sensorService = sensorService;
+        this.topologyRegistry = topologyRegistry;
+        this.readingWal = readingWal;
+        this.enabled = enabled;
+        this.partitionByGateway = "gateway".equals(partitionBy);
+        this.batchSize = batchSize;
+        this.blockTimeoutMs = blockTimeoutMs;
+
+        this.rejected = meterRegistry.counter("sensors.ingest.rejected");
+        this.written = meterRegistry.counter("sensors.ingest.written");
+        this.failed = meterRegistry.counter("sensors.ingest.failed");
+
+        this.partitions = new Partition[enabled ? partitions : 0];
+        for (int i = 0; i < this.partitions.length; i++) {
+            Partition partition = new Partition(i, queueCapacity, meterRegistry, workerThreads);
+            this.partitions[i] = partition;
+            partition.thread.start();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a reading on the partition of its sensor, stamping it with the current time if it has no timestamp.
+     *
+     * @return False if the partition queue stayed full for {@code block-timeout-ms} or the executor is shutting down.
+     */
+    public boolean submit(ReadingRequest reading) {
+        if (!enabled) {
+            throw new IllegalStateException("Partitioned ingest is disabled");
+        }
+        if (reading.getTimestamp() == null) {
+            reading.setTimestamp(LocalDateTime.now());
+            reading.setStampedOnArrival(true);
+        }
+        Partition partition = partitions[partitionOf(reading.getSensorId())];
+        boolean queued = false;
+        if (running) {
+            int walTicket = readingWal.append(reading.getSensorId(), reading.getSensorType(), reading.getTimestamp(), reading.getReading());
+            Entry entry = new Entry(reading, walTicket, System.nanoTime());
+            try {
+                queued = blockTimeoutMs > 0
+                        ? partition.queue.offer(entry, blockTimeoutMs, TimeUnit.MILLISECONDS)
+                        : partition.queue.offer(entry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!queued) {
+                readingWal.handedOff(walTicket);
+            }
+        }
+        if (!queued) {
+            rejected.increment();
+        }
+        return queued;
+    }
+
+    /**
+     * Spreads the partition key with a multiplicative hash, so sequential ids do not all fall on neighbouring partitions.
+     */
+    int partitionOf(long sensorId) {
+        long key = sensorId;
+        if (partitionByGateway && topologyRegistry.isReady()) {
+            long gatewayId = topologyRegistry.gatewayOf(sensorId);
+            if (gatewayId >= 0) {
+                key = gatewayId;
+            }
+        }
+        int hash = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        return Math.floorMod(hash, partitions.length);
+    }
+
+    int queueDepth(int partition) {
+        return partitions[partition].queue.size();
+    }
+
+    /**
+     * Stops accepting readings and waits for the workers to write the readings already queued.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        int left = 0;
+        for (Partition partition : partitions) {
+            partition.thread.join(TimeUnit.SECONDS.toMillis(10));
+            left += partition.queue.size();
+        }
+        if (partitions.length > 0) {
+            logger.info("Drained ingest partitions, {} readings left unwritten", left);
+        }
+    }
+
+    private static final class Entry {
+
+        final ReadingRequest reading;
+
+        final int walTicket;
+
+        final long queuedNanos;
+
+        Entry(ReadingRequest reading, int walTicket, long queuedNanos) {
+            this.reading = reading;
+            this.walTicket = walTicket;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    private final class Partition implements Runnable {
+
+        final int index;
+
+        final ArrayBlockingQueue<Entry> queue;
+
+        final Thread thread;
+
+        // time from queuing a reading to its batch being written
+        final Timer latency;
+
+        Partition(int index, int capacity, MeterRegistry meterRegistry, WorkerThreads workerThreads) {
+            this.index = index;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+            this.thread = workerThreads.newThread("ingest-partition-" + index, this);
+            this.latency = Timer.builder("sensors.ingest.latency")
+                    .tag("partition", String.valueOf(index))
+                    .description("Time from queuing a reading to writing it")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry);
+            Gauge.builder("sensors.ingest.queue.depth", queue, ArrayBlockingQueue::size)
+                    .tag("partition", String.valueOf(index))
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void run() {
+            List<Entry> batch = new ArrayList<>(batchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Entry first = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    write(batch);
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void write(List<Entry> batch) throws InterruptedException {
+            List<ReadingRequest> readings = new ArrayList<>(batch.size());
+            for (Entry entry : batch) {
+                readings.add(entry.reading);
+            }
+            BatchReadingResponse response = null;
+            for (int attempt = 1; response == null; attempt++) {
+                try {
+                    response = sensorService.addOrUpdateReadings(readings, false);
+                } catch (RuntimeException e) {
+                    if (!running && attempt >= WRITE_ATTEMPTS) {
+                        // the tickets stay pending, so the WAL keeps these readings for the next startup
+                        failed.increment(readings.size());
+                        logger.error("Partition {} failed to write {} readings after {} attempts at shutdown, leaving them to the WAL",
+                                index, readings.size(), attempt, e);
+                        return;
+                    }
+                    if (attempt == WRITE_ATTEMPTS) {
+                        logger.error("Partition {} failed to write {} readings after {} attempts, retrying until it succeeds",
+                                index, readings.size(), attempt, e);
+                    } else if (attempt < WRITE_ATTEMPTS) {
+                        logger.warn("Partition {} failed to write {} readings, retrying: {}", index, readings.size(), e.toString());
+                    }
+                    backoff(attempt);
+                }
+            }
+            written.increment(response.getAccepted());
+            failed.increment(response.getFailures().size());
+            if (!response.getFailures().isEmpty() && logger.isDebugEnabled()) {
+                for (ReadingFailure failure : response.getFailures()) {
+                    logger.debug("Partition {} dropped the reading of sensor {}: {}",
+                            index, failure.getSensorId(), failure.getReason());
+                }
+            }
+            long now = System.nanoTime();
+            for (Entry entry : batch) {
+                latency.record(now - entry.queuedNanos, TimeUnit.NANOSECONDS);
+                readingWal.handedOff(entry.walTicket);
+            }
+        }
+
+        /**
+         * Waits before the next attempt, a shutdown cutting the wait short once the batch may be given up.
+         */
+        private void backoff(int attempt) throws InterruptedException {
+            long deadline = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(Math.min(RETRY_BACKOFF_MS * attempt, MAX_RETRY_BACKOFF_MS));
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0 && (running || attempt < WRITE_ATTEMPTS)) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(POLL_MS)));
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.energybox.backendcodingchallenge.ingest;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.repository.SensorRepository;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for last readings.
+ *
+ * Readings are coalesced per (sensor, type code) so only the newest value is written to Neo4j.
+ * Dirty entries are flushed every {@code flush-interval-ms}, as soon as {@code max-pending}
+ * entries are waiting, and once more when the application shuts down.
+ */
+@Component
+public class LastReadingBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LastReadingBuffer.class);
+
+    static final int FLUSH_CHUNK_SIZE = 1000;
+
+    private final SensorRepository sensorRepository;
+
+    private final SensorTypeDictionary sensorTypeDictionary;
+
+    private final boolean enabled;
+
+    private final int maxPending;
+
+    // sensor id -> type code -> newest reading not yet handed to a flush
+    private final ConcurrentHashMap<Long, ConcurrentHashMap<Integer, LastReading>> pending = new ConcurrentHashMap<>();
+
+    // readings handed to the running flush, kept readable until they are in the database
+    private final ConcurrentHashMap<Long, Map<Integer, LastReading>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    // one flush at a time; a lock rather than a monitor, so a virtual thread waiting on the upsert unmounts
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private final ScheduledExecutorService flusher;
+
+    private final Counter received;
+
+    private final Counter coalesced;
+
+    private final Counter flushed;
+
+    private final Timer flushTimer;
+
+    public LastReadingBuffer(SensorRepository sensorRepository,
+                             SensorTypeDictionary sensorTypeDictionary,
+                             MeterRegistry meterRegistry,
+                             WorkerThreads workerThreads,
+                             @Value("${sensors.readings.write-behind.enabled:false}") boolean enabled,
+                             @Value("${sensors.readings.write-behind.flush-interval-ms:1000}") long flushIntervalMs,
+                             @Value("${sensors.readings.write-behind.max-pending:10000}") int maxPending) {
+        this.sensorRepository = sensorRepository;
+        this.sensorTypeDictionary = sensorTypeDictionary;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+
+        this.received = meterRegistry.counter("sensors.readings.buffer.received");
+        this.coalesced = meterRegistry.counter("sensors.readings.buffer.coalesced");
+        this.flushed = meterRegistry.counter("sensors.readings.buffer.flushed");
+        this.flushTimer = Timer.builder("sensors.readings.buffer.flush")
+                .description("Time taken to write the buffered last readings to the database")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("sensors.readings.buffer.pending", pendingCount, AtomicInteger::get)
+                .register(meterRegistry);
+        Gauge.builder("sensors.readings.buffer.coalescing.ratio", this, LastReadingBuffer::coalescingRatio)
+                .description("Share of received readings that replaced a buffered reading before it was written")
+                .register(meterRegistry);
+
+        if (enabled) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(workerThreads.factory("last-reading-flusher"));
+            this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Buffers the newest reading of a sensor and type, replacing any value that has not been written yet.
+     */
+    public void put(Long sensorId, int typeCode, LocalDateTime timestamp, Double reading) {
+        LastReading lastReading = new LastReading(timestamp, reading);
+        lastReading.setTypeName(sensorTypeDictionary.name(typeCode));
+        pending.compute(sensorId, (id, readings) -> {
+            if (readings == null) {
+                readings = new ConcurrentHashMap<>();
+            }
+            LastReading previous = readings.get(typeCode);
+            if (previous == null) {
+                readings.put(typeCode, lastReading);
+                pendingCount.incrementAndGet();
+            } else {
+                // keep the newest reading, a late one must not replace it
+                if (!timestamp.isBefore(previous.getTimestamp())) {
+                    readings.put(typeCode, lastReading);
+                }
+                coalesced.increment();
+            }
+            return readings;
+        });
+        received.increment();
+
+        if (pendingCount.get() >= maxPending && flusher != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                // shutting down, the final drain picks the reading up
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Returns the buffered readings of a sensor that may not be in the database yet, keyed by type name.
+     */
+    public Map<String, LastReading> getBuffered(Long sensorId) {
+        Map<Integer, LastReading> inFlightReadings = inFlight.get(sensorId);
+        Map<Integer, LastReading> pendingReadings = pending.get(sensorId);
+        if (inFlightReadings == null && pendingReadings == null) {
+            return Map.of();
+        }
+        Map<String, LastReading> result = new HashMap<>();
+        if (inFlightReadings != null) {
+            inFlightReadings.values().forEach(reading -> result.put(reading.getTypeName(), reading));
+        }
+        if (pendingReadings != null) {
+            pendingReadings.values().forEach(reading -> result.put(reading.getTypeName(), reading));
+        }
+        return result;
+    }
+
+    /**
+     * Writes every buffered reading to the database. Readings that fail to be written are put back
+     * unless a newer value has arrived in the meantime.
+     *
+     * @return False if the readings could not be written.
+     */
+    public boolean flush() {
+        flushLock.lock();
+        try {
+            return flushLocked();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean flushLocked() {
+        flushRequested.set(false);
+        if (pending.isEmpty()) {
+            return true;
+        }
+        long start = System.nanoTime();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Long sensorId : pending.keySet()) {
+            ConcurrentHashMap<Integer, LastReading> readings = pending.remove(sensorId);
+            if (readings == null) {
+                continue;
+            }
+            pendingCount.addAndGet(-readings.size());
+            inFlight.put(sensorId, readings);
+            for (LastReading reading : readings.values()) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("sensorId", sensorId);
+                row.put("sensorType", reading.getTypeName());
+                row.put("timestamp", reading.getTimestamp());
+                row.put("reading", reading.getReading());
+                rows.add(row);
+            }
+        }
+
+        try {
+            for (int from = 0; from < rows.size(); from += FLUSH_CHUNK_SIZE) {
+                sensorRepository.upsertLastReadings(rows.subList(from, Math.min(rows.size(), from + FLUSH_CHUNK_SIZE)));
+            }
+            flushed.increment(rows.size());
+            return true;
+        } catch (RuntimeException e) {
+            logger.error("Failed to flush {} buffered readings, keeping them for the next flush", rows.size(), e);
+            inFlight.forEach(this::requeue);
+            return false;
+        } finally {
+            inFlight.clear();
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void requeue(Long sensorId, Map<Integer, LastReading> readings) {
+        pending.compute(sensorId, (id, current) -> {
+            if (current == null) {
+                current = new ConcurrentHashMap<>();
+            }
+            for (Map.Entry<Integer, LastReading> entry : readings.entrySet()) {
+                if (current.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                    pendingCount.incrementAndGet();
+                }
+            }
+            return current;
+        });
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Unexpected error while flushing buffered readings", e);
+        }
+    }
+
+    double coalescingRatio() {
+        double total = received.count();
+        return total == 0 ? 0 : coalesced.count() / total;
+    }
+
+    /**
+     * Stops the periodic flush and drains everything that is still buffered.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+        logger.info("Drained last reading buffer, {} readings left unwritten", pendingCount.get());
+    }
+}
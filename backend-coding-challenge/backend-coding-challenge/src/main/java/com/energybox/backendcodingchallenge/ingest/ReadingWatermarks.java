@@ -0,0 +1,340 @@
+package com.energybox.backendcodingchallenge.ingest;
+
+import com.energybox.backendcodingchallenge.util.LongIntHashMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Watermark of the newest reading per (sensor, type), used to keep late readings from replacing the last
+ * reading and to drop retried readings before they reach the database.
+ *
+ * A reading is a duplicate if one of the last {@code window} readings accepted for its series had the same
+ * sequence number, or, for readings without one, the same device timestamp. Readings stamped by the server
+ * without a sequence number are never duplicates. A reading is late if it is older than the newest accepted
+ * reading of its series; readings with the same timestamp are ordered by sequence number.
+ *
+ * Writers {@link #reserve} a reading before writing it, which checks it and remembers it for the duplicate
+ * check under the same lock, so of two concurrent retries only one gets through. Once written the reading is
+ * {@link #record}ed, which moves the watermark; a reading that could not be written is {@link #release}d so
+ * its retry is not taken for a duplicate.
+ *
+ * Device timestamps more than {@code max-clock-skew-ms} ahead of the server clock are {@link #isAhead ahead}
+ * and must be rejected before they are checked, since one of them would move the watermark past every real
+ * reading of its series.
+ *
+ * Series are spread over {@value #STRIPES} stripes, each a {@link LongIntHashMap} from the series key to a
+ * slot in parallel primitive arrays, so checking and recording a reading allocate nothing once the arrays
+ * have grown to the number of series. Series of sensor ids of {@value #SENSOR_ID_BITS} bits or more are not
+ * tracked. The watermarks only live in memory; the last reading statements keep the newest timestamp on
+ * their own after a restart.
+ */
+@Component
+public class ReadingWatermarks {
+
+    public static final long NO_SEQUENCE = Long.MIN_VALUE;
+
+    public enum Outcome {
+        NEWER, LATE, DUPLICATE
+    }
+
+    private static final int STRIPES = 64;
+
+    private static final int TYPE_CODE_BITS = 16;
+
+    static final int SENSOR_ID_BITS = 64 - TYPE_CODE_BITS - 1;
+
+    private final boolean enabled;
+
+    private final int window;
+
+    private final long maxClockSkewMs;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    private final Counter late;
+
+    private final Counter duplicates;
+
+    private final Counter ahead;
+
+    public ReadingWatermarks(MeterRegistry meterRegistry,
+                             @Value("${sensors.readings.dedup.enabled:true}") boolean enabled,
+                             @Value("${sensors.readings.dedup.window:8}") int window,
+                             @Value("${sensors.readings.max-clock-skew-ms:300000}") long maxClockSkewMs) {
+        if (window < 1) {
+            throw new IllegalArgumentException("sensors.readings.dedup.window must be at least 1: " + window);
+        }
+        if (maxClockSkewMs < 0) {
+            throw new IllegalArgumentException("sensors.readings.max-clock-skew-ms must not be negative: " + maxClockSkewMs);
+        }
+        this.enabled = enabled;
+        this.window = window;
+        this.maxClockSkewMs = maxClockSkewMs;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        this.late = meterRegistry.counter("sensors.readings.late");
+        this.duplicates = meterRegistry.counter("sensors.readings.duplicates");
+        this.ahead = meterRegistry.counter("sensors.readings.ahead");
+        Gauge.builder("sensors.readings.watermarks", this, ReadingWatermarks::size)
+                .description("Series with a reading watermark")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Tells whether a device timestamp is further ahead of the server clock than {@code max-clock-skew-ms}.
+     */
+    public boolean isAhead(long epochMillis) {
+        if (epochMillis - maxClockSkewMs <= System.currentTimeMillis()) {
+            return false;
+        }
+        ahead.increment();
+        return true;
+    }
+
+    /**
+     * Tells whether a reading replaces the last reading of its series, is older than it or was already accepted.
+     * Nothing is recorded; call {@link #record} once the reading has been accepted.
+     *
+     * @param sequence The sequence number of the reading, or {@link #NO_SEQUENCE}.
+     * @param deviceTimestamp Whether the timestamp was set by the device rather than stamped on arrival.
+     */
+    public Outcome check(long sensorId, int typeCode, long epochMillis, long sequence, boolean deviceTimestamp) {
+        long key = key(sensorId, typeCode);
+        if (!enabled || key < 0) {
+            return Outcome.NEWER;
+        }
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            int slot = stripe.slots.get(key);
+            if (slot == LongIntHashMap.MISSING) {
+                return Outcome.NEWER;
+            }
+            if ((sequence != NO_SEQUENCE || deviceTimestamp) && stripe.seen(slot, epochMillis, sequence, window)) {
+                duplicates.increment();
+                return Outcome.DUPLICATE;
+            }
+            if (stripe.isNewer(slot, epochMillis, sequence)) {
+                return Outcome.NEWER;
+            }
+        }
+        late.increment();
+        return Outcome.LATE;
+    }
+
+    /**
+     * Checks a reading like {@link #check} and, unless it is a duplicate, remembers it for the duplicate check in
+     * the same step. Follow up with {@link #record} once the reading is accepted, or {@link #release} if it is not.
+     */
+    public Outcome reserve(long sensorId, int typeCode, long epochMillis, long sequence, boolean deviceTimestamp) {
+        long key = key(sensorId, typeCode);
+        if (!enabled || key < 0) {
+            return Outcome.NEWER;
+        }
+        boolean remembered = sequence != NO_SEQUENCE || deviceTimestamp;
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            int slot = stripe.slots.get(key);
+            if (slot == LongIntHashMap.MISSING) {
+                if (remembered) {
+                    slot = stripe.add(key, window);
+                    stripe.newestTimestamps[slot] = Long.MIN_VALUE;
+                    stripe.newestSequences[slot] = NO_SEQUENCE;
+                    stripe.remember(slot, epochMillis, sequence, window);
+                }
+                return Outcome.NEWER;
+            }
+            if (remembered) {
+                if (stripe.seen(slot, epochMillis, sequence, window)) {
+                    duplicates.increment();
+                    return Outcome.DUPLICATE;
+                }
+                stripe.remember(slot, epochMillis, sequence, window);
+            }
+            if (stripe.isNewer(slot, epochMillis, sequence)) {
+                return Outcome.NEWER;
+            }
+        }
+        late.increment();
+        return Outcome.LATE;
+    }
+
+    /**
+     * Forgets a reading reserved with {@link #reserve} that was not accepted, so it is not a duplicate when retried.
+     */
+    public void release(long sensorId, int typeCode, long epochMillis, long sequence, boolean deviceTimestamp) {
+        long key = key(sensorId, typeCode);
+        if (!enabled || key < 0 || (sequence == NO_SEQUENCE && !deviceTimestamp)) {
+            return;
+        }
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            int slot = stripe.slots.get(key);
+            if (slot != LongIntHashMap.MISSING) {
+                stripe.forget(slot, epochMillis, sequence, window);
+            }
+        }
+    }
+
+    /**
+     * Records an accepted reading, moving the watermark of its series if the reading is newer.
+     * A reading already remembered by {@link #reserve} is not remembered twice.
+     */
+    public void record(long sensorId, int typeCode, long epochMillis, long sequence, boolean deviceTimestamp) {
+        long key = key(sensorId, typeCode);
+        if (!enabled || key < 0) {
+            return;
+        }
+        Stripe stripe = stripeOf(key);
+        synchronized (stripe) {
+            int slot = stripe.slots.get(key);
+            if (slot == LongIntHashMap.MISSING) {
+                slot = stripe.add(key, window);
+                stripe.newestTimestamps[slot] = epochMillis;
+                stripe.newestSequences[slot] = sequence;
+            } else if (stripe.isNewer(slot, epochMillis, sequence)) {
+                stripe.newestTimestamps[slot] = epochMillis;
+                stripe.newestSequences[slot] = sequence;
+            }
+            if ((sequence != NO_SEQUENCE || deviceTimestamp) && !stripe.seen(slot, epochMillis, sequence, window)) {
+                stripe.remember(slot, epochMillis, sequence, window);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.slots.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Packs a series into one key, or returns -1 if the sensor id or type code does not fit.
+     */
+    private static long key(long sensorId, int typeCode) {
+        if (sensorId < 0 || sensorId >>> SENSOR_ID_BITS != 0 || typeCode < 0 || typeCode >>> TYPE_CODE_BITS != 0) {
+            return -1;
+        }
+        return sensorId << TYPE_CODE_BITS | typeCode;
+    }
+
+    private Stripe stripeOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (hash >>> 58)];
+    }
+
+    /**
+     * Series of one stripe. Slot {@code s} owns {@code recent*[s * window, (s + 1) * window)}, a ring of
+     * the last readings recorded for the series.
+     */
+    private static final class Stripe {
+
+        private static final int INITIAL_SLOTS = 64;
+
+        final LongIntHashMap slots = new LongIntHashMap(INITIAL_SLOTS);
+
+        long[] newestTimestamps = new long[INITIAL_SLOTS];
+
+        long[] newestSequences = new long[INITIAL_SLOTS];
+
+        long[] recentTimestamps;
+
+        long[] recentSequences;
+
+        // readings in the ring of a slot so far, up to window, and the ring position to write next
+        int[] recentCounts = new int[INITIAL_SLOTS];
+
+        int[] recentNext = new int[INITIAL_SLOTS];
+
+        int add(long key, int window) {
+            int slot = slots.size();
+            if (slot == newestTimestamps.length) {
+                int capacity = slot * 2;
+                newestTimestamps = Arrays.copyOf(newestTimestamps, capacity);
+                newestSequences = Arrays.copyOf(newestSequences, capacity);
+                recentCounts = Arrays.copyOf(recentCounts, capacity);
+                recentNext = Arrays.copyOf(recentNext, capacity);
+            }
+            if (recentTimestamps == null) {
+                recentTimestamps = new long[newestTimestamps.length * window];
+                recentSequences = new long[newestTimestamps.length * window];
+            } else if (recentTimestamps.length < newestTimestamps.length * window) {
+                recentTimestamps = Arrays.copyOf(recentTimestamps, newestTimestamps.length * window);
+                recentSequences = Arrays.copyOf(recentSequences, newestTimestamps.length * window);
+            }
+            slots.put(key, slot);
+            return slot;
+        }
+
+        boolean isNewer(int slot, long epochMillis, long sequence) {
+            long newest = newestTimestamps[slot];
+            return epochMillis > newest
+                    || (epochMillis == newest && (sequence == NO_SEQUENCE || sequence >= newestSequences[slot]));
+        }
+
+        boolean seen(int slot, long epochMillis, long sequence, int window) {
+            return indexOf(slot, epochMillis, sequence, window) >= 0;
+        }
+
+        int indexOf(int slot, long epochMillis, long sequence, int window) {
+            int base = slot * window;
+            for (int i = base, end = base + recentCounts[slot]; i < end; i++) {
+                if (sequence != NO_SEQUENCE
+                        ? recentSequences[i] == sequence
+                        : recentSequences[i] == NO_SEQUENCE && recentTimestamps[i] == epochMillis) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Removes a reading from the ring of a slot, moving the others to its start oldest first.
+         */
+        void forget(int slot, long epochMillis, long sequence, int window) {
+            int removed = indexOf(slot, epochMillis, sequence, window);
+            if (removed < 0) {
+                return;
+            }
+            int base = slot * window;
+            int count = recentCounts[slot];
+            // the oldest reading is at the start of the ring until it is full, then at the position written next
+            int oldest = count < window ? 0 : recentNext[slot];
+            long[] timestamps = new long[count - 1];
+            long[] sequences = new long[count - 1];
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int index = base + (oldest + i) % window;
+                if (index != removed) {
+                    timestamps[kept] = recentTimestamps[index];
+                    sequences[kept] = recentSequences[index];
+                    kept++;
+                }
+            }
+            System.arraycopy(timestamps, 0, recentTimestamps, base, kept);
+            System.arraycopy(sequences, 0, recentSequences, base, kept);
+            recentCounts[slot] = kept;
+            recentNext[slot] = kept;
+        }
+
+        void remember(int slot, long epochMillis, long sequence, int window) {
+            int index = slot * window + recentNext[slot];
+            recentTimestamps[index] = epochMillis;
+            recentSequences[index] = sequence;
+            recentNext[slot] = (recentNext[slot] + 1) % window;
+            if (recentCounts[slot] < window) {
+                recentCounts[slot]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.energybox.backendcodingchallenge.metrics;
+
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.RandomAccess;
+
+/**
+ * Counts the entities the repositories map on the current thread, so {@link HydrationInterceptor} can record
+ * them per request. A sensor counts together with its types, last readings and gateway, since they are mapped
+ * with it; rows that are not entities, such as sensor summaries, are not counted.
+ */
+final class EntityHydration {
+
+    // a holder per thread rather than a boxed count, so adding does not allocate
+    private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+    private EntityHydration() {
+    }
+
+    static void reset() {
+        COUNT.get()[0] = 0;
+    }
+
+    static long count() {
+        return COUNT.get()[0];
+    }
+
+    static void add(Object result) {
+        long entities = entities(result);
+        if (entities > 0) {
+            COUNT.get()[0] += entities;
+        }
+    }
+
+    static long entities(Object result) {
+        if (result instanceof Sensor) {
+            Sensor sensor = (Sensor) result;
+            return 1 + sensor.getTypes().size() + sensor.getLastReadings().size() + (sensor.getGateway() != null ? 1 : 0);
+        }
+        if (result instanceof Gateway || result instanceof SensorType || result instanceof LastReading) {
+            return 1;
+        }
+        if (result instanceof Optional) {
+            Optional<?> optional = (Optional<?>) result;
+            return optional.isPresent() ? entities(optional.get()) : 0;
+        }
+        if (result instanceof Slice) {
+            return entities(((Slice<?>) result).getContent());
+        }
+        if (result instanceof List && result instanceof RandomAccess) {
+            List<?> list = (List<?>) result;
+            long entities = 0;
+            for (int i = 0; i < list.size(); i++) {
+                entities += entities(list.get(i));
+            }
+            return entities;
+        }
+        if (result instanceof Iterable) {
+            long entities = 0;
+            for (Object element : (Iterable<?>) result) {
+                entities += entities(element);
+            }
+            return entities;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,50 @@
+package com.energybox.backendcodingchallenge.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the number of entities mapped by the repositories during a request as the {@value #SUMMARY} summary,
+ * tagged with the {@code uri} pattern of the handler like {@code http.server.requests}.
+ *
+ * Only what the repositories return on the request thread is counted; a request answered from the topology
+ * registry or the last reading cache records 0.
+ */
+public class HydrationInterceptor implements HandlerInterceptor {
+
+    public static final String SUMMARY = "sensors.hydration.entities";
+
+    private final MeterRegistry meterRegistry;
+
+    private final ConcurrentHashMap<String, DistributionSummary> summaries = new ConcurrentHashMap<>();
+
+    public HydrationInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        EntityHydration.reset();
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+        DistributionSummary summary = summaries.get(uri);
+        if (summary == null) {
+            summary = summaries.computeIfAbsent(uri, u -> DistributionSummary.builder(SUMMARY)
+                    .baseUnit("entities")
+                    .tag("uri", u)
+                    .register(meterRegistry));
+        }
+        summary.record(EntityHydration.count());
+    }
+}
@@ -0,0 +1,67 @@
+package com.energybox.backendcodingchallenge.metrics;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Counts the accepted readings per sensor type as {@value #COUNTER}, tagged with the {@code type} name.
+ *
+ * The counters are kept in an array indexed by the dictionary code of the type, so counting a reading of a
+ * known type is an array read and an increment.
+ */
+@Component
+public class IngestedReadings {
+
+    public static final String COUNTER = "sensors.readings.ingested";
+
+    private final SensorTypeDictionary sensorTypeDictionary;
+
+    private final MeterRegistry meterRegistry;
+
+    // code -> counter, replaced by a larger copy when full and published through the volatile write
+    private volatile Counter[] counters = new Counter[16];
+
+    // serialises the registration of a type's counter, once per type and process
+    private final ReentrantLock registerLock = new ReentrantLock();
+
+    public IngestedReadings(SensorTypeDictionary sensorTypeDictionary, MeterRegistry meterRegistry) {
+        this.sensorTypeDictionary = sensorTypeDictionary;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Counts a reading of the type with the given dictionary code.
+     */
+    public void increment(int typeCode) {
+        Counter[] current = counters;
+        Counter counter = typeCode < current.length ? current[typeCode] : null;
+        if (counter == null) {
+            counter = register(typeCode);
+        }
+        counter.increment();
+    }
+
+    private Counter register(int typeCode) {
+        registerLock.lock();
+        try {
+            Counter[] current = counters;
+            if (typeCode < current.length && current[typeCode] != null) {
+                return current[typeCode];
+            }
+            Counter[] next = typeCode < current.length ? current.clone()
+                    : Arrays.copyOf(current, Math.max(current.length * 2, typeCode + 1));
+            next[typeCode] = Counter.builder(COUNTER)
+                    .tag("type", sensorTypeDictionary.name(typeCode))
+                    .register(meterRegistry);
+            counters = next;
+            return next[typeCode];
+        } finally {
+            registerLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.energybox.backendcodingchallenge.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.reactivestreams.Publisher;
+import org.springframework.aop.ClassFilter;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Times the public methods of the services and of the Neo4j repositories, the Spring Data interfaces as well as
+ * the {@link org.springframework.stereotype.Repository} classes running Cypher on the driver.
+ *
+ * Service calls are recorded as {@value #SERVICE_TIMER} and repository calls as {@value #REPOSITORY_TIMER}, both
+ * tagged with the {@code class}, the {@code method} and the simple name of the {@code exception} thrown, or
+ * {@code none}. Entities returned by the repositories are counted by {@link EntityHydration}.
+ *
+ * The timers are registered on the first call of a method and kept per class and method, so later calls record
+ * into them without allocating. Methods returning a {@link Publisher} or a {@link Stream} are not timed, since
+ * their work runs after they return.
+ */
+public class MethodMetrics implements MethodInterceptor {
+
+    public static final String SERVICE_TIMER = "sensors.service.invocations";
+
+    public static final String REPOSITORY_TIMER = "sensors.repository.invocations";
+
+    private static final String BASE_PACKAGE = "com.energybox.backendcodingchallenge";
+
+    // resolved on the first call, the interceptor is built before the registry is configured
+    private final Supplier<MeterRegistry> meterRegistry;
+
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Method, MethodTimer>> timers = new ConcurrentHashMap<>();
+
+    public MethodMetrics(Supplier<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return The pointcut of the services and repositories of the application.
+     */
+    public static StaticMethodMatcherPointcut pointcut() {
+        StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+            @Override
+            public boolean matches(Method method, Class<?> targetClass) {
+                return Modifier.isPublic(method.getModifiers())
+                        && method.getDeclaringClass() != Object.class
+                        && !Publisher.class.isAssignableFrom(method.getReturnType())
+                        && !Stream.class.isAssignableFrom(method.getReturnType());
+            }
+        };
+        pointcut.setClassFilter(MethodMetrics::isInstrumented);
+        return pointcut;
+    }
+
+    public static boolean isInstrumented(Class<?> type) {
+        return repositoryInterface(type) != null || (inApplication(type)
+                && (AnnotatedElementUtils.hasAnnotation(type, Service.class)
+                || AnnotatedElementUtils.hasAnnotation(type, org.springframework.stereotype.Repository.class)));
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MethodTimer timer = timer(invocation);
+        long start = System.nanoTime();
+        Object result;
+        try {
+            result = invocation.proceed();
+        } catch (Throwable e) {
+            timer.failed(System.nanoTime() - start, e);
+            throw e;
+        }
+        timer.succeeded.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (timer.repository) {
+            EntityHydration.add(result);
+        }
+        return result;
+    }
+
+    private MethodTimer timer(MethodInvocation invocation) {
+        // a Spring Data method such as findById is declared once for all the repositories, so the class is part of the key
+        Class<?> type = invocation.getThis() != null ? invocation.getThis().getClass() : invocation.getMethod().getDeclaringClass();
+        ConcurrentHashMap<Method, MethodTimer> byMethod = timers.get(type);
+        if (byMethod == null) {
+            byMethod = timers.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+        }
+        Method method = invocation.getMethod();
+        MethodTimer timer = byMethod.get(method);
+        return timer != null ? timer : byMethod.computeIfAbsent(method, m -> register(type, m));
+    }
+
+    private MethodTimer register(Class<?> type, Method method) {
+        Class<?> repository = repositoryInterface(type);
+        boolean isRepository = repository != null
+                || AnnotatedElementUtils.hasAnnotation(ClassUtils.getUserClass(type), org.springframework.stereotype.Repository.class);
+        String className = (repository != null ? repository : ClassUtils.getUserClass(type)).getSimpleName();
+        return new MethodTimer(meterRegistry.get(), isRepository ? REPOSITORY_TIMER : SERVICE_TIMER, className,
+                method.getName(), isRepository);
+    }
+
+    // the Spring Data interface of the application implemented by a repository proxy, or null
+    private static Class<?> repositoryInterface(Class<?> type) {
+        if (!Proxy.isProxyClass(type)) {
+            return null;
+        }
+        for (Class<?> candidate : ClassUtils.getAllInterfacesForClassAsSet(type)) {
+            if (inApplication(candidate) && Repository.class.isAssignableFrom(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static boolean inApplication(Class<?> type) {
+        return ClassUtils.getUserClass(type).getName().startsWith(BASE_PACKAGE + ".");
+    }
+
+    private static final class MethodTimer {
+
+        final MeterRegistry meterRegistry;
+
+        final String name;
+
+        final String className;
+
+        final String method;
+
+        final boolean repository;
+
+        final Timer succeeded;
+
+        // timers of the failed calls per exception, registered on the first failure
+        final ConcurrentHashMap<Class<?>, Timer> failed = new ConcurrentHashMap<>();
+
+        MethodTimer(MeterRegistry meterRegistry, String name, String className, String method, boolean repository) {
+            this.meterRegistry = meterRegistry;
+            this.name = name;
+            this.className = className;
+            this.method = method;
+            this.repository = repository;
+            this.succeeded = timer("none");
+        }
+
+        void failed(long nanos, Throwable e) {
+            failed.computeIfAbsent(e.getClass(), type -> timer(type.getSimpleName()))
+                    .record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        private Timer timer(String exception) {
+            return Timer.builder(name)
+                    .tag("class", className)
+                    .tag("method", method)
+                    .tag("exception", exception)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.energybox.backendcodingchallenge.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Method timers of the services and repositories and the entities hydrated per request, unless
+ * {@code sensors.metrics.enabled} is false. The endpoints are timed by Spring Boot as {@code http.server.requests}.
+ *
+ * The advisor is an infrastructure bean, so it is applied by the auto-proxy creator Spring Boot registers
+ * without AspectJ. Entities per request are recorded by Spring MVC only; the WebFlux handlers of the reactive
+ * profile run on other threads than the repositories they call.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "sensors.metrics.enabled", havingValue = "true", matchIfMissing = true)
+public class MetricsConfiguration {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor methodMetricsAdvisor(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new DefaultPointcutAdvisor(MethodMetrics.pointcut(), new MethodMetrics(meterRegistry::getObject));
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public WebMvcConfigurer hydrationInterceptorConfigurer(MeterRegistry meterRegistry) {
+        HydrationInterceptor hydrationInterceptor = new HydrationInterceptor(meterRegistry);
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(hydrationInterceptor);
+            }
+        };
+    }
+}
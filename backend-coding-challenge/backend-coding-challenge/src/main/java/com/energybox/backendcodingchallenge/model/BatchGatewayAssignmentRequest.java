@@ -0,0 +1,12 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchGatewayAssignmentRequest {
+    private List<SensorGatewayRequest> assignments;
+    // sensors already connected to another gateway are only moved when set
+    private boolean move;
+}
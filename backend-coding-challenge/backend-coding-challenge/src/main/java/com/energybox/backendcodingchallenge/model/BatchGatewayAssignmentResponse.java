@@ -0,0 +1,15 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BatchGatewayAssignmentResponse {
+    private HttpStatus status;
+    private int received;
+    private int changed;
+    private List<GatewayAssignmentResult> results = new ArrayList<>();
+}
@@ -0,0 +1,17 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class BatchReadingResponse {
+    private HttpStatus status;
+    private int received;
+    private int accepted;
+    // accepted readings dropped because they had been accepted before
+    private int duplicates;
+    private List<ReadingFailure> failures = new ArrayList<>();
+}
@@ -0,0 +1,17 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * A sensor to provision. The key is chosen by the client and maps the sensor to its new ID in the response.
+ */
+@Data
+public class BulkSensorItem {
+    private String key;
+    private String name;
+    private String locationCode;
+    private Set<String> type;
+    private Long gatewayId;
+}
@@ -0,0 +1,10 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkSensorRequest {
+    private List<BulkSensorItem> sensors;
+}
@@ -0,0 +1,18 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class BulkSensorResponse {
+    private HttpStatus status;
+    private int received;
+    private int created;
+    private Map<String, Long> sensorIds = new LinkedHashMap<>();
+    private List<SensorFailure> failures = new ArrayList<>();
+}
@@ -0,0 +1,21 @@
+package com.energybox.backendcodingchallenge.model;
+
+/**
+ * What happened to a single sensor of a gateway assignment batch.
+ */
+public enum GatewayAssignmentOutcome {
+    /** The sensor was not connected and is now connected to the gateway. */
+    ASSIGNED,
+    /** The sensor was moved from its previous gateway. */
+    MOVED,
+    /** The sensor was already connected to the gateway. */
+    UNCHANGED,
+    /** The sensor is connected to another gateway and moving was not requested. */
+    ALREADY_CONNECTED,
+    SENSOR_NOT_FOUND,
+    GATEWAY_NOT_FOUND,
+    /** The sensor or gateway ID is missing. */
+    INVALID,
+    /** The sensor appears earlier in the same batch. */
+    DUPLICATE
+}
@@ -0,0 +1,18 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The outcome of one assignment of a batch, with the gateway the sensor was connected to before.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GatewayAssignmentResult {
+    private Long sensorId;
+    private Long gatewayId;
+    private Long previousGatewayId;
+    private GatewayAssignmentOutcome outcome;
+}
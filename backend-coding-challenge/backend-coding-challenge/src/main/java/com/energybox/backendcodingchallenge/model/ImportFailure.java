@@ -0,0 +1,17 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Describes a single row of an import file that could not be parsed or written.
+ * The offset is the byte offset of the row in the file.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportFailure {
+    private long offset;
+    private String reason;
+}
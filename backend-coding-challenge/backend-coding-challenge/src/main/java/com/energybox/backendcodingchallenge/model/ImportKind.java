@@ -0,0 +1,13 @@
+package com.energybox.backendcodingchallenge.model;
+
+/**
+ * What the rows of an import file describe, and so which {@code SensorService} path they are written through.
+ */
+public enum ImportKind {
+    /** key, name, locationCode, types separated by '|', gatewayId */
+    SENSORS,
+    /** sensorId, gatewayId */
+    ASSIGNMENTS,
+    /** sensorId, sensorType, timestamp, reading */
+    READINGS
+}
@@ -0,0 +1,30 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress and throughput of a file import.
+ */
+@Data
+public class ImportProgress {
+    private String id;
+    private String file;
+    private ImportKind kind;
+    private ImportStatus status;
+    private long sizeBytes;
+    private long startOffset;
+    // every row before this offset has been written, an interrupted import resumes here
+    private long committedOffset;
+    private long rowsRead;
+    private long rowsAccepted;
+    private long rowsFailed;
+    private long elapsedMs;
+    private double rowsPerSecond;
+    private double megabytesPerSecond;
+    private String error;
+    // up to FileImporter.MAX_REPORTED_FAILURES rows that could not be imported
+    private List<ImportFailure> failures = new ArrayList<>();
+}
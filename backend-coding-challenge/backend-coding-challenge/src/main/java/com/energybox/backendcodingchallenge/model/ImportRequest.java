@@ -0,0 +1,14 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+
+@Data
+public class ImportRequest {
+    // path of the file, relative to the import directory
+    private String file;
+    private ImportKind kind;
+    // byte offset to resume from, the committed offset of an earlier run
+    private long offset;
+    // assignments only: sensors already connected to another gateway are moved when set
+    private boolean move;
+}
@@ -0,0 +1,8 @@
+package com.energybox.backendcodingchallenge.model;
+
+public enum ImportStatus {
+    RUNNING,
+    COMPLETED,
+    /** The import stopped early; it can be resumed from its committed offset. */
+    FAILED
+}
@@ -0,0 +1,27 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The profiled plan of one call of a repository query.
+ */
+@Data
+public class QueryProfile {
+    private String repository;
+    private String method;
+    private String query;
+    // time and rows of the call itself, the database hits are those of the profiled run
+    private double elapsedMs;
+    private long rows;
+    private long dbHits;
+    // the label and all-nodes scans of the plan with the rows they produced
+    private List<String> labelScans = new ArrayList<>();
+    // the most nodes produced by one of the scans
+    private long maxScannedNodes;
+    private String plan;
+    private LocalDateTime profiledAt;
+}
@@ -0,0 +1,19 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Describes a single reading of a batch that could not be stored.
+ * The index refers to the position of the reading in the submitted batch.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReadingFailure {
+    private int index;
+    private Long sensorId;
+    private String sensorType;
+    private String reason;
+}
@@ -1,10 +1,20 @@
 package com.energybox.backendcodingchallenge.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
+import java.time.LocalDateTime;
+
 @Data
 public class ReadingRequest {
     private Long sensorId;
     private Double reading;
     private String sensorType;
+    // when the reading was taken, the time it is received if not given
+    private LocalDateTime timestamp;
+    // optional sequence number given by the device, used to drop retried readings
+    private Long sequence;
+    // whether the timestamp was set by the server when the reading arrived rather than by the device
+    @JsonIgnore
+    private boolean stampedOnArrival;
 }
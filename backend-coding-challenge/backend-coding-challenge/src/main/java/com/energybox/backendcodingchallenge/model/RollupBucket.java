@@ -0,0 +1,22 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Aggregate of the readings of one sensor and type within a time bucket.
+ * The start of the bucket is given in epoch milliseconds.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupBucket {
+    private long start;
+    private double min;
+    private double max;
+    private double avg;
+    private double sum;
+    private long count;
+    private double last;
+}
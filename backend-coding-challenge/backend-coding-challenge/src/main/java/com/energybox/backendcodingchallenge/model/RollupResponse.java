@@ -0,0 +1,20 @@
+package com.energybox.backendcodingchallenge.model;
+
+import com.energybox.backendcodingchallenge.history.RollupResolution;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class RollupResponse {
+    private Long sensorId;
+    private String type;
+    private RollupResolution resolution;
+    private long stepMillis;
+    /**
+     * Set when the rollups no longer reach back to the start of the range: epoch milliseconds of the first retained bucket.
+     */
+    private Long retainedFrom;
+    private List<RollupBucket> buckets = new ArrayList<>();
+}
@@ -0,0 +1,18 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Describes a single sensor of a bulk request that could not be created.
+ * The index refers to the position of the sensor in the submitted request.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorFailure {
+    private int index;
+    private String key;
+    private String reason;
+}
@@ -0,0 +1,15 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Projection of a sensor without its relationships, used by the list endpoints.
+ */
+@Data
+@AllArgsConstructor
+public class SensorSummary {
+    private Long id;
+    private String name;
+    private String locationCode;
+}
@@ -0,0 +1,30 @@
+package com.energybox.backendcodingchallenge.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Differences between the in-memory topology registry and the database.
+ */
+@Data
+public class TopologyConsistencyReport {
+    private boolean ready;
+    private int sensors;
+    private int gateways;
+    private int types;
+    private int missingSensors;
+    private int unexpectedSensors;
+    private int mismatchedSensors;
+    private int missingGateways;
+    private int unexpectedGateways;
+    private int mismatchedGateways;
+    // up to TopologyRegistry.MAX_REPORTED_IDS sensor ids that differ, for troubleshooting
+    private List<Long> sensorIds = new ArrayList<>();
+
+    public boolean isConsistent() {
+        return ready && missingSensors == 0 && unexpectedSensors == 0 && mismatchedSensors == 0
+                && missingGateways == 0 && unexpectedGateways == 0 && mismatchedGateways == 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.energybox.backendcodingchallenge.profiler;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a repository query that scans a label on purpose, such as a page through all sensors, so the
+ * {@link QueryProfiler} in strict mode does not fail it.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface AllowLabelScan {
+}
@@ -0,0 +1,25 @@
+package com.energybox.backendcodingchallenge.profiler;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+
+/**
+ * Applies the {@link QueryProfiler} to the repository queries unless {@code sensors.profiler.enabled} is false.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "sensors.profiler.enabled", havingValue = "true", matchIfMissing = true)
+public class ProfilerConfiguration {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor queryProfilerAdvisor(ObjectProvider<QueryProfiler> queryProfiler) {
+        return new DefaultPointcutAdvisor(QueryProfilerInterceptor.pointcut(),
+                new QueryProfilerInterceptor(queryProfiler::getObject));
+    }
+}
@@ -0,0 +1,342 @@
+package com.energybox.backendcodingchallenge.profiler;
+
+import com.energybox.backendcodingchallenge.exception.QueryPlanException;
+import com.energybox.backendcodingchallenge.model.QueryProfile;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.summary.ProfiledPlan;
+import org.neo4j.driver.summary.ResultSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Records the rows returned by every call of a repository query, logs the slow calls and profiles a sample of
+ * them, keeping the worst plans for {@code /admin/queries/plans}.
+ *
+ * Every call records its rows as {@value #ROWS}; a call taking at least {@code slow-query-ms} is logged and
+ * counted as {@value #SLOW}. Slow calls and a {@code sample-rate} share of the others are run again with
+ * {@code PROFILE} on a background thread, in a transaction that is rolled back, so writes are profiled without
+ * being applied twice. One profile runs at a time and calls sampled meanwhile are skipped. The database hits of
+ * a profile are recorded as {@value #DB_HITS}, and its plan is kept if it is among the {@code max-plans} worst by
+ * database hits, one per query.
+ *
+ * In strict mode, meant for tests, every call is profiled before it returns and fails with a
+ * {@link QueryPlanException} if its plan scans more than {@code max-label-scan-rows} nodes of a label, unless the
+ * query is marked with {@link AllowLabelScan}.
+ */
+@Component
+public class QueryProfiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryProfiler.class);
+
+    public static final String ROWS = "sensors.repository.rows";
+
+    public static final String DB_HITS = "sensors.repository.db.hits";
+
+    public static final String SLOW = "sensors.repository.slow";
+
+    private static final List<String> SCAN_OPERATORS = List.of("NodeByLabelScan", "AllNodesScan");
+
+    private final Driver driver;
+
+    private final MeterRegistry meterRegistry;
+
+    private final double sampleRate;
+
+    private final long slowQueryNanos;
+
+    private final int maxPlans;
+
+    private final boolean strict;
+
+    private final long maxLabelScanRows;
+
+    private final ExecutorService profilerThread;
+
+    // set while a sampled profile runs, samples taken meanwhile are skipped
+    private final AtomicBoolean profiling = new AtomicBoolean();
+
+    private final ConcurrentHashMap<Method, ProfiledQuery> queries = new ConcurrentHashMap<>();
+
+    // worst profile per query, at most maxPlans of them
+    private final Map<String, QueryProfile> worstPlans = new HashMap<>();
+
+    private final ReentrantLock worstPlansLock = new ReentrantLock();
+
+    public QueryProfiler(Driver driver,
+                         MeterRegistry meterRegistry,
+                         WorkerThreads workerThreads,
+                         @Value("${sensors.profiler.sample-rate:0.01}") double sampleRate,
+                         @Value("${sensors.profiler.slow-query-ms:500}") long slowQueryMs,
+                         @Value("${sensors.profiler.max-plans:20}") int maxPlans,
+                         @Value("${sensors.profiler.strict:false}") boolean strict,
+                         @Value("${sensors.profiler.max-label-scan-rows:1000}") long maxLabelScanRows) {
+        this.driver = driver;
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = sampleRate;
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMs);
+        this.maxPlans = maxPlans;
+        this.strict = strict;
+        this.maxLabelScanRows = maxLabelScanRows;
+        this.profilerThread = Executors.newSingleThreadExecutor(workerThreads.factory("query-profiler"));
+    }
+
+    /**
+     * @return Whether a repository method runs a Cypher query of its own and can be profiled.
+     */
+    public static boolean isProfiled(Method method) {
+        Query query = AnnotatedElementUtils.findMergedAnnotation(method, Query.class);
+        return query != null && !query.value().isEmpty();
+    }
+
+    /**
+     * Records a call of a repository query that returned, profiling it if it is sampled.
+     *
+     * @param method The repository method, see {@link #isProfiled(Method)}.
+     * @param arguments The arguments of the call, bound to the query parameters in the order of the method parameters.
+     * @param nanos The time the call took.
+     * @param result What the call returned.
+     */
+    public void completed(Method method, Object[] arguments, long nanos, Object result) {
+        ProfiledQuery query = queries.get(method);
+        if (query == null) {
+            query = queries.computeIfAbsent(method, this::register);
+        }
+        long rows = rows(result);
+        query.rows.record(rows);
+        boolean slow = nanos >= slowQueryNanos;
+        if (slow) {
+            query.slow.increment();
+            logger.warn("Slow query {}.{} took {} ms and returned {} rows", query.repository, query.method,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), rows);
+        }
+        if (strict) {
+            check(query, profile(query, arguments, nanos, rows));
+        } else if ((slow || ThreadLocalRandom.current().nextDouble() < sampleRate) && profiling.compareAndSet(false, true)) {
+            ProfiledQuery sampled = query;
+            Object[] sampledArguments = arguments.clone();
+            try {
+                profilerThread.execute(() -> {
+                    try {
+                        profile(sampled, sampledArguments, nanos, rows);
+                    } catch (RuntimeException e) {
+                        logger.warn("Failed to profile {}.{}", sampled.repository, sampled.method, e);
+                    } finally {
+                        profiling.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                profiling.set(false);
+                logger.warn("Failed to schedule the profile of {}.{}", query.repository, query.method, e);
+            }
+        }
+    }
+
+    /**
+     * @return The kept plans, the most database hits first.
+     */
+    public List<QueryProfile> worstPlans() {
+        List<QueryProfile> plans;
+        worstPlansLock.lock();
+        try {
+            plans = new ArrayList<>(worstPlans.values());
+        } finally {
+            worstPlansLock.unlock();
+        }
+        plans.sort(Comparator.comparingLong(QueryProfile::getDbHits).reversed());
+        return plans;
+    }
+
+    public void clearPlans() {
+        worstPlansLock.lock();
+        try {
+            worstPlans.clear();
+        } finally {
+            worstPlansLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        profilerThread.shutdownNow();
+    }
+
+    QueryProfile profile(ProfiledQuery query, Object[] arguments, long nanos, long rows) {
+        Map<String, Object> parameters = new HashMap<>();
+        for (int i = 0; i < query.parameters.length; i++) {
+            parameters.put(query.parameters[i], Values.value(arguments[i]));
+        }
+        ResultSummary summary;
+        try (Session session = driver.session(); Transaction transaction = session.beginTransaction()) {
+            summary = transaction.run("PROFILE " + query.query, parameters).consume();
+            transaction.rollback();
+        }
+
+        QueryProfile profile = new QueryProfile();
+        profile.setRepository(query.repository);
+        profile.setMethod(query.method);
+        profile.setQuery(query.query);
+        profile.setElapsedMs(nanos / 1e6);
+        profile.setRows(rows);
+        profile.setProfiledAt(LocalDateTime.now());
+        if (summary.hasProfile()) {
+            StringBuilder plan = new StringBuilder();
+            profile.setDbHits(describe(summary.profile(), 0, plan, profile));
+            profile.setPlan(plan.toString());
+        }
+        query.dbHits.record(profile.getDbHits());
+        keep(profile);
+        return profile;
+    }
+
+    // appends the operator and its children to the plan, collects the scans and returns the database hits of the tree
+    private static long describe(ProfiledPlan operator, int depth, StringBuilder plan, QueryProfile profile) {
+        String type = operator.operatorType();
+        int engine = type.indexOf('@');
+        String name = engine < 0 ? type : type.substring(0, engine);
+        org.neo4j.driver.Value details = operator.arguments().get("Details");
+        String detail = details != null ? details.asString() : String.join(", ", operator.identifiers());
+        for (int i = 0; i < depth; i++) {
+            plan.append("  ");
+        }
+        plan.append(name).append(' ').append(detail)
+                .append(" rows=").append(operator.records())
+                .append(" dbHits=").append(operator.dbHits()).append('\n');
+        if (SCAN_OPERATORS.contains(name)) {
+            profile.getLabelScans().add(name + " " + detail + " rows=" + operator.records());
+            profile.setMaxScannedNodes(Math.max(profile.getMaxScannedNodes(), operator.records()));
+        }
+        long dbHits = operator.dbHits();
+        for (ProfiledPlan child : operator.children()) {
+            dbHits += describe(child, depth + 1, plan, profile);
+        }
+        return dbHits;
+    }
+
+    private void check(ProfiledQuery query, QueryProfile profile) {
+        if (!query.allowLabelScan && profile.getMaxScannedNodes() > maxLabelScanRows) {
+            throw new QueryPlanException(query.repository + "." + query.method + " scans "
+                    + profile.getMaxScannedNodes() + " nodes of a label, more than " + maxLabelScanRows + ":\n"
+                    + profile.getPlan());
+        }
+    }
+
+    private void keep(QueryProfile profile) {
+        String key = profile.getRepository() + "." + profile.getMethod();
+        worstPlansLock.lock();
+        try {
+            QueryProfile kept = worstPlans.get(key);
+            if (kept != null) {
+                if (profile.getDbHits() >= kept.getDbHits()) {
+                    worstPlans.put(key, profile);
+                }
+                return;
+            }
+            if (worstPlans.size() >= maxPlans) {
+                Map.Entry<String, QueryProfile> best = worstPlans.entrySet().stream()
+                        .min(Comparator.comparingLong(entry -> entry.getValue().getDbHits()))
+                        .orElseThrow();
+                if (best.getValue().getDbHits() >= profile.getDbHits()) {
+                    return;
+                }
+                worstPlans.remove(best.getKey());
+            }
+            worstPlans.put(key, profile);
+        } finally {
+            worstPlansLock.unlock();
+        }
+    }
+
+    private ProfiledQuery register(Method method) {
+        Query query = AnnotatedElementUtils.findMergedAnnotation(method, Query.class);
+        Parameter[] parameters = method.getParameters();
+        String[] names = new String[parameters.length];
+        for (int i = 0; i < parameters.length; i++) {
+            Param param = parameters[i].getAnnotation(Param.class);
+            names[i] = param != null ? param.value() : parameters[i].getName();
+        }
+        return new ProfiledQuery(meterRegistry, method.getDeclaringClass().getSimpleName(), method.getName(),
+                query.value(), names, AnnotatedElementUtils.hasAnnotation(method, AllowLabelScan.class));
+    }
+
+    static long rows(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Optional) {
+            return ((Optional<?>) result).isPresent() ? 1 : 0;
+        }
+        if (result instanceof Slice) {
+            return ((Slice<?>) result).getNumberOfElements();
+        }
+        return 1;
+    }
+
+    static final class ProfiledQuery {
+
+        final String repository;
+
+        final String method;
+
+        final String query;
+
+        final String[] parameters;
+
+        final boolean allowLabelScan;
+
+        final DistributionSummary rows;
+
+        final DistributionSummary dbHits;
+
+        final Counter slow;
+
+        ProfiledQuery(MeterRegistry meterRegistry, String repository, String method, String query, String[] parameters,
+                      boolean allowLabelScan) {
+            this.repository = repository;
+            this.method = method;
+            this.query = query;
+            this.parameters = parameters;
+            this.allowLabelScan = allowLabelScan;
+            this.rows = DistributionSummary.builder(ROWS).baseUnit("rows")
+                    .tag("class", repository).tag("method", method).register(meterRegistry);
+            this.dbHits = DistributionSummary.builder(DB_HITS).baseUnit("hits")
+                    .tag("class", repository).tag("method", method).register(meterRegistry);
+            this.slow = Counter.builder(SLOW)
+                    .tag("class", repository).tag("method", method).register(meterRegistry);
+        }
+    }
+}
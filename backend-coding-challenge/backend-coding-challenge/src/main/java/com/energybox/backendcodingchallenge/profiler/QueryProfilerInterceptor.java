@@ -0,0 +1,53 @@
+package com.energybox.backendcodingchallenge.profiler;
+
+import com.energybox.backendcodingchallenge.metrics.MethodMetrics;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.reactivestreams.Publisher;
+import org.springframework.aop.support.StaticMethodMatcherPointcut;
+
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+/**
+ * Hands every returned call of a repository query to the {@link QueryProfiler}. Queries returning a
+ * {@link Publisher} are left out, their rows are only known to the subscriber.
+ */
+public class QueryProfilerInterceptor implements MethodInterceptor {
+
+    private final Supplier<QueryProfiler> queryProfilerSupplier;
+
+    // resolved on the first call, the interceptor is built before the profiler's dependencies
+    private volatile QueryProfiler queryProfiler;
+
+    public QueryProfilerInterceptor(Supplier<QueryProfiler> queryProfilerSupplier) {
+        this.queryProfilerSupplier = queryProfilerSupplier;
+    }
+
+    /**
+     * @return The pointcut of the methods of the application's repositories annotated with a query.
+     */
+    public static StaticMethodMatcherPointcut pointcut() {
+        StaticMethodMatcherPointcut pointcut = new StaticMethodMatcherPointcut() {
+            @Override
+            public boolean matches(Method method, Class<?> targetClass) {
+                return QueryProfiler.isProfiled(method) && !Publisher.class.isAssignableFrom(method.getReturnType());
+            }
+        };
+        pointcut.setClassFilter(MethodMetrics::isInstrumented);
+        return pointcut;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        long start = System.nanoTime();
+        Object result = invocation.proceed();
+        long nanos = System.nanoTime() - start;
+        QueryProfiler profiler = queryProfiler;
+        if (profiler == null) {
+            profiler = queryProfiler = queryProfilerSupplier.get();
+        }
+        profiler.completed(invocation.getMethod(), invocation.getArguments(), nanos, result);
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package com.energybox.backendcodingchallenge.repository;
+
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentOutcome;
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentResult;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Transaction;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Connects many sensors to gateways in one write transaction.
+ *
+ * One statement looks up every sensor, target gateway and current gateway of the batch; a second one
+ * replaces the CONNECTED_TO relationship of every sensor that may be assigned. Both run in the same
+ * transaction, so a batch is applied completely or not at all.
+ *
+ * The lookup takes the write lock of every sensor before it reads the sensor's gateway, and the lock is
+ * held until commit. A concurrent batch for the same sensor therefore waits and decides from the committed
+ * connection instead of creating a second one. Sensors are locked in id order so that overlapping batches
+ * do not deadlock; a deadlock that still happens is a transient error the write transaction retries.
+ */
+@Repository
+public class GatewayAssignmentRepository {
+
+    private static final String LOOKUP =
+            "UNWIND $rows AS r "
+                    + "OPTIONAL MATCH (s:Sensor) WHERE id(s) = r.sensorId "
+                    + "FOREACH (locked IN CASE WHEN s IS NULL THEN [] ELSE [s] END | "
+                    + "SET locked.__lock = true REMOVE locked.__lock) "
+                    + "WITH r, s "
+                    + "OPTIONAL MATCH (g:Gateway) WHERE id(g) = r.gatewayId "
+                    + "OPTIONAL MATCH (s)-[:CONNECTED_TO]->(current:Gateway) "
+                    + "RETURN r.sensorId AS sensorId, s IS NOT NULL AS sensorFound, g IS NOT NULL AS gatewayFound, "
+                    + "id(current) AS currentGatewayId";
+
+    private static final String CONNECT =
+            "UNWIND $rows AS r "
+                    + "MATCH (s:Sensor) WHERE id(s) = r.sensorId "
+                    + "MATCH (g:Gateway) WHERE id(g) = r.gatewayId "
+                    + "OPTIONAL MATCH (s)-[old:CONNECTED_TO]->(:Gateway) "
+                    + "DELETE old "
+                    + "WITH DISTINCT s, g "
+                    + "CREATE (s)-[:CONNECTED_TO]->(g)";
+
+    private final Driver driver;
+
+    public GatewayAssignmentRepository(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Connects every sensor to its gateway. The sensor ids must be distinct and not null.
+     *
+     * @param gatewayBySensor The target gateway of every sensor, in the order of the results.
+     * @param move            Whether sensors already connected to another gateway are moved.
+     * @return One result per sensor, with the gateway it was connected to before.
+     */
+    public List<GatewayAssignmentResult> assign(Map<Long, Long> gatewayBySensor, boolean move) {
+        SessionConfig config = SessionConfig.builder().withDefaultAccessMode(AccessMode.WRITE).build();
+        try (Session session = driver.session(config)) {
+            return session.writeTransaction(tx -> assign(tx, gatewayBySensor, move));
+        }
+    }
+
+    private List<GatewayAssignmentResult> assign(Transaction tx, Map<Long, Long> gatewayBySensor, boolean move) {
+        List<Map<String, Object>> rows = new ArrayList<>(gatewayBySensor.size());
+        new TreeMap<>(gatewayBySensor).forEach((sensorId, gatewayId) ->
+                rows.add(Map.of("sensorId", sensorId, "gatewayId", gatewayId)));
+        Map<Long, Record> lookups = new HashMap<>();
+        for (Record record : tx.run(LOOKUP, Map.of("rows", rows)).list()) {
+            lookups.put(record.get("sensorId").asLong(), record);
+        }
+
+        List<GatewayAssignmentResult> results = new ArrayList<>(gatewayBySensor.size());
+        List<Map<String, Object>> moves = new ArrayList<>();
+        for (Map.Entry<Long, Long> entry : gatewayBySensor.entrySet()) {
+            Long sensorId = entry.getKey();
+            Long gatewayId = entry.getValue();
+            Record lookup = lookups.get(sensorId);
+            Long previous = lookup.get("currentGatewayId").isNull() ? null : lookup.get("currentGatewayId").asLong();
+            GatewayAssignmentOutcome outcome;
+            if (!lookup.get("sensorFound").asBoolean()) {
+                outcome = GatewayAssignmentOutcome.SENSOR_NOT_FOUND;
+            } else if (!lookup.get("gatewayFound").asBoolean()) {
+                outcome = GatewayAssignmentOutcome.GATEWAY_NOT_FOUND;
+            } else if (gatewayId.equals(previous)) {
+                outcome = GatewayAssignmentOutcome.UNCHANGED;
+            } else if (previous != null && !move) {
+                outcome = GatewayAssignmentOutcome.ALREADY_CONNECTED;
+            } else {
+                outcome = previous == null ? GatewayAssignmentOutcome.ASSIGNED : GatewayAssignmentOutcome.MOVED;
+                moves.add(Map.of("sensorId", sensorId, "gatewayId", gatewayId));
+            }
+            results.add(new GatewayAssignmentResult(sensorId, gatewayId, previous, outcome));
+        }
+        if (!moves.isEmpty()) {
+            tx.run(CONNECT, Map.of("rows", moves)).consume();
+        }
+        return results;
+    }
+}
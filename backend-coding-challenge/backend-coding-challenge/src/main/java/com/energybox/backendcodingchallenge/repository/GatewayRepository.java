@@ -1,13 +1,44 @@
 package com.energybox.backendcodingchallenge.repository;
 
 import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.profiler.AllowLabelScan;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface GatewayRepository  extends Neo4jRepository<Gateway, Long> {
 
-    @Query("MATCH (g:Gateway)<-[:CONNECTED_TO]-(s:Sensor)-[:HAS_TYPE]->(t:SensorType {name: $typeName}) RETURN g")
+    @Query("MATCH (g:Gateway)<-[:CONNECTED_TO]-(s:Sensor)-[:HAS_TYPE]->(t:SensorType {name: $typeName}) RETURN DISTINCT g ORDER BY id(g)")
     List<Gateway> findGatewaysWithSensorType(String typeName);
+
+    /**
+     * Returns the gateways with sensors of every type in {@code all} and of at least one type in {@code any}.
+     * An empty list places no constraint, but at least one of them must not be empty: the gateways are
+     * reached from the first type asked for rather than by scanning them all.
+     */
+    @Query("UNWIND CASE WHEN size($all) > 0 THEN $all[0..1] ELSE $any END AS first "
+            + "MATCH (:SensorType {name: first})<-[:HAS_TYPE]-(:Sensor)-[:CONNECTED_TO]->(g:Gateway) "
+            + "WITH DISTINCT g "
+            + "WHERE all(name IN $all WHERE (g)<-[:CONNECTED_TO]-(:Sensor)-[:HAS_TYPE]->(:SensorType {name: name})) "
+            + "AND (size($any) = 0 OR any(name IN $any WHERE (g)<-[:CONNECTED_TO]-(:Sensor)-[:HAS_TYPE]->(:SensorType {name: name}))) "
+            + "RETURN g ORDER BY id(g)")
+    List<Gateway> findGatewaysWithSensorTypes(@Param("all") List<String> all, @Param("any") List<String> any);
+
+    /**
+     * Returns the next page of gateways ordered by ID, starting after {@code afterId}. The label is scanned up to
+     * the first ID, which is what paging by ID costs without an index on it.
+     */
+    @AllowLabelScan
+    @Query("MATCH (g:Gateway) WHERE id(g) > $afterId RETURN g ORDER BY id(g) LIMIT $limit")
+    List<Gateway> findPageAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * Returns which of the ids belong to a gateway. Each id is looked up on its own, the planner may otherwise
+     * filter a scan of every gateway by the list.
+     */
+    @Query("UNWIND $ids AS gatewayId MATCH (g:Gateway) WHERE id(g) = gatewayId RETURN DISTINCT id(g)")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 }
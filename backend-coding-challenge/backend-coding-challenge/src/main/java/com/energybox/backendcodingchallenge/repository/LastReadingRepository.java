@@ -0,0 +1,19 @@
+package com.energybox.backendcodingchallenge.repository;
+
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import org.springframework.data.neo4j.repository.Neo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+/**
+ * Reads the LastReading nodes of a sensor. They are written by the upserts of {@link SensorRepository}; a query
+ * returning them has to be declared here, since Spring Data Neo4j maps the results of a repository's queries
+ * through its own entity.
+ */
+public interface LastReadingRepository extends Neo4jRepository<LastReading, Long> {
+
+    @Query("MATCH (s:Sensor)-[:HAS_LAST_READING]->(l:LastReading) WHERE id(s) = $sensorId RETURN l")
+    List<LastReading> findLastReadings(@Param("sensorId") Long sensorId);
+}
@@ -0,0 +1,43 @@
+package com.energybox.backendcodingchallenge.repository;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Creates the constraints the queries rely on. The unique constraint on the name of a SensorType backs it with an
+ * index, so the queries by type name seek the type instead of scanning every SensorType, and merging a type
+ * cannot create it twice.
+ */
+@Repository
+public class SchemaConstraints {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaConstraints.class);
+
+    static final String SENSOR_TYPE_NAME = "CREATE CONSTRAINT sensor_type_name IF NOT EXISTS "
+            + "ON (t:SensorType) ASSERT t.name IS UNIQUE";
+
+    private final Driver driver;
+
+    public SchemaConstraints(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Creates the constraints that do not exist yet. A failure, such as duplicate type names, is logged and the
+     * queries fall back to scanning the types.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createConstraints() {
+        try (Session session = driver.session()) {
+            session.run(SENSOR_TYPE_NAME).consume();
+            logger.info("Schema constraints are in place");
+        } catch (RuntimeException e) {
+            logger.error("Failed to create the schema constraints, the queries by type name scan the types", e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.energybox.backendcodingchallenge.repository;
+
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.springframework.stereotype.Repository;
+
+import java.util.function.Consumer;
+
+/**
+ * Reads sensors straight off a Bolt cursor for exports.
+ *
+ * The driver pulls records in batches of {@link #FETCH_SIZE}, so memory use does not grow with
+ * the number of sensors as long as the consumer does not hold on to them.
+ */
+@Repository
+public class SensorExportRepository {
+
+    static final int FETCH_SIZE = 1000;
+
+    private static final String QUERY =
+            "MATCH (s:Sensor) RETURN id(s) AS id, s.name AS name, s.locationCode AS locationCode ORDER BY id(s)";
+
+    private final Driver driver;
+
+    public SensorExportRepository(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Passes the summary of every sensor, ordered by ID, to the consumer.
+     *
+     * @return The number of sensors read.
+     */
+    public long forEachSummary(Consumer<SensorSummary> consumer) {
+        SessionConfig config = SessionConfig.builder()
+                .withDefaultAccessMode(AccessMode.READ)
+                .withFetchSize(FETCH_SIZE)
+                .build();
+        long count = 0;
+        try (Session session = driver.session(config)) {
+            Result result = session.run(QUERY);
+            while (result.hasNext()) {
+                Record record = result.next();
+                consumer.accept(new SensorSummary(record.get("id").asLong(),
+                        record.get("name").asString(null),
+                        record.get("locationCode").asString(null)));
+                count++;
+            }
+        }
+        return count;
+    }
+}
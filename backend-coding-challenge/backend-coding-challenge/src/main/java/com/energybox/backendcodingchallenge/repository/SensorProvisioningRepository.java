@@ -0,0 +1,58 @@
+package com.energybox.backendcodingchallenge.repository;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates sensors together with their HAS_TYPE and CONNECTED_TO relationships, one transaction per batch.
+ *
+ * The sensor types and gateways referenced by the rows must already exist; rows pointing to a missing
+ * gateway or type are created without that relationship.
+ */
+@Repository
+public class SensorProvisioningRepository {
+
+    private static final String QUERY =
+            "UNWIND $rows AS r "
+                    + "CREATE (s:Sensor {name: r.name, locationCode: r.locationCode}) "
+                    + "WITH s, r "
+                    + "OPTIONAL MATCH (g:Gateway) WHERE id(g) = r.gatewayId "
+                    + "FOREACH (gateway IN CASE WHEN g IS NULL THEN [] ELSE [g] END | CREATE (s)-[:CONNECTED_TO]->(gateway)) "
+                    + "WITH s, r "
+                    + "OPTIONAL MATCH (t:SensorType) WHERE t.name IN r.types "
+                    + "WITH s, r, collect(t) AS types "
+                    + "FOREACH (type IN types | CREATE (s)-[:HAS_TYPE]->(type)) "
+                    + "RETURN r.key AS key, id(s) AS id";
+
+    private final Driver driver;
+
+    public SensorProvisioningRepository(Driver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * Creates one sensor per (key, name, locationCode, types, gatewayId) row in a single write transaction.
+     *
+     * @return The ID of the created sensor for each row key.
+     */
+    public Map<String, Long> createSensors(List<Map<String, Object>> rows) {
+        SessionConfig config = SessionConfig.builder().withDefaultAccessMode(AccessMode.WRITE).build();
+        try (Session session = driver.session(config)) {
+            return session.writeTransaction(tx -> {
+                Map<String, Long> ids = new HashMap<>();
+                for (Record record : tx.run(QUERY, Map.of("rows", rows)).list()) {
+                    ids.put(record.get("key").asString(), record.get("id").asLong());
+                }
+                return ids;
+            });
+        }
+    }
+}
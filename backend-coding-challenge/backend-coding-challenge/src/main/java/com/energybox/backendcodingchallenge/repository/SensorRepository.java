@@ -1,19 +1,101 @@
 package com.energybox.backendcodingchallenge.repository;
 
-import com.energybox.backendcodingchallenge.domain.LastReading;
 import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import com.energybox.backendcodingchallenge.profiler.AllowLabelScan;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
 import org.springframework.data.neo4j.repository.query.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public interface SensorRepository extends Neo4jRepository<Sensor, Long> {
 
-    @Query("MATCH (s:Sensor)-[:CONNECTED_TO]->(g:Gateway) WHERE g.id = $gatewayId RETURN s")
+    /**
+     * Returns the sensors of a gateway with their types, last readings and gateway.
+     */
+    @Query("MATCH (s:Sensor)-[:CONNECTED_TO]->(g:Gateway) WHERE id(g) = $gatewayId "
+            + "OPTIONAL MATCH (s)-[r]->(n) "
+            + "RETURN s, collect(r), collect(n) ORDER BY id(s)")
     List<Sensor> findAllByGatewayId(Long gatewayId);
 
-    @Query("MATCH (s:Sensor) WHERE $typeName IN s.types RETURN s")
-    List<Sensor> findSensorsByTypeName(@Param("typeName") String typeName);
+    /**
+     * Returns the next page of sensors ordered by ID, starting after {@code afterId}. The label is scanned up to
+     * the first ID, which is what paging by ID costs without an index on it.
+     */
+    @AllowLabelScan
+    @Query("MATCH (s:Sensor) WHERE id(s) > $afterId RETURN s ORDER BY id(s) LIMIT $limit")
+    List<SensorSummary> findSummariesAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    @Query("MATCH (s:Sensor)-[:HAS_TYPE]->(:SensorType {name: $typeName}) RETURN s ORDER BY id(s)")
+    List<SensorSummary> findSummariesByTypeName(@Param("typeName") String typeName);
+
+    @Query("MATCH (s:Sensor)-[:CONNECTED_TO]->(g:Gateway) WHERE id(g) = $gatewayId RETURN s ORDER BY id(s)")
+    List<SensorSummary> findSummariesByGatewayId(@Param("gatewayId") Long gatewayId);
+
+    /**
+     * Returns the sensors having every type in {@code all} and at least one type in {@code any}.
+     * An empty list places no constraint, but at least one of them must not be empty: the sensors are
+     * reached from the first type asked for rather than by scanning them all.
+     */
+    @Query("UNWIND CASE WHEN size($all) > 0 THEN $all[0..1] ELSE $any END AS first "
+            + "MATCH (:SensorType {name: first})<-[:HAS_TYPE]-(s:Sensor) "
+            + "WITH DISTINCT s "
+            + "WHERE all(name IN $all WHERE (s)-[:HAS_TYPE]->(:SensorType {name: name})) "
+            + "AND (size($any) = 0 OR any(name IN $any WHERE (s)-[:HAS_TYPE]->(:SensorType {name: name}))) "
+            + "RETURN s ORDER BY id(s)")
+    List<SensorSummary> findSummariesByTypes(@Param("all") List<String> all, @Param("any") List<String> any);
+
+    /**
+     * Upserts the last reading of one sensor and type in a single statement, touching only the
+     * HAS_LAST_READING relationship and LastReading node of that type. Setting lastReadingAt takes the
+     * write lock of the sensor, so concurrent upserts of the same sensor cannot create duplicate readings.
+     * The SensorType node is not touched; the service makes sure it exists through the type dictionary.
+     * A reading older than the stored one leaves it in place, so late readings never move it back.
+     *
+     * @return 1 if the sensor exists, whether or not the reading was newer; 0 if the sensor does not exist.
+     */
+    @Query("MATCH (s:Sensor) WHERE id(s) = $sensorId " +
+            "SET s.lastReadingAt = CASE WHEN s.lastReadingAt > $timestamp THEN s.lastReadingAt ELSE $timestamp END " +
+            "MERGE (s)-[:HAS_LAST_READING]->(l:LastReading {typeName: $typeName}) " +
+            "WITH l, l.timestamp IS NULL OR l.timestamp <= $timestamp AS newer " +
+            "SET l.timestamp = CASE WHEN newer THEN $timestamp ELSE l.timestamp END, " +
+            "l.reading = CASE WHEN newer THEN $reading ELSE l.reading END " +
+            "RETURN count(l)")
+    long upsertLastReading(@Param("sensorId") Long sensorId, @Param("typeName") String typeName,
+                           @Param("timestamp") LocalDateTime timestamp, @Param("reading") Double reading);
+
+    /**
+     * Upserts the last reading of every (sensorId, sensorType, timestamp, reading) row in one statement.
+     * Rows pointing to an unknown sensor are skipped and rows older than the stored reading leave it in place;
+     * the ids of the sensors that exist are returned.
+     */
+    default List<Long> upsertLastReadings(List<Map<String, Object>> readings) {
+        // Spring Data Neo4j 6.0 cannot convert map parameters, the driver can
+        return upsertLastReadingValues(readings.stream().map(Values::value).collect(Collectors.toList()));
+    }
+
+    @Query("UNWIND $readings AS r " +
+            "MATCH (s:Sensor) WHERE id(s) = r.sensorId " +
+            "SET s.lastReadingAt = CASE WHEN s.lastReadingAt > r.timestamp THEN s.lastReadingAt ELSE r.timestamp END " +
+            "MERGE (s)-[:HAS_LAST_READING]->(l:LastReading {typeName: r.sensorType}) " +
+            "WITH r, l, l.timestamp IS NULL OR l.timestamp <= r.timestamp AS newer " +
+            "SET l.timestamp = CASE WHEN newer THEN r.timestamp ELSE l.timestamp END, " +
+            "l.reading = CASE WHEN newer THEN r.reading ELSE l.reading END " +
+            "RETURN DISTINCT r.sensorId")
+    List<Long> upsertLastReadingValues(@Param("readings") List<Value> readings);
+
+    /**
+     * Returns which of the ids belong to a sensor. Each id is looked up on its own, the planner may otherwise
+     * filter a scan of every sensor by the list.
+     */
+    @Query("UNWIND $ids AS sensorId MATCH (s:Sensor) WHERE id(s) = sensorId RETURN DISTINCT id(s)")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 
 }
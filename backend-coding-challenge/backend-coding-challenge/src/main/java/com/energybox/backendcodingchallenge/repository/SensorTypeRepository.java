@@ -3,9 +3,20 @@ package com.energybox.backendcodingchallenge.repository;
 import com.energybox.backendcodingchallenge.domain.SensorType;
 import org.springframework.data.neo4j.core.schema.Id;
 import org.springframework.data.neo4j.repository.Neo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 @Repository
 public interface  SensorTypeRepository extends Neo4jRepository<SensorType, String>  {
     SensorType findByName(String name);
+
+    @Query("MERGE (t:SensorType {name: $name}) RETURN t")
+    SensorType mergeByName(@Param("name") String name);
+
+    @Query("UNWIND $names AS name MERGE (t:SensorType {name: name}) RETURN t")
+    List<SensorType> mergeByNames(@Param("names") Collection<String> names);
 }
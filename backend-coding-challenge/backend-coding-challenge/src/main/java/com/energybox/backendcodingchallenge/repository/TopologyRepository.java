@@ -0,0 +1,89 @@
+package com.energybox.backendcodingchallenge.repository;
+
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+import org.neo4j.driver.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the whole topology as flat rows, for loading and reconciling the in-memory registry.
+ * Rows are pulled from the Bolt cursor in batches instead of being hydrated into entities.
+ */
+@Repository
+public class TopologyRepository {
+
+    static final int FETCH_SIZE = 5000;
+
+    private static final String GATEWAYS = "MATCH (g:Gateway) RETURN id(g) AS id, g.name AS name ORDER BY id(g)";
+
+    private static final String TYPES = "MATCH (t:SensorType) RETURN t.name AS name";
+
+    private static final String SENSORS = "MATCH (s:Sensor) "
+            + "OPTIONAL MATCH (s)-[:CONNECTED_TO]->(g:Gateway) "
+            + "WITH s, head(collect(id(g))) AS gatewayId "
+            + "OPTIONAL MATCH (s)-[:HAS_TYPE]->(t:SensorType) "
+            + "RETURN id(s) AS id, s.name AS name, s.locationCode AS locationCode, gatewayId, collect(t.name) AS types "
+            + "ORDER BY id(s)";
+
+    public interface GatewayRowConsumer {
+        void accept(long id, String name);
+    }
+
+    public interface SensorRowConsumer {
+        void accept(long id, String name, String locationCode, Long gatewayId, List<String> types);
+    }
+
+    private final Driver driver;
+
+    public TopologyRepository(Driver driver) {
+        this.driver = driver;
+    }
+
+    public void forEachGateway(GatewayRowConsumer consumer) {
+        try (Session session = session()) {
+            Result result = session.run(GATEWAYS);
+            while (result.hasNext()) {
+                Record record = result.next();
+                consumer.accept(record.get("id").asLong(), record.get("name").asString(null));
+            }
+        }
+    }
+
+    public void forEachTypeName(Consumer<String> consumer) {
+        try (Session session = session()) {
+            Result result = session.run(TYPES);
+            while (result.hasNext()) {
+                consumer.accept(result.next().get("name").asString(null));
+            }
+        }
+    }
+
+    public void forEachSensor(SensorRowConsumer consumer) {
+        try (Session session = session()) {
+            Result result = session.run(SENSORS);
+            while (result.hasNext()) {
+                Record record = result.next();
+                Value gatewayId = record.get("gatewayId");
+                consumer.accept(record.get("id").asLong(),
+                        record.get("name").asString(null),
+                        record.get("locationCode").asString(null),
+                        gatewayId.isNull() ? null : gatewayId.asLong(),
+                        record.get("types").asList(Value::asString));
+            }
+        }
+    }
+
+    private Session session() {
+        return driver.session(SessionConfig.builder()
+                .withDefaultAccessMode(AccessMode.READ)
+                .withFetchSize(FETCH_SIZE)
+                .build());
+    }
+}
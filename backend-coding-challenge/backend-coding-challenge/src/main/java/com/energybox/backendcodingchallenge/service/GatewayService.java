@@ -6,6 +6,7 @@ import com.energybox.backendcodingchallenge.exception.GatewayNotFoundException;
 import com.energybox.backendcodingchallenge.model.GatewayRequest;
 import com.energybox.backendcodingchallenge.model.GatewayResponse;
 import com.energybox.backendcodingchallenge.repository.GatewayRepository;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,8 +22,11 @@ public class GatewayService {
 
     private final GatewayRepository gatewayRepository;
 
-    public GatewayService( GatewayRepository gatewayRepository) {
+    private final TopologyRegistry topologyRegistry;
+
+    public GatewayService( GatewayRepository gatewayRepository, TopologyRegistry topologyRegistry) {
         this.gatewayRepository = gatewayRepository;
+        this.topologyRegistry = topologyRegistry;
     }
 
     /**
@@ -37,6 +41,7 @@ public class GatewayService {
         Gateway gateway = new Gateway(gatewayRequest.getName());
         // Save gateway entity to the repository
         Gateway result = gatewayRepository.save(gateway);
+        topologyRegistry.gatewaySaved(result.getId(), result.getName());
 
         // Create and return response with the ID of the newly created gateway
         GatewayResponse response = new GatewayResponse();
@@ -46,13 +51,17 @@ public class GatewayService {
     }
 
     /**
-     * Fetches all Gateways from the repository.
+     * Fetches a page of Gateways ordered by ID.
      *
-     * @return A list of all Gateways.
+     * @param afterId The ID of the last Gateway of the previous page, or -1 for the first page.
+     * @param limit   The maximum number of Gateways to return.
+     * @return The Gateways of the page.
      */
-    public List<Gateway> fetchAllGateways() {
-        return new ArrayList<>(gatewayRepository.findAll()) {
-        };
+    public List<Gateway> fetchGateways(long afterId, int limit) {
+        if (topologyRegistry.isReady()) {
+            return topologyRegistry.gatewaysAfter(afterId, limit);
+        }
+        return gatewayRepository.findPageAfter(afterId, limit);
     }
 
     /**
@@ -63,6 +72,12 @@ public class GatewayService {
      * @throws GatewayNotFoundException if no Gateway is found with the given ID.
      */
     public Gateway fetchGatewayById(Long id)  {
+        if (topologyRegistry.isReady()) {
+            Gateway gateway = topologyRegistry.gateway(id);
+            if (gateway != null) {
+                return gateway;
+            }
+        }
         return gatewayRepository.findById(id)
                 .orElseThrow(() -> new GatewayNotFoundException("Gateway not found with ID: " + id));
     }
@@ -74,7 +89,25 @@ public class GatewayService {
      * @return A list of Gateways associated with the specified sensor type.
      */
     public List<Gateway> fetchGatewaysBySensorType(String sensorType) {
+        if (topologyRegistry.isReady()) {
+            return topologyRegistry.gatewaysOfType(sensorType);
+        }
         return gatewayRepository.findGatewaysWithSensorType(sensorType);
     }
 
+    /**
+     * Fetches the Gateways that have sensors of every type in {@code all} and of at least one type in {@code any}.
+     * An empty list places no constraint.
+     *
+     * @param all The sensor types a Gateway must all have.
+     * @param any The sensor types of which a Gateway must have at least one.
+     * @return A list of Gateways ordered by ID.
+     */
+    public List<Gateway> fetchGatewaysBySensorTypes(List<String> all, List<String> any) {
+        if (topologyRegistry.isReady()) {
+            return topologyRegistry.gatewaysOfTypes(all, any);
+        }
+        return gatewayRepository.findGatewaysWithSensorTypes(all, any);
+    }
+
 }
@@ -1,39 +1,129 @@
 package com.energybox.backendcodingchallenge.service;
 
-import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.cache.LastReadingCache;
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
 import com.energybox.backendcodingchallenge.domain.LastReading;
 import com.energybox.backendcodingchallenge.domain.Sensor;
 import com.energybox.backendcodingchallenge.domain.SensorType;
 import com.energybox.backendcodingchallenge.exception.GatewayNotFoundException;
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
 import com.energybox.backendcodingchallenge.exception.SensorAlreadyConnectedException;
 import com.energybox.backendcodingchallenge.exception.SensorNotFoundException;
 import com.energybox.backendcodingchallenge.exception.SensorTypeNotFoundException;
+import com.energybox.backendcodingchallenge.history.ReadingHistoryStore;
+import com.energybox.backendcodingchallenge.history.RollupStore;
+import com.energybox.backendcodingchallenge.history.SampleConsumer;
+import com.energybox.backendcodingchallenge.ingest.LastReadingBuffer;
+import com.energybox.backendcodingchallenge.ingest.ReadingWatermarks;
+import com.energybox.backendcodingchallenge.metrics.IngestedReadings;
+import com.energybox.backendcodingchallenge.model.BatchGatewayAssignmentResponse;
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.BulkSensorItem;
+import com.energybox.backendcodingchallenge.model.BulkSensorResponse;
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentOutcome;
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentResult;
+import com.energybox.backendcodingchallenge.model.ReadingFailure;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.model.RollupResponse;
+import com.energybox.backendcodingchallenge.model.SensorFailure;
+import com.energybox.backendcodingchallenge.model.SensorGatewayRequest;
 import com.energybox.backendcodingchallenge.model.SensorRequest;
 import com.energybox.backendcodingchallenge.model.SensorResponse;
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import com.energybox.backendcodingchallenge.repository.GatewayAssignmentRepository;
 import com.energybox.backendcodingchallenge.repository.GatewayRepository;
+import com.energybox.backendcodingchallenge.repository.LastReadingRepository;
+import com.energybox.backendcodingchallenge.repository.SensorExportRepository;
+import com.energybox.backendcodingchallenge.repository.SensorProvisioningRepository;
 import com.energybox.backendcodingchallenge.repository.SensorRepository;
-import com.energybox.backendcodingchallenge.repository.SensorTypeRepository;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import com.energybox.backendcodingchallenge.wal.ReadingWal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Service
 public class SensorService {
 
+    static final int READING_BATCH_CHUNK_SIZE = 1000;
+
+    public static final int SENSOR_BULK_CHUNK_SIZE = 1000;
+
+    /**
+     * Reason reported for the sensors of a bulk request whose transaction failed.
+     */
+    public static final String SENSOR_WRITE_FAILED = "Failed to store the sensor";
+
+    public static final String TIMESTAMP_AHEAD = "Timestamp is ahead of the server clock";
+
+    private static final Logger logger = LoggerFactory.getLogger(SensorService.class);
+
     private final SensorRepository sensorRepository;
 
+    private final LastReadingRepository lastReadingRepository;
+
     private final GatewayRepository gatewayRepository;
 
-    private final SensorTypeRepository sensorTypeRepository;
+    private final SensorTypeDictionary sensorTypeDictionary;
+
+    private final LastReadingBuffer lastReadingBuffer;
+
+    private final ReadingHistoryStore readingHistoryStore;
+
+    private final RollupStore rollupStore;
 
-    public SensorService(SensorRepository sensorRepository, GatewayRepository gatewayRepository, SensorTypeRepository sensorTypeRepository) {
+    private final SensorExportRepository sensorExportRepository;
+
+    private final TopologyRegistry topologyRegistry;
+
+    private final LastReadingCache lastReadingCache;
+
+    private final SensorProvisioningRepository sensorProvisioningRepository;
+
+    private final GatewayAssignmentRepository gatewayAssignmentRepository;
+
+    private final ReadingWal readingWal;
+
+    private final ReadingWatermarks readingWatermarks;
+
+    private final IngestedReadings ingestedReadings;
+
+    public SensorService(SensorRepository sensorRepository, LastReadingRepository lastReadingRepository,
+                         GatewayRepository gatewayRepository, SensorTypeDictionary sensorTypeDictionary,
+                         LastReadingBuffer lastReadingBuffer, ReadingHistoryStore readingHistoryStore, RollupStore rollupStore,
+                         SensorExportRepository sensorExportRepository, TopologyRegistry topologyRegistry,
+                         LastReadingCache lastReadingCache, SensorProvisioningRepository sensorProvisioningRepository,
+                         GatewayAssignmentRepository gatewayAssignmentRepository, ReadingWal readingWal,
+                         ReadingWatermarks readingWatermarks, IngestedReadings ingestedReadings) {
         this.sensorRepository = sensorRepository;
+        this.lastReadingRepository = lastReadingRepository;
         this.gatewayRepository = gatewayRepository;
-        this.sensorTypeRepository = sensorTypeRepository;
+        this.sensorTypeDictionary = sensorTypeDictionary;
+        this.lastReadingBuffer = lastReadingBuffer;
+        this.readingHistoryStore = readingHistoryStore;
+        this.rollupStore = rollupStore;
+        this.sensorExportRepository = sensorExportRepository;
+        this.topologyRegistry = topologyRegistry;
+        this.lastReadingCache = lastReadingCache;
+        this.sensorProvisioningRepository = sensorProvisioningRepository;
+        this.gatewayAssignmentRepository = gatewayAssignmentRepository;
+        this.readingWal = readingWal;
+        this.readingWatermarks = readingWatermarks;
+        this.ingestedReadings = ingestedReadings;
     }
 
     /**
@@ -44,44 +134,193 @@ public class SensorService {
      */
     public SensorResponse createSensors(SensorRequest sensorRequest) {
 
-        //sensor request to sensor mapping
+        //sensor request to sensor mapping, the types have to be set before the save to be persisted
         Sensor sensor = new Sensor(sensorRequest.getName(),sensorRequest.getLocationCode());
+        Set<SensorType> sensorTypes = fetchOrCreateSensorTypes(
+                sensorRequest.getType() == null ? Set.of() : sensorRequest.getType());
+        sensor.setTypes(sensorTypes);
 
         //call repo to insert sensor into db
         Sensor result = sensorRepository.save(sensor);
-        //create sensor response model and return it
-
-        Set<SensorType> sensorTypes = fetchOrCreateSensorTypes(sensorRequest.getType());
-        sensor.setTypes(sensorTypes);
+        topologyRegistry.sensorSaved(result.getId(), result.getName(), result.getLocationCode());
+        for (SensorType sensorType : sensorTypes) {
+            topologyRegistry.sensorTypeAdded(result.getId(), sensorType.getName());
+        }
 
+        //create sensor response model and return it
         SensorResponse response = new SensorResponse();
         response.setSensorId(result.getId());
 
         return response;
     }
 
+    /**
+     * Creates many Sensors at once, optionally connecting each one to a gateway.
+     *
+     * Invalid sensors, duplicate keys and unknown gateways are reported as failures instead of failing
+     * the whole request. All distinct type names are resolved with a single query, and the remaining
+     * sensors are created with their relationships in transactions of {@value #SENSOR_BULK_CHUNK_SIZE}.
+     * If a transaction fails, its sensors are reported with {@value #SENSOR_WRITE_FAILED} and the
+     * remaining transactions still run, so the response holds every sensor that was actually created.
+     *
+     * @param sensors The sensors to create.
+     * @return A response mapping the key of every created sensor to its ID, and the per-item failures.
+     */
+    public BulkSensorResponse createSensorsInBulk(List<BulkSensorItem> sensors) {
+        BulkSensorResponse response = new BulkSensorResponse();
+        response.setReceived(sensors.size());
+
+        List<Integer> valid = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        Set<Long> gatewayIds = new HashSet<>();
+        for (int i = 0; i < sensors.size(); i++) {
+            BulkSensorItem item = sensors.get(i);
+            if (item == null || item.getKey() == null || item.getKey().isBlank()
+                    || item.getName() == null || item.getName().isBlank()
+                    || item.getLocationCode() == null || item.getLocationCode().isBlank()) {
+                response.getFailures().add(new SensorFailure(i, item == null ? null : item.getKey(),
+                        "Key, name and location code must be provided"));
+            } else if (!keys.add(item.getKey())) {
+                response.getFailures().add(new SensorFailure(i, item.getKey(), "Duplicate key"));
+            } else {
+                valid.add(i);
+                if (item.getGatewayId() != null) {
+                    gatewayIds.add(item.getGatewayId());
+                }
+            }
+        }
+
+        // Check every referenced gateway and resolve every type name once for the whole request
+        Set<Long> existingGateways = gatewayIds.isEmpty() ? Set.of() : new HashSet<>(gatewayRepository.findExistingIds(gatewayIds));
+        List<Map<String, Object>> rows = new ArrayList<>(valid.size());
+        List<Integer> rowIndexes = new ArrayList<>(valid.size());
+        Map<String, BulkSensorItem> itemsByKey = new HashMap<>();
+        Set<String> typeNames = new HashSet<>();
+        for (Integer index : valid) {
+            BulkSensorItem item = sensors.get(index);
+            if (item.getGatewayId() != null && !existingGateways.contains(item.getGatewayId())) {
+                response.getFailures().add(new SensorFailure(index, item.getKey(), "Gateway not found"));
+                continue;
+            }
+            List<String> types = new ArrayList<>();
+            if (item.getType() != null) {
+                for (String typeName : item.getType()) {
+                    if (typeName != null && !typeName.isBlank()) {
+                        types.add(typeName);
+                    }
+                }
+            }
+            typeNames.addAll(types);
+            Map<String, Object> row = new HashMap<>();
+            row.put("key", item.getKey());
+            row.put("name", item.getName());
+            row.put("locationCode", item.getLocationCode());
+            row.put("types", types);
+            row.put("gatewayId", item.getGatewayId());
+            rows.add(row);
+            rowIndexes.add(index);
+            itemsByKey.put(item.getKey(), item);
+        }
+        for (String typeName : sensorTypeDictionary.ensureStored(typeNames)) {
+            topologyRegistry.typeSaved(typeName);
+        }
+
+        for (int from = 0; from < rows.size(); from += SENSOR_BULK_CHUNK_SIZE) {
+            List<Map<String, Object>> chunk = rows.subList(from, Math.min(rows.size(), from + SENSOR_BULK_CHUNK_SIZE));
+            Map<String, Long> ids;
+            try {
+                ids = sensorProvisioningRepository.createSensors(chunk);
+            } catch (RuntimeException e) {
+                logger.error("Failed to create {} sensors of a bulk request", chunk.size(), e);
+                for (int i = 0; i < chunk.size(); i++) {
+                    response.getFailures().add(new SensorFailure(rowIndexes.get(from + i),
+                            (String) chunk.get(i).get("key"), SENSOR_WRITE_FAILED));
+                }
+                continue;
+            }
+            for (Map<String, Object> row : chunk) {
+                String key = (String) row.get("key");
+                Long sensorId = ids.get(key);
+                if (sensorId != null) {
+                    response.getSensorIds().put(key, sensorId);
+                    sensorProvisioned(sensorId, itemsByKey.get(key), (List<?>) row.get("types"));
+                }
+            }
+        }
+
+        response.getFailures().sort(Comparator.comparingInt(SensorFailure::getIndex));
+        response.setCreated(response.getSensorIds().size());
+        return response;
+    }
+
+    private void sensorProvisioned(long sensorId, BulkSensorItem item, List<?> types) {
+        topologyRegistry.sensorSaved(sensorId, item.getName(), item.getLocationCode());
+        for (Object typeName : types) {
+            topologyRegistry.sensorTypeAdded(sensorId, (String) typeName);
+        }
+        if (item.getGatewayId() != null) {
+            topologyRegistry.sensorAssigned(sensorId, item.getGatewayId());
+        }
+    }
+
     private Set<SensorType> fetchOrCreateSensorTypes(Set<String> typeNames) {
         Set<SensorType> sensorTypes = new HashSet<>();
 
         for (String typeName : typeNames) {
-            SensorType sensorType = sensorTypeRepository.findByName(typeName);
-            if (sensorType == null) {
-                sensorType = new SensorType(typeName);
-                sensorTypeRepository.save(sensorType);
-            }
-            sensorTypes.add(sensorType);
+            sensorTypes.add(findOrCreateSensorType(typeName));
         }
 
         return sensorTypes;
     }
 
     /**
-     * Fetches all Sensors.
+     * Fetches a page of Sensors ordered by ID, including their relationships.
+     *
+     * @param afterId The ID of the last Sensor of the previous page, or -1 for the first page.
+     * @param limit   The maximum number of Sensors to return.
+     * @return The Sensors of the page.
+     */
+    public List<Sensor> fetchSensors(long afterId, int limit) {
+        return loadSensors(sensorRepository.findSummariesAfter(afterId, limit));
+    }
+
+    /**
+     * Loads the full Sensors behind a list of summaries, in ID order.
+     */
+    private List<Sensor> loadSensors(List<SensorSummary> summaries) {
+        List<Long> ids = new ArrayList<>(summaries.size());
+        for (SensorSummary summary : summaries) {
+            ids.add(summary.getId());
+        }
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Sensor> sensors = new ArrayList<>(sensorRepository.findAllById(ids));
+        sensors.sort(Comparator.comparing(Sensor::getId));
+        return sensors;
+    }
+
+    /**
+     * Fetches the id, name and location code of a page of Sensors without loading their relationships.
+     *
+     * @param afterId The ID of the last Sensor of the previous page, or -1 for the first page.
+     * @param limit   The maximum number of Sensors to return.
+     * @return A list of sensor summaries ordered by ID.
+     */
+    public List<SensorSummary> fetchSensorSummaries(long afterId, int limit) {
+        if (topologyRegistry.isReady()) {
+            return topologyRegistry.sensorsAfter(afterId, limit);
+        }
+        return sensorRepository.findSummariesAfter(afterId, limit);
+    }
+
+    /**
+     * Passes the summary of every Sensor to the consumer as it is read from the database.
      *
-     * @return A set of all sensors.
+     * @return The number of sensors exported.
      */
-    public List<Sensor> fetchAllSensors() {
-        return new ArrayList<>(sensorRepository.findAll());
+    public long exportSensorSummaries(Consumer<SensorSummary> consumer) {
+        return sensorExportRepository.forEachSummary(consumer);
     }
 
     /**
@@ -103,11 +342,40 @@ public class SensorService {
      * @return A list of Sensors of the specified type.
      */
     public List<Sensor> getSensorsByType(String typeName) {
-        return sensorRepository.findSensorsByTypeName(typeName);
+        return loadSensors(getSensorSummariesByType(typeName));
+    }
+
+    /**
+     * Fetches the summaries of the Sensors of a type without loading their relationships.
+     *
+     * @param typeName The name of the sensor type to filter by.
+     * @return A list of sensor summaries ordered by ID.
+     */
+    public List<SensorSummary> getSensorSummariesByType(String typeName) {
+        if (topologyRegistry.isReady()) {
+            return topologyRegistry.sensorsOfType(typeName);
+        }
+        return sensorRepository.findSummariesByTypeName(typeName);
+    }
+
+    /**
+     * Fetches the summaries of the Sensors that have every type in {@code all} and at least one type in {@code any}.
+     * An empty list places no constraint.
+     *
+     * @param all The types a sensor must all have.
+     * @param any The types of which a sensor must have at least one.
+     * @return A list of sensor summaries ordered by ID.
+     */
+    public List<SensorSummary> getSensorSummariesByTypes(List<String> all, List<String> any) {
+        if (topologyRegistry.isReady()) {
+            return topologyRegistry.sensorsOfTypes(all, any);
+        }
+        return sensorRepository.findSummariesByTypes(all, any);
     }
 
     /**
      * Assigns a Sensor to a Gateway.
+     * The checks and the new relationship are handled by a single set-based transaction, without loading either entity.
      *
      * @param sensorId The ID of the Sensor to be assigned.
      * @param gatewayId The ID of the Gateway to assign the Sensor to.
@@ -116,19 +384,64 @@ public class SensorService {
      * @throws SensorAlreadyConnectedException if the sensor is already connected to a gateway.
      */
     public void assignSensorToGateway(Long sensorId, Long gatewayId) {
-        Sensor sensor = sensorRepository.findById(sensorId)
-                .orElseThrow(() -> new SensorNotFoundException("Sensor ID " + sensorId + " does not exist. Please create a sensor first."));
-
-        if(sensor.getGateway() != null){
-            throw  new SensorAlreadyConnectedException("Sensor ID " + sensorId + " is already connected to " + sensor.getGateway().getId());
+        GatewayAssignmentResult result = gatewayAssignmentRepository.assign(Map.of(sensorId, gatewayId), false).get(0);
+        switch (result.getOutcome()) {
+            case SENSOR_NOT_FOUND:
+                throw new SensorNotFoundException("Sensor ID " + sensorId + " does not exist. Please create a sensor first.");
+            case GATEWAY_NOT_FOUND:
+                throw new GatewayNotFoundException("Gateway ID " + gatewayId + " does not exist. Please create a Gateway first.");
+            case ALREADY_CONNECTED:
+            case UNCHANGED:
+                throw new SensorAlreadyConnectedException("Sensor ID " + sensorId + " is already connected to " + result.getPreviousGatewayId());
+            default:
+                topologyRegistry.sensorAssigned(sensorId, gatewayId);
         }
+    }
 
-        Gateway gateway = gatewayRepository.findById(gatewayId)
-                .orElseThrow(() -> new GatewayNotFoundException("Gateway ID " + gatewayId + " does not exist. Please create a Gateway first."));
+    /**
+     * Assigns many Sensors to Gateways at once, for example to move every sensor of a replaced gateway.
+     *
+     * Every sensor and gateway is checked with one query, and all connections are replaced in the same
+     * transaction, so a batch is applied completely or not at all. Sensors that are already connected to
+     * another gateway are only moved when {@code move} is set. Invalid and repeated entries are reported
+     * without reaching the database.
+     *
+     * @param assignments The sensor and gateway ID pairs.
+     * @param move Whether sensors connected to another gateway are moved.
+     * @return The outcome of every assignment, in request order.
+     */
+    public BatchGatewayAssignmentResponse assignSensorsToGateways(List<SensorGatewayRequest> assignments, boolean move) {
+        BatchGatewayAssignmentResponse response = new BatchGatewayAssignmentResponse();
+        response.setReceived(assignments.size());
 
-        //Gateway not found
-        sensor.setGateway(gateway);
-        sensorRepository.save(sensor);
+        GatewayAssignmentResult[] results = new GatewayAssignmentResult[assignments.size()];
+        Map<Long, Long> gatewayBySensor = new LinkedHashMap<>();
+        Map<Long, Integer> indexBySensor = new HashMap<>();
+        for (int i = 0; i < assignments.size(); i++) {
+            SensorGatewayRequest assignment = assignments.get(i);
+            if (assignment == null || assignment.getSensorId() == null || assignment.getGatewayId() == null) {
+                results[i] = new GatewayAssignmentResult(assignment == null ? null : assignment.getSensorId(),
+                        assignment == null ? null : assignment.getGatewayId(), null, GatewayAssignmentOutcome.INVALID);
+            } else if (indexBySensor.putIfAbsent(assignment.getSensorId(), i) != null) {
+                results[i] = new GatewayAssignmentResult(assignment.getSensorId(), assignment.getGatewayId(), null,
+                        GatewayAssignmentOutcome.DUPLICATE);
+            } else {
+                gatewayBySensor.put(assignment.getSensorId(), assignment.getGatewayId());
+            }
+        }
+
+        if (!gatewayBySensor.isEmpty()) {
+            for (GatewayAssignmentResult result : gatewayAssignmentRepository.assign(gatewayBySensor, move)) {
+                results[indexBySensor.get(result.getSensorId())] = result;
+                if (result.getOutcome() == GatewayAssignmentOutcome.ASSIGNED
+                        || result.getOutcome() == GatewayAssignmentOutcome.MOVED) {
+                    topologyRegistry.sensorAssigned(result.getSensorId(), result.getGatewayId());
+                    response.setChanged(response.getChanged() + 1);
+                }
+            }
+        }
+        response.setResults(new ArrayList<>(Arrays.asList(results)));
+        return response;
     }
 
     /**
@@ -149,9 +462,9 @@ public class SensorService {
         // Add the sensor type to the sensor's types set
         sensor.getTypes().add(sensorType);
 
-        // Save both entities to ensure the relationships are updated
+        // Save the sensor to update the relationship, the type node already exists
         sensorRepository.save(sensor);
-        sensorTypeRepository.save(sensorType);
+        topologyRegistry.sensorTypeAdded(sensorId, typeName);
     }
 
     /**
@@ -165,61 +478,724 @@ public class SensorService {
         return sensorRepository.findAllByGatewayId(gatewayId);
     }
 
+    /**
+     * Fetches the summaries of the Sensors connected to a gateway without loading their relationships.
+     *
+     * @param gatewayId The ID of the gateway.
+     * @return A list of sensor summaries ordered by ID.
+     */
+    public List<SensorSummary> getSensorSummariesByGateway(Long gatewayId) {
+        if (topologyRegistry.isReady()) {
+            return topologyRegistry.sensorsOfGateway(gatewayId);
+        }
+        return sensorRepository.findSummariesByGatewayId(gatewayId);
+    }
+
     /**
      * Retrieves the most recent readings for a specified sensor.
      * Returns a list of the latest readings for the sensor identified by the given ID.
+     * The readings are served from the last reading cache, which loads only the LastReading nodes of the
+     * sensor on a miss. Readings still waiting in the write-behind buffer take precedence over the stored ones.
      *
      * @param sensorId The ID of the sensor.
      * @return A list of LastReading objects.
      * @throws SensorNotFoundException If the sensor is not found.
      */
     public List<LastReading> getLastReadings(Long sensorId) {
-        Sensor sensor = sensorRepository.findById(sensorId)
-                .orElseThrow(() -> new SensorNotFoundException("Sensor not found"));
-        return new ArrayList<>(sensor.getLastReadings().values());
+        List<LastReading> stored = lastReadingCache.get(sensorId, this::loadLastReadings);
+        return withBuffered(stored, lastReadingBuffer.getBuffered(sensorId));
+    }
+
+    /**
+     * Replaces the stored readings of the types that have a reading in the write-behind buffer.
+     */
+    static List<LastReading> withBuffered(List<LastReading> stored, Map<String, LastReading> buffered) {
+        if (buffered.isEmpty()) {
+            return stored;
+        }
+        List<LastReading> readings = new ArrayList<>(buffered.values());
+        for (LastReading reading : stored) {
+            if (!buffered.containsKey(reading.getTypeName())) {
+                readings.add(reading);
+            }
+        }
+        return readings;
+    }
+
+    private List<LastReading> loadLastReadings(long sensorId) {
+        if (!sensorExists(sensorId)) {
+            throw new SensorNotFoundException("Sensor not found");
+        }
+        return lastReadingRepository.findLastReadings(sensorId);
+    }
+
+    /**
+     * Checks that a sensor exists without loading it.
+     *
+     * @param sensorId The ID of the sensor.
+     * @throws SensorNotFoundException If the sensor is not found.
+     */
+    public void checkSensorExists(Long sensorId) {
+        if (!sensorExists(sensorId)) {
+            throw new SensorNotFoundException("Sensor not found with ID: " + sensorId);
+        }
+    }
+
+    /**
+     * Streams the recorded readings of a sensor and type within a time range.
+     * Samples are handed to the consumer as they are decoded, so the range is never held in memory.
+     *
+     * @param sensorId The ID of the sensor.
+     * @param typeName The name of the sensor type.
+     * @param from Start of the range in epoch milliseconds, inclusive.
+     * @param to End of the range in epoch milliseconds, exclusive.
+     * @param consumer Receives each sample in the range.
+     * @return The number of samples passed to the consumer.
+     */
+    public long streamReadingHistory(Long sensorId, String typeName, long from, long to, SampleConsumer consumer) {
+        int typeCode = sensorTypeDictionary.find(typeName);
+        if (typeCode == SensorTypeDictionary.UNKNOWN) {
+            return 0;
+        }
+        return readingHistoryStore.scan(sensorId, typeCode, from, to, consumer);
+    }
+
+    /**
+     * Returns the min/max/avg/count/last aggregates of a sensor and type within a time range.
+     * The coarsest maintained resolution that fits the step and still covers {@code from} is used and merged
+     * into buckets of the step. If the range starts before the retained rollups, the response says where they start.
+     *
+     * @param sensorId The ID of the sensor.
+     * @param typeName The name of the sensor type.
+     * @param from Start of the range in epoch milliseconds, inclusive.
+     * @param to End of the range in epoch milliseconds, exclusive.
+     * @param stepMillis The width of the returned buckets in milliseconds.
+     * @return The aggregates, oldest bucket first.
+     */
+    public RollupResponse getReadingRollups(Long sensorId, String typeName, long from, long to, long stepMillis) {
+        int typeCode = sensorTypeDictionary.find(typeName);
+        RollupResponse response;
+        if (typeCode == SensorTypeDictionary.UNKNOWN) {
+            response = new RollupResponse();
+            response.setResolution(rollupStore.resolutionFor(stepMillis));
+            response.setStepMillis(stepMillis);
+        } else {
+            response = rollupStore.query(sensorId, typeCode, from, to, stepMillis);
+        }
+        response.setSensorId(sensorId);
+        response.setType(typeName);
+        return response;
+    }
+
+    /**
+     * Adds or updates the most recent reading for a specific sensor, stamped with the current time.
+     *
+     * @see #addOrUpdateReading(Long, String, Double, LocalDateTime, Long)
+     */
+    public void addOrUpdateReading(Long sensorId, String typeName, Double reading) {
+        addOrUpdateReading(sensorId, typeName, reading, null, null);
     }
 
     /**
      * Adds or updates the most recent reading for a specific sensor.
      *
-     * Creates or updates a LastReading for the given sensor ID and type name.
+     * Creates or updates a LastReading for the given sensor ID and type name with a single statement
+     * that leaves the other readings and relationships of the sensor untouched.
+     * When the write-behind buffer is enabled the reading is only buffered and written on the next flush.
+     * Every accepted reading is also appended to the reading history and its rollups and written through
+     * to the last reading cache. With the reading WAL enabled the reading is logged first, so it can be
+     * replayed if the process dies before it reaches the database. The sensor is checked before that, so
+     * readings of unknown sensors are not logged.
+     *
+     * A reading older than the last reading of its sensor and type only goes to the history and rollups.
+     * A reading already accepted with the same sequence number, or the same device timestamp, is dropped;
+     * of two concurrent calls with the same reading only one writes it. A timestamp further ahead of the server
+     * clock than {@code sensors.readings.max-clock-skew-ms} is rejected.
      *
      * @param sensorId The ID of the sensor.
      * @param typeName The name of the sensor type.
      * @param reading The reading value to add or update.
+     * @param timestamp When the device took the reading, or null to stamp it with the current time.
+     * @param sequence The sequence number the device gave the reading, or null.
      * @throws SensorNotFoundException If the sensor is not found.
      * @throws SensorTypeNotFoundException If the sensor type is not found.
+     * @throws InvalidRequestException If the timestamp is ahead of the server clock.
      */
-    public void addOrUpdateReading(Long sensorId, String typeName, Double reading) {
-        // Find the sensor
-        LastReading lastReading = new LastReading(LocalDateTime.now(),reading);
-        Sensor sensor = sensorRepository.findById(sensorId)
-                .orElseThrow(() -> new SensorNotFoundException("Sensor not found"));
+    public void addOrUpdateReading(Long sensorId, String typeName, Double reading, LocalDateTime timestamp, Long sequence) {
+        AdmittedReading admitted = admitReading(sensorId, typeName, reading, timestamp, sequence);
+        if (admitted == null) {
+            return;
+        }
+        boolean accepted = false;
+        try {
+            writeReading(admitted);
+            accepted = true;
+        } finally {
+            if (!accepted) {
+                releaseReading(admitted);
+            }
+        }
+    }
 
-        // Find the sensor type ir create new sensor type if it does not exist
-        SensorType sensorType = findOrCreateSensorType(typeName);
+    /**
+     * Checks a single reading and reserves it against the watermark of its series. The reservation is
+     * released through {@link #releaseReading} if the reading is not accepted after all.
+     *
+     * @return The reserved reading, or null if it repeats a reading already accepted.
+     * @throws InvalidRequestException If the timestamp is ahead of the server clock.
+     */
+    AdmittedReading admitReading(Long sensorId, String typeName, Double reading, LocalDateTime timestamp, Long sequence) {
+        if (sensorId == null) {
+            throw new SensorNotFoundException("Sensor not found");
+        }
+        if (typeName == null) {
+            throw new SensorTypeNotFoundException("Sensor type not found");
+        }
+        LocalDateTime takenAt = timestamp != null ? timestamp : LocalDateTime.now();
+        long epochMillis = epochMillis(takenAt);
+        if (timestamp != null && readingWatermarks.isAhead(epochMillis)) {
+            throw new InvalidRequestException(TIMESTAMP_AHEAD);
+        }
+        long sequenceNumber = sequence != null ? sequence : ReadingWatermarks.NO_SEQUENCE;
+        // A type is only assigned a code once a reading of a known sensor is accepted, a new type has no watermark yet
+        int reservedCode = sensorTypeDictionary.find(typeName);
+        ReadingWatermarks.Outcome outcome = reservedCode == SensorTypeDictionary.UNKNOWN
+                ? ReadingWatermarks.Outcome.NEWER
+                : readingWatermarks.reserve(sensorId, reservedCode, epochMillis, sequenceNumber, timestamp != null);
+        if (outcome == ReadingWatermarks.Outcome.DUPLICATE) {
+            return null;
+        }
+        return new AdmittedReading(sensorId, typeName, reading, takenAt, sequenceNumber, timestamp != null,
+                reservedCode, outcome);
+    }
+
+    /**
+     * @return Whether the sensor of a reading must be checked before the reading is logged or buffered.
+     * Only a known series has a watermark, so a late reading's sensor exists.
+     */
+    boolean mustCheckSensor(AdmittedReading admitted) {
+        return !admitted.isLate() && (lastReadingBuffer.isEnabled() || readingWal.isEnabled());
+    }
 
-        // Update or create the reading
-        sensor.addReading(sensorType, lastReading);
+    private void writeReading(AdmittedReading admitted) {
+        if (mustCheckSensor(admitted) && !sensorExists(admitted.sensorId)) {
+            throw new SensorNotFoundException("Sensor not found");
+        }
 
-        // Save the updated sensor
-        sensorRepository.save(sensor);
+        int walTicket = readingWal.append(admitted.sensorId, admitted.typeName, admitted.takenAt, admitted.reading);
+        try {
+            if (admitted.isLate()) {
+                acceptLateReading(admitted);
+            } else if (lastReadingBuffer.isEnabled()) {
+                sensorTypeDictionary.ensureStored(admitted.typeName);
+                bufferReading(admitted);
+            } else {
+                // Upsert only the reading of this type, in a single statement
+                if (sensorRepository.upsertLastReading(admitted.sensorId, admitted.typeName, admitted.takenAt, admitted.reading) == 0) {
+                    throw new SensorNotFoundException("Sensor not found");
+                }
+                sensorTypeDictionary.ensureStored(admitted.typeName);
+                acceptReading(admitted);
+            }
+        } finally {
+            readingWal.handedOff(walTicket);
+        }
+    }
+
+    /**
+     * Accepts a reading older than the last reading of its series, which only goes to the history and rollups.
+     */
+    void acceptLateReading(AdmittedReading admitted) {
+        appendHistory(admitted.sensorId, admitted.reservedCode, admitted.epochMillis, admitted.reading);
+        readingWatermarks.record(admitted.sensorId, admitted.reservedCode, admitted.epochMillis, admitted.sequence,
+                admitted.deviceTimestamp);
+    }
+
+    /**
+     * Hands a reading of a known sensor to the write-behind buffer and accepts it.
+     * The type of the reading must be stored.
+     */
+    void bufferReading(AdmittedReading admitted) {
+        lastReadingBuffer.put(admitted.sensorId, sensorTypeDictionary.code(admitted.typeName), admitted.takenAt, admitted.reading);
+        acceptReading(admitted);
+    }
+
+    /**
+     * Accepts a reading written to the database or the write-behind buffer, recording it in the history, rollups,
+     * cache and watermarks. The type of the reading must be stored.
+     */
+    void acceptReading(AdmittedReading admitted) {
+        int typeCode = sensorTypeDictionary.code(admitted.typeName);
+        recordReading(admitted.sensorId, typeCode, admitted.takenAt, admitted.reading);
+        readingWatermarks.record(admitted.sensorId, typeCode, admitted.epochMillis, admitted.sequence, admitted.deviceTimestamp);
+    }
+
+    /**
+     * Releases the reservation of a reading that was not accepted, so a retry of it is not taken for a duplicate.
+     */
+    void releaseReading(AdmittedReading admitted) {
+        if (admitted.reservedCode != SensorTypeDictionary.UNKNOWN) {
+            readingWatermarks.release(admitted.sensorId, admitted.reservedCode, admitted.epochMillis, admitted.sequence,
+                    admitted.deviceTimestamp);
+        }
+    }
+
+    /**
+     * Adds or updates the most recent readings for many sensors at once.
+     *
+     * Invalid readings and readings for unknown sensors are reported as failures instead of
+     * failing the whole batch. Readings without a timestamp are stamped with the time the batch is received,
+     * and timestamps further ahead of the server clock than {@code sensors.readings.max-clock-skew-ms} are failures.
+     * When a batch holds several readings for the same sensor and type, only the newest one is written. The remaining readings are written in chunks of
+     * {@value #READING_BATCH_CHUNK_SIZE} with a single UNWIND statement per chunk, or handed to the
+     * write-behind buffer after a single existence check when it is enabled.
+     *
+     * Readings older than the last reading of their sensor and type only go to the history and rollups.
+     * Readings already accepted with the same sequence number, or the same device timestamp, earlier in the
+     * batch, by an earlier call or by a concurrent one, are counted as accepted and as duplicates without
+     * being written.
+     *
+     * With the reading WAL enabled the readings to be written are logged first, with one force for the
+     * batch. When they are buffered, only the readings of known sensors are logged.
+     *
+     * @param readings The readings to add or update.
+     * @return A response holding the number of accepted readings and the per-item failures.
+     */
+    public BatchReadingResponse addOrUpdateReadings(List<ReadingRequest> readings) {
+        return addOrUpdateReadings(readings, true);
+    }
+
+    /**
+     * Adds or updates the most recent readings for many sensors at once.
+     *
+     * @param readings The readings to add or update.
+     * @param log False for readings that are already in the reading WAL, because they were logged by the
+     *            caller or are being replayed from it.
+     * @return A response holding the number of accepted readings and the per-item failures.
+     * @see #addOrUpdateReadings(List)
+     */
+    public BatchReadingResponse addOrUpdateReadings(List<ReadingRequest> readings, boolean log) {
+        AdmittedBatch batch = admitReadings(readings);
+
+        // Write or buffer the rows and collect the sensors that were actually found
+        boolean logged = log && readingWal.isEnabled();
+        Set<Long> written;
+        try {
+            if (lastReadingBuffer.isEnabled()) {
+                written = bufferReadings(batch.rows.values(), batch.indexesBySensor.keySet(), logged);
+            } else {
+                int[] walTickets = logged ? readingWal.append(walRecords(batch.rows.values())) : null;
+                try {
+                    written = writeReadings(batch.rows.values());
+                } finally {
+                    if (walTickets != null) {
+                        readingWal.handedOff(walTickets);
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            releaseReadings(batch);
+            throw e;
+        }
+        return acceptReadings(batch, written);
+    }
+
+    /**
+     * Checks the readings of a batch and reserves them against the watermarks of their series, keeping the newest
+     * reading per (sensor, type) as the row to write. Invalid readings are reported as failures of the batch.
+     * The reservations are released through {@link #releaseReadings} if the rows cannot be written.
+     */
+    AdmittedBatch admitReadings(List<ReadingRequest> readings) {
+        BatchReadingResponse response = new BatchReadingResponse();
+        response.setReceived(readings.size());
+
+        // Keep the newest reading per (sensor, type) and remember which batch positions it stands for
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        Map<Long, List<Integer>> indexesBySensor = new HashMap<>();
+        List<Integer> late = new ArrayList<>();
+        // readings of the batch that a device identified, and those reserved against the watermarks
+        Set<String> identified = new HashSet<>();
+        boolean[] reserved = new boolean[readings.size()];
+        int duplicates = 0;
+        for (int i = 0; i < readings.size(); i++) {
+            ReadingRequest request = readings.get(i);
+            if (request == null || request.getSensorId() == null || request.getReading() == null
+                    || request.getSensorType() == null || request.getSensorType().isBlank()) {
+                response.getFailures().add(failure(i, request, "Sensor ID, sensor type and reading must be provided"));
+                continue;
+            }
+            LocalDateTime timestamp = timestampOf(request, now);
+            if (request.getTimestamp() != null && readingWatermarks.isAhead(epochMillis(timestamp))) {
+                response.getFailures().add(failure(i, request, TIMESTAMP_AHEAD));
+                continue;
+            }
+            String identity = identityOf(request, timestamp);
+            if (identity != null && !identified.add(identity)) {
+                duplicates++;
+                continue;
+            }
+            // The type is assigned a code below, once its sensor is known
+            int typeCode = sensorTypeDictionary.find(request.getSensorType());
+            ReadingWatermarks.Outcome outcome = typeCode == SensorTypeDictionary.UNKNOWN
+                    ? ReadingWatermarks.Outcome.NEWER
+                    : readingWatermarks.reserve(request.getSensorId(), typeCode, epochMillis(timestamp),
+                    sequenceOf(request), isDeviceTimestamp(request));
+            if (outcome == ReadingWatermarks.Outcome.DUPLICATE) {
+                duplicates++;
+                continue;
+            }
+            reserved[i] = typeCode != SensorTypeDictionary.UNKNOWN;
+            if (outcome == ReadingWatermarks.Outcome.LATE) {
+                late.add(i);
+                continue;
+            }
+            Map<String, Object> row = new HashMap<>();
+            row.put("sensorId", request.getSensorId());
+            row.put("sensorType", request.getSensorType());
+            row.put("timestamp", timestamp);
+            row.put("reading", request.getReading());
+            rows.merge(request.getSensorId() + ":" + request.getSensorType(), row,
+                    (previous, next) -> timestamp.isBefore((LocalDateTime) previous.get("timestamp")) ? previous : next);
+            indexesBySensor.computeIfAbsent(request.getSensorId(), id -> new ArrayList<>()).add(i);
+        }
+        return new AdmittedBatch(readings, now, response, rows, indexesBySensor, late, reserved, duplicates);
+    }
+
+    /**
+     * Accepts the readings of a batch once its rows are written or buffered, and completes its response.
+     *
+     * @param written The sensors whose rows were written or buffered; the readings of other sensors are failures.
+     */
+    BatchReadingResponse acceptReadings(AdmittedBatch batch, Set<Long> written) {
+        List<ReadingRequest> readings = batch.readings;
+        BatchReadingResponse response = batch.response;
+
+        // Every valid reading of a known sensor goes to the history, rollups and cache, including the coalesced ones
+        for (Map.Entry<Long, List<Integer>> entry : batch.indexesBySensor.entrySet()) {
+            if (written.contains(entry.getKey())) {
+                for (Integer index : entry.getValue()) {
+                    ReadingRequest request = readings.get(index);
+                    sensorTypeDictionary.ensureStored(request.getSensorType());
+                    int typeCode = sensorTypeDictionary.code(request.getSensorType());
+                    LocalDateTime timestamp = timestampOf(request, batch.now);
+                    recordReading(request.getSensorId(), typeCode, timestamp, request.getReading());
+                    readingWatermarks.record(request.getSensorId(), typeCode, epochMillis(timestamp),
+                            sequenceOf(request), isDeviceTimestamp(request));
+                }
+            }
+        }
+
+        // Late readings belong to series with a watermark, so their sensors exist
+        for (Integer index : batch.late) {
+            ReadingRequest request = readings.get(index);
+            int typeCode = sensorTypeDictionary.code(request.getSensorType());
+            long epochMillis = epochMillis(timestampOf(request, batch.now));
+            appendHistory(request.getSensorId(), typeCode, epochMillis, request.getReading());
+            readingWatermarks.record(request.getSensorId(), typeCode, epochMillis, sequenceOf(request), isDeviceTimestamp(request));
+        }
+
+        int accepted = batch.late.size() + batch.duplicates;
+        for (Map.Entry<Long, List<Integer>> entry : batch.indexesBySensor.entrySet()) {
+            if (written.contains(entry.getKey())) {
+                accepted += entry.getValue().size();
+                continue;
+            }
+            for (Integer index : entry.getValue()) {
+                release(readings.get(index), batch.reserved[index], batch.now);
+                response.getFailures().add(failure(index, readings.get(index), "Sensor not found"));
+            }
+        }
+        response.getFailures().sort(Comparator.comparingInt(ReadingFailure::getIndex));
+        response.setAccepted(accepted);
+        response.setDuplicates(batch.duplicates);
+        return response;
+    }
+
+    /**
+     * Releases the reservations of a batch whose rows could not be written. Nothing was accepted, so a retry
+     * of the batch must not find its readings reserved.
+     */
+    void releaseReadings(AdmittedBatch batch) {
+        for (int i = 0; i < batch.reserved.length; i++) {
+            release(batch.readings.get(i), batch.reserved[i], batch.now);
+        }
+    }
+
+    private void release(ReadingRequest request, boolean reserved, LocalDateTime now) {
+        if (reserved) {
+            readingWatermarks.release(request.getSensorId(), sensorTypeDictionary.find(request.getSensorType()),
+                    epochMillis(timestampOf(request, now)), sequenceOf(request), isDeviceTimestamp(request));
+        }
+    }
+
+    private Set<Long> writeReadings(Collection<Map<String, Object>> rows) {
+        Set<Long> written = new HashSet<>();
+        for (List<Map<String, Object>> chunk : chunks(rows)) {
+            written.addAll(sensorRepository.upsertLastReadings(chunk));
+        }
+        return written;
+    }
+
+    /**
+     * Splits the rows of a batch into the chunks written with one statement each.
+     */
+    static List<List<Map<String, Object>>> chunks(Collection<Map<String, Object>> rows) {
+        List<List<Map<String, Object>>> chunks = new ArrayList<>();
+        List<Map<String, Object>> chunk = new ArrayList<>(Math.min(rows.size(), READING_BATCH_CHUNK_SIZE));
+        for (Map<String, Object> row : rows) {
+            chunk.add(row);
+            if (chunk.size() == READING_BATCH_CHUNK_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(READING_BATCH_CHUNK_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    private Set<Long> bufferReadings(Collection<Map<String, Object>> rows, Set<Long> sensorIds, boolean logged) {
+        if (sensorIds.isEmpty()) {
+            return Set.of();
+        }
+        Set<Long> existing = new HashSet<>();
+        Set<Long> unknown = unregisteredSensors(sensorIds, existing);
+        if (!unknown.isEmpty()) {
+            existing.addAll(sensorRepository.findExistingIds(unknown));
+        }
+        List<Map<String, Object>> buffered = rowsOf(rows, existing);
+        int[] walTickets = logged ? readingWal.append(walRecords(buffered)) : null;
+        try {
+            bufferRows(buffered);
+        } finally {
+            if (walTickets != null) {
+                readingWal.handedOff(walTickets);
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Adds the sensors the topology registry knows to {@code existing}.
+     *
+     * @return The other sensors, left to look up in the database.
+     */
+    Set<Long> unregisteredSensors(Set<Long> sensorIds, Set<Long> existing) {
+        if (!topologyRegistry.isReady()) {
+            return sensorIds;
+        }
+        Set<Long> unknown = new HashSet<>();
+        for (Long sensorId : sensorIds) {
+            (topologyRegistry.containsSensor(sensorId) ? existing : unknown).add(sensorId);
+        }
+        return unknown;
+    }
+
+    /**
+     * @return The rows of the given sensors.
+     */
+    static List<Map<String, Object>> rowsOf(Collection<Map<String, Object>> rows, Set<Long> sensorIds) {
+        List<Map<String, Object>> selected = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            if (sensorIds.contains((Long) row.get("sensorId"))) {
+                selected.add(row);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Hands rows of known sensors to the write-behind buffer.
+     */
+    void bufferRows(List<Map<String, Object>> rows) {
+        for (Map<String, Object> row : rows) {
+            lastReadingBuffer.put((Long) row.get("sensorId"), sensorTypeDictionary.code((String) row.get("sensorType")),
+                    (LocalDateTime) row.get("timestamp"), (Double) row.get("reading"));
+        }
+    }
+
+    static List<ReadingRequest> walRecords(Collection<Map<String, Object>> rows) {
+        List<ReadingRequest> records = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            ReadingRequest record = new ReadingRequest();
+            record.setSensorId((Long) row.get("sensorId"));
+            record.setSensorType((String) row.get("sensorType"));
+            record.setTimestamp((LocalDateTime) row.get("timestamp"));
+            record.setReading((Double) row.get("reading"));
+            records.add(record);
+        }
+        return records;
+    }
+
+    /**
+     * Checks the topology registry first and asks the database only for sensors the registry does not know,
+     * since they may have been created by another instance since the last reconciliation.
+     */
+    private boolean sensorExists(Long sensorId) {
+        return (topologyRegistry.isReady() && topologyRegistry.containsSensor(sensorId))
+                || sensorRepository.existsById(sensorId);
+    }
+
+    /**
+     * Appends an accepted reading to the history and rollups and writes it through to the last reading cache.
+     */
+    private void recordReading(Long sensorId, int typeCode, LocalDateTime timestamp, Double reading) {
+        appendHistory(sensorId, typeCode, epochMillis(timestamp), reading);
+        lastReadingCache.update(sensorId, typeCode, timestamp, reading);
+    }
+
+    private void appendHistory(Long sensorId, int typeCode, long epochMillis, Double reading) {
+        ingestedReadings.increment(typeCode);
+        // The history and rollups hold numbers only, a missing reading is kept as the last reading alone
+        if (reading == null) {
+            return;
+        }
+        readingHistoryStore.append(sensorId, typeCode, epochMillis, reading);
+        rollupStore.add(sensorId, typeCode, epochMillis, reading);
+    }
+
+    private static long epochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static long sequenceOf(ReadingRequest request) {
+        return request.getSequence() != null ? request.getSequence() : ReadingWatermarks.NO_SEQUENCE;
+    }
+
+    private static LocalDateTime timestampOf(ReadingRequest request, LocalDateTime now) {
+        return request.getTimestamp() != null ? request.getTimestamp() : now;
+    }
+
+    /**
+     * Readings stamped on arrival may share a millisecond without being retries, so only device timestamps dedup.
+     *
+     * @return The key two readings share when one repeats the other, like the duplicate check of
+     * {@link ReadingWatermarks}, or null for a reading stamped on arrival without a sequence number.
+     */
+    private static String identityOf(ReadingRequest request, LocalDateTime timestamp) {
+        String series = request.getSensorId() + ":" + request.getSensorType();
+        if (request.getSequence() != null) {
+            return series + ":s" + request.getSequence();
+        }
+        return isDeviceTimestamp(request) ? series + ":t" + epochMillis(timestamp) : null;
+    }
+
+    private static boolean isDeviceTimestamp(ReadingRequest request) {
+        return request.getTimestamp() != null && !request.isStampedOnArrival();
+    }
+
+    private ReadingFailure failure(int index, ReadingRequest request, String reason) {
+        return request == null
+                ? new ReadingFailure(index, null, null, reason)
+                : new ReadingFailure(index, request.getSensorId(), request.getSensorType(), reason);
     }
 
     /**
      * Finds an existing SensorType by name or creates a new one if it doesn't exist.
-     * Checks the repository for the sensor type with the given name and creates it if absent.
+     * The type dictionary merges the type node the first time the name is used and answers from memory afterwards.
      *
      * @param typeName The name of the sensor type.
      * @return The existing or newly created SensorType.
      */
     private SensorType findOrCreateSensorType(String typeName) {
-        // Find the sensor type or create a new one if it doesn't exist
-        SensorType sensorType = sensorTypeRepository.findByName(typeName);
-        if (sensorType == null) {
-            sensorType = new SensorType(typeName);
-            sensorTypeRepository.save(sensorType);
+        if (sensorTypeDictionary.ensureStored(typeName)) {
+            topologyRegistry.typeSaved(typeName);
+        }
+        return new SensorType(typeName);
+    }
+
+    /**
+     * A single reading reserved against the watermark of its series, see {@link #admitReading}.
+     */
+    static final class AdmittedReading {
+
+        final Long sensorId;
+
+        final String typeName;
+
+        final Double reading;
+
+        final LocalDateTime takenAt;
+
+        final long epochMillis;
+
+        final long sequence;
+
+        final boolean deviceTimestamp;
+
+        // the code the type had when the reading was reserved, UNKNOWN for a new type
+        final int reservedCode;
+
+        final ReadingWatermarks.Outcome outcome;
+
+        AdmittedReading(Long sensorId, String typeName, Double reading, LocalDateTime takenAt, long sequence,
+                        boolean deviceTimestamp, int reservedCode, ReadingWatermarks.Outcome outcome) {
+            this.sensorId = sensorId;
+            this.typeName = typeName;
+            this.reading = reading;
+            this.takenAt = takenAt;
+            this.epochMillis = epochMillis(takenAt);
+            this.sequence = sequence;
+            this.deviceTimestamp = deviceTimestamp;
+            this.reservedCode = reservedCode;
+            this.outcome = outcome;
+        }
+
+        boolean isLate() {
+            return outcome == ReadingWatermarks.Outcome.LATE;
+        }
+    }
+
+    /**
+     * The readings of a batch reserved against the watermarks of their series, see {@link #admitReadings}.
+     */
+    static final class AdmittedBatch {
+
+        final List<ReadingRequest> readings;
+
+        // the time readings without a timestamp are stamped with
+        final LocalDateTime now;
+
+        final BatchReadingResponse response;
+
+        // the newest reading per (sensor, type), to be written
+        final Map<String, Map<String, Object>> rows;
+
+        // the batch positions of the readings each sensor's rows stand for
+        final Map<Long, List<Integer>> indexesBySensor;
+
+        final List<Integer> late;
+
+        final boolean[] reserved;
+
+        final int duplicates;
+
+        AdmittedBatch(List<ReadingRequest> readings, LocalDateTime now, BatchReadingResponse response,
+                      Map<String, Map<String, Object>> rows, Map<Long, List<Integer>> indexesBySensor,
+                      List<Integer> late, boolean[] reserved, int duplicates) {
+            this.readings = readings;
+            this.now = now;
+            this.response = response;
+            this.rows = rows;
+            this.indexesBySensor = indexesBySensor;
+            this.late = late;
+            this.reserved = reserved;
+            this.duplicates = duplicates;
+        }
+
+        /**
+         * @return The types of the rows of the given sensors.
+         */
+        Set<String> typesOf(Set<Long> sensorIds) {
+            Set<String> types = new HashSet<>();
+            for (Map<String, Object> row : rows.values()) {
+                if (sensorIds.contains((Long) row.get("sensorId"))) {
+                    types.add((String) row.get("sensorType"));
+                }
+            }
+            return types;
         }
-        return sensorType;
     }
 }
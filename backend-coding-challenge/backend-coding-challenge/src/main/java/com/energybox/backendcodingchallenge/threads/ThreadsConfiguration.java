@@ -0,0 +1,29 @@
+package com.energybox.backendcodingchallenge.threads;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Platform worker threads, used unless {@code sensors.threads.virtual} is set. Virtual threads are
+ * configured by {@code VirtualThreadConfiguration}, which is only compiled by the {@code jdk21} profile.
+ */
+@Configuration(proxyBeanMethods = false)
+public class ThreadsConfiguration {
+
+    static final String VIRTUAL_PROPERTY = "sensors.threads.virtual";
+
+    @Bean
+    @ConditionalOnProperty(name = VIRTUAL_PROPERTY, havingValue = "false", matchIfMissing = true)
+    public WorkerThreads platformWorkerThreads() {
+        return WorkerThreads.platform();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = VIRTUAL_PROPERTY, havingValue = "true")
+    @ConditionalOnMissingClass("com.energybox.backendcodingchallenge.threads.VirtualThreadConfiguration")
+    public WorkerThreads unsupportedWorkerThreads() {
+        throw new IllegalStateException(VIRTUAL_PROPERTY + " needs a build with the jdk21 Maven profile running on JDK 21");
+    }
+}
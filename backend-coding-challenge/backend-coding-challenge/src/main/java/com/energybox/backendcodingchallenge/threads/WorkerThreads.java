@@ -0,0 +1,36 @@
+package com.energybox.backendcodingchallenge.threads;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the background threads of the application: ingest partitions, the write-behind flusher,
+ * the WAL checkpointer, the topology reconciler and file imports.
+ *
+ * The bean is backed by daemon platform threads unless {@code sensors.threads.virtual} is set, in which
+ * case a build with the {@code jdk21} profile backs it with virtual threads. The WAL syncer and the history
+ * sealer are not created here; they spend their time in file writes and fsync, which hold on to their carrier
+ * thread either way.
+ */
+@FunctionalInterface
+public interface WorkerThreads {
+
+    /**
+     * @return An unstarted daemon thread running the task.
+     */
+    Thread newThread(String name, Runnable task);
+
+    /**
+     * @return A factory for executors whose threads all carry the same name.
+     */
+    default ThreadFactory factory(String name) {
+        return task -> newThread(name, task);
+    }
+
+    static WorkerThreads platform() {
+        return (name, task) -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
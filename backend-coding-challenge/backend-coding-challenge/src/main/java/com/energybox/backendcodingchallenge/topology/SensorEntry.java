@@ -0,0 +1,17 @@
+package com.energybox.backendcodingchallenge.topology;
+
+import lombok.Data;
+
+import java.util.Set;
+
+/**
+ * A sensor with its gateway and type names, as compared between the registry and the database.
+ */
+@Data
+final class SensorEntry {
+    private final long id;
+    private final String name;
+    private final String locationCode;
+    private final Long gatewayId;
+    private final Set<String> types;
+}
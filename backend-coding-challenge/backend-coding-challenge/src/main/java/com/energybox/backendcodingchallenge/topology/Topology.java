@@ -0,0 +1,556 @@
+package com.energybox.backendcodingchallenge.topology;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import com.energybox.backendcodingchallenge.util.LongIntHashMap;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Sensors, gateways and sensor types held in slot-indexed primitive arrays.
+ *
+ * Sensors and gateways get a slot in insertion order; node ids are mapped to slots by a
+ * {@link LongIntHashMap}. The sensors of a gateway form a linked list through {@code nextInGateway}.
+ *
+ * Types are indexed by their {@link SensorTypeDictionary} code. Each type has a {@link RoaringBitmap}
+ * of its sensor slots and one of the gateway slots with at least one sensor of that type, so multi-type
+ * AND/OR queries are bitmap intersections and unions. The gateway bitmaps are kept exact by counting
+ * the sensors of each type per gateway. Entries are never removed: a reconciliation builds a new
+ * instance instead.
+ */
+final class Topology {
+
+    static final int NONE = -1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int sensorCount;
+
+    private long[] sensorIds;
+
+    private String[] sensorNames;
+
+    private String[] sensorLocations;
+
+    // gateway slot of each sensor, NONE when unassigned
+    private int[] sensorGateway;
+
+    // next sensor slot on the same gateway, NONE at the end of the list
+    private int[] nextInGateway;
+
+    private final LongIntHashMap sensorSlots;
+
+    private final SortedIds sortedSensorIds;
+
+    private int gatewayCount;
+
+    private long[] gatewayIds;
+
+    private String[] gatewayNames;
+
+    private int[] firstSensorOfGateway;
+
+    private final LongIntHashMap gatewaySlots;
+
+    private final SortedIds sortedGatewayIds;
+
+    private final SensorTypeDictionary dictionary;
+
+    private int typeCount;
+
+    // indexed by type code, null for the codes of types this topology has not seen
+    private final List<RoaringBitmap> sensorsOfType = new ArrayList<>();
+
+    private final List<RoaringBitmap> gatewaysOfType = new ArrayList<>();
+
+    // (type code << 32 | gateway slot) -> number of sensors of the type on the gateway
+    private final LongIntHashMap typeCountPerGateway = new LongIntHashMap(1024);
+
+    Topology(SensorTypeDictionary dictionary, int expectedSensors, int expectedGateways) {
+        this.dictionary = dictionary;
+        int sensorCapacity = Math.max(16, expectedSensors);
+        int gatewayCapacity = Math.max(16, expectedGateways);
+        sensorIds = new long[sensorCapacity];
+        sensorNames = new String[sensorCapacity];
+        sensorLocations = new String[sensorCapacity];
+        sensorGateway = new int[sensorCapacity];
+        nextInGateway = new int[sensorCapacity];
+        sensorSlots = new LongIntHashMap(sensorCapacity);
+        sortedSensorIds = new SortedIds(sensorCapacity);
+        gatewayIds = new long[gatewayCapacity];
+        gatewayNames = new String[gatewayCapacity];
+        firstSensorOfGateway = new int[gatewayCapacity];
+        gatewaySlots = new LongIntHashMap(gatewayCapacity);
+        sortedGatewayIds = new SortedIds(gatewayCapacity);
+    }
+
+    // ---- writes ----
+
+    void putSensor(long id, String name, String locationCode) {
+        lock.writeLock().lock();
+        try {
+            int slot = sensorSlots.get(id);
+            if (slot == LongIntHashMap.MISSING) {
+                slot = sensorCount++;
+                if (slot == sensorIds.length) {
+                    growSensors();
+                }
+                sensorIds[slot] = id;
+                sensorGateway[slot] = NONE;
+                nextInGateway[slot] = NONE;
+                sensorSlots.put(id, slot);
+                sortedSensorIds.add(id);
+            }
+            sensorNames[slot] = name;
+            sensorLocations[slot] = locationCode;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putGateway(long id, String name) {
+        lock.writeLock().lock();
+        try {
+            int slot = gatewaySlots.get(id);
+            if (slot == LongIntHashMap.MISSING) {
+                slot = gatewayCount++;
+                if (slot == gatewayIds.length) {
+                    growGateways();
+                }
+                gatewayIds[slot] = id;
+                firstSensorOfGateway[slot] = NONE;
+                gatewaySlots.put(id, slot);
+                sortedGatewayIds.add(id);
+            }
+            gatewayNames[slot] = name;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void putType(String typeName) {
+        lock.writeLock().lock();
+        try {
+            typeSlot(typeName);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return false if the sensor is unknown.
+     */
+    boolean addSensorType(long sensorId, String typeName) {
+        lock.writeLock().lock();
+        try {
+            int slot = sensorSlots.get(sensorId);
+            if (slot == LongIntHashMap.MISSING) {
+                return false;
+            }
+            int type = typeSlot(typeName);
+            if (sensorsOfType.get(type).checkedAdd(slot) && sensorGateway[slot] != NONE) {
+                countTypeOnGateway(type, sensorGateway[slot], 1);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Connects a sensor to a gateway, moving it off its previous gateway.
+     *
+     * @return false if the sensor or gateway is unknown.
+     */
+    boolean assignGateway(long sensorId, long gatewayId) {
+        lock.writeLock().lock();
+        try {
+            int sensor = sensorSlots.get(sensorId);
+            int gateway = gatewaySlots.get(gatewayId);
+            if (sensor == LongIntHashMap.MISSING || gateway == LongIntHashMap.MISSING) {
+                return false;
+            }
+            int previous = sensorGateway[sensor];
+            if (previous == gateway) {
+                return true;
+            }
+            if (previous != NONE) {
+                unlink(sensor, previous);
+            }
+            sensorGateway[sensor] = gateway;
+            nextInGateway[sensor] = firstSensorOfGateway[gateway];
+            firstSensorOfGateway[gateway] = sensor;
+            for (int type = 0; type < sensorsOfType.size(); type++) {
+                if (sensorsOfType.get(type) != null && sensorsOfType.get(type).contains(sensor)) {
+                    if (previous != NONE) {
+                        countTypeOnGateway(type, previous, -1);
+                    }
+                    countTypeOnGateway(type, gateway, 1);
+                }
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void unlink(int sensor, int gateway) {
+        if (firstSensorOfGateway[gateway] == sensor) {
+            firstSensorOfGateway[gateway] = nextInGateway[sensor];
+        } else {
+            int current = firstSensorOfGateway[gateway];
+            while (nextInGateway[current] != sensor) {
+                current = nextInGateway[current];
+            }
+            nextInGateway[current] = nextInGateway[sensor];
+        }
+        nextInGateway[sensor] = NONE;
+    }
+
+    private void countTypeOnGateway(int type, int gateway, int delta) {
+        long key = ((long) type << 32) | gateway;
+        int count = Math.max(0, typeCountPerGateway.get(key)) + delta;
+        typeCountPerGateway.put(key, count);
+        if (count == 0) {
+            gatewaysOfType.get(type).remove(gateway);
+        } else if (count == 1 && delta > 0) {
+            gatewaysOfType.get(type).add(gateway);
+        }
+    }
+
+    private int typeSlot(String typeName) {
+        int code = dictionary.code(typeName);
+        while (sensorsOfType.size() <= code) {
+            sensorsOfType.add(null);
+            gatewaysOfType.add(null);
+        }
+        if (sensorsOfType.get(code) == null) {
+            sensorsOfType.set(code, new RoaringBitmap());
+            gatewaysOfType.set(code, new RoaringBitmap());
+            typeCount++;
+        }
+        return code;
+    }
+
+    private RoaringBitmap bitmap(List<RoaringBitmap> index, String typeName) {
+        int code = dictionary.find(typeName);
+        return code == SensorTypeDictionary.UNKNOWN || code >= index.size() ? null : index.get(code);
+    }
+
+    private void growSensors() {
+        int capacity = sensorIds.length * 2;
+        sensorIds = Arrays.copyOf(sensorIds, capacity);
+        sensorNames = Arrays.copyOf(sensorNames, capacity);
+        sensorLocations = Arrays.copyOf(sensorLocations, capacity);
+        sensorGateway = Arrays.copyOf(sensorGateway, capacity);
+        nextInGateway = Arrays.copyOf(nextInGateway, capacity);
+    }
+
+    private void growGateways() {
+        int capacity = gatewayIds.length * 2;
+        gatewayIds = Arrays.copyOf(gatewayIds, capacity);
+        gatewayNames = Arrays.copyOf(gatewayNames, capacity);
+        firstSensorOfGateway = Arrays.copyOf(firstSensorOfGateway, capacity);
+    }
+
+    // ---- reads ----
+
+    boolean containsSensor(long sensorId) {
+        lock.readLock().lock();
+        try {
+            return sensorSlots.containsKey(sensorId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The id of the gateway of a sensor, or {@link #NONE} if the sensor is unknown or unassigned.
+     */
+    long gatewayOf(long sensorId) {
+        lock.readLock().lock();
+        try {
+            int slot = sensorSlots.get(sensorId);
+            if (slot == LongIntHashMap.MISSING || sensorGateway[slot] == NONE) {
+                return NONE;
+            }
+            return gatewayIds[sensorGateway[slot]];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<SensorSummary> sensorsAfter(long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<SensorSummary> sensors = new ArrayList<>(Math.min(limit, sensorCount));
+            for (int i = sortedSensorIds.indexAfter(afterId); i < sortedSensorIds.size && sensors.size() < limit; i++) {
+                sensors.add(summary(sensorSlots.get(sortedSensorIds.ids[i])));
+            }
+            return sensors;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the sensors that have every type in {@code all} and at least one type in {@code any},
+     * ordered by ID. An empty list places no constraint.
+     */
+    List<SensorSummary> sensorsOfTypes(List<String> all, List<String> any) {
+        lock.readLock().lock();
+        try {
+            List<SensorSummary> sensors = new ArrayList<>();
+            RoaringBitmap members = match(sensorsOfType, all, any);
+            IntIterator slots = members.getIntIterator();
+            while (slots.hasNext()) {
+                sensors.add(summary(slots.next()));
+            }
+            sensors.sort(Comparator.comparing(SensorSummary::getId));
+            return sensors;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<SensorSummary> sensorsOfGateway(long gatewayId) {
+        lock.readLock().lock();
+        try {
+            List<SensorSummary> sensors = new ArrayList<>();
+            int gateway = gatewaySlots.get(gatewayId);
+            if (gateway != LongIntHashMap.MISSING) {
+                for (int slot = firstSensorOfGateway[gateway]; slot != NONE; slot = nextInGateway[slot]) {
+                    sensors.add(summary(slot));
+                }
+            }
+            sensors.sort(Comparator.comparing(SensorSummary::getId));
+            return sensors;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The gateway, or null if it is unknown.
+     */
+    Gateway gateway(long gatewayId) {
+        lock.readLock().lock();
+        try {
+            int slot = gatewaySlots.get(gatewayId);
+            return slot == LongIntHashMap.MISSING ? null : gatewayAt(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    List<Gateway> gatewaysAfter(long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<Gateway> gateways = new ArrayList<>(Math.min(limit, gatewayCount));
+            for (int i = sortedGatewayIds.indexAfter(afterId); i < sortedGatewayIds.size && gateways.size() < limit; i++) {
+                gateways.add(gatewayAt(gatewaySlots.get(sortedGatewayIds.ids[i])));
+            }
+            return gateways;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the gateways that have sensors of every type in {@code all} and of at least one type
+     * in {@code any}, ordered by ID. An empty list places no constraint.
+     */
+    List<Gateway> gatewaysOfTypes(List<String> all, List<String> any) {
+        lock.readLock().lock();
+        try {
+            List<Gateway> gateways = new ArrayList<>();
+            RoaringBitmap members = match(gatewaysOfType, all, any);
+            IntIterator slots = members.getIntIterator();
+            while (slots.hasNext()) {
+                gateways.add(gatewayAt(slots.next()));
+            }
+            gateways.sort(Comparator.comparing(Gateway::getId));
+            return gateways;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap match(List<RoaringBitmap> index, List<String> all, List<String> any) {
+        RoaringBitmap result = null;
+        for (String typeName : all) {
+            RoaringBitmap members = bitmap(index, typeName);
+            if (members == null) {
+                return new RoaringBitmap();
+            }
+            result = result == null ? members.clone() : RoaringBitmap.and(result, members);
+        }
+        if (!any.isEmpty()) {
+            RoaringBitmap union = new RoaringBitmap();
+            for (String typeName : any) {
+                RoaringBitmap members = bitmap(index, typeName);
+                if (members != null) {
+                    union.or(members);
+                }
+            }
+            result = result == null ? union : RoaringBitmap.and(result, union);
+        }
+        return result == null ? new RoaringBitmap() : result;
+    }
+
+    /**
+     * Passes every sensor, with its gateway and type names, to the consumer.
+     */
+    void forEachSensor(Consumer<SensorEntry> consumer) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < sensorCount; slot++) {
+                consumer.accept(entry(slot));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The sensor with its gateway and type names, or null if it is unknown.
+     */
+    SensorEntry sensor(long sensorId) {
+        lock.readLock().lock();
+        try {
+            int slot = sensorSlots.get(sensorId);
+            return slot == LongIntHashMap.MISSING ? null : entry(slot);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void forEachGateway(Consumer<Gateway> consumer) {
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < gatewayCount; slot++) {
+                consumer.accept(gatewayAt(slot));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int sensorCount() {
+        return sensorCount;
+    }
+
+    int gatewayCount() {
+        return gatewayCount;
+    }
+
+    int typeCount() {
+        lock.readLock().lock();
+        try {
+            return typeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate heap footprint: the backing arrays plus the name and location strings.
+     */
+    long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = sensorIds.length * (8L + 4 + 4 + 4 + 4)
+                    + gatewayIds.length * (8L + 4 + 4)
+                    + sensorSlots.estimatedBytes() + gatewaySlots.estimatedBytes()
+                    + sortedSensorIds.ids.length * 8L + sortedGatewayIds.ids.length * 8L;
+            for (int slot = 0; slot < sensorCount; slot++) {
+                bytes += stringBytes(sensorNames[slot]) + stringBytes(sensorLocations[slot]);
+            }
+            for (int slot = 0; slot < gatewayCount; slot++) {
+                bytes += stringBytes(gatewayNames[slot]);
+            }
+            for (int type = 0; type < sensorsOfType.size(); type++) {
+                if (sensorsOfType.get(type) != null) {
+                    bytes += sensorsOfType.get(type).getLongSizeInBytes() + gatewaysOfType.get(type).getLongSizeInBytes();
+                }
+            }
+            bytes += typeCountPerGateway.estimatedBytes();
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long stringBytes(String value) {
+        // object header, fields and byte array header of a compact string
+        return value == null ? 0 : 40 + value.length();
+    }
+
+    private SensorSummary summary(int slot) {
+        return new SensorSummary(sensorIds[slot], sensorNames[slot], sensorLocations[slot]);
+    }
+
+    private Gateway gatewayAt(int slot) {
+        Gateway gateway = new Gateway(gatewayNames[slot]);
+        gateway.setId(gatewayIds[slot]);
+        return gateway;
+    }
+
+    private SensorEntry entry(int slot) {
+        TreeSet<String> types = new TreeSet<>();
+        for (int type = 0; type < sensorsOfType.size(); type++) {
+            if (sensorsOfType.get(type) != null && sensorsOfType.get(type).contains(slot)) {
+                types.add(dictionary.name(type));
+            }
+        }
+        int gateway = sensorGateway[slot];
+        return new SensorEntry(sensorIds[slot], sensorNames[slot], sensorLocations[slot],
+                gateway == NONE ? null : gatewayIds[gateway], types);
+    }
+
+    /**
+     * Ids in ascending order for keyset pages. Node ids mostly grow, so adding one is usually an append.
+     */
+    private static final class SortedIds {
+
+        long[] ids;
+
+        int size;
+
+        SortedIds(int capacity) {
+            ids = new long[capacity];
+        }
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            if (size == 0 || id > ids[size - 1]) {
+                ids[size++] = id;
+                return;
+            }
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+            ids[insertAt] = id;
+            size++;
+        }
+
+        int indexAfter(long afterId) {
+            int index = Arrays.binarySearch(ids, 0, size, afterId);
+            return index >= 0 ? index + 1 : -index - 1;
+        }
+    }
+}
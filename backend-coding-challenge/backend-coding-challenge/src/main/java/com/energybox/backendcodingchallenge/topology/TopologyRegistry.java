@@ -0,0 +1,357 @@
+package com.energybox.backendcodingchallenge.topology;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import com.energybox.backendcodingchallenge.model.TopologyConsistencyReport;
+import com.energybox.backendcodingchallenge.repository.TopologyRepository;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * In-memory copy of the sensor topology: sensors, gateways, type memberships and sensor to gateway edges.
+ *
+ * The registry is loaded once the application is ready and rebuilt from the database every
+ * {@code reconcile-interval-ms}. The write methods of the services apply their changes to it as soon
+ * as they are committed; changes made while a rebuild is running are replayed onto the new copy.
+ * Until the first load succeeds {@link #isReady()} is false and callers read from the database.
+ */
+@Component
+public class TopologyRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(TopologyRegistry.class);
+
+    static final int MAX_REPORTED_IDS = 100;
+
+    private final TopologyRepository topologyRepository;
+
+    private final SensorTypeDictionary sensorTypeDictionary;
+
+    private final boolean enabled;
+
+    private final long reconcileIntervalMs;
+
+    private final Object writeLock = new Object();
+
+    // one rebuild at a time, held across the load so a virtual thread waiting on it unmounts
+    private final ReentrantLock reconcileLock = new ReentrantLock();
+
+    private volatile Topology current;
+
+    // changes applied while a rebuild is reading the database, replayed onto the new copy
+    private List<Consumer<Topology>> journal;
+
+    private final ScheduledExecutorService reconciler;
+
+    private final Timer loadTimer;
+
+    private final Counter drift;
+
+    public TopologyRegistry(TopologyRepository topologyRepository,
+                            SensorTypeDictionary sensorTypeDictionary,
+                            MeterRegistry meterRegistry,
+                            WorkerThreads workerThreads,
+                            @Value("${sensors.topology.enabled:true}") boolean enabled,
+                            @Value("${sensors.topology.reconcile-interval-ms:300000}") long reconcileIntervalMs) {
+        this.topologyRepository = topologyRepository;
+        this.sensorTypeDictionary = sensorTypeDictionary;
+        this.enabled = enabled;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+
+        this.loadTimer = Timer.builder("sensors.topology.load")
+                .description("Time taken to load the topology from the database")
+                .register(meterRegistry);
+        this.drift = Counter.builder("sensors.topology.reconcile.drift")
+                .description("Sensors and gateways that differed from the database when the registry was reconciled")
+                .register(meterRegistry);
+        Gauge.builder("sensors.topology.sensors", this, registry -> registry.size(Topology::sensorCount))
+                .register(meterRegistry);
+        Gauge.builder("sensors.topology.gateways", this, registry -> registry.size(Topology::gatewayCount))
+                .register(meterRegistry);
+        Gauge.builder("sensors.topology.types", this, registry -> registry.size(Topology::typeCount))
+                .register(meterRegistry);
+        Gauge.builder("sensors.topology.memory.bytes", this, TopologyRegistry::estimatedBytes)
+                .description("Approximate heap used by the topology registry")
+                .register(meterRegistry);
+        Gauge.builder("sensors.topology.ready", this, registry -> registry.isReady() ? 1 : 0)
+                .register(meterRegistry);
+
+        this.reconciler = enabled
+                ? Executors.newSingleThreadScheduledExecutor(workerThreads.factory("topology-reconciler")) : null;
+    }
+
+    /**
+     * Starts loading the registry in the background once the application accepts requests.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            reconciler.scheduleWithFixedDelay(this::reconcileQuietly, 0, reconcileIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public boolean isReady() {
+        return current != null;
+    }
+
+    // ---- writes, applied by the services after the database accepted them ----
+
+    public void sensorSaved(long sensorId, String name, String locationCode) {
+        apply(topology -> topology.putSensor(sensorId, name, locationCode));
+    }
+
+    public void gatewaySaved(long gatewayId, String name) {
+        apply(topology -> topology.putGateway(gatewayId, name));
+    }
+
+    public void typeSaved(String typeName) {
+        apply(topology -> topology.putType(typeName));
+    }
+
+    public void sensorTypeAdded(long sensorId, String typeName) {
+        apply(topology -> topology.addSensorType(sensorId, typeName));
+    }
+
+    public void sensorAssigned(long sensorId, long gatewayId) {
+        apply(topology -> topology.assignGateway(sensorId, gatewayId));
+    }
+
+    private void apply(Consumer<Topology> change) {
+        synchronized (writeLock) {
+            if (journal != null) {
+                journal.add(change);
+            }
+            Topology topology = current;
+            if (topology != null) {
+                change.accept(topology);
+            }
+        }
+    }
+
+    // ---- reads, only valid while isReady() ----
+
+    public boolean containsSensor(long sensorId) {
+        return current.containsSensor(sensorId);
+    }
+
+    /**
+     * @return The id of the gateway of a sensor, or -1 if the sensor is unknown or unassigned.
+     */
+    public long gatewayOf(long sensorId) {
+        return current.gatewayOf(sensorId);
+    }
+
+    public List<SensorSummary> sensorsAfter(long afterId, int limit) {
+        return current.sensorsAfter(afterId, limit);
+    }
+
+    public List<SensorSummary> sensorsOfType(String typeName) {
+        return current.sensorsOfTypes(List.of(typeName), List.of());
+    }
+
+    /**
+     * Returns the sensors having every type in {@code all} and at least one type in {@code any}.
+     */
+    public List<SensorSummary> sensorsOfTypes(List<String> all, List<String> any) {
+        return current.sensorsOfTypes(all, any);
+    }
+
+    public List<SensorSummary> sensorsOfGateway(long gatewayId) {
+        return current.sensorsOfGateway(gatewayId);
+    }
+
+    /**
+     * @return The gateway, or null if it is not in the registry.
+     */
+    public Gateway gateway(long gatewayId) {
+        return current.gateway(gatewayId);
+    }
+
+    public List<Gateway> gatewaysAfter(long afterId, int limit) {
+        return current.gatewaysAfter(afterId, limit);
+    }
+
+    public List<Gateway> gatewaysOfType(String typeName) {
+        return current.gatewaysOfTypes(List.of(typeName), List.of());
+    }
+
+    /**
+     * Returns the gateways with sensors of every type in {@code all} and of at least one type in {@code any}.
+     */
+    public List<Gateway> gatewaysOfTypes(List<String> all, List<String> any) {
+        return current.gatewaysOfTypes(all, any);
+    }
+
+    // ---- loading and reconciliation ----
+
+    /**
+     * Rebuilds the registry from the database and swaps it in.
+     *
+     * @return The number of sensors and gateways that differed from the previous copy.
+     */
+    public int reconcile() {
+        reconcileLock.lock();
+        try {
+            return reconcileLocked();
+        } finally {
+            reconcileLock.unlock();
+        }
+    }
+
+    private int reconcileLocked() {
+        synchronized (writeLock) {
+            journal = new ArrayList<>();
+        }
+        Topology fresh;
+        try {
+            fresh = loadTimer.record(this::load);
+        } catch (RuntimeException e) {
+            synchronized (writeLock) {
+                journal = null;
+            }
+            throw e;
+        }
+        Topology previous;
+        synchronized (writeLock) {
+            for (Consumer<Topology> change : journal) {
+                change.accept(fresh);
+            }
+            journal = null;
+            previous = current;
+            current = fresh;
+        }
+        // the previous copy no longer receives writes, so it can be compared outside the lock
+        int differences = previous == null ? 0 : countDifferences(compare(previous, fresh));
+        drift.increment(differences);
+        if (differences > 0) {
+            logger.warn("Reconciled topology registry, {} sensors or gateways had drifted from the database", differences);
+        }
+        logger.info("Loaded topology registry with {} sensors, {} gateways and {} types",
+                fresh.sensorCount(), fresh.gatewayCount(), fresh.typeCount());
+        return differences;
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            logger.error("Failed to load the topology registry, reads fall back to the database", e);
+        }
+    }
+
+    /**
+     * Compares the registry with the database without changing it.
+     */
+    public TopologyConsistencyReport checkConsistency() {
+        Topology topology = current;
+        if (topology == null) {
+            TopologyConsistencyReport report = new TopologyConsistencyReport();
+            report.setReady(false);
+            return report;
+        }
+        return compare(topology, load());
+    }
+
+    private Topology load() {
+        Topology topology = new Topology(sensorTypeDictionary, size(Topology::sensorCount), size(Topology::gatewayCount));
+        topologyRepository.forEachGateway(topology::putGateway);
+        topologyRepository.forEachTypeName(topology::putType);
+        topologyRepository.forEachSensor((id, name, locationCode, gatewayId, types) -> {
+            topology.putSensor(id, name, locationCode);
+            for (String type : types) {
+                topology.addSensorType(id, type);
+            }
+            if (gatewayId != null) {
+                topology.assignGateway(id, gatewayId);
+            }
+        });
+        return topology;
+    }
+
+    static TopologyConsistencyReport compare(Topology registry, Topology database) {
+        TopologyConsistencyReport report = new TopologyConsistencyReport();
+        report.setReady(true);
+        report.setSensors(registry.sensorCount());
+        report.setGateways(registry.gatewayCount());
+        report.setTypes(registry.typeCount());
+
+        database.forEachSensor(expected -> {
+            SensorEntry actual = registry.sensor(expected.getId());
+            if (actual == null) {
+                report.setMissingSensors(report.getMissingSensors() + 1);
+                reportId(report, expected.getId());
+            } else if (!actual.equals(expected)) {
+                report.setMismatchedSensors(report.getMismatchedSensors() + 1);
+                reportId(report, expected.getId());
+            }
+        });
+        registry.forEachSensor(actual -> {
+            if (database.sensor(actual.getId()) == null) {
+                report.setUnexpectedSensors(report.getUnexpectedSensors() + 1);
+                reportId(report, actual.getId());
+            }
+        });
+
+        Map<Long, String> expectedGateways = new HashMap<>();
+        database.forEachGateway(gateway -> expectedGateways.put(gateway.getId(), gateway.getName()));
+        registry.forEachGateway(gateway -> {
+            if (!expectedGateways.containsKey(gateway.getId())) {
+                report.setUnexpectedGateways(report.getUnexpectedGateways() + 1);
+            } else if (!Objects.equals(expectedGateways.remove(gateway.getId()), gateway.getName())) {
+                report.setMismatchedGateways(report.getMismatchedGateways() + 1);
+            }
+        });
+        report.setMissingGateways(expectedGateways.size());
+        return report;
+    }
+
+    private static void reportId(TopologyConsistencyReport report, long sensorId) {
+        if (report.getSensorIds().size() < MAX_REPORTED_IDS) {
+            report.getSensorIds().add(sensorId);
+        }
+    }
+
+    private static int countDifferences(TopologyConsistencyReport report) {
+        return report.getMissingSensors() + report.getUnexpectedSensors() + report.getMismatchedSensors()
+                + report.getMissingGateways() + report.getUnexpectedGateways() + report.getMismatchedGateways();
+    }
+
+    private int size(ToIntFunction<Topology> count) {
+        Topology topology = current;
+        return topology == null ? 0 : count.applyAsInt(topology);
+    }
+
+    long estimatedBytes() {
+        Topology topology = current;
+        return topology == null ? 0 : topology.estimatedBytes();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+        }
+    }
+}
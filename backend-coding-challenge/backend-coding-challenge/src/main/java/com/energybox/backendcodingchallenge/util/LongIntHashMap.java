@@ -0,0 +1,110 @@
+package com.energybox.backendcodingchallenge.util;
+
+/**
+ * Open addressing hash map from {@code long} keys to non-negative {@code int} values.
+ *
+ * Keys and values live in two parallel primitive arrays, so an entry costs 12 bytes at full
+ * load instead of the ~80 bytes of a boxed {@link java.util.HashMap} entry. Entries cannot be removed.
+ * Not thread safe.
+ */
+public final class LongIntHashMap {
+
+    public static final int MISSING = -1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+
+    // value + 1, so 0 marks a free slot
+    private int[] values;
+
+    private int size;
+
+    private int resizeAt;
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Returns the value of a key, or {@link #MISSING}.
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (values[index] != 0) {
+            if (keys[index] == key) {
+                return values[index] - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * Maps a key to a non-negative value, replacing any previous value.
+     */
+    public void put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must not be negative: " + value);
+        }
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (values[index] != 0) {
+            if (keys[index] == key) {
+                values[index] = value + 1;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value + 1;
+        if (++size >= resizeAt) {
+            resize();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Approximate heap footprint of the backing arrays.
+     */
+    public long estimatedBytes() {
+        return keys.length * 12L;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length << 1);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                int index = mix(oldKeys[i]) & mask;
+                while (values[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,63 @@
+package com.energybox.backendcodingchallenge.util;
+
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque cursors for keyset pagination on node ids.
+ *
+ * A cursor encodes the id of the last element of a page; the next page starts after it.
+ * Clients must treat the token as opaque so the encoding can change without breaking them.
+ */
+public final class PageCursors {
+
+    public static final String NEXT_HEADER = "X-Next-Cursor";
+
+    public static final int DEFAULT_LIMIT = 1000;
+
+    public static final int MAX_LIMIT = 10_000;
+
+    private static final String PREFIX = "id:";
+
+    private PageCursors() {
+    }
+
+    public static String encode(long lastId) {
+        byte[] token = (PREFIX + lastId).getBytes(StandardCharsets.US_ASCII);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    /**
+     * Returns the id to continue after, or -1 to start from the beginning when no cursor is given.
+     *
+     * @throws InvalidRequestException if the cursor was not issued by {@link #encode(long)}.
+     */
+    public static long decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return -1;
+        }
+        try {
+            String token = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            if (!token.startsWith(PREFIX)) {
+                throw new InvalidRequestException("Invalid cursor: " + cursor);
+            }
+            return Long.parseLong(token.substring(PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Invalid cursor: " + cursor);
+        }
+    }
+
+    /**
+     * Validates a requested page size.
+     *
+     * @throws InvalidRequestException if the limit is not between 1 and {@value #MAX_LIMIT}.
+     */
+    public static int checkLimit(int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,604 @@
+package com.energybox.backendcodingchallenge.wal;
+
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of accepted readings that may not be in the database yet.
+ *
+ * Readings are appended to segment files of up to {@code segment-size-mb}. Each record is laid out as:
+ * payload length, CRC32 of the payload, then sensor id, epoch millis, reading (NaN for none) and the
+ * length prefixed UTF-8 type name. How long {@link #append} waits depends on the durability:
+ * <ul>
+ *     <li>{@code write}: every append is forced to disk on its own.</li>
+ *     <li>{@code batch}: group commit; concurrent appends wait for a shared force, issued by whichever of
+ *     them gets there first and covering every record written before it started.</li>
+ *     <li>{@code interval}: appends return once written and the log is forced every {@code sync-interval-ms},
+ *     which survives a process crash but may lose the last interval on power loss.</li>
+ * </ul>
+ *
+ * Every append returns a ticket that is handed back through {@link #handedOff} once the reading has reached
+ * the database or the write-behind buffer. A {@link #checkpoint} seals the current segment, waits for the
+ * tickets of the sealed segments, flushes the buffer and deletes those segments. Segments found at startup
+ * are kept for replay until {@link #deleteRecovered} is called.
+ */
+@Component
+public class ReadingWal {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadingWal.class);
+
+    /** Ticket of a reading that was not logged, accepted by {@link #handedOff}. */
+    public static final int NO_TICKET = -1;
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private static final int HEADER_BYTES = 4 + 4;
+
+    private static final int FIXED_PAYLOAD_BYTES = 8 + 8 + 8 + 2;
+
+    private static final String PREFIX = "wal-";
+
+    private static final String SUFFIX = ".log";
+
+    public enum Durability {
+        WRITE, BATCH, INTERVAL
+    }
+
+    /**
+     * A reading read back from the log.
+     */
+    public interface RecordVisitor {
+        void visit(long sensorId, String typeName, LocalDateTime timestamp, Double reading);
+    }
+
+    private final boolean enabled;
+
+    private final Path directory;
+
+    private final long maxSegmentBytes;
+
+    private final Durability durability;
+
+    private final long syncIntervalMs;
+
+    // segments left by the previous run, oldest first
+    private final List<Integer> recovered = new ArrayList<>();
+
+    // segments of this run that are no longer written to
+    private final ConcurrentSkipListSet<Integer> sealed = new ConcurrentSkipListSet<>();
+
+    // segment -> readings appended to it that have not been handed off yet
+    private final Map<Integer, AtomicInteger> unhanded = new ConcurrentHashMap<>();
+
+    private FileChannel writer;
+
+    private int writerSegment;
+
+    private long writerPosition;
+
+    // bytes and records appended since startup, guarded by this
+    private long appended;
+
+    private long appendedRecords;
+
+    // a lock rather than a monitor, so appenders waiting for a force unmount when they are virtual threads
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    private final Condition synced = syncLock.newCondition();
+
+    // bytes known to be on disk and whether a force is running, guarded by syncLock
+    private long durable;
+
+    private long durableRecords;
+
+    private boolean syncing;
+
+    private ScheduledExecutorService syncer;
+
+    private final Counter appends;
+
+    private final Timer syncTimer;
+
+    private final DistributionSummary recordsPerSync;
+
+    public ReadingWal(MeterRegistry meterRegistry,
+                      @Value("${sensors.wal.enabled:false}") boolean enabled,
+                      @Value("${sensors.wal.dir:data/wal}") String directory,
+                      @Value("${sensors.wal.durability:batch}") String durability,
+                      @Value("${sensors.wal.sync-interval-ms:100}") long syncIntervalMs,
+                      @Value("${sensors.wal.segment-size-mb:16}") long segmentSizeMb) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.durability = Durability.valueOf(durability.trim().toUpperCase());
+        this.syncIntervalMs = syncIntervalMs;
+        this.maxSegmentBytes = segmentSizeMb * 1024 * 1024;
+
+        this.appends = meterRegistry.counter("sensors.wal.appends");
+        this.syncTimer = Timer.builder("sensors.wal.sync")
+                .description("Time taken to force the log to disk")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.recordsPerSync = DistributionSummary.builder("sensors.wal.sync.records")
+                .description("Records made durable by one force of the log")
+                .register(meterRegistry);
+        Gauge.builder("sensors.wal.segments", this, wal -> wal.recovered.size() + wal.sealed.size() + 1)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        recovered.addAll(listSegments());
+        writerSegment = recovered.isEmpty() ? 0 : recovered.get(recovered.size() - 1) + 1;
+        writer = openSegment(writerSegment);
+        if (durability == Durability.INTERVAL) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-syncer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        logger.info("Opened reading WAL in {} with {} durability, {} segments to replay", directory, durability, recovered.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Appends a reading and returns once it is as durable as configured.
+     * Readings without a sensor id or type cannot be written and are not logged.
+     *
+     * @return The ticket to hand back through {@link #handedOff}, or {@link #NO_TICKET} if nothing was logged.
+     * @throws UncheckedIOException If the log cannot be written, in which case the reading must not be accepted.
+     */
+    public int append(Long sensorId, String typeName, LocalDateTime timestamp, Double reading) {
+        if (!enabled || sensorId == null || typeName == null) {
+            return NO_TICKET;
+        }
+        ByteBuffer record = encode(sensorId, typeName, timestamp, reading);
+
+        int segment = NO_TICKET;
+        long target;
+        try {
+            synchronized (this) {
+                segment = write(record);
+                target = appended;
+                if (durability == Durability.WRITE) {
+                    force(writer());
+                    markDurable(appended, appendedRecords);
+                }
+            }
+            if (durability == Durability.BATCH) {
+                awaitDurable(target);
+            }
+        } catch (IOException e) {
+            handedOff(segment);
+            throw new UncheckedIOException("Failed to log the reading of sensor " + sensorId, e);
+        } catch (RuntimeException e) {
+            handedOff(segment);
+            throw e;
+        }
+        appends.increment();
+        return segment;
+    }
+
+    /**
+     * Appends the readings of a batch and returns once all of them are as durable as configured, forcing the
+     * log once for the whole batch. The readings must be timestamped; those without a sensor id or type are
+     * not logged.
+     *
+     * @return The ticket of every reading, in order, to hand back through {@link #handedOff(int[])}.
+     * @throws UncheckedIOException If the log cannot be written, in which case the readings must not be accepted.
+     */
+    public int[] append(List<ReadingRequest> readings) {
+        int[] tickets = new int[readings.size()];
+        Arrays.fill(tickets, NO_TICKET);
+        if (!enabled) {
+            return tickets;
+        }
+        ByteBuffer[] records = new ByteBuffer[readings.size()];
+        for (int i = 0; i < records.length; i++) {
+            ReadingRequest reading = readings.get(i);
+            if (reading.getSensorId() != null && reading.getSensorType() != null) {
+                records[i] = encode(reading.getSensorId(), reading.getSensorType(), reading.getTimestamp(), reading.getReading());
+            }
+        }
+
+        int logged = 0;
+        long target;
+        try {
+            synchronized (this) {
+                for (int i = 0; i < records.length; i++) {
+                    if (records[i] != null) {
+                        tickets[i] = write(records[i]);
+                        logged++;
+                    }
+                }
+                target = appended;
+                if (durability == Durability.WRITE && logged > 0) {
+                    force(writer());
+                    markDurable(appended, appendedRecords);
+                }
+            }
+            if (durability == Durability.BATCH && logged > 0) {
+                awaitDurable(target);
+            }
+        } catch (IOException e) {
+            handedOff(tickets);
+            throw new UncheckedIOException("Failed to log a batch of " + readings.size() + " readings", e);
+        } catch (RuntimeException e) {
+            handedOff(tickets);
+            throw e;
+        }
+        appends.increment(logged);
+        return tickets;
+    }
+
+    private ByteBuffer encode(long sensorId, String typeName, LocalDateTime timestamp, Double reading) {
+        byte[] name = typeName.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + FIXED_PAYLOAD_BYTES + name.length);
+        record.position(HEADER_BYTES);
+        record.putLong(sensorId)
+                .putLong(timestamp.atZone(ZONE).toInstant().toEpochMilli())
+                .putDouble(reading == null ? Double.NaN : reading)
+                .putShort((short) name.length)
+                .put(name);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, record.capacity() - HEADER_BYTES);
+        record.putInt(0, record.capacity() - HEADER_BYTES).putInt(4, (int) crc.getValue());
+        record.position(0);
+        return record;
+    }
+
+    /**
+     * Writes a record to the active segment, rolling it first if the record does not fit, and returns its ticket.
+     * Must be called holding this.
+     */
+    private int write(ByteBuffer record) throws IOException {
+        if (writerPosition > 0 && writerPosition + record.capacity() > maxSegmentBytes) {
+            roll();
+        }
+        FileChannel channel = writer();
+        while (record.hasRemaining()) {
+            writerPosition += channel.write(record, writerPosition);
+        }
+        appended += record.capacity();
+        appendedRecords++;
+        unhanded.computeIfAbsent(writerSegment, s -> new AtomicInteger()).incrementAndGet();
+        return writerSegment;
+    }
+
+    /**
+     * Marks the reading of a ticket as written to the database or handed to the write-behind buffer.
+     */
+    public void handedOff(int ticket) {
+        if (ticket != NO_TICKET) {
+            unhanded.get(ticket).decrementAndGet();
+        }
+    }
+
+    /**
+     * Marks the readings of the tickets returned for a batch as written or handed to the write-behind buffer.
+     */
+    public void handedOff(int[] tickets) {
+        for (int ticket : tickets) {
+            handedOff(ticket);
+        }
+    }
+
+    /**
+     * Seals the current segment and deletes the sealed segments once all their readings are in the database.
+     *
+     * @param flush Writes every reading handed to the write-behind buffer so far, returning false if that failed.
+     * @param timeoutMs How long to wait for readings of the sealed segments that are still being handed off.
+     * @return The number of segments deleted.
+     */
+    public int checkpoint(BooleanSupplier flush, long timeoutMs) throws InterruptedException {
+        if (!enabled) {
+            return 0;
+        }
+        int lastSealed;
+        try {
+            synchronized (this) {
+                if (writerPosition > 0) {
+                    roll();
+                }
+                lastSealed = writerSegment - 1;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll the reading WAL", e);
+        }
+        List<Integer> segments = new ArrayList<>(sealed.headSet(lastSealed, true));
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Integer segment : segments) {
+            AtomicInteger pending = unhanded.get(segment);
+            while (pending != null && pending.get() > 0) {
+                if (System.currentTimeMillis() >= deadline) {
+                    logger.info("WAL checkpoint gave up waiting for {} readings of segment {}", pending.get(), segment);
+                    return 0;
+                }
+                Thread.sleep(10);
+            }
+        }
+        if (!flush.getAsBoolean()) {
+            return 0;
+        }
+        for (Integer segment : segments) {
+            delete(segment);
+            sealed.remove(segment);
+            unhanded.remove(segment);
+        }
+        return segments.size();
+    }
+
+    /**
+     * @return The segments left by the previous run, oldest first, that have not been replayed yet.
+     */
+    public synchronized List<Integer> recoveredSegments() {
+        return new ArrayList<>(recovered);
+    }
+
+    /**
+     * Reads the records of a recovered segment in order, stopping at the first torn or corrupt record.
+     *
+     * @return The number of records read.
+     */
+    public long replay(int segment, RecordVisitor visitor) throws IOException {
+        long records = 0;
+        try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            while (position + HEADER_BYTES <= size) {
+                header.clear();
+                channel.read(header, position);
+                int length = header.getInt(0);
+                int checksum = header.getInt(4);
+                if (length < FIXED_PAYLOAD_BYTES || position + HEADER_BYTES + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                channel.read(payload, position + HEADER_BYTES);
+                crc.reset();
+                crc.update(payload.array(), 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                payload.flip();
+                long sensorId = payload.getLong();
+                long epochMillis = payload.getLong();
+                double reading = payload.getDouble();
+                byte[] name = new byte[payload.getShort() & 0xFFFF];
+                payload.get(name);
+                visitor.visit(sensorId, new String(name, StandardCharsets.UTF_8),
+                        LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZONE),
+                        Double.isNaN(reading) ? null : reading);
+                records++;
+                position += HEADER_BYTES + length;
+            }
+            if (position < size) {
+                logger.warn("Ignoring torn or corrupt WAL record in {} at offset {}", segmentPath(segment), position);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Deletes a recovered segment once its readings have been replayed and written to the database.
+     */
+    public synchronized void deleteRecovered(int segment) {
+        if (recovered.remove((Integer) segment)) {
+            delete(segment);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (syncer != null) {
+            syncer.shutdown();
+            syncer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        synchronized (this) {
+            if (writer != null) {
+                force(writer());
+                writer.close();
+            }
+        }
+    }
+
+    // ---- durability ----
+
+    /**
+     * Group commit: waits until the log is forced past {@code target}, forcing it itself if no other
+     * thread is doing so. A single force covers every record written before it started.
+     */
+    private void awaitDurable(long target) {
+        while (true) {
+            syncLock.lock();
+            try {
+                while (durable < target && syncing) {
+                    try {
+                        synced.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for the reading WAL", e);
+                    }
+                }
+                if (durable >= target) {
+                    return;
+                }
+                syncing = true;
+            } finally {
+                syncLock.unlock();
+            }
+            try {
+                sync();
+            } finally {
+                syncLock.lock();
+                try {
+                    syncing = false;
+                    synced.signalAll();
+                } finally {
+                    syncLock.unlock();
+                }
+            }
+        }
+    }
+
+    private void sync() {
+        for (int attempt = 1; ; attempt++) {
+            FileChannel channel;
+            int segment;
+            long target;
+            long targetRecords;
+            try {
+                synchronized (this) {
+                    channel = writer();
+                    segment = writerSegment;
+                    target = appended;
+                    targetRecords = appendedRecords;
+                }
+                force(channel);
+            } catch (ClosedChannelException e) {
+                if (Thread.currentThread().isInterrupted() || attempt == 3) {
+                    throw new UncheckedIOException("Failed to force the reading WAL", e);
+                }
+                // the segment was rolled meanwhile, which forced it, or an interrupted appender closed it
+                continue;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to force the reading WAL", e);
+            }
+            markDurable(target, targetRecords);
+            return;
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            logger.error("Failed to force the reading WAL", e);
+        }
+    }
+
+    private void force(FileChannel channel) throws IOException {
+        long start = System.nanoTime();
+        channel.force(false);
+        syncTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private void markDurable(long position, long records) {
+        syncLock.lock();
+        try {
+            if (position > durable) {
+                recordsPerSync.record(records - durableRecords);
+                durable = position;
+                durableRecords = records;
+            }
+            synced.signalAll();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    // ---- segments ----
+
+    /**
+     * @return The channel of the active segment, reopened if an interrupted thread closed it while writing.
+     */
+    private FileChannel writer() throws IOException {
+        if (!writer.isOpen()) {
+            writer = FileChannel.open(segmentPath(writerSegment), StandardOpenOption.WRITE);
+        }
+        return writer;
+    }
+
+    private void roll() throws IOException {
+        force(writer());
+        writer.close();
+        markDurable(appended, appendedRecords);
+        sealed.add(writerSegment);
+        writerSegment++;
+        writerPosition = 0;
+        writer = openSegment(writerSegment);
+    }
+
+    private FileChannel openSegment(int segment) throws IOException {
+        return FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private void delete(int segment) {
+        try {
+            Files.deleteIfExists(segmentPath(segment));
+        } catch (IOException e) {
+            logger.error("Failed to delete WAL segment {}", segmentPath(segment), e);
+        }
+    }
+
+    private List<Integer> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%010d%s", PREFIX, segment, SUFFIX));
+    }
+}
@@ -0,0 +1,137 @@
+package com.energybox.backendcodingchallenge.wal;
+
+import com.energybox.backendcodingchallenge.ingest.LastReadingBuffer;
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the segments the reading WAL recovered at startup and truncates the log once its readings are in
+ * the database.
+ *
+ * Every {@code checkpoint-interval-ms} the recovered segments are written with
+ * {@link SensorService#addOrUpdateReadings(List, boolean)} in batches of {@value #REPLAY_BATCH_SIZE}, keeping
+ * their original timestamps and without logging them again, and deleted once the write-behind buffer has been
+ * flushed. Then the log is checkpointed. A segment that cannot be replayed, for example because the database is
+ * down, is retried on the next run.
+ */
+@Component
+public class WalCheckpointer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WalCheckpointer.class);
+
+    static final int REPLAY_BATCH_SIZE = 1000;
+
+    private final ReadingWal readingWal;
+
+    private final SensorService sensorService;
+
+    private final LastReadingBuffer lastReadingBuffer;
+
+    private final long checkpointIntervalMs;
+
+    private final ScheduledExecutorService checkpointer;
+
+    public WalCheckpointer(ReadingWal readingWal, SensorService sensorService, LastReadingBuffer lastReadingBuffer,
+                           WorkerThreads workerThreads,
+                           @Value("${sensors.wal.checkpoint-interval-ms:10000}") long checkpointIntervalMs) {
+        this.readingWal = readingWal;
+        this.sensorService = sensorService;
+        this.lastReadingBuffer = lastReadingBuffer;
+        this.checkpointIntervalMs = checkpointIntervalMs;
+        this.checkpointer = readingWal.isEnabled()
+                ? Executors.newSingleThreadScheduledExecutor(workerThreads.factory("wal-checkpointer")) : null;
+    }
+
+    /**
+     * Starts replaying and checkpointing in the background once the application accepts requests.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (checkpointer != null) {
+            checkpointer.scheduleWithFixedDelay(this::runQuietly, 0, checkpointIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Replays every recovered segment, then deletes the sealed segments whose readings are all in the database.
+     */
+    public void run() throws IOException, InterruptedException {
+        for (Integer segment : readingWal.recoveredSegments()) {
+            replay(segment);
+        }
+        int deleted = readingWal.checkpoint(lastReadingBuffer::flush, checkpointIntervalMs);
+        if (deleted > 0) {
+            logger.debug("WAL checkpoint deleted {} segments", deleted);
+        }
+    }
+
+    private void replay(int segment) throws IOException {
+        List<ReadingRequest> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+        long[] accepted = new long[1];
+        long records = readingWal.replay(segment, (sensorId, typeName, timestamp, reading) -> {
+            ReadingRequest request = new ReadingRequest();
+            request.setSensorId(sensorId);
+            request.setSensorType(typeName);
+            request.setTimestamp(timestamp);
+            request.setReading(reading);
+            batch.add(request);
+            if (batch.size() == REPLAY_BATCH_SIZE) {
+                accepted[0] += write(batch);
+            }
+        });
+        accepted[0] += write(batch);
+        if (!lastReadingBuffer.flush()) {
+            throw new IllegalStateException("Failed to flush the readings replayed from WAL segment " + segment);
+        }
+        readingWal.deleteRecovered(segment);
+        logger.info("Replayed {} readings from WAL segment {}, {} accepted", records, segment, accepted[0]);
+    }
+
+    private long write(List<ReadingRequest> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        BatchReadingResponse response = sensorService.addOrUpdateReadings(batch, false);
+        batch.clear();
+        return response.getAccepted();
+    }
+
+    private void runQuietly() {
+        try {
+            run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            logger.error("WAL replay or checkpoint failed, retrying in {} ms", checkpointIntervalMs, e);
+        }
+    }
+
+    /**
+     * Stops checkpointing and runs a last checkpoint. Segments still on disk are replayed on the next start.
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (checkpointer == null) {
+            return;
+        }
+        checkpointer.shutdown();
+        checkpointer.awaitTermination(checkpointIntervalMs, TimeUnit.MILLISECONDS);
+        readingWal.checkpoint(lastReadingBuffer::flush, TimeUnit.SECONDS.toMillis(10));
+    }
+}
@@ -0,0 +1,52 @@
+package com.energybox.backendcodingchallenge.threads;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs request handling and the background workers on virtual threads, so a thread blocked on a Bolt
+ * round trip or a queue gives its carrier back instead of holding a platform thread.
+ *
+ * Compiled only by the {@code jdk21} Maven profile and enabled with {@code sensors.threads.virtual: true}:
+ * <ul>
+ *     <li>Tomcat hands every request to a new virtual thread instead of its worker pool, so
+ *     {@code server.tomcat.threads.max} no longer bounds concurrent requests.</li>
+ *     <li>{@code applicationTaskExecutor}, which runs asynchronous MVC responses such as the history stream,
+ *     starts a virtual thread per task.</li>
+ *     <li>{@link WorkerThreads} creates virtual threads for the ingest partitions, the write-behind flusher,
+ *     the WAL checkpointer, the topology reconciler and file imports.</li>
+ * </ul>
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = ThreadsConfiguration.VIRTUAL_PROPERTY, havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public WorkerThreads virtualWorkerThreads() {
+        return (name, task) -> Thread.ofVirtual().name(name).unstarted(task);
+    }
+
+    @Bean(destroyMethod = "close")
+    public ExecutorService virtualThreadExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("request-", 0).factory());
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadProtocolHandlerCustomizer(ExecutorService virtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreadExecutor);
+    }
+
+    @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor(ExecutorService virtualThreadExecutor) {
+        return new TaskExecutorAdapter(virtualThreadExecutor);
+    }
+}
@@ -0,0 +1,182 @@
+package com.energybox.backendcodingchallenge.controller;
+
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.exception.GatewayNotFoundException;
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
+import com.energybox.backendcodingchallenge.model.GatewayRequest;
+import com.energybox.backendcodingchallenge.model.GatewayResponse;
+import com.energybox.backendcodingchallenge.service.ReactiveGatewayService;
+import com.energybox.backendcodingchallenge.util.PageCursors;
+import io.swagger.annotations.ApiOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Reactive counterpart of {@link GatewayController} for the reactive profile, with the same paths,
+ * parameters, bodies and status codes. Every call is served without blocking the event loop.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping( value = "/gateways" )
+public class ReactiveGatewayController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveGatewayController.class);
+
+    private final ReactiveGatewayService service;
+
+    public ReactiveGatewayController( ReactiveGatewayService service ) {
+        this.service = service;
+    }
+
+    /**
+     * Creates a new gateway.
+     *
+     * @param gatewayRequest the request object containing gateway details
+     * @return the created gateway response, or 400 Bad Request if the name is missing
+     */
+    @ApiOperation( value = "create a new gateway", response = Gateway.class )
+    @RequestMapping( value = "/add", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE )
+    public Mono<ResponseEntity<GatewayResponse>> createGateway(@RequestBody GatewayRequest gatewayRequest) {
+        logger.info("Received request to create gateway with name: {}", gatewayRequest.getName());
+        if (gatewayRequest.getName() == null) {
+            logger.info("Error creating gateway with ID: {}", gatewayRequest.getName());
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return service.createGateway(gatewayRequest)
+                .map(response -> {
+                    response.setStatus(HttpStatus.OK);
+                    logger.info("Successfully created gateway with ID: {}", response.getGateWayId());
+                    return new ResponseEntity<>(response, HttpStatus.OK);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error creating gateway with ID:", e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    /**
+     * Fetches a gateway by its ID.
+     *
+     * @param gatewayId the ID of the gateway to fetch
+     * @return the gateway, or the error message with 404 Not Found if there is none
+     */
+    @ApiOperation( value = "fetch a gateway by Id ", response = Gateway.class )
+    @RequestMapping( value = "gateway-id/{gatewayId}", method = RequestMethod.GET )
+    public Mono<ResponseEntity<Object>> getSensorByGatewayId(@PathVariable Long gatewayId) {
+        logger.info("Received request to fetch gateway with ID: {}", gatewayId);
+        return service.fetchGatewayById(gatewayId)
+                .map(result -> {
+                    logger.info("Successfully fetched gateway with ID: {}", gatewayId);
+                    return new ResponseEntity<Object>(result, HttpStatus.OK);
+                })
+                .onErrorResume(GatewayNotFoundException.class, e -> {
+                    logger.warn("Gateway not found with ID: {}", gatewayId);
+                    return Mono.just(new ResponseEntity<>(e.getMessage(), HttpStatus.NOT_FOUND));
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error occurred while fetching gateway with ID: {}", gatewayId, e);
+                    return Mono.just(new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    /**
+     * Fetches gateways by sensor type.
+     *
+     * @param type the sensor type to filter gateways
+     * @return the gateways matching the sensor type
+     */
+    @ApiOperation(value = "Fetch gateways with specific sensor type", response = Gateway.class, responseContainer = "List")
+    @RequestMapping(value = "/{type}", method = RequestMethod.GET)
+    public Mono<ResponseEntity<List<Gateway>>> fetchGatewaysBySensorType(@PathVariable String type) {
+        logger.info("Received request to fetch gateways with sensor type: {}", type);
+        return service.fetchGatewaysBySensorType(type)
+                .collectList()
+                .map(result -> {
+                    logger.info("Successfully fetched {} gateways for sensor type: {}", result.size(), type);
+                    return new ResponseEntity<>(result, HttpStatus.OK);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error occurred while fetching gateways for sensor type: {}", type, e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    /**
+     * Fetches the gateways that have sensors of every type in {@code all} and of at least one type in {@code any}.
+     *
+     * @param all comma separated sensor types a gateway must all have
+     * @param any comma separated sensor types of which a gateway must have at least one
+     * @return the matching gateways, or 400 Bad Request if neither list is given
+     */
+    @ApiOperation(value = "Fetch gateways matching a combination of sensor types", response = Gateway.class, responseContainer = "List")
+    @RequestMapping(value = "/by-types", method = RequestMethod.GET)
+    public Mono<ResponseEntity<List<Gateway>>> fetchGatewaysBySensorTypes(
+            @RequestParam(required = false) List<String> all,
+            @RequestParam(required = false) List<String> any
+    ) {
+        List<String> allTypes = all == null ? List.of() : all;
+        List<String> anyTypes = any == null ? List.of() : any;
+        if (allTypes.isEmpty() && anyTypes.isEmpty()) {
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        logger.info("Received request to fetch gateways with all of {} and any of {}", allTypes, anyTypes);
+        return service.fetchGatewaysBySensorTypes(allTypes, anyTypes)
+                .collectList()
+                .map(result -> {
+                    logger.info("Successfully fetched {} gateways", result.size());
+                    return new ResponseEntity<>(result, HttpStatus.OK);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error occurred while fetching gateways for sensor types", e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    /**
+     * Fetches a page of gateways ordered by ID.
+     * When more gateways may follow, the cursor of the next page is returned in the
+     * {@value PageCursors#NEXT_HEADER} header.
+     *
+     * @param cursor the cursor returned with the previous page, if any
+     * @param limit  the maximum number of gateways to return
+     * @return a page of gateways, or 400 Bad Request for an invalid cursor or limit
+     */
+    @ApiOperation( value = "fetch all gateways ", response = Gateway.class )
+    @RequestMapping( value = "", method = RequestMethod.GET )
+    public Mono<ResponseEntity<List<Gateway>>> fetchAllGateways(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + PageCursors.DEFAULT_LIMIT) int limit
+    ) {
+        logger.info("Received request to fetch gateways after cursor: {}", cursor);
+        long afterId;
+        try {
+            afterId = PageCursors.decode(cursor);
+            PageCursors.checkLimit(limit);
+        } catch (InvalidRequestException e) {
+            logger.warn(e.getMessage());
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return service.fetchGateways(afterId, limit)
+                .map(result -> {
+                    logger.info("Successfully fetched {} gateways", result.size());
+                    if (result.size() < limit) {
+                        return new ResponseEntity<>(result, HttpStatus.OK);
+                    }
+                    return ResponseEntity.ok()
+                            .header(PageCursors.NEXT_HEADER, PageCursors.encode(result.get(result.size() - 1).getId()))
+                            .body(result);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error occurred while fetching all gateways", e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+}
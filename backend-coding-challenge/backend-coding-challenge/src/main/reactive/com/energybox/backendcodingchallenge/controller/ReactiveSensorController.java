@@ -0,0 +1,470 @@
+package com.energybox.backendcodingchallenge.controller;
+
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import com.energybox.backendcodingchallenge.exception.GatewayNotFoundException;
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
+import com.energybox.backendcodingchallenge.exception.SensorAlreadyConnectedException;
+import com.energybox.backendcodingchallenge.exception.SensorNotFoundException;
+import com.energybox.backendcodingchallenge.exception.SensorTypeNotFoundException;
+import com.energybox.backendcodingchallenge.history.JsonSampleWriter;
+import com.energybox.backendcodingchallenge.idempotency.IdempotencyStore;
+import com.energybox.backendcodingchallenge.ingest.IngestExecutor;
+import com.energybox.backendcodingchallenge.model.*;
+import com.energybox.backendcodingchallenge.reactive.OutputStreamPublisher;
+import com.energybox.backendcodingchallenge.service.ReactiveSensorService;
+import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.util.PageCursors;
+import io.swagger.annotations.ApiOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Reactive counterpart of {@link SensorController} for the reactive profile, with the same paths,
+ * parameters, bodies and status codes.
+ *
+ * Lookups, the export, the history stream, the rollups and single and batch readings are served without
+ * blocking through {@link ReactiveSensorService}; only appends to the reading WAL, which wait for the log to be
+ * forced, run on the bounded elastic scheduler. Sensor creation, bulk provisioning and gateway assignments run
+ * their provisioning statements through {@link SensorService} on that scheduler, off the event loop, and so do
+ * readings queued on the ingest partitions, which log and may wait for room in their partition.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping( value =  "/sensors")
+public class ReactiveSensorController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveSensorController.class);
+
+    private final ReactiveSensorService reactiveSensorService;
+
+    private final SensorService sensorService;
+
+    private final IngestExecutor ingestExecutor;
+
+    private final IdempotencyStore idempotencyStore;
+
+    public ReactiveSensorController(ReactiveSensorService reactiveSensorService, SensorService sensorService,
+                                    IngestExecutor ingestExecutor, IdempotencyStore idempotencyStore) {
+        this.reactiveSensorService = reactiveSensorService;
+        this.sensorService = sensorService;
+        this.ingestExecutor = ingestExecutor;
+        this.idempotencyStore = idempotencyStore;
+    }
+
+    /**
+     * Creates a new sensor. A retry with the same {@code Idempotency-Key} header gets the response of the first call back.
+     *
+     * @throws InvalidRequestException if the name, location code or idempotency key is invalid.
+     */
+    @ApiOperation(value = "create a sensor", response = Sensor.class)
+    @RequestMapping(value = "/add", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<SensorResponse>> createSensor(
+            @RequestBody SensorRequest sensorRequest,
+            @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        logger.info("Received request to create sensor with name: {}", sensorRequest.getName());
+
+        if (sensorRequest.getName().isEmpty() || sensorRequest.getLocationCode().isEmpty())
+            throw new InvalidRequestException("Sensor Name or Location Code is missing in the request");
+        if (!IdempotencyStore.isValidKey(idempotencyKey))
+            throw new InvalidRequestException("Idempotency-Key must not be blank or longer than " + IdempotencyStore.MAX_KEY_LENGTH + " characters");
+
+        return idempotent("create-sensor", idempotencyKey, sensorRequest, () -> blocking(() -> sensorService.createSensors(sensorRequest))
+                .map(sensorResponse -> {
+                    logger.info("Successfully created sensor with ID: {}", sensorResponse.getSensorId());
+                    sensorResponse.setStatus(HttpStatus.OK);
+                    return new ResponseEntity<>(sensorResponse, HttpStatus.OK);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error occurred while creating sensor with name: {}", sensorRequest.getName(), e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                }));
+    }
+
+    /**
+     * Creates many sensors in one call, optionally connecting each one to a gateway.
+     * Returns 400 Bad Request if the request is empty or holds more than {@value SensorController#MAX_SENSOR_BULK_SIZE} sensors.
+     */
+    @ApiOperation(value = "creates many sensors at once", response = BulkSensorResponse.class)
+    @RequestMapping(value = "/bulk", method = RequestMethod.POST, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<BulkSensorResponse>> createSensorsInBulk(@RequestBody BulkSensorRequest bulkRequest) {
+        List<BulkSensorItem> sensors = bulkRequest.getSensors();
+        if (sensors == null || sensors.isEmpty() || sensors.size() > SensorController.MAX_SENSOR_BULK_SIZE) {
+            logger.info("Rejected bulk sensor request of size: {}", sensors == null ? 0 : sensors.size());
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return blocking(() -> sensorService.createSensorsInBulk(sensors))
+                .map(response -> {
+                    logger.info("Created {} of {} sensors", response.getCreated(), response.getReceived());
+                    response.setStatus(HttpStatus.OK);
+                    return ResponseEntity.ok(response);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error occurred while creating {} sensors", sensors.size(), e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    /**
+     * Fetches a page of sensors ordered by ID, as summaries unless {@code expand} is set.
+     * When more sensors may follow, the cursor of the next page is returned in the
+     * {@value PageCursors#NEXT_HEADER} header. Returns 400 Bad Request for an invalid cursor or limit.
+     */
+    @ApiOperation(value = "fetch all sensors", response = SensorSummary.class, responseContainer = "List")
+    @RequestMapping(value = "", method = RequestMethod.GET)
+    public Mono<ResponseEntity<List<?>>> fetchAllSensors(@RequestParam(defaultValue = "false") boolean expand,
+                                                         @RequestParam(required = false) String cursor,
+                                                         @RequestParam(defaultValue = "" + PageCursors.DEFAULT_LIMIT) int limit) {
+        logger.info("Fetching sensors after cursor: {}", cursor);
+        long afterId;
+        try {
+            afterId = PageCursors.decode(cursor);
+            PageCursors.checkLimit(limit);
+        } catch (InvalidRequestException e) {
+            logger.warn(e.getMessage());
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        Mono<? extends List<?>> page = expand ? reactiveSensorService.fetchSensors(afterId, limit)
+                : reactiveSensorService.fetchSensorSummaries(afterId, limit);
+        return page.map(response -> {
+            if (response.isEmpty()) {
+                logger.info("No sensors found");
+                return ResponseEntity.noContent().<List<?>>build();
+            }
+            logger.info("Successfully retrieved {} sensors", response.size());
+            if (response.size() < limit) {
+                return ResponseEntity.ok(response);
+            }
+            Object last = response.get(response.size() - 1);
+            long lastId = last instanceof Sensor ? ((Sensor) last).getId() : ((SensorSummary) last).getId();
+            return ResponseEntity.ok()
+                    .header(PageCursors.NEXT_HEADER, PageCursors.encode(lastId))
+                    .body(response);
+        });
+    }
+
+    /**
+     * Streams the id, name and location code of every sensor as newline delimited JSON,
+     * writing each sensor as soon as it is read from the database.
+     */
+    @ApiOperation(value = "streams all sensors as newline delimited JSON")
+    @RequestMapping(value = "/export", method = RequestMethod.GET)
+    public ResponseEntity<Flux<SensorSummary>> exportSensors() {
+        AtomicLong count = new AtomicLong();
+        Flux<SensorSummary> body = reactiveSensorService.exportSensorSummaries()
+                .doOnNext(summary -> count.incrementAndGet())
+                .doOnComplete(() -> logger.info("Exported {} sensors", count.get()));
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Fetches sensors by their type, as summaries unless {@code expand} is set.
+     */
+    @ApiOperation(value = "fetch all sensors of input type", response = SensorSummary.class, responseContainer = "List")
+    @RequestMapping(value = "type/{sensorType}", method = RequestMethod.GET)
+    public Mono<ResponseEntity<List<?>>> fetchSensorBySensorType(@PathVariable String sensorType,
+                                                                 @RequestParam(defaultValue = "false") boolean expand) {
+        logger.info("Fetching sensors of type: {}", sensorType);
+        Mono<? extends List<?>> sensors = expand ? reactiveSensorService.getSensorsByType(sensorType)
+                : reactiveSensorService.getSensorSummariesByType(sensorType).collectList();
+        return sensors.map(result -> {
+            if (result.isEmpty()) {
+                logger.info("No sensors found for type: {}", sensorType);
+                return ResponseEntity.noContent().build();
+            }
+            logger.info("Successfully retrieved {} sensors for type: {}", result.size(), sensorType);
+            return ResponseEntity.ok(result);
+        });
+    }
+
+    /**
+     * Fetches the sensors that have every type in {@code all} and at least one type in {@code any}.
+     * Returns 400 Bad Request if neither is given.
+     */
+    @ApiOperation(value = "fetch the sensors matching a combination of types", response = SensorSummary.class, responseContainer = "List")
+    @RequestMapping(value = "/by-types", method = RequestMethod.GET)
+    public Mono<ResponseEntity<List<SensorSummary>>> fetchSensorsBySensorTypes(
+            @RequestParam(required = false) List<String> all,
+            @RequestParam(required = false) List<String> any) {
+        List<String> allTypes = all == null ? List.of() : all;
+        List<String> anyTypes = any == null ? List.of() : any;
+        if (allTypes.isEmpty() && anyTypes.isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        logger.info("Fetching sensors with all of {} and any of {}", allTypes, anyTypes);
+        return reactiveSensorService.getSensorSummariesByTypes(allTypes, anyTypes)
+                .collectList()
+                .map(sensors -> sensors.isEmpty() ? ResponseEntity.noContent().build() : ResponseEntity.ok(sensors));
+    }
+
+    /**
+     * Fetches a sensor by its ID. An unknown sensor is answered with 500, as by {@link SensorController}.
+     */
+    @ApiOperation(value = "fetch a sensor by id ", response = Sensor.class)
+    @RequestMapping(value = "/{sensorId}", method = RequestMethod.GET)
+    public Mono<ResponseEntity<Sensor>> fetchSensoryById(@PathVariable Long sensorId) {
+        return reactiveSensorService.fetchSensorById(sensorId)
+                .map(sensor -> {
+                    logger.info("Successfully retrieved sensor with ID: {}", sensorId);
+                    return ResponseEntity.ok(sensor);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Unexpected error occurred while fetching sensor with ID: {}", sensorId, e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    /**
+     * Attaches a type to a sensor. Returns 400 Bad Request if the sensor does not exist.
+     */
+    @ApiOperation(value = "attach type to a sensor", response = SensorType.class)
+    @RequestMapping(value = "/attachType", method = RequestMethod.PUT)
+    public Mono<ResponseEntity<String>> addSensorType(@RequestBody SensorTypeRequest sensorTypeRequest) {
+        logger.info("Received request to attach type {} to sensor with ID: {}", sensorTypeRequest.getType(), sensorTypeRequest.getId());
+        return reactiveSensorService.addSensorType(sensorTypeRequest.getId(), sensorTypeRequest.getType())
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok("Sensor type added successfully.")))
+                .onErrorResume(SensorNotFoundException.class, e -> Mono.just(new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST)))
+                .onErrorResume(RuntimeException.class, e -> Mono.just(new ResponseEntity<>(e.getMessage(), HttpStatus.INTERNAL_SERVER_ERROR)));
+    }
+
+    /**
+     * Assigns a sensor to a gateway. Returns 400 Bad Request if an ID is missing, the sensor or gateway does not
+     * exist or the sensor is already connected to it.
+     */
+    @ApiOperation(value = "assign a given sensory to gateway", response = Gateway.class)
+    @RequestMapping(value = "/to-gateway", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> assignSensorGateway(@RequestBody SensorGatewayRequest request) {
+        if (request.getGatewayId() == null || request.getSensorId() == null) {
+            return Mono.just(new ResponseEntity<>("Gateway ID and Sensor ID must be provided", HttpStatus.BAD_REQUEST));
+        }
+        return blocking(() -> {
+            sensorService.assignSensorToGateway(request.getSensorId(), request.getGatewayId());
+            return new ResponseEntity<>("Sensor is tagged to Gateway successfully", HttpStatus.OK);
+        }).onErrorResume(e -> e instanceof SensorNotFoundException || e instanceof GatewayNotFoundException
+                        || e instanceof SensorAlreadyConnectedException,
+                e -> Mono.just(new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST)));
+    }
+
+    /**
+     * Assigns many sensors to gateways in one transaction, moving already connected sensors when {@code move} is set.
+     * Returns 400 Bad Request if the batch is empty or larger than {@value SensorController#MAX_ASSIGNMENT_BATCH_SIZE} assignments.
+     */
+    @ApiOperation(value = "assigns or moves many sensors to gateways", response = BatchGatewayAssignmentResponse.class)
+    @RequestMapping(value = "/to-gateway/batch", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<BatchGatewayAssignmentResponse>> assignSensorsToGateways(@RequestBody BatchGatewayAssignmentRequest batchRequest) {
+        List<SensorGatewayRequest> assignments = batchRequest.getAssignments();
+        if (assignments == null || assignments.isEmpty() || assignments.size() > SensorController.MAX_ASSIGNMENT_BATCH_SIZE) {
+            logger.info("Rejected gateway assignment batch of size: {}", assignments == null ? 0 : assignments.size());
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return blocking(() -> sensorService.assignSensorsToGateways(assignments, batchRequest.isMove()))
+                .map(response -> {
+                    logger.info("Changed the gateway of {} of {} sensors", response.getChanged(), response.getReceived());
+                    response.setStatus(HttpStatus.OK);
+                    return ResponseEntity.ok(response);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error occurred while assigning {} sensors to gateways", assignments.size(), e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    /**
+     * Retrieves all sensors that are connected to a gateway. Relationships are only included when {@code expand} is set.
+     */
+    @ApiOperation(value = "fetches all the sensors attached to the requested gateway", response = SensorSummary.class)
+    @RequestMapping(value = "/gateway-id/{gatewayId}", method = RequestMethod.GET)
+    public Mono<ResponseEntity<List<?>>> getSensorsByGateway(@PathVariable Long gatewayId,
+                                                             @RequestParam(defaultValue = "false") boolean expand) {
+        Mono<? extends List<?>> sensors = expand ? reactiveSensorService.getSensorsByGateway(gatewayId)
+                : reactiveSensorService.getSensorSummariesByGateway(gatewayId).collectList();
+        return sensors.<ResponseEntity<List<?>>>map(ResponseEntity::ok)
+                .onErrorResume(RuntimeException.class, e -> Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR)));
+    }
+
+    /**
+     * Retrieves the most recent readings for a sensor. Responds with 404 Not Found if the sensor does not exist.
+     */
+    @ApiOperation(value = "returns all reading s associated with the sensor", response = LastReading.class)
+    @RequestMapping(value = "/get-last-readings/{sensorId}", method = RequestMethod.GET)
+    public Mono<ResponseEntity<List<LastReading>>> getLastReadingsForSensor(@PathVariable Long sensorId) {
+        return reactiveSensorService.getLastReadings(sensorId)
+                .map(ResponseEntity::ok)
+                .onErrorResume(SensorNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * Adds or updates the most recent reading for a sensor, see {@link SensorController#addLastReading(ReadingRequest, String)}.
+     * Returns 404 Not Found if the sensor or sensor type is not found and 400 Bad Request if the reading is missing
+     * or its timestamp is ahead of the server clock. With partitioned ingest enabled the reading is queued and
+     * 202 Accepted, or 429 Too Many Requests, is returned.
+     */
+    @ApiOperation(value = "returns all reading s associated with the sensor", response = LastReading.class)
+    @RequestMapping(value = "/add-last-readings/", method = RequestMethod.PUT)
+    public Mono<ResponseEntity<Void>> addLastReading(@RequestBody ReadingRequest readingRequest,
+                                                     @RequestHeader(value = IdempotencyStore.HEADER, required = false) String idempotencyKey) {
+        if (!IdempotencyStore.isValidKey(idempotencyKey)) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return idempotent("add-last-reading", idempotencyKey, readingRequest, () -> addLastReading(readingRequest));
+    }
+
+    private Mono<ResponseEntity<Void>> addLastReading(ReadingRequest readingRequest) {
+        if (ingestExecutor.isEnabled()) {
+            if (readingRequest.getSensorId() == null || readingRequest.getSensorType() == null
+                    || readingRequest.getSensorType().isBlank() || readingRequest.getReading() == null) {
+                return Mono.just(ResponseEntity.badRequest().build());
+            }
+            return blocking(() -> ingestExecutor.submit(readingRequest))
+                    .map(queued -> {
+                        if (!queued) {
+                            logger.info("Rejected reading of sensor {}, its ingest partition is full", readingRequest.getSensorId());
+                            return new ResponseEntity<>(HttpStatus.TOO_MANY_REQUESTS);
+                        }
+                        return ResponseEntity.accepted().build();
+                    });
+        }
+        if (readingRequest.getReading() == null) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        return reactiveSensorService.addOrUpdateReading(readingRequest.getSensorId(), readingRequest.getSensorType(),
+                        readingRequest.getReading(), readingRequest.getTimestamp(), readingRequest.getSequence())
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok().<Void>build()))
+                .onErrorResume(e -> e instanceof SensorNotFoundException || e instanceof SensorTypeNotFoundException,
+                        e -> Mono.just(ResponseEntity.notFound().build()))
+                .onErrorResume(InvalidRequestException.class, e -> Mono.just(ResponseEntity.badRequest().build()));
+    }
+
+    /**
+     * Adds or updates the most recent readings for many sensors in one call.
+     * Readings for unknown sensors are reported in the response instead of failing the batch.
+     * Returns 400 Bad Request if the batch is empty or larger than {@value SensorController#MAX_READING_BATCH_SIZE} readings.
+     */
+    @ApiOperation(value = "adds or updates the last readings of many sensors", response = BatchReadingResponse.class)
+    @RequestMapping(value = "/readings/batch", method = RequestMethod.PUT, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<BatchReadingResponse>> addLastReadings(@RequestBody BatchReadingRequest batchRequest) {
+        List<ReadingRequest> readings = batchRequest.getReadings();
+        if (readings == null || readings.isEmpty() || readings.size() > SensorController.MAX_READING_BATCH_SIZE) {
+            logger.info("Rejected reading batch of size: {}", readings == null ? 0 : readings.size());
+            return Mono.just(new ResponseEntity<>(HttpStatus.BAD_REQUEST));
+        }
+        return reactiveSensorService.addOrUpdateReadings(readings)
+                .map(response -> {
+                    logger.info("Accepted {} of {} readings", response.getAccepted(), response.getReceived());
+                    response.setStatus(HttpStatus.OK);
+                    return ResponseEntity.ok(response);
+                })
+                .onErrorResume(RuntimeException.class, e -> {
+                    logger.error("Error occurred while storing a batch of {} readings", readings.size(), e);
+                    return Mono.just(new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR));
+                });
+    }
+
+    /**
+     * Streams the recorded readings of a sensor and type between two points in time, as newline delimited JSON
+     * by default or as a JSON array with {@code format=json}. Returns 404 Not Found if the sensor does not exist.
+     */
+    @ApiOperation(value = "streams the recorded readings of a sensor and type within a time range")
+    @RequestMapping(value = "/{sensorId}/readings", method = RequestMethod.GET)
+    public Mono<ResponseEntity<Flux<DataBuffer>>> streamReadings(
+            @PathVariable Long sensorId,
+            @RequestParam String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "ndjson") String format) {
+        long fromMillis = from == null ? Long.MIN_VALUE : toEpochMillis(from);
+        long toMillis = to == null ? Long.MAX_VALUE : toEpochMillis(to);
+        boolean array = "json".equalsIgnoreCase(format);
+        if (fromMillis >= toMillis || !(array || "ndjson".equalsIgnoreCase(format))) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+
+        Flux<DataBuffer> body = OutputStreamPublisher.publish(DefaultDataBufferFactory.sharedInstance, out -> {
+            JsonSampleWriter writer = new JsonSampleWriter(out, array);
+            writer.start();
+            long count = sensorService.streamReadingHistory(sensorId, type, fromMillis, toMillis, writer);
+            writer.finish();
+            logger.info("Streamed {} {} readings of sensor {}", count, type, sensorId);
+        });
+        return reactiveSensorService.checkSensorExists(sensorId)
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok()
+                        .contentType(array ? MediaType.APPLICATION_JSON : MediaType.APPLICATION_NDJSON)
+                        .body(body)))
+                .onErrorResume(SensorNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * Returns min/max/avg/count/last aggregates of a sensor and type, one bucket per step.
+     * Defaults to the last 24 hours in hourly steps. The step is an ISO-8601 duration such as {@code PT15M}.
+     * Returns 400 Bad Request for an invalid range or step, or if more than
+     * {@value SensorController#MAX_ROLLUP_BUCKETS} buckets are requested.
+     */
+    @ApiOperation(value = "returns aggregated readings of a sensor and type per time bucket", response = RollupResponse.class)
+    @RequestMapping(value = "/{sensorId}/rollups", method = RequestMethod.GET)
+    public Mono<ResponseEntity<RollupResponse>> getRollups(
+            @PathVariable Long sensorId,
+            @RequestParam String type,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "PT1H") String step) {
+        long stepMillis;
+        try {
+            stepMillis = Duration.parse(step).toMillis();
+        } catch (DateTimeParseException e) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        long toMillis = to == null ? System.currentTimeMillis() : toEpochMillis(to);
+        long fromMillis = from == null ? toMillis - Duration.ofDays(1).toMillis() : toEpochMillis(from);
+        if (stepMillis <= 0 || fromMillis >= toMillis || (toMillis - fromMillis) / stepMillis > SensorController.MAX_ROLLUP_BUCKETS) {
+            return Mono.just(ResponseEntity.badRequest().build());
+        }
+        // the rollups are kept in memory, only the sensor check may wait on the database
+        return reactiveSensorService.checkSensorExists(sensorId)
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok(sensorService.getReadingRollups(sensorId, type, fromMillis, toMillis, stepMillis))))
+                .onErrorResume(SensorNotFoundException.class, e -> Mono.just(ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * Runs a call once per operation and {@code Idempotency-Key}, see {@link IdempotencyStore#executeAsync}.
+     */
+    private <T> Mono<ResponseEntity<T>> idempotent(String operation, String key, Object request,
+                                                   Supplier<Mono<ResponseEntity<T>>> call) {
+        return Mono.defer(() -> Mono.fromFuture(idempotencyStore.executeAsync(operation, key, request, () -> call.get().toFuture())));
+    }
+
+    /**
+     * Runs a blocking call on the bounded elastic scheduler, off the event loop.
+     */
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static long toEpochMillis(LocalDateTime timestamp) {
+        return timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,92 @@
+package com.energybox.backendcodingchallenge.reactive;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Turns code that writes to an {@link OutputStream}, such as the history writers, into a response body for WebFlux.
+ *
+ * The writer runs on the bounded elastic scheduler and every write becomes one {@link DataBuffer}, so callers
+ * should write through a buffered stream. A write waits until the client has asked for more, so a slow client
+ * holds back the writer instead of piling up buffers; if the client goes away the next write fails with an
+ * {@link IOException} and the writer stops.
+ */
+public final class OutputStreamPublisher extends OutputStream {
+
+    @FunctionalInterface
+    public interface Writer {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private final FluxSink<DataBuffer> sink;
+
+    private final DataBufferFactory bufferFactory;
+
+    private final Object demand = new Object();
+
+    private OutputStreamPublisher(FluxSink<DataBuffer> sink, DataBufferFactory bufferFactory) {
+        this.sink = sink;
+        this.bufferFactory = bufferFactory;
+    }
+
+    public static Flux<DataBuffer> publish(DataBufferFactory bufferFactory, Writer writer) {
+        // requests are passed to the sink on the caller's thread, the worker they would be scheduled on is busy writing
+        return Flux.<DataBuffer>create(sink -> {
+            OutputStreamPublisher out = new OutputStreamPublisher(sink, bufferFactory);
+            sink.onRequest(n -> out.signal());
+            sink.onCancel(out::signal);
+            try {
+                writer.writeTo(out);
+                sink.complete();
+            } catch (IOException | RuntimeException e) {
+                if (!sink.isCancelled()) {
+                    sink.error(e);
+                }
+            }
+        }).subscribeOn(Schedulers.boundedElastic(), false);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return;
+        }
+        awaitDemand();
+        sink.next(bufferFactory.wrap(Arrays.copyOfRange(b, off, off + len)));
+    }
+
+    private void awaitDemand() throws IOException {
+        synchronized (demand) {
+            while (!sink.isCancelled() && sink.requestedFromDownstream() == 0) {
+                try {
+                    demand.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for the client");
+                }
+            }
+        }
+        if (sink.isCancelled()) {
+            throw new IOException("The client cancelled the response");
+        }
+    }
+
+    private void signal() {
+        synchronized (demand) {
+            demand.notifyAll();
+        }
+    }
+}
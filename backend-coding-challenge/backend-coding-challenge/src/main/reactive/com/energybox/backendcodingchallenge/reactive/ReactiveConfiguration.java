@@ -0,0 +1,48 @@
+package com.energybox.backendcodingchallenge.reactive;
+
+import com.energybox.backendcodingchallenge.repository.reactive.ReactiveSensorRepository;
+import org.neo4j.driver.Driver;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.neo4j.core.DatabaseSelectionProvider;
+import org.springframework.data.neo4j.core.ReactiveDatabaseSelectionProvider;
+import org.springframework.data.neo4j.core.transaction.Neo4jTransactionManager;
+import org.springframework.data.neo4j.core.transaction.ReactiveNeo4jTransactionManager;
+import org.springframework.data.neo4j.repository.config.EnableReactiveNeo4jRepositories;
+
+/**
+ * Runtime wiring of the reactive profile, which serves {@code /sensors} and {@code /gateways} from
+ * WebFlux on Netty instead of Spring MVC on Tomcat.
+ *
+ * The reactive repositories are only registered here; {@code spring.data.neo4j.repositories.type} keeps
+ * the auto-configuration to the blocking ones, which the services still use for the calls that are not
+ * mirrored reactively. The reactive repositories run in their own {@code reactiveTransactionManager}.
+ * The blocking ones keep a {@code transactionManager} declared here as well, since the auto-configured one
+ * backs off as soon as any transaction manager exists.
+ * Netty is chosen explicitly because Tomcat stays on the classpath for war deployments.
+ */
+@Configuration(proxyBeanMethods = false)
+@Profile("reactive")
+@EnableReactiveNeo4jRepositories(basePackageClasses = ReactiveSensorRepository.class)
+public class ReactiveConfiguration {
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    @Primary
+    public Neo4jTransactionManager transactionManager(Driver driver, DatabaseSelectionProvider databaseSelectionProvider) {
+        return new Neo4jTransactionManager(driver, databaseSelectionProvider);
+    }
+
+    @Bean
+    public ReactiveNeo4jTransactionManager reactiveTransactionManager(Driver driver,
+                                                                     ReactiveDatabaseSelectionProvider databaseSelectionProvider) {
+        return new ReactiveNeo4jTransactionManager(driver, databaseSelectionProvider);
+    }
+}
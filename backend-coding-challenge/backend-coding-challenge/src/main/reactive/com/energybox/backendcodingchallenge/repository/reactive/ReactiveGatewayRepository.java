@@ -0,0 +1,38 @@
+package com.energybox.backendcodingchallenge.repository.reactive;
+
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * Non-blocking equivalent of {@link com.energybox.backendcodingchallenge.repository.GatewayRepository},
+ * only registered with the reactive profile.
+ */
+public interface ReactiveGatewayRepository extends ReactiveNeo4jRepository<Gateway, Long> {
+
+    @Query("MATCH (g:Gateway)<-[:CONNECTED_TO]-(s:Sensor)-[:HAS_TYPE]->(t:SensorType {name: $typeName}) RETURN DISTINCT g ORDER BY id(g)")
+    Flux<Gateway> findGatewaysWithSensorType(@Param("typeName") String typeName);
+
+    /**
+     * Returns the gateways with sensors of every type in {@code all} and of at least one type in {@code any}.
+     * An empty list places no constraint, but at least one of them must not be empty: the gateways are
+     * reached from the first type asked for rather than by scanning them all.
+     */
+    @Query("UNWIND CASE WHEN size($all) > 0 THEN $all[0..1] ELSE $any END AS first "
+            + "MATCH (:SensorType {name: first})<-[:HAS_TYPE]-(:Sensor)-[:CONNECTED_TO]->(g:Gateway) "
+            + "WITH DISTINCT g "
+            + "WHERE all(name IN $all WHERE (g)<-[:CONNECTED_TO]-(:Sensor)-[:HAS_TYPE]->(:SensorType {name: name})) "
+            + "AND (size($any) = 0 OR any(name IN $any WHERE (g)<-[:CONNECTED_TO]-(:Sensor)-[:HAS_TYPE]->(:SensorType {name: name}))) "
+            + "RETURN g ORDER BY id(g)")
+    Flux<Gateway> findGatewaysWithSensorTypes(@Param("all") List<String> all, @Param("any") List<String> any);
+
+    /**
+     * Returns the next page of gateways ordered by ID, starting after {@code afterId}.
+     */
+    @Query("MATCH (g:Gateway) WHERE id(g) > $afterId RETURN g ORDER BY id(g) LIMIT $limit")
+    Flux<Gateway> findPageAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+}
@@ -0,0 +1,17 @@
+package com.energybox.backendcodingchallenge.repository.reactive;
+
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+
+/**
+ * Non-blocking equivalent of {@link com.energybox.backendcodingchallenge.repository.LastReadingRepository},
+ * only registered with the reactive profile.
+ */
+public interface ReactiveLastReadingRepository extends ReactiveNeo4jRepository<LastReading, Long> {
+
+    @Query("MATCH (s:Sensor)-[:HAS_LAST_READING]->(l:LastReading) WHERE id(s) = $sensorId RETURN l")
+    Flux<LastReading> findLastReadings(@Param("sensorId") Long sensorId);
+}
@@ -0,0 +1,95 @@
+package com.energybox.backendcodingchallenge.repository.reactive;
+
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import org.neo4j.driver.Value;
+import org.neo4j.driver.Values;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking equivalent of the read queries and last reading upserts of
+ * {@link com.energybox.backendcodingchallenge.repository.SensorRepository}, only registered with the reactive profile.
+ */
+public interface ReactiveSensorRepository extends ReactiveNeo4jRepository<Sensor, Long> {
+
+    /**
+     * Returns the next page of sensors ordered by ID, starting after {@code afterId}.
+     */
+    @Query("MATCH (s:Sensor) WHERE id(s) > $afterId RETURN s ORDER BY id(s) LIMIT $limit")
+    Flux<SensorSummary> findSummariesAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    @Query("MATCH (s:Sensor) RETURN s ORDER BY id(s)")
+    Flux<SensorSummary> findAllSummaries();
+
+    @Query("MATCH (s:Sensor)-[:HAS_TYPE]->(:SensorType {name: $typeName}) RETURN s ORDER BY id(s)")
+    Flux<SensorSummary> findSummariesByTypeName(@Param("typeName") String typeName);
+
+    @Query("MATCH (s:Sensor)-[:CONNECTED_TO]->(g:Gateway) WHERE id(g) = $gatewayId RETURN s ORDER BY id(s)")
+    Flux<SensorSummary> findSummariesByGatewayId(@Param("gatewayId") Long gatewayId);
+
+    /**
+     * Returns the sensors having every type in {@code all} and at least one type in {@code any}.
+     * An empty list places no constraint, but at least one of them must not be empty: the sensors are
+     * reached from the first type asked for rather than by scanning them all.
+     */
+    @Query("UNWIND CASE WHEN size($all) > 0 THEN $all[0..1] ELSE $any END AS first "
+            + "MATCH (:SensorType {name: first})<-[:HAS_TYPE]-(s:Sensor) "
+            + "WITH DISTINCT s "
+            + "WHERE all(name IN $all WHERE (s)-[:HAS_TYPE]->(:SensorType {name: name})) "
+            + "AND (size($any) = 0 OR any(name IN $any WHERE (s)-[:HAS_TYPE]->(:SensorType {name: name}))) "
+            + "RETURN s ORDER BY id(s)")
+    Flux<SensorSummary> findSummariesByTypes(@Param("all") List<String> all, @Param("any") List<String> any);
+
+    /**
+     * Upserts the last reading of one sensor and type, see
+     * {@link com.energybox.backendcodingchallenge.repository.SensorRepository#upsertLastReading}.
+     *
+     * @return 1 if the sensor exists, whether or not the reading was newer; 0 if the sensor does not exist.
+     */
+    @Query("MATCH (s:Sensor) WHERE id(s) = $sensorId " +
+            "SET s.lastReadingAt = CASE WHEN s.lastReadingAt > $timestamp THEN s.lastReadingAt ELSE $timestamp END " +
+            "MERGE (s)-[:HAS_LAST_READING]->(l:LastReading {typeName: $typeName}) " +
+            "WITH l, l.timestamp IS NULL OR l.timestamp <= $timestamp AS newer " +
+            "SET l.timestamp = CASE WHEN newer THEN $timestamp ELSE l.timestamp END, " +
+            "l.reading = CASE WHEN newer THEN $reading ELSE l.reading END " +
+            "RETURN count(l)")
+    Mono<Long> upsertLastReading(@Param("sensorId") Long sensorId, @Param("typeName") String typeName,
+                                 @Param("timestamp") LocalDateTime timestamp, @Param("reading") Double reading);
+
+    /**
+     * Upserts the last reading of every (sensorId, sensorType, timestamp, reading) row in one statement, see
+     * {@link com.energybox.backendcodingchallenge.repository.SensorRepository#upsertLastReadings}.
+     *
+     * @return The ids of the sensors that exist.
+     */
+    default Flux<Long> upsertLastReadings(List<Map<String, Object>> readings) {
+        // Spring Data Neo4j 6.0 cannot convert map parameters, the driver can
+        return upsertLastReadingValues(readings.stream().map(Values::value).collect(Collectors.toList()));
+    }
+
+    @Query("UNWIND $readings AS r " +
+            "MATCH (s:Sensor) WHERE id(s) = r.sensorId " +
+            "SET s.lastReadingAt = CASE WHEN s.lastReadingAt > r.timestamp THEN s.lastReadingAt ELSE r.timestamp END " +
+            "MERGE (s)-[:HAS_LAST_READING]->(l:LastReading {typeName: r.sensorType}) " +
+            "WITH r, l, l.timestamp IS NULL OR l.timestamp <= r.timestamp AS newer " +
+            "SET l.timestamp = CASE WHEN newer THEN r.timestamp ELSE l.timestamp END, " +
+            "l.reading = CASE WHEN newer THEN r.reading ELSE l.reading END " +
+            "RETURN DISTINCT r.sensorId")
+    Flux<Long> upsertLastReadingValues(@Param("readings") List<Value> readings);
+
+    /**
+     * Returns which of the ids belong to a sensor.
+     */
+    @Query("UNWIND $ids AS sensorId MATCH (s:Sensor) WHERE id(s) = sensorId RETURN DISTINCT id(s)")
+    Flux<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+}
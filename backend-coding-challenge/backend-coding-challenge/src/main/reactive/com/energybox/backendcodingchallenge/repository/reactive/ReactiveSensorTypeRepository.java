@@ -0,0 +1,25 @@
+package com.energybox.backendcodingchallenge.repository.reactive;
+
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import org.springframework.data.neo4j.repository.ReactiveNeo4jRepository;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Non-blocking equivalent of {@link com.energybox.backendcodingchallenge.repository.SensorTypeRepository},
+ * only registered with the reactive profile.
+ */
+public interface ReactiveSensorTypeRepository extends ReactiveNeo4jRepository<SensorType, String> {
+
+    Mono<SensorType> findByName(String name);
+
+    @Query("MERGE (t:SensorType {name: $name}) RETURN t")
+    Mono<SensorType> mergeByName(@Param("name") String name);
+
+    @Query("UNWIND $names AS name MERGE (t:SensorType {name: name}) RETURN t")
+    Flux<SensorType> mergeByNames(@Param("names") Collection<String> names);
+}
@@ -0,0 +1,114 @@
+package com.energybox.backendcodingchallenge.service;
+
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.exception.GatewayNotFoundException;
+import com.energybox.backendcodingchallenge.model.GatewayRequest;
+import com.energybox.backendcodingchallenge.model.GatewayResponse;
+import com.energybox.backendcodingchallenge.repository.reactive.ReactiveGatewayRepository;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non-blocking counterpart of {@link GatewayService} for the reactive profile.
+ * Answers from the topology registry when it is ready and from the reactive repository otherwise,
+ * so no call waits on a thread for Bolt.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveGatewayService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveGatewayService.class);
+
+    private final ReactiveGatewayRepository gatewayRepository;
+
+    private final TopologyRegistry topologyRegistry;
+
+    public ReactiveGatewayService(ReactiveGatewayRepository gatewayRepository, TopologyRegistry topologyRegistry) {
+        this.gatewayRepository = gatewayRepository;
+        this.topologyRegistry = topologyRegistry;
+    }
+
+    /**
+     * Creates a new Gateway.
+     *
+     * @param gatewayRequest The request object containing gateway details.
+     * @return A response object containing the ID of the newly created gateway.
+     */
+    public Mono<GatewayResponse> createGateway(GatewayRequest gatewayRequest) {
+        logger.info("Creating new Gateway with name: {}", gatewayRequest.getName());
+        return gatewayRepository.save(new Gateway(gatewayRequest.getName()))
+                .map(result -> {
+                    topologyRegistry.gatewaySaved(result.getId(), result.getName());
+                    GatewayResponse response = new GatewayResponse();
+                    response.setGateWayId(result.getId());
+                    logger.info("Created Gateway with ID: {}", result.getId());
+                    return response;
+                });
+    }
+
+    /**
+     * Fetches a page of Gateways ordered by ID.
+     *
+     * @param afterId The ID of the last Gateway of the previous page, or -1 for the first page.
+     * @param limit   The maximum number of Gateways to return.
+     * @return The Gateways of the page.
+     */
+    public Mono<List<Gateway>> fetchGateways(long afterId, int limit) {
+        if (topologyRegistry.isReady()) {
+            return Mono.fromSupplier(() -> topologyRegistry.gatewaysAfter(afterId, limit));
+        }
+        return gatewayRepository.findPageAfter(afterId, limit).collectList();
+    }
+
+    /**
+     * Fetches a Gateway by its ID.
+     *
+     * @param id The ID of the Gateway to be fetched.
+     * @return The Gateway with the specified ID, or a {@link GatewayNotFoundException} error if there is none.
+     */
+    public Mono<Gateway> fetchGatewayById(Long id) {
+        if (topologyRegistry.isReady()) {
+            Gateway gateway = topologyRegistry.gateway(id);
+            if (gateway != null) {
+                return Mono.just(gateway);
+            }
+        }
+        return gatewayRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new GatewayNotFoundException("Gateway not found with ID: " + id)));
+    }
+
+    /**
+     * Fetches Gateways by the sensor type associated with them.
+     *
+     * @param sensorType The sensor type to filter Gateways by.
+     * @return The Gateways associated with the specified sensor type, ordered by ID.
+     */
+    public Flux<Gateway> fetchGatewaysBySensorType(String sensorType) {
+        if (topologyRegistry.isReady()) {
+            return Flux.defer(() -> Flux.fromIterable(topologyRegistry.gatewaysOfType(sensorType)));
+        }
+        return gatewayRepository.findGatewaysWithSensorType(sensorType);
+    }
+
+    /**
+     * Fetches the Gateways that have sensors of every type in {@code all} and of at least one type in {@code any}.
+     * An empty list places no constraint.
+     *
+     * @param all The sensor types a Gateway must all have.
+     * @param any The sensor types of which a Gateway must have at least one.
+     * @return The matching Gateways ordered by ID.
+     */
+    public Flux<Gateway> fetchGatewaysBySensorTypes(List<String> all, List<String> any) {
+        if (topologyRegistry.isReady()) {
+            return Flux.defer(() -> Flux.fromIterable(topologyRegistry.gatewaysOfTypes(all, any)));
+        }
+        return gatewayRepository.findGatewaysWithSensorTypes(all, any);
+    }
+}
@@ -0,0 +1,352 @@
+package com.energybox.backendcodingchallenge.service;
+
+import com.energybox.backendcodingchallenge.cache.LastReadingCache;
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
+import com.energybox.backendcodingchallenge.exception.SensorNotFoundException;
+import com.energybox.backendcodingchallenge.exception.SensorTypeNotFoundException;
+import com.energybox.backendcodingchallenge.ingest.LastReadingBuffer;
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import com.energybox.backendcodingchallenge.repository.reactive.ReactiveLastReadingRepository;
+import com.energybox.backendcodingchallenge.repository.reactive.ReactiveSensorRepository;
+import com.energybox.backendcodingchallenge.repository.reactive.ReactiveSensorTypeRepository;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import com.energybox.backendcodingchallenge.wal.ReadingWal;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking counterpart of the read paths and the reading ingest of {@link SensorService} for the reactive profile.
+ *
+ * Lookups are answered from the topology registry and the last reading cache when possible and from the
+ * reactive repositories otherwise. Readings go through the same checks, watermarks, history and buffer as with
+ * {@link SensorService}, but are upserted through the reactive repository. Sensor provisioning and gateway
+ * assignments are not mirrored here.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveSensorService {
+
+    private static final int[] NO_TICKETS = new int[0];
+
+    private final ReactiveSensorRepository sensorRepository;
+
+    private final ReactiveLastReadingRepository lastReadingRepository;
+
+    private final ReactiveSensorTypeRepository sensorTypeRepository;
+
+    private final SensorTypeDictionary sensorTypeDictionary;
+
+    private final TopologyRegistry topologyRegistry;
+
+    private final LastReadingCache lastReadingCache;
+
+    private final LastReadingBuffer lastReadingBuffer;
+
+    private final ReadingWal readingWal;
+
+    private final SensorService sensorService;
+
+    public ReactiveSensorService(ReactiveSensorRepository sensorRepository, ReactiveLastReadingRepository lastReadingRepository,
+                                 ReactiveSensorTypeRepository sensorTypeRepository,
+                                 SensorTypeDictionary sensorTypeDictionary, TopologyRegistry topologyRegistry,
+                                 LastReadingCache lastReadingCache, LastReadingBuffer lastReadingBuffer,
+                                 ReadingWal readingWal, SensorService sensorService) {
+        this.sensorRepository = sensorRepository;
+        this.lastReadingRepository = lastReadingRepository;
+        this.sensorTypeRepository = sensorTypeRepository;
+        this.sensorTypeDictionary = sensorTypeDictionary;
+        this.topologyRegistry = topologyRegistry;
+        this.lastReadingCache = lastReadingCache;
+        this.lastReadingBuffer = lastReadingBuffer;
+        this.readingWal = readingWal;
+        this.sensorService = sensorService;
+    }
+
+    /**
+     * Fetches a page of Sensors ordered by ID, including their relationships.
+     *
+     * @param afterId The ID of the last Sensor of the previous page, or -1 for the first page.
+     * @param limit   The maximum number of Sensors to return.
+     */
+    public Mono<List<Sensor>> fetchSensors(long afterId, int limit) {
+        return loadSensors(sensorRepository.findSummariesAfter(afterId, limit));
+    }
+
+    /**
+     * Fetches the id, name and location code of a page of Sensors without loading their relationships.
+     *
+     * @param afterId The ID of the last Sensor of the previous page, or -1 for the first page.
+     * @param limit   The maximum number of Sensors to return.
+     */
+    public Mono<List<SensorSummary>> fetchSensorSummaries(long afterId, int limit) {
+        if (topologyRegistry.isReady()) {
+            return Mono.fromSupplier(() -> topologyRegistry.sensorsAfter(afterId, limit));
+        }
+        return sensorRepository.findSummariesAfter(afterId, limit).collectList();
+    }
+
+    /**
+     * Emits the summary of every Sensor ordered by ID as it is read from the database.
+     */
+    public Flux<SensorSummary> exportSensorSummaries() {
+        return sensorRepository.findAllSummaries();
+    }
+
+    /**
+     * Fetches a Sensor by its ID.
+     *
+     * @return The Sensor, or a {@link SensorNotFoundException} error if there is none.
+     */
+    public Mono<Sensor> fetchSensorById(Long id) {
+        return sensorRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new SensorNotFoundException("Sensor not found with ID: " + id)));
+    }
+
+    public Mono<List<Sensor>> getSensorsByType(String typeName) {
+        return loadSensors(getSensorSummariesByType(typeName));
+    }
+
+    public Flux<SensorSummary> getSensorSummariesByType(String typeName) {
+        if (topologyRegistry.isReady()) {
+            return Flux.defer(() -> Flux.fromIterable(topologyRegistry.sensorsOfType(typeName)));
+        }
+        return sensorRepository.findSummariesByTypeName(typeName);
+    }
+
+    /**
+     * Fetches the summaries of the Sensors that have every type in {@code all} and at least one type in {@code any}.
+     * An empty list places no constraint.
+     */
+    public Flux<SensorSummary> getSensorSummariesByTypes(List<String> all, List<String> any) {
+        if (topologyRegistry.isReady()) {
+            return Flux.defer(() -> Flux.fromIterable(topologyRegistry.sensorsOfTypes(all, any)));
+        }
+        return sensorRepository.findSummariesByTypes(all, any);
+    }
+
+    public Mono<List<Sensor>> getSensorsByGateway(Long gatewayId) {
+        return loadSensors(getSensorSummariesByGateway(gatewayId));
+    }
+
+    public Flux<SensorSummary> getSensorSummariesByGateway(Long gatewayId) {
+        if (topologyRegistry.isReady()) {
+            return Flux.defer(() -> Flux.fromIterable(topologyRegistry.sensorsOfGateway(gatewayId)));
+        }
+        return sensorRepository.findSummariesByGatewayId(gatewayId);
+    }
+
+    /**
+     * Attaches a type to a Sensor, merging the SensorType node through the reactive type repository
+     * the first time the type is used.
+     *
+     * @return Completes once the relationship is saved, or a {@link SensorNotFoundException} error.
+     */
+    public Mono<Void> addSensorType(Long sensorId, String typeName) {
+        return sensorRepository.findById(sensorId)
+                .switchIfEmpty(Mono.error(() -> new SensorNotFoundException("Sensor not found")))
+                .flatMap(sensor -> ensureStored(typeName).then(Mono.defer(() -> {
+                    sensor.getTypes().add(new SensorType(typeName));
+                    return sensorRepository.save(sensor);
+                })))
+                .doOnNext(sensor -> topologyRegistry.sensorTypeAdded(sensorId, typeName))
+                .then();
+    }
+
+    /**
+     * Retrieves the most recent readings of a Sensor, with the readings still waiting in the write-behind
+     * buffer taking precedence over the stored ones. A cache miss loads the LastReading nodes of the sensor
+     * through the reactive repository and caches them.
+     *
+     * @return The readings, or a {@link SensorNotFoundException} error if the sensor does not exist.
+     */
+    public Mono<List<LastReading>> getLastReadings(Long sensorId) {
+        List<LastReading> cached = lastReadingCache.getIfPresent(sensorId);
+        Mono<List<LastReading>> stored = cached != null ? Mono.just(cached) : loadLastReadings(sensorId);
+        return stored.map(readings -> SensorService.withBuffered(readings, lastReadingBuffer.getBuffered(sensorId)));
+    }
+
+    private Mono<List<LastReading>> loadLastReadings(Long sensorId) {
+        return checkSensorExists(sensorId)
+                .then(lastReadingRepository.findLastReadings(sensorId).collectList())
+                .doOnNext(readings -> lastReadingCache.put(sensorId, readings));
+    }
+
+    /**
+     * Checks that a sensor exists without loading it.
+     *
+     * @return Completes if the sensor exists, or a {@link SensorNotFoundException} error.
+     */
+    public Mono<Void> checkSensorExists(Long sensorId) {
+        if (topologyRegistry.isReady() && topologyRegistry.containsSensor(sensorId)) {
+            return Mono.empty();
+        }
+        return sensorRepository.existsById(sensorId)
+                .flatMap(exists -> exists ? Mono.<Void>empty()
+                        : Mono.error(new SensorNotFoundException("Sensor not found with ID: " + sensorId)));
+    }
+
+    /**
+     * Adds or updates the most recent reading of a sensor, like
+     * {@link SensorService#addOrUpdateReading(Long, String, Double, LocalDateTime, Long)}.
+     *
+     * The sensor check and the upsert run on the reactive repository, and a new type is merged through the
+     * reactive type repository. With the reading WAL enabled the reading is logged on the bounded elastic
+     * scheduler first, since forcing the log blocks.
+     *
+     * @return Completes once the reading is accepted, or a {@link SensorNotFoundException},
+     * {@link SensorTypeNotFoundException} or {@link InvalidRequestException} error.
+     */
+    public Mono<Void> addOrUpdateReading(Long sensorId, String typeName, Double reading, LocalDateTime timestamp, Long sequence) {
+        return Mono.defer(() -> {
+            SensorService.AdmittedReading admitted = sensorService.admitReading(sensorId, typeName, reading, timestamp, sequence);
+            if (admitted == null) {
+                return Mono.empty();
+            }
+            Mono<Void> checked = sensorService.mustCheckSensor(admitted) ? checkSensorExists(sensorId) : Mono.empty();
+            return checked
+                    .then(logged(() -> readingWal.append(sensorId, typeName, admitted.takenAt, reading), ReadingWal.NO_TICKET))
+                    .flatMap(ticket -> writeReading(admitted).doFinally(signal -> readingWal.handedOff(ticket)))
+                    .doFinally(signal -> {
+                        if (signal != SignalType.ON_COMPLETE) {
+                            sensorService.releaseReading(admitted);
+                        }
+                    });
+        });
+    }
+
+    private Mono<Void> writeReading(SensorService.AdmittedReading admitted) {
+        if (admitted.isLate()) {
+            return Mono.fromRunnable(() -> sensorService.acceptLateReading(admitted));
+        }
+        if (lastReadingBuffer.isEnabled()) {
+            return ensureStored(admitted.typeName)
+                    .then(Mono.fromRunnable(() -> sensorService.bufferReading(admitted)));
+        }
+        // Upsert only the reading of this type, in a single statement
+        return sensorRepository.upsertLastReading(admitted.sensorId, admitted.typeName, admitted.takenAt, admitted.reading)
+                .flatMap(count -> count == 0 ? Mono.<Void>error(new SensorNotFoundException("Sensor not found"))
+                        : ensureStored(admitted.typeName))
+                .then(Mono.fromRunnable(() -> sensorService.acceptReading(admitted)));
+    }
+
+    /**
+     * Adds or updates the most recent readings of many sensors at once, like {@link SensorService#addOrUpdateReadings(List)}.
+     * The rows are upserted in chunks through the reactive repository, or handed to the write-behind buffer after
+     * a single existence check on it. With the reading WAL enabled they are logged on the bounded elastic scheduler first.
+     *
+     * @return A response holding the number of accepted readings and the per-item failures.
+     */
+    public Mono<BatchReadingResponse> addOrUpdateReadings(List<ReadingRequest> readings) {
+        return Mono.defer(() -> {
+            SensorService.AdmittedBatch batch = sensorService.admitReadings(readings);
+            AtomicBoolean accepted = new AtomicBoolean();
+            Mono<Set<Long>> written = lastReadingBuffer.isEnabled() ? bufferReadings(batch) : writeReadings(batch);
+            return written
+                    .flatMap(sensorIds -> Flux.fromIterable(batch.typesOf(sensorIds))
+                            .concatMap(this::ensureStored)
+                            .then(Mono.just(sensorIds)))
+                    .map(sensorIds -> {
+                        accepted.set(true);
+                        return sensorService.acceptReadings(batch, sensorIds);
+                    })
+                    .doFinally(signal -> {
+                        if (!accepted.get()) {
+                            sensorService.releaseReadings(batch);
+                        }
+                    });
+        });
+    }
+
+    private Mono<Set<Long>> writeReadings(SensorService.AdmittedBatch batch) {
+        Collection<Map<String, Object>> rows = batch.rows.values();
+        return logged(() -> readingWal.append(SensorService.walRecords(rows)), NO_TICKETS)
+                .flatMap(tickets -> Flux.fromIterable(SensorService.chunks(rows))
+                        .concatMap(sensorRepository::upsertLastReadings)
+                        .collect(Collectors.toSet())
+                        .doFinally(signal -> readingWal.handedOff(tickets)));
+    }
+
+    private Mono<Set<Long>> bufferReadings(SensorService.AdmittedBatch batch) {
+        Set<Long> sensorIds = batch.indexesBySensor.keySet();
+        if (sensorIds.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        Set<Long> existing = new HashSet<>();
+        Set<Long> unknown = sensorService.unregisteredSensors(sensorIds, existing);
+        Mono<Set<Long>> found = unknown.isEmpty() ? Mono.just(existing)
+                : sensorRepository.findExistingIds(unknown).collect(() -> existing, Set::add);
+        return found.flatMap(known -> {
+            List<Map<String, Object>> buffered = SensorService.rowsOf(batch.rows.values(), known);
+            return logged(() -> readingWal.append(SensorService.walRecords(buffered)), NO_TICKETS)
+                    .map(tickets -> {
+                        try {
+                            sensorService.bufferRows(buffered);
+                        } finally {
+                            readingWal.handedOff(tickets);
+                        }
+                        return known;
+                    });
+        });
+    }
+
+    /**
+     * Appends to the reading WAL on the bounded elastic scheduler, since the append waits for the log to be forced.
+     *
+     * @param none What to emit when the log is disabled.
+     */
+    private <T> Mono<T> logged(Callable<T> append, T none) {
+        if (!readingWal.isEnabled()) {
+            return Mono.just(none);
+        }
+        return Mono.fromCallable(append).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Void> ensureStored(String typeName) {
+        if (sensorTypeDictionary.isStored(typeName)) {
+            return Mono.empty();
+        }
+        return sensorTypeRepository.mergeByName(typeName)
+                .doOnNext(sensorType -> {
+                    if (sensorTypeDictionary.markStored(typeName)) {
+                        topologyRegistry.typeSaved(typeName);
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * Loads the full Sensors behind the summaries, in ID order.
+     */
+    private Mono<List<Sensor>> loadSensors(Flux<SensorSummary> summaries) {
+        return summaries.map(SensorSummary::getId)
+                .collectList()
+                .flatMap(ids -> ids.isEmpty() ? Mono.just(new ArrayList<Sensor>())
+                        : sensorRepository.findAllById(ids).collectList())
+                .map(sensors -> {
+                    sensors.sort(Comparator.comparing(Sensor::getId));
+                    return sensors;
+                });
+    }
+}
@@ -0,0 +1,120 @@
+package com.energybox.backendcodingchallenge.cache;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.exception.SensorNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LastReadingCacheTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private SensorTypeDictionary types;
+
+    private LastReadingCache cache;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        types = new SensorTypeDictionary(null, meterRegistry);
+        cache = new LastReadingCache(types, meterRegistry, true, 100, 60_000);
+    }
+
+    @Test
+    void get_ShouldLoadOnceAndServeHitsFromMemory() {
+        LongFunction<List<LastReading>> loader = countingLoader(reading("electricity", NOW, 230.0));
+
+        List<LastReading> first = cache.get(1L, loader);
+        List<LastReading> second = cache.get(1L, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(first, second);
+        assertEquals("electricity", second.get(0).getTypeName());
+        assertEquals(NOW, second.get(0).getTimestamp());
+        assertEquals(230.0, second.get(0).getReading());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "last-readings").tag("result", "hit")
+                .functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "last-readings").tag("result", "miss")
+                .functionCounter().count());
+    }
+
+    @Test
+    void update_ShouldWriteThroughToCachedSensorsOnly() {
+        cache.get(1L, countingLoader(reading("electricity", NOW.minusMinutes(1), 229.0)));
+
+        cache.update(1L, types.code("electricity"), NOW, 231.0);
+        cache.update(1L, types.code("humidity"), NOW, 40.0);
+        cache.update(2L, types.code("electricity"), NOW, 1.0);
+
+        List<LastReading> readings = cache.get(1L, countingLoader());
+        assertEquals(2, readings.size());
+        assertEquals(231.0, readings.get(0).getReading());
+        assertEquals(NOW, readings.get(0).getTimestamp());
+        assertEquals("humidity", readings.get(1).getTypeName());
+        assertEquals(1, loads.get());
+
+        // sensor 2 was not cached, so its next read goes to the loader
+        assertTrue(cache.get(2L, countingLoader()).isEmpty());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_ShouldNotCacheALoadThatOverlapsAnUpdate() {
+        List<LastReading> loaded = cache.get(1L, id -> {
+            loads.incrementAndGet();
+            cache.update(1L, types.code("electricity"), NOW, 231.0);
+            return List.of(reading("electricity", NOW.minusMinutes(1), 229.0));
+        });
+
+        assertEquals(229.0, loaded.get(0).getReading());
+        assertEquals(231.0, cache.get(1L, countingLoader(reading("electricity", NOW, 231.0))).get(0).getReading());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void get_ShouldNotCacheLoaderFailures() {
+        assertThrows(SensorNotFoundException.class, () -> cache.get(1L, id -> {
+            throw new SensorNotFoundException("Sensor not found");
+        }));
+
+        assertTrue(cache.get(1L, countingLoader()).isEmpty());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_ShouldCallTheLoaderEveryTimeWhenDisabled() {
+        cache = new LastReadingCache(types, meterRegistry, false, 100, 60_000);
+
+        cache.get(1L, countingLoader());
+        cache.get(1L, countingLoader());
+
+        assertEquals(2, loads.get());
+    }
+
+    private LongFunction<List<LastReading>> countingLoader(LastReading... readings) {
+        return id -> {
+            loads.incrementAndGet();
+            return List.of(readings);
+        };
+    }
+
+    private static LastReading reading(String typeName, LocalDateTime timestamp, Double value) {
+        LastReading reading = new LastReading(timestamp, value);
+        reading.setTypeName(typeName);
+        return reading;
+    }
+}
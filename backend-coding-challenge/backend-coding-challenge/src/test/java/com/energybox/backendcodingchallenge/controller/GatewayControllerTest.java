@@ -6,6 +6,7 @@ import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
 import com.energybox.backendcodingchallenge.model.GatewayRequest;
 import com.energybox.backendcodingchallenge.model.GatewayResponse;
 import com.energybox.backendcodingchallenge.service.GatewayService;
+import com.energybox.backendcodingchallenge.util.PageCursors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -95,22 +96,65 @@ public class GatewayControllerTest {
         assertEquals(gateways, response.getBody());
     }
 
+    @Test
+    void fetchGatewaysBySensorTypes_ShouldPassBothTypeLists() {
+        List<Gateway> gateways = Collections.singletonList(gateway);
+        when(gatewayService.fetchGatewaysBySensorTypes(List.of("electricity", "humidity"), List.of())).thenReturn(gateways);
+
+        ResponseEntity<List<Gateway>> response = gatewayController.fetchGatewaysBySensorTypes(List.of("electricity", "humidity"), null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(gateways, response.getBody());
+    }
+
+    @Test
+    void fetchGatewaysBySensorTypes_ShouldReturnBadRequestWithoutTypes() {
+        ResponseEntity<List<Gateway>> response = gatewayController.fetchGatewaysBySensorTypes(null, List.of());
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(gatewayService);
+    }
+
     @Test
     void fetchAllGateways_ShouldReturnListOfGateways() throws InvalidRequestException, GatewayNotFoundException {
         List<Gateway> gateways = Collections.singletonList(gateway);
-        when(gatewayService.fetchAllGateways()).thenReturn(gateways);
+        when(gatewayService.fetchGateways(-1L, 10)).thenReturn(gateways);
 
-        ResponseEntity<List<Gateway>> response = gatewayController.fetchAllGateways();
+        ResponseEntity<List<Gateway>> response = gatewayController.fetchAllGateways(null, 10);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(gateways, response.getBody());
+        assertNull(response.getHeaders().getFirst(PageCursors.NEXT_HEADER));
+    }
+
+    @Test
+    void fetchAllGateways_ShouldReturnNextCursorForAFullPage() throws InvalidRequestException, GatewayNotFoundException {
+        when(gatewayService.fetchGateways(-1L, 1)).thenReturn(Collections.singletonList(gateway));
+
+        ResponseEntity<List<Gateway>> response = gatewayController.fetchAllGateways(null, 1);
+        String next = response.getHeaders().getFirst(PageCursors.NEXT_HEADER);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1L, PageCursors.decode(next));
+
+        when(gatewayService.fetchGateways(1L, 1)).thenReturn(List.of());
+        gatewayController.fetchAllGateways(next, 1);
+        verify(gatewayService).fetchGateways(1L, 1);
+    }
+
+    @Test
+    void fetchAllGateways_ShouldReturnBadRequestForInvalidCursor() throws InvalidRequestException, GatewayNotFoundException {
+        ResponseEntity<List<Gateway>> response = gatewayController.fetchAllGateways("not-a-cursor", 10);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(gatewayService);
     }
 
     @Test
     void fetchAllGateways_ShouldReturnInternalServerErrorOnException() throws InvalidRequestException, GatewayNotFoundException {
-        when(gatewayService.fetchAllGateways()).thenThrow(new RuntimeException("Database error"));
+        when(gatewayService.fetchGateways(-1L, 10)).thenThrow(new RuntimeException("Database error"));
 
-        ResponseEntity<List<Gateway>> response = gatewayController.fetchAllGateways();
+        ResponseEntity<List<Gateway>> response = gatewayController.fetchAllGateways(null, 10);
 
         assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
     }
@@ -3,22 +3,35 @@ package com.energybox.backendcodingchallenge.controller;
 import com.energybox.backendcodingchallenge.domain.LastReading;
 import com.energybox.backendcodingchallenge.domain.Sensor;
 import com.energybox.backendcodingchallenge.exception.*;
+import com.energybox.backendcodingchallenge.history.SampleConsumer;
+import com.energybox.backendcodingchallenge.idempotency.IdempotencyStore;
+import com.energybox.backendcodingchallenge.ingest.IngestExecutor;
 import com.energybox.backendcodingchallenge.model.*;
 import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.util.PageCursors;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -27,6 +40,12 @@ public class SensorControllerTest {
     @Mock
     private SensorService sensorService;
 
+    @Mock
+    private IngestExecutor ingestExecutor;
+
+    @Spy
+    private IdempotencyStore idempotencyStore = new IdempotencyStore(new SimpleMeterRegistry(), true, 1000, 60_000);
+
     @InjectMocks
     private SensorController sensorController;
 
@@ -48,29 +67,82 @@ public class SensorControllerTest {
     @Test
     void fetchAllSensors_ShouldReturnListOfSensors() {
         List<Sensor> sensors = Collections.singletonList(sensor);
-        when(sensorService.fetchAllSensors()).thenReturn(sensors);
+        when(sensorService.fetchSensors(-1L, 10)).thenReturn(sensors);
 
-        ResponseEntity<List<Sensor>> response = sensorController.fetchAllSensors();
+        ResponseEntity<List<?>> response = sensorController.fetchAllSensors(true, null, 10);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(sensors, response.getBody());
+        assertNull(response.getHeaders().getFirst(PageCursors.NEXT_HEADER));
     }
 
     @Test
     void fetchAllSensors_ShouldReturnNoContentWhenEmpty() {
-        when(sensorService.fetchAllSensors()).thenReturn(List.of());
+        when(sensorService.fetchSensors(-1L, 10)).thenReturn(List.of());
 
-        ResponseEntity<List<Sensor>> response = sensorController.fetchAllSensors();
+        ResponseEntity<List<?>> response = sensorController.fetchAllSensors(true, null, 10);
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
     }
 
+    @Test
+    void fetchAllSensors_ShouldReturnSummariesUnlessExpanded() {
+        List<SensorSummary> summaries = Collections.singletonList(new SensorSummary(1L, "Sensor1", "Location1"));
+        when(sensorService.fetchSensorSummaries(-1L, 10)).thenReturn(summaries);
+
+        ResponseEntity<List<?>> response = sensorController.fetchAllSensors(false, null, 10);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(summaries, response.getBody());
+        verify(sensorService, never()).fetchSensors(anyLong(), anyInt());
+    }
+
+    @Test
+    void fetchAllSensors_ShouldContinueAfterTheCursorOfAFullPage() {
+        when(sensorService.fetchSensorSummaries(-1L, 1))
+                .thenReturn(Collections.singletonList(new SensorSummary(5L, "Sensor5", "Location5")));
+
+        ResponseEntity<List<?>> first = sensorController.fetchAllSensors(false, null, 1);
+        String next = first.getHeaders().getFirst(PageCursors.NEXT_HEADER);
+        assertNotNull(next);
+
+        when(sensorService.fetchSensorSummaries(5L, 1)).thenReturn(List.of());
+        ResponseEntity<List<?>> second = sensorController.fetchAllSensors(false, next, 1);
+
+        assertEquals(HttpStatus.NO_CONTENT, second.getStatusCode());
+    }
+
+    @Test
+    void fetchAllSensors_ShouldReturnBadRequestForInvalidLimit() {
+        ResponseEntity<List<?>> response = sensorController.fetchAllSensors(false, null, PageCursors.MAX_LIMIT + 1);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(sensorService);
+    }
+
+    @Test
+    void exportSensors_ShouldWriteOneJsonObjectPerLine() throws Exception {
+        when(sensorService.exportSensorSummaries(any())).thenAnswer(invocation -> {
+            Consumer<SensorSummary> consumer = invocation.getArgument(0);
+            consumer.accept(new SensorSummary(1L, "Sensor1", "Location1"));
+            consumer.accept(new SensorSummary(2L, "Sensor2", null));
+            return 2L;
+        });
+
+        ResponseEntity<StreamingResponseBody> response = sensorController.exportSensors();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertEquals("{\"id\":1,\"name\":\"Sensor1\",\"locationCode\":\"Location1\"}\n"
+                + "{\"id\":2,\"name\":\"Sensor2\",\"locationCode\":null}\n", out.toString());
+    }
+
     @Test
     void fetchSensorBySensorType_ShouldReturnListOfSensors() {
         List<Sensor> sensors = Collections.singletonList(sensor);
         when(sensorService.getSensorsByType("Temperature")).thenReturn(sensors);
 
-        ResponseEntity<List<Sensor>> response = sensorController.fetchSensorBySensorType("Temperature");
+        ResponseEntity<List<?>> response = sensorController.fetchSensorBySensorType("Temperature", true);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(sensors, response.getBody());
@@ -80,7 +152,7 @@ public class SensorControllerTest {
     void fetchSensorBySensorType_ShouldReturnNoContentWhenEmpty() {
         when(sensorService.getSensorsByType("Temperature")).thenReturn(List.of());
 
-        ResponseEntity<List<Sensor>> response = sensorController.fetchSensorBySensorType("Temperature");
+        ResponseEntity<List<?>> response = sensorController.fetchSensorBySensorType("Temperature", true);
 
         assertEquals(HttpStatus.NO_CONTENT, response.getStatusCode());
     }
@@ -109,7 +181,7 @@ public class SensorControllerTest {
         List<Sensor> sensors = Collections.singletonList(sensor);
         when(sensorService.getSensorsByGateway(1L)).thenReturn(sensors);
 
-        ResponseEntity<List<Sensor>> response = sensorController.getSensorsByGateway(1L);
+        ResponseEntity<List<?>> response = sensorController.getSensorsByGateway(1L, true);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(sensors, response.getBody());
@@ -135,4 +207,213 @@ public class SensorControllerTest {
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
+    @Test
+    void addLastReading_ShouldWriteRightAwayWhenPartitionedIngestIsDisabled() {
+        ResponseEntity<Void> response = sensorController.addLastReading(readingRequest(1L, "electricity", 1.0), null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(sensorService).addOrUpdateReading(1L, "electricity", 1.0, null, null);
+        verify(ingestExecutor, never()).submit(any());
+    }
+
+    @Test
+    void addLastReading_ShouldRejectAMissingReadingWhenPartitionedIngestIsDisabled() {
+        ResponseEntity<Void> response = sensorController.addLastReading(readingRequest(1L, "electricity", null), null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(sensorService);
+    }
+
+    @Test
+    void addLastReading_ShouldRejectATimestampAheadOfTheServerClock() {
+        ReadingRequest request = readingRequest(1L, "electricity", 1.0);
+        request.setTimestamp(LocalDateTime.of(9999, 1, 1, 0, 0));
+        doThrow(new InvalidRequestException(SensorService.TIMESTAMP_AHEAD)).when(sensorService)
+                .addOrUpdateReading(1L, "electricity", 1.0, request.getTimestamp(), null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, sensorController.addLastReading(request, null).getStatusCode());
+    }
+
+    @Test
+    void addLastReading_ShouldReturnAcceptedOnceQueued() {
+        ReadingRequest request = readingRequest(1L, "electricity", 1.0);
+        when(ingestExecutor.isEnabled()).thenReturn(true);
+        when(ingestExecutor.submit(request)).thenReturn(true);
+
+        ResponseEntity<Void> response = sensorController.addLastReading(request, null);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        verifyNoInteractions(sensorService);
+    }
+
+    @Test
+    void addLastReading_ShouldReturnTooManyRequestsWhenThePartitionIsFull() {
+        when(ingestExecutor.isEnabled()).thenReturn(true);
+        when(ingestExecutor.submit(any())).thenReturn(false);
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS,
+                sensorController.addLastReading(readingRequest(1L, "electricity", 1.0), null).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST,
+                sensorController.addLastReading(readingRequest(1L, "electricity", null), null).getStatusCode());
+        verify(ingestExecutor, times(1)).submit(any());
+    }
+
+    @Test
+    void addLastReadings_ShouldReturnBatchResult() {
+        ReadingRequest reading = new ReadingRequest();
+        reading.setSensorId(1L);
+        reading.setSensorType("electricity");
+        reading.setReading(22.5);
+        BatchReadingRequest request = new BatchReadingRequest();
+        request.setReadings(List.of(reading));
+        BatchReadingResponse result = new BatchReadingResponse();
+        result.setReceived(1);
+        result.setAccepted(1);
+        when(sensorService.addOrUpdateReadings(request.getReadings())).thenReturn(result);
+
+        ResponseEntity<BatchReadingResponse> response = sensorController.addLastReadings(request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(1, response.getBody().getAccepted());
+    }
+
+    @Test
+    void addLastReadings_ShouldReturnBadRequestWhenEmpty() {
+        BatchReadingRequest request = new BatchReadingRequest();
+        request.setReadings(List.of());
+
+        ResponseEntity<BatchReadingResponse> response = sensorController.addLastReadings(request);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(sensorService);
+    }
+
+    @Test
+    void createSensorsInBulk_ShouldReturnTheIdsByKey() {
+        BulkSensorItem item = new BulkSensorItem();
+        item.setKey("site-1/a");
+        item.setName("Sensor A");
+        item.setLocationCode("L1");
+        BulkSensorRequest request = new BulkSensorRequest();
+        request.setSensors(List.of(item));
+        BulkSensorResponse result = new BulkSensorResponse();
+        result.setReceived(1);
+        result.setCreated(1);
+        result.getSensorIds().put("site-1/a", 42L);
+        when(sensorService.createSensorsInBulk(request.getSensors())).thenReturn(result);
+
+        ResponseEntity<BulkSensorResponse> response = sensorController.createSensorsInBulk(request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(42L, response.getBody().getSensorIds().get("site-1/a"));
+    }
+
+    @Test
+    void createSensorsInBulk_ShouldReturnBadRequestWhenEmpty() {
+        BulkSensorRequest request = new BulkSensorRequest();
+        request.setSensors(List.of());
+
+        ResponseEntity<BulkSensorResponse> response = sensorController.createSensorsInBulk(request);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(sensorService);
+    }
+
+    @Test
+    void assignSensorsToGateways_ShouldReturnTheOutcomes() {
+        SensorGatewayRequest assignment = new SensorGatewayRequest();
+        assignment.setSensorId(1L);
+        assignment.setGatewayId(2L);
+        BatchGatewayAssignmentRequest request = new BatchGatewayAssignmentRequest();
+        request.setAssignments(List.of(assignment));
+        request.setMove(true);
+        BatchGatewayAssignmentResponse result = new BatchGatewayAssignmentResponse();
+        result.setReceived(1);
+        result.setChanged(1);
+        result.getResults().add(new GatewayAssignmentResult(1L, 2L, 3L, GatewayAssignmentOutcome.MOVED));
+        when(sensorService.assignSensorsToGateways(request.getAssignments(), true)).thenReturn(result);
+
+        ResponseEntity<BatchGatewayAssignmentResponse> response = sensorController.assignSensorsToGateways(request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(GatewayAssignmentOutcome.MOVED, response.getBody().getResults().get(0).getOutcome());
+    }
+
+    @Test
+    void assignSensorsToGateways_ShouldReturnBadRequestWhenEmpty() {
+        BatchGatewayAssignmentRequest request = new BatchGatewayAssignmentRequest();
+
+        ResponseEntity<BatchGatewayAssignmentResponse> response = sensorController.assignSensorsToGateways(request);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(sensorService);
+    }
+
+    @Test
+    void streamReadings_ShouldWriteSamplesAsNdjson() throws Exception {
+        when(sensorService.streamReadingHistory(eq(1L), eq("electricity"), anyLong(), anyLong(), any()))
+                .thenAnswer(invocation -> {
+                    SampleConsumer consumer = invocation.getArgument(4);
+                    consumer.accept(1000L, 22.5);
+                    consumer.accept(2000L, 23.0);
+                    return 2L;
+                });
+
+        ResponseEntity<StreamingResponseBody> response = sensorController.streamReadings(1L, "electricity", null, null, "ndjson");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("{\"timestamp\":1000,\"reading\":22.5}\n{\"timestamp\":2000,\"reading\":23.0}\n", out.toString());
+    }
+
+    @Test
+    void streamReadings_ShouldReturnNotFoundWhenSensorDoesNotExist() {
+        doThrow(new SensorNotFoundException("Sensor not found")).when(sensorService).checkSensorExists(1L);
+
+        ResponseEntity<StreamingResponseBody> response = sensorController.streamReadings(1L, "electricity", null, null, "json");
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    @Test
+    void createSensor_ShouldReplayTheFirstResponseForARetriedKey() throws InvalidRequestException {
+        SensorRequest request = new SensorRequest();
+        request.setName("Temperature Sensor");
+        request.setLocationCode("LOC123");
+        SensorResponse created = new SensorResponse();
+        created.setSensorId(1L);
+        when(sensorService.createSensors(request)).thenReturn(created);
+
+        ResponseEntity<SensorResponse> first = sensorController.createSensor(request, "key-1");
+        ResponseEntity<SensorResponse> retry = sensorController.createSensor(request, "key-1");
+
+        assertEquals(HttpStatus.OK, retry.getStatusCode());
+        assertEquals(1L, retry.getBody().getSensorId());
+        assertNull(first.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        verify(sensorService, times(1)).createSensors(request);
+
+        request.setName("Humidity Sensor");
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, sensorController.createSensor(request, "key-1").getStatusCode());
+        assertThrows(InvalidRequestException.class, () -> sensorController.createSensor(request, " "));
+    }
+
+    @Test
+    void addLastReading_ShouldWriteARetriedKeyOnce() {
+        assertEquals(HttpStatus.OK, sensorController.addLastReading(readingRequest(1L, "electricity", 1.0), "key-1").getStatusCode());
+        assertEquals(HttpStatus.OK, sensorController.addLastReading(readingRequest(1L, "electricity", 1.0), "key-1").getStatusCode());
+        assertEquals(HttpStatus.OK, sensorController.addLastReading(readingRequest(1L, "electricity", 1.0), "key-2").getStatusCode());
+
+        verify(sensorService, times(2)).addOrUpdateReading(1L, "electricity", 1.0, null, null);
+    }
+
+    private static ReadingRequest readingRequest(Long sensorId, String sensorType, Double reading) {
+        ReadingRequest request = new ReadingRequest();
+        request.setSensorId(sensorId);
+        request.setSensorType(sensorType);
+        request.setReading(reading);
+        return request;
+    }
+
 }
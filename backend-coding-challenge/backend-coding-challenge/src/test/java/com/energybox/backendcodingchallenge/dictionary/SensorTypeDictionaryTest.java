@@ -0,0 +1,110 @@
+package com.energybox.backendcodingchallenge.dictionary;
+
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import com.energybox.backendcodingchallenge.repository.SensorTypeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SensorTypeDictionaryTest {
+
+    @Mock
+    private SensorTypeRepository sensorTypeRepository;
+
+    private SensorTypeDictionary dictionary;
+
+    @BeforeEach
+    void setUp() {
+        dictionary = new SensorTypeDictionary(sensorTypeRepository, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void code_ShouldAssignDenseCodesAndResolveThemBack() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, dictionary.code("type-" + i));
+        }
+
+        assertEquals(42, dictionary.code("type-42"));
+        assertEquals("type-99", dictionary.name(99));
+        assertEquals(SensorTypeDictionary.UNKNOWN, dictionary.find("missing"));
+        assertEquals(100, dictionary.size());
+    }
+
+    @Test
+    void ensureStored_ShouldMergeEachTypeOnceUnderConcurrency() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> codes = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            String typeName = i % 2 == 0 ? "electricity" : "humidity";
+            codes.add(executor.submit(() -> {
+                start.await();
+                dictionary.ensureStored(typeName);
+                return dictionary.code(typeName);
+            }));
+        }
+        start.countDown();
+
+        Set<Integer> distinct = new HashSet<>();
+        for (Future<Integer> code : codes) {
+            distinct.add(code.get(10, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(2, distinct.size());
+        verify(sensorTypeRepository).mergeByName("electricity");
+        verify(sensorTypeRepository).mergeByName("humidity");
+    }
+
+    @Test
+    void ensureStored_ShouldRetryAfterAFailedMerge() {
+        when(sensorTypeRepository.mergeByName("electricity"))
+                .thenThrow(new RuntimeException("database unavailable"))
+                .thenReturn(new SensorType("electricity"));
+
+        assertThrows(RuntimeException.class, () -> dictionary.ensureStored("electricity"));
+        assertTrue(dictionary.ensureStored("electricity"));
+        assertFalse(dictionary.ensureStored("electricity"));
+        verify(sensorTypeRepository, times(2)).mergeByName("electricity");
+    }
+
+    @Test
+    void ensureStored_ShouldMergeOnlyTheMissingTypesOfABatchInOneQuery() {
+        dictionary.ensureStored("electricity");
+
+        List<String> merged = dictionary.ensureStored(List.of("electricity", "humidity", "voltage"));
+
+        assertEquals(List.of("humidity", "voltage"), merged);
+        verify(sensorTypeRepository).mergeByNames(List.of("humidity", "voltage"));
+        assertTrue(dictionary.ensureStored(List.of("humidity", "voltage")).isEmpty());
+    }
+
+    @Test
+    void preload_ShouldNotMergeTypesThatAreAlreadyStored() {
+        when(sensorTypeRepository.findAll()).thenReturn(List.of(new SensorType("electricity")));
+
+        dictionary.preload();
+
+        assertEquals(0, dictionary.find("electricity"));
+        assertFalse(dictionary.ensureStored("electricity"));
+        verify(sensorTypeRepository, never()).mergeByName(anyString());
+    }
+}
@@ -0,0 +1,112 @@
+package com.energybox.backendcodingchallenge.history;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadingHistoryStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private SensorTypeDictionary types;
+
+    @Test
+    void scan_ShouldReturnEverySampleInRangeAcrossSealedAndOpenChunks() throws Exception {
+        ReadingHistoryStore store = open(16);
+        Random random = new Random(42);
+        long[] timestamps = new long[100];
+        double[] values = new double[100];
+        long timestamp = 1_600_000_000_000L;
+        for (int i = 0; i < 100; i++) {
+            timestamp += 1000 + random.nextInt(50) - 25;
+            timestamps[i] = timestamp;
+            values[i] = i % 7 == 0 ? random.nextDouble() * 100 : 21.5;
+            store.append(1L, types.code("electricity"), timestamps[i], values[i]);
+        }
+
+        List<double[]> samples = new ArrayList<>();
+        long count = store.scan(1L, types.code("electricity"), timestamps[10], timestamps[90],
+                (t, v) -> samples.add(new double[]{t, v}));
+
+        assertEquals(80, count);
+        for (int i = 0; i < 80; i++) {
+            assertEquals(timestamps[i + 10], (long) samples.get(i)[0]);
+            assertEquals(values[i + 10], samples.get(i)[1]);
+        }
+        assertEquals(0, store.scan(1L, types.code("humidity"), 0, Long.MAX_VALUE, (t, v) -> fail()));
+        store.close();
+    }
+
+    @Test
+    void load_ShouldRestoreHistoryWrittenBeforeARestart() throws Exception {
+        ReadingHistoryStore store = open(8);
+        for (int i = 0; i < 20; i++) {
+            store.append(7L, types.code("humidity"), 1000L * i, i);
+        }
+        store.close();
+
+        // type codes are per process, the segment files must be read back by type name
+        types = new SensorTypeDictionary(null, new SimpleMeterRegistry());
+        types.code("electricity");
+        ReadingHistoryStore reopened = open(8);
+        List<Double> values = new ArrayList<>();
+        reopened.scan(7L, types.code("humidity"), 0, Long.MAX_VALUE, (t, v) -> values.add(v));
+        reopened.close();
+
+        assertEquals(20, values.size());
+        assertEquals(19.0, values.get(19));
+    }
+
+    @Test
+    void append_ShouldUseLessThanTwoBytesPerSampleForASteadySensor() throws Exception {
+        ReadingHistoryStore store = open(1024);
+        Random random = new Random(7);
+        long timestamp = 1_600_000_000_000L;
+        for (int i = 0; i < 10 * 1024; i++) {
+            timestamp += 5000 + random.nextInt(40) - 20;
+            store.append(1L, types.code("electricity"), timestamp, i % 100 == 0 ? 230.0 + random.nextInt(3) : 230.0);
+        }
+        store.awaitSealed();
+
+        assertTrue(store.bytesPerSample() < 2.0, "bytes per sample: " + store.bytesPerSample());
+        store.close();
+    }
+
+    @Test
+    void append_ShouldKeepSamplesInMemoryWhenTheirChunksCannotBeWritten() throws Exception {
+        // a file where the segment directory should be, so every chunk write fails
+        Path blocked = Files.createFile(directory.resolve("blocked"));
+        ReadingHistoryStore store = open(8, blocked);
+        for (int i = 0; i < 30; i++) {
+            store.append(3L, types.code("humidity"), 1000L * i, i);
+        }
+        store.awaitSealed();
+
+        assertTrue(store.writeFailures() > 0);
+        assertEquals(30, store.scan(3L, types.code("humidity"), 0, Long.MAX_VALUE, (t, v) -> { }));
+        store.close();
+    }
+
+    private ReadingHistoryStore open(int chunkSize) throws Exception {
+        return open(chunkSize, directory);
+    }
+
+    private ReadingHistoryStore open(int chunkSize, Path directory) throws Exception {
+        if (types == null) {
+            types = new SensorTypeDictionary(null, new SimpleMeterRegistry());
+        }
+        ReadingHistoryStore store = new ReadingHistoryStore(types, new SimpleMeterRegistry(), true, directory.toString(), chunkSize, 1);
+        store.load();
+        return store;
+    }
+}
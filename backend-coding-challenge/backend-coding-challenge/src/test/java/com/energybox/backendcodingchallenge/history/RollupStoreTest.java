@@ -0,0 +1,108 @@
+package com.energybox.backendcodingchallenge.history;
+
+import com.energybox.backendcodingchallenge.model.RollupBucket;
+import com.energybox.backendcodingchallenge.model.RollupResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RollupStoreTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private static final long HOUR = 60 * MINUTE;
+
+    private static final int ELECTRICITY = 0;
+
+    private RollupStore rollupStore;
+
+    @BeforeEach
+    void setUp() {
+        rollupStore = new RollupStore(new SimpleMeterRegistry(), true, 120, 168, 90);
+    }
+
+    @Test
+    void resolutionFor_ShouldPickTheCoarsestResolutionThatFitsTheStep() {
+        assertEquals(RollupResolution.MINUTE, rollupStore.resolutionFor(30_000));
+        assertEquals(RollupResolution.MINUTE, rollupStore.resolutionFor(15 * MINUTE));
+        assertEquals(RollupResolution.HOUR, rollupStore.resolutionFor(6 * HOUR));
+        assertEquals(RollupResolution.DAY, rollupStore.resolutionFor(7 * 24 * HOUR));
+        assertEquals(RollupResolution.MINUTE, rollupStore.resolutionFor(90 * MINUTE));
+    }
+
+    @Test
+    void query_ShouldAggregateSamplesPerStep() {
+        for (int i = 0; i < 120; i++) {
+            rollupStore.add(1L, ELECTRICITY, i * 30_000L, i);
+        }
+
+        List<RollupBucket> buckets = rollupStore.query(1L, ELECTRICITY, 0, HOUR, 30 * MINUTE).getBuckets();
+
+        assertEquals(2, buckets.size());
+        RollupBucket first = buckets.get(0);
+        assertEquals(0, first.getStart());
+        assertEquals(60, first.getCount());
+        assertEquals(0.0, first.getMin());
+        assertEquals(59.0, first.getMax());
+        assertEquals(29.5, first.getAvg(), 1e-9);
+        assertEquals(59.0, first.getLast());
+        assertEquals(30 * MINUTE, buckets.get(1).getStart());
+    }
+
+    @Test
+    void query_ShouldForgetMinuteBucketsOutsideTheRingButKeepHourlyOnes() {
+        for (int i = 0; i < 300; i++) {
+            rollupStore.add(1L, ELECTRICITY, i * MINUTE, 1.0);
+        }
+
+        assertEquals(120, rollupStore.query(1L, ELECTRICITY, 0, 300 * MINUTE, MINUTE).getBuckets().size());
+        List<RollupBucket> hourly = rollupStore.query(1L, ELECTRICITY, 0, 300 * MINUTE, HOUR).getBuckets();
+        assertEquals(5, hourly.size());
+        assertEquals(60, hourly.get(0).getCount());
+    }
+
+    @Test
+    void query_ShouldReportWhereTheRollupsStartWhenTheRangeExceedsTheMinuteRing() {
+        for (int i = 0; i < 24 * 60; i++) {
+            rollupStore.add(1L, ELECTRICITY, i * MINUTE, 1.0);
+        }
+
+        RollupResponse response = rollupStore.query(1L, ELECTRICITY, 0, 24 * HOUR, 15 * MINUTE);
+
+        assertEquals(RollupResolution.MINUTE, response.getResolution());
+        assertEquals(22 * HOUR, response.getRetainedFrom());
+        assertEquals(8, response.getBuckets().size());
+        assertEquals(22 * HOUR, response.getBuckets().get(0).getStart());
+    }
+
+    @Test
+    void query_ShouldFallBackToAFinerResolutionThatStillCoversTheRange() {
+        rollupStore = new RollupStore(new SimpleMeterRegistry(), true, 3 * 24 * 60, 24, 90);
+        for (int i = 0; i < 2 * 24 * 60; i++) {
+            rollupStore.add(1L, ELECTRICITY, i * MINUTE, 1.0);
+        }
+
+        RollupResponse response = rollupStore.query(1L, ELECTRICITY, 0, 48 * HOUR, 2 * HOUR);
+
+        assertEquals(RollupResolution.MINUTE, response.getResolution());
+        assertNull(response.getRetainedFrom());
+        assertEquals(24, response.getBuckets().size());
+        assertEquals(120, response.getBuckets().get(0).getCount());
+    }
+
+    @Test
+    void query_ShouldNotReportTruncationWhenTheRangeIsRetained() {
+        for (int i = 0; i < 300; i++) {
+            rollupStore.add(1L, ELECTRICITY, i * MINUTE, 1.0);
+        }
+
+        RollupResponse response = rollupStore.query(1L, ELECTRICITY, 200 * MINUTE, 300 * MINUTE, 15 * MINUTE);
+
+        assertEquals(RollupResolution.MINUTE, response.getResolution());
+        assertNull(response.getRetainedFrom());
+    }
+}
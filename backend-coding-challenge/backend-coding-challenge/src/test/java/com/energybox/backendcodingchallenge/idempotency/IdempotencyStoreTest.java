@@ -0,0 +1,145 @@
+package com.energybox.backendcodingchallenge.idempotency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyStoreTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void execute_ShouldRememberResponsesPerOperationAndKey() {
+        IdempotencyStore store = new IdempotencyStore(meterRegistry, true, 2, 60_000);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(HttpStatus.OK, store.execute("create", "a", "body", () -> ok(calls)).getStatusCode());
+        }
+        store.execute("update", "a", "body", () -> ok(calls));
+        store.execute("create", null, "body", () -> ok(calls));
+        store.execute("create", null, "body", () -> ok(calls));
+
+        assertEquals(4, calls.get());
+        assertEquals(2.0 / 4, meterRegistry.get("sensors.idempotency.hit.ratio").gauge().value());
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void execute_ShouldRunAgainAfterAServerErrorOrThrottling() {
+        IdempotencyStore store = new IdempotencyStore(meterRegistry, true, 100, 60_000);
+        AtomicInteger calls = new AtomicInteger();
+
+        store.execute("create", "a", "body", () -> status(calls, HttpStatus.INTERNAL_SERVER_ERROR));
+        store.execute("create", "a", "body", () -> status(calls, HttpStatus.TOO_MANY_REQUESTS));
+        store.execute("create", "a", "body", () -> status(calls, HttpStatus.NOT_FOUND));
+        ResponseEntity<Void> replayed = store.execute("create", "a", "body", () -> status(calls, HttpStatus.OK));
+
+        assertEquals(3, calls.get());
+        assertEquals(HttpStatus.NOT_FOUND, replayed.getStatusCode());
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY,
+                store.execute("create", "a", "other body", () -> status(calls, HttpStatus.OK)).getStatusCode());
+        assertEquals(1, meterRegistry.get("sensors.idempotency.conflicts").counter().count());
+    }
+
+    @Test
+    void execute_ShouldLetConcurrentCallsWithTheSameKeyWaitForTheFirst() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(meterRegistry, true, 100, 60_000);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            Future<ResponseEntity<String>> first = pool.submit(() -> store.execute("create", "a", "body", () -> {
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return ok(calls);
+            }));
+            running.await();
+            List<Future<ResponseEntity<String>>> others = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                others.add(pool.submit(() -> store.execute("create", "a", "body", () -> ok(calls))));
+            }
+            release.countDown();
+
+            assertEquals(HttpStatus.OK, first.get().getStatusCode());
+            for (Future<ResponseEntity<String>> other : others) {
+                assertEquals("true", other.get().getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+            }
+            assertEquals(1, calls.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void executeAsync_ShouldAnswerRepeatsOfARunningCallOnceItCompletes() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(meterRegistry, true, 100, 60_000);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<ResponseEntity<String>> firstCall = new CompletableFuture<>();
+
+        CompletableFuture<ResponseEntity<String>> first = store.executeAsync("create", "a", "body", () -> {
+            calls.incrementAndGet();
+            return firstCall;
+        });
+        CompletableFuture<ResponseEntity<String>> repeat = store.executeAsync("create", "a", "body",
+                () -> CompletableFuture.completedFuture(ok(calls)));
+        CompletableFuture<ResponseEntity<String>> conflict = store.executeAsync("create", "a", "other body",
+                () -> CompletableFuture.completedFuture(ok(calls)));
+        assertFalse(repeat.isDone());
+
+        firstCall.complete(ResponseEntity.ok("created"));
+
+        assertEquals(HttpStatus.OK, first.get().getStatusCode());
+        assertEquals("true", repeat.get().getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, conflict.get().getStatusCode());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void executeAsync_ShouldRunARepeatOfAFailedCall() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(meterRegistry, true, 100, 60_000);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<ResponseEntity<String>> firstCall = new CompletableFuture<>();
+
+        CompletableFuture<ResponseEntity<String>> first = store.executeAsync("create", "a", "body", () -> {
+            calls.incrementAndGet();
+            return firstCall;
+        });
+        CompletableFuture<ResponseEntity<String>> repeat = store.executeAsync("create", "a", "body",
+                () -> CompletableFuture.completedFuture(ok(calls)));
+        firstCall.completeExceptionally(new IllegalStateException("Neo4j is down"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertEquals(HttpStatus.OK, repeat.get().getStatusCode());
+        assertNull(repeat.get().getHeaders().getFirst(IdempotencyStore.REPLAYED_HEADER));
+        assertEquals(2, calls.get());
+    }
+
+    private static ResponseEntity<String> ok(AtomicInteger calls) {
+        calls.incrementAndGet();
+        return ResponseEntity.ok("created");
+    }
+
+    private static ResponseEntity<Void> status(AtomicInteger calls, HttpStatus status) {
+        calls.incrementAndGet();
+        return new ResponseEntity<>(status);
+    }
+}
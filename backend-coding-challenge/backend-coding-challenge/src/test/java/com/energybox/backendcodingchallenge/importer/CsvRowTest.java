@@ -0,0 +1,74 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvRowTest {
+
+    private final CsvRow row = new CsvRow();
+
+    private final ByteStringCache strings = new ByteStringCache(16);
+
+    @Test
+    void reset_ShouldSplitQuotedAndEmptyFields() {
+        reset("42,\"Boiler, \"\"north\"\"\",,electricity|temperature");
+
+        assertEquals(4, row.size());
+        assertEquals(42L, row.longValue(0));
+        assertEquals("Boiler, \"north\"", row.string(1));
+        assertTrue(row.isBlank(2));
+        Set<String> types = new LinkedHashSet<>();
+        row.split(3, '|', strings, types);
+        assertEquals(Set.of("electricity", "temperature"), types);
+    }
+
+    @Test
+    void doubleValue_ShouldMatchDoubleParseDouble() {
+        for (String value : List.of("0", "-1.5", "230.125", "0.1", "1234567.891", "1e3", "-2.5E-4",
+                "0.30000000000000004", "12345678901234567890")) {
+            reset(value);
+            assertEquals(Double.parseDouble(value), row.doubleValue(0), value);
+        }
+        reset("abc");
+        assertThrows(IllegalArgumentException.class, () -> row.doubleValue(0));
+    }
+
+    @Test
+    void timestamp_ShouldAcceptEpochMillisAndIsoDateTimes() {
+        reset("0,2024-03-01T12:00:05");
+
+        assertEquals(LocalDateTime.ofInstant(Instant.EPOCH, ZoneId.systemDefault()), row.timestamp(0));
+        assertEquals(LocalDateTime.of(2024, 3, 1, 12, 0, 5), row.timestamp(1));
+    }
+
+    @Test
+    void string_ShouldShareRepeatedValuesThroughTheCache() {
+        reset("electricity,electricity");
+
+        assertSame(row.string(0, strings), row.string(1, strings));
+    }
+
+    @Test
+    void longValue_ShouldRejectOverflowAndGarbage() {
+        reset("99999999999999999999,12a,-7");
+
+        assertThrows(IllegalArgumentException.class, () -> row.longValue(0));
+        assertThrows(IllegalArgumentException.class, () -> row.longValue(1));
+        assertEquals(-7L, row.longValue(2));
+    }
+
+    private void reset(String line) {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        row.reset(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+}
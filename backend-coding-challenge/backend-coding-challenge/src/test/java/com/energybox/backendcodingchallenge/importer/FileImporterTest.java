@@ -0,0 +1,233 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
+import com.energybox.backendcodingchallenge.ingest.LastReadingBuffer;
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.BulkSensorItem;
+import com.energybox.backendcodingchallenge.model.BulkSensorResponse;
+import com.energybox.backendcodingchallenge.model.ImportKind;
+import com.energybox.backendcodingchallenge.model.ImportProgress;
+import com.energybox.backendcodingchallenge.model.ImportRequest;
+import com.energybox.backendcodingchallenge.model.ImportStatus;
+import com.energybox.backendcodingchallenge.model.ReadingFailure;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.model.SensorFailure;
+import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class FileImporterTest {
+
+    @TempDir
+    Path dir;
+
+    @Mock
+    private SensorService sensorService;
+
+    @Mock
+    private LastReadingBuffer lastReadingBuffer;
+
+    private FileImporter fileImporter;
+
+    @BeforeEach
+    void setUp() {
+        fileImporter = new FileImporter(sensorService, lastReadingBuffer, new ObjectMapper().findAndRegisterModules(),
+                new SimpleMeterRegistry(), WorkerThreads.platform(), dir.toString(), 2, 1, 1, 60_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        fileImporter.shutdown();
+    }
+
+    @Test
+    void run_ShouldWriteCsvReadingsInBatchesAndReportFailuresByOffset() throws IOException {
+        Path file = write("readings.csv", "sensorId,sensorType,timestamp,reading\n"
+                + "1,electricity,2024-03-01T12:00:00,230.5\n"
+                + "2,electricity,1709294400000,231\n"
+                + "x,electricity,2024-03-01T12:00:00,1\n"
+                + "3,humidity,2024-03-01T12:00:00,40\n");
+        List<List<ReadingRequest>> batches = new ArrayList<>();
+        when(sensorService.addOrUpdateReadings(anyList())).thenAnswer(invocation -> {
+            List<ReadingRequest> readings = new ArrayList<>(invocation.getArgument(0));
+            batches.add(readings);
+            BatchReadingResponse response = new BatchReadingResponse();
+            response.setReceived(readings.size());
+            response.setAccepted(readings.size());
+            if (readings.get(0).getSensorId() == 3L) {
+                response.setAccepted(0);
+                response.getFailures().add(new ReadingFailure(0, 3L, "humidity", "Sensor not found"));
+            }
+            return response;
+        });
+        when(lastReadingBuffer.flush()).thenReturn(true);
+
+        ImportProgress progress = fileImporter.run(file, ImportKind.READINGS, 0, false);
+
+        assertEquals(ImportStatus.COMPLETED, progress.getStatus());
+        assertEquals(4, progress.getRowsRead());
+        assertEquals(2, progress.getRowsAccepted());
+        assertEquals(2, progress.getRowsFailed());
+        assertEquals(Files.size(file), progress.getCommittedOffset());
+        assertEquals(2, batches.size());
+        assertEquals(LocalDateTime.of(2024, 3, 1, 12, 0), batches.get(0).get(0).getTimestamp());
+        assertEquals(230.5, batches.get(0).get(0).getReading());
+        assertEquals("electricity", batches.get(0).get(1).getSensorType());
+
+        long badRow = Files.readString(file).indexOf("x,");
+        long unknownSensor = Files.readString(file).indexOf("3,humidity");
+        assertEquals(badRow, progress.getFailures().get(0).getOffset());
+        assertEquals(unknownSensor, progress.getFailures().get(1).getOffset());
+        assertEquals("Sensor not found", progress.getFailures().get(1).getReason());
+    }
+
+    @Test
+    void run_ShouldStopAtTheFailedBatchAndResumeFromTheCommittedOffset() throws IOException {
+        Path file = write("readings.csv", "sensorId,sensorType,timestamp,reading\n"
+                + "1,electricity,0,1\n2,electricity,0,2\n3,electricity,0,3\n4,electricity,0,4\n");
+        when(sensorService.addOrUpdateReadings(anyList()))
+                .thenAnswer(invocation -> accepted(invocation.getArgument(0)))
+                .thenThrow(new RuntimeException("database unavailable"))
+                .thenAnswer(invocation -> accepted(invocation.getArgument(0)));
+        when(lastReadingBuffer.flush()).thenReturn(true);
+
+        ImportProgress failed = fileImporter.run(file, ImportKind.READINGS, 0, false);
+
+        assertEquals(ImportStatus.FAILED, failed.getStatus());
+        assertEquals("database unavailable", failed.getError());
+        assertEquals(Files.readString(file).indexOf("3,electricity"), failed.getCommittedOffset());
+
+        ImportProgress resumed = fileImporter.run(file, ImportKind.READINGS, failed.getCommittedOffset(), false);
+
+        assertEquals(ImportStatus.COMPLETED, resumed.getStatus());
+        assertEquals(2, resumed.getRowsAccepted());
+        assertEquals(Files.size(file), resumed.getCommittedOffset());
+    }
+
+    @Test
+    void run_ShouldNotCommitReadingsThatCouldNotBeFlushed() throws IOException {
+        Path file = write("readings.csv", "sensorId,sensorType,timestamp,reading\n"
+                + "1,electricity,0,1\n2,electricity,0,2\n3,electricity,0,3\n");
+        when(sensorService.addOrUpdateReadings(anyList())).thenAnswer(invocation -> accepted(invocation.getArgument(0)));
+        when(lastReadingBuffer.flush()).thenReturn(true, false);
+
+        ImportProgress failed = fileImporter.run(file, ImportKind.READINGS, 0, false);
+
+        assertEquals(ImportStatus.FAILED, failed.getStatus());
+        assertEquals(Files.readString(file).indexOf("3,electricity"), failed.getCommittedOffset());
+    }
+
+    @Test
+    void run_ShouldCapSensorBatchesAtOneBulkTransaction() throws IOException {
+        fileImporter.shutdown();
+        fileImporter = new FileImporter(sensorService, lastReadingBuffer, new ObjectMapper().findAndRegisterModules(),
+                new SimpleMeterRegistry(), WorkerThreads.platform(), dir.toString(), 5000, 1, 1, 60_000);
+        StringBuilder rows = new StringBuilder("key,name,locationCode,types,gatewayId\n");
+        for (int i = 0; i <= SensorService.SENSOR_BULK_CHUNK_SIZE; i++) {
+            rows.append("s").append(i).append(",S,L1,,\n");
+        }
+        Path file = write("sensors.csv", rows.toString());
+        List<Integer> batchSizes = new ArrayList<>();
+        when(sensorService.createSensorsInBulk(anyList())).thenAnswer(invocation -> {
+            List<BulkSensorItem> items = invocation.getArgument(0);
+            batchSizes.add(items.size());
+            BulkSensorResponse response = new BulkSensorResponse();
+            response.setCreated(items.size());
+            return response;
+        });
+
+        ImportProgress progress = fileImporter.run(file, ImportKind.SENSORS, 0, false);
+
+        assertEquals(ImportStatus.COMPLETED, progress.getStatus());
+        assertEquals(List.of(SensorService.SENSOR_BULK_CHUNK_SIZE, 1), batchSizes);
+    }
+
+    @Test
+    void run_ShouldStopAtASensorBatchThatFailedToBeStored() throws IOException {
+        Path file = write("sensors.csv", "key,name,locationCode,types,gatewayId\na,A,L1,,\nb,B,L1,,\n");
+        when(sensorService.createSensorsInBulk(anyList())).thenAnswer(invocation -> {
+            BulkSensorResponse response = new BulkSensorResponse();
+            response.getFailures().add(new SensorFailure(0, "a", SensorService.SENSOR_WRITE_FAILED));
+            response.getFailures().add(new SensorFailure(1, "b", SensorService.SENSOR_WRITE_FAILED));
+            return response;
+        });
+
+        ImportProgress failed = fileImporter.run(file, ImportKind.SENSORS, 0, false);
+
+        assertEquals(ImportStatus.FAILED, failed.getStatus());
+        assertEquals(0, failed.getCommittedOffset());
+        assertEquals(0, failed.getRowsFailed());
+    }
+
+    @Test
+    void start_ShouldImportNdjsonSensorsInTheBackground() throws Exception {
+        write("sensors.ndjson", "{\"key\":\"a\",\"name\":\"A\",\"locationCode\":\"L1\",\"type\":[\"electricity\"],\"gatewayId\":7}\n"
+                + "{\"key\":\"b\",\"name\":\"B\",\"locationCode\":\"L1\",\"type\":[]}\n");
+        when(sensorService.createSensorsInBulk(anyList())).thenAnswer(invocation -> {
+            List<BulkSensorItem> items = invocation.getArgument(0);
+            assertEquals(Set.of("electricity"), items.get(0).getType());
+            assertEquals(7L, items.get(0).getGatewayId());
+            BulkSensorResponse response = new BulkSensorResponse();
+            response.setCreated(items.size());
+            return response;
+        });
+        ImportRequest request = new ImportRequest();
+        request.setFile("sensors.ndjson");
+        request.setKind(ImportKind.SENSORS);
+
+        String id = fileImporter.start(request).getId();
+        ImportProgress progress = fileImporter.progress(id);
+        for (int i = 0; i < 100 && progress.getStatus() == ImportStatus.RUNNING; i++) {
+            Thread.sleep(50);
+            progress = fileImporter.progress(id);
+        }
+
+        assertEquals(ImportStatus.COMPLETED, progress.getStatus());
+        assertEquals(2, progress.getRowsAccepted());
+        assertEquals(1, fileImporter.imports().size());
+    }
+
+    @Test
+    void start_ShouldRejectFilesOutsideTheImportDirectory() {
+        ImportRequest request = new ImportRequest();
+        request.setFile("../outside.csv");
+        request.setKind(ImportKind.READINGS);
+
+        assertThrows(InvalidRequestException.class, () -> fileImporter.start(request));
+        verify(sensorService, never()).addOrUpdateReadings(any());
+    }
+
+    private static BatchReadingResponse accepted(List<ReadingRequest> readings) {
+        BatchReadingResponse response = new BatchReadingResponse();
+        response.setReceived(readings.size());
+        response.setAccepted(readings.size());
+        return response;
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,72 @@
+package com.energybox.backendcodingchallenge.importer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MappedLineReaderTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void next_ShouldReadLinesAcrossWindowBoundaries() throws IOException {
+        Path file = write("first\r\nsecond line\n\nthird\nlast");
+
+        List<String> lines = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        try (MappedLineReader reader = new MappedLineReader(file, 0, 12)) {
+            while (reader.next()) {
+                lines.add(line(reader));
+                offsets.add(reader.lineOffset());
+            }
+            assertEquals(reader.size(), reader.position());
+        }
+
+        assertEquals(List.of("first", "second line", "", "third", "last"), lines);
+        assertEquals(List.of(0L, 7L, 19L, 20L, 26L), offsets);
+    }
+
+    @Test
+    void constructor_ShouldResumeAtTheStartOfALineOnly() throws IOException {
+        Path file = write("a,1\nb,2\n");
+
+        try (MappedLineReader reader = new MappedLineReader(file, 4, 1024)) {
+            assertTrue(reader.next());
+            assertEquals("b,2", line(reader));
+            assertFalse(reader.next());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new MappedLineReader(file, 5, 1024));
+        assertThrows(IllegalArgumentException.class, () -> new MappedLineReader(file, 9, 1024));
+    }
+
+    @Test
+    void next_ShouldRejectLinesLongerThanAWindow() throws IOException {
+        Path file = write("short\nthis line does not fit\n");
+
+        try (MappedLineReader reader = new MappedLineReader(file, 0, 8)) {
+            assertTrue(reader.next());
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    private Path write(String content) throws IOException {
+        return Files.write(dir.resolve("lines.csv"), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String line(MappedLineReader reader) {
+        byte[] bytes = new byte[reader.lineEnd() - reader.lineStart()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = reader.buffer().get(reader.lineStart() + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,186 @@
+package com.energybox.backendcodingchallenge.ingest;
+
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.service.SensorService;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import com.energybox.backendcodingchallenge.wal.ReadingWal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IngestExecutorTest {
+
+    @Mock
+    private SensorService sensorService;
+
+    @Mock
+    private TopologyRegistry topologyRegistry;
+
+    @Mock
+    private ReadingWal readingWal;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private IngestExecutor executor;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void submit_ShouldWriteEverySensorOnASinglePartitionThreadInBatches() throws InterruptedException {
+        Map<Long, String> threadBySensor = new ConcurrentHashMap<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        when(sensorService.addOrUpdateReadings(anyList(), eq(false))).thenAnswer(invocation -> {
+            List<ReadingRequest> readings = invocation.getArgument(0);
+            synchronized (batchSizes) {
+                batchSizes.add(readings.size());
+            }
+            for (ReadingRequest reading : readings) {
+                String previous = threadBySensor.putIfAbsent(reading.getSensorId(), Thread.currentThread().getName());
+                assertTrue(previous == null || previous.equals(Thread.currentThread().getName()));
+                assertNotNull(reading.getTimestamp());
+                assertTrue(reading.isStampedOnArrival());
+            }
+            return accepted(readings);
+        });
+        executor = new IngestExecutor(sensorService, topologyRegistry, readingWal, meterRegistry, WorkerThreads.platform(), true, 4, 1000, 50, "sensor", 1000);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(executor.submit(reading(i % 20)));
+        }
+        executor.shutdown();
+
+        assertEquals(1000, meterRegistry.get("sensors.ingest.written").counter().count());
+        assertEquals(20, threadBySensor.size());
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 50));
+        assertEquals(4, meterRegistry.get("sensors.ingest.queue.depth").gauges().size());
+        assertEquals(1000, meterRegistry.get("sensors.ingest.latency").timers().stream()
+                .mapToLong(timer -> timer.count()).sum());
+    }
+
+    @Test
+    void submit_ShouldRejectWhenThePartitionQueueIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch writing = new CountDownLatch(1);
+        when(sensorService.addOrUpdateReadings(anyList(), eq(false))).thenAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return accepted(invocation.getArgument(0));
+        });
+        executor = new IngestExecutor(sensorService, topologyRegistry, readingWal, meterRegistry, WorkerThreads.platform(), true, 1, 2, 10, "sensor", 0);
+
+        assertTrue(executor.submit(reading(1)));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        assertTrue(executor.submit(reading(1)));
+        assertTrue(executor.submit(reading(1)));
+        assertFalse(executor.submit(reading(1)));
+        assertEquals(2, executor.queueDepth(0));
+
+        release.countDown();
+        executor.shutdown();
+        assertEquals(1, meterRegistry.get("sensors.ingest.rejected").counter().count());
+        assertEquals(3, meterRegistry.get("sensors.ingest.written").counter().count());
+    }
+
+    @Test
+    void submit_ShouldRetryAFailedBatchBeforeHandingOffItsWalTickets() throws InterruptedException {
+        when(readingWal.append(eq(1L), eq("electricity"), any(), eq(1.0))).thenReturn(7);
+        when(sensorService.addOrUpdateReadings(anyList(), eq(false)))
+                .thenThrow(new RuntimeException("database unavailable"))
+                .thenAnswer(invocation -> accepted(invocation.getArgument(0)));
+        executor = new IngestExecutor(sensorService, topologyRegistry, readingWal, meterRegistry, WorkerThreads.platform(), true, 1, 10, 10, "sensor", 0);
+
+        assertTrue(executor.submit(reading(1)));
+        executor.shutdown();
+
+        verify(sensorService, times(2)).addOrUpdateReadings(anyList(), eq(false));
+        verify(readingWal).handedOff(7);
+        assertEquals(1, meterRegistry.get("sensors.ingest.written").counter().count());
+    }
+
+    @Test
+    void submit_ShouldKeepRetryingAFailedBatchUntilItIsWritten() throws InterruptedException {
+        when(readingWal.append(eq(1L), eq("electricity"), any(), eq(1.0))).thenReturn(7);
+        RuntimeException down = new RuntimeException("database unavailable");
+        when(sensorService.addOrUpdateReadings(anyList(), eq(false)))
+                .thenThrow(down, down, down, down, down)
+                .thenAnswer(invocation -> accepted(invocation.getArgument(0)));
+        executor = new IngestExecutor(sensorService, topologyRegistry, readingWal, meterRegistry, WorkerThreads.platform(), true, 1, 10, 10, "sensor", 0);
+
+        assertTrue(executor.submit(reading(1)));
+
+        verify(readingWal, timeout(10_000)).handedOff(7);
+        verify(sensorService, times(IngestExecutor.WRITE_ATTEMPTS + 3)).addOrUpdateReadings(anyList(), eq(false));
+        assertEquals(1, meterRegistry.get("sensors.ingest.written").counter().count());
+        assertEquals(0, meterRegistry.get("sensors.ingest.failed").counter().count());
+    }
+
+    @Test
+    void submit_ShouldKeepTheWalTicketsOfABatchStillFailingAtShutdown() throws InterruptedException {
+        when(readingWal.append(eq(1L), eq("electricity"), any(), eq(1.0))).thenReturn(7);
+        when(sensorService.addOrUpdateReadings(anyList(), eq(false))).thenThrow(new RuntimeException("database unavailable"));
+        executor = new IngestExecutor(sensorService, topologyRegistry, readingWal, meterRegistry, WorkerThreads.platform(), true, 1, 10, 10, "sensor", 0);
+
+        assertTrue(executor.submit(reading(1)));
+        executor.shutdown();
+
+        verify(sensorService, times(IngestExecutor.WRITE_ATTEMPTS)).addOrUpdateReadings(anyList(), eq(false));
+        verify(readingWal, never()).handedOff(anyInt());
+        assertEquals(1, meterRegistry.get("sensors.ingest.failed").counter().count());
+    }
+
+    @Test
+    void partitionOf_ShouldKeepTheSensorsOfAGatewayTogether() {
+        executor = new IngestExecutor(sensorService, topologyRegistry, readingWal, meterRegistry, WorkerThreads.platform(), true, 8, 10, 10, "gateway", 0);
+        when(topologyRegistry.isReady()).thenReturn(true);
+        Map<Long, Long> gatewayBySensor = new HashMap<>();
+        for (long sensorId = 1; sensorId <= 100; sensorId++) {
+            gatewayBySensor.put(sensorId, sensorId % 3);
+        }
+        when(topologyRegistry.gatewayOf(anyLong())).thenAnswer(invocation -> gatewayBySensor.get(invocation.<Long>getArgument(0)));
+
+        for (long sensorId = 4; sensorId <= 100; sensorId++) {
+            assertEquals(executor.partitionOf(sensorId % 3 == 0 ? 3 : sensorId % 3), executor.partitionOf(sensorId));
+        }
+    }
+
+    private static ReadingRequest reading(long sensorId) {
+        ReadingRequest reading = new ReadingRequest();
+        reading.setSensorId(sensorId);
+        reading.setSensorType("electricity");
+        reading.setReading(1.0);
+        return reading;
+    }
+
+    private static BatchReadingResponse accepted(List<ReadingRequest> readings) {
+        BatchReadingResponse response = new BatchReadingResponse();
+        response.setReceived(readings.size());
+        response.setAccepted(readings.size());
+        return response;
+    }
+}
@@ -0,0 +1,82 @@
+package com.energybox.backendcodingchallenge.ingest;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.repository.SensorRepository;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LastReadingBufferTest {
+
+    @Mock
+    private SensorRepository sensorRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private SensorTypeDictionary types;
+
+    private LastReadingBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        types = new SensorTypeDictionary(null, meterRegistry);
+        // a long interval keeps the scheduled flush out of the way, the tests flush explicitly
+        buffer = new LastReadingBuffer(sensorRepository, types, meterRegistry, WorkerThreads.platform(), true, 60_000, 10_000);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        buffer.shutdown();
+    }
+
+    @Test
+    void put_ShouldCoalesceReadingsOfTheSameSensorAndType() {
+        buffer.put(1L, types.code("electricity"), LocalDateTime.now(), 1.0);
+        buffer.put(1L, types.code("electricity"), LocalDateTime.now(), 2.0);
+        buffer.put(1L, types.code("humidity"), LocalDateTime.now(), 3.0);
+
+        assertEquals(2, buffer.getBuffered(1L).size());
+        assertEquals(2.0, buffer.getBuffered(1L).get("electricity").getReading());
+        assertEquals(1.0 / 3, buffer.coalescingRatio(), 1e-9);
+        assertEquals(2, meterRegistry.get("sensors.readings.buffer.pending").gauge().value());
+    }
+
+    @Test
+    void flush_ShouldWriteOneRowPerSensorAndType() {
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of(1L));
+        buffer.put(1L, types.code("electricity"), LocalDateTime.now(), 1.0);
+        buffer.put(1L, types.code("electricity"), LocalDateTime.now(), 2.0);
+
+        buffer.flush();
+
+        verify(sensorRepository).upsertLastReadings(argThat(rows -> rows.size() == 1
+                && rows.get(0).get("reading").equals(2.0)));
+        assertTrue(buffer.getBuffered(1L).isEmpty());
+        assertEquals(1, meterRegistry.get("sensors.readings.buffer.flush").timer().count());
+    }
+
+    @Test
+    void flush_ShouldKeepReadingsWhenTheWriteFails() {
+        when(sensorRepository.upsertLastReadings(anyList())).thenThrow(new RuntimeException("database unavailable"));
+        buffer.put(1L, types.code("electricity"), LocalDateTime.now(), 1.0);
+
+        buffer.flush();
+
+        assertEquals(1.0, buffer.getBuffered(1L).get("electricity").getReading());
+    }
+}
@@ -0,0 +1,116 @@
+package com.energybox.backendcodingchallenge.ingest;
+
+import com.energybox.backendcodingchallenge.ingest.ReadingWatermarks.Outcome;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.energybox.backendcodingchallenge.ingest.ReadingWatermarks.NO_SEQUENCE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadingWatermarksTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ReadingWatermarks watermarks = new ReadingWatermarks(meterRegistry, true, 4, 60_000);
+
+    @Test
+    void check_ShouldOrderReadingsByTimestampThenSequence() {
+        assertEquals(Outcome.NEWER, watermarks.check(1L, 2, 1000, 5, true));
+        watermarks.record(1L, 2, 1000, 5, true);
+
+        assertEquals(Outcome.LATE, watermarks.check(1L, 2, 999, 9, true));
+        assertEquals(Outcome.LATE, watermarks.check(1L, 2, 1000, 4, true));
+        assertEquals(Outcome.NEWER, watermarks.check(1L, 2, 1000, 6, true));
+        assertEquals(Outcome.NEWER, watermarks.check(1L, 2, 1001, 1, true));
+        // other types and sensors have their own watermark
+        assertEquals(Outcome.NEWER, watermarks.check(1L, 3, 1, NO_SEQUENCE, false));
+        assertEquals(Outcome.NEWER, watermarks.check(2L, 2, 1, NO_SEQUENCE, false));
+        assertEquals(2, meterRegistry.get("sensors.readings.late").counter().count());
+    }
+
+    @Test
+    void check_ShouldDropReadingsSeenWithinTheWindow() {
+        for (int sequence = 1; sequence <= 5; sequence++) {
+            watermarks.record(1L, 2, 1000L * sequence, sequence, true);
+        }
+        watermarks.record(1L, 2, 7000, NO_SEQUENCE, true);
+        watermarks.record(1L, 2, 8000, NO_SEQUENCE, false);
+
+        assertEquals(Outcome.DUPLICATE, watermarks.check(1L, 2, 99_000, 5, true));
+        assertEquals(Outcome.DUPLICATE, watermarks.check(1L, 2, 7000, NO_SEQUENCE, true));
+        // the window holds the last 4 readings; readings stamped on arrival are never duplicates
+        assertEquals(Outcome.LATE, watermarks.check(1L, 2, 1000, 1, true));
+        assertEquals(Outcome.NEWER, watermarks.check(1L, 2, 8000, NO_SEQUENCE, false));
+        assertEquals(2, meterRegistry.get("sensors.readings.duplicates").counter().count());
+    }
+
+    @Test
+    void reserve_ShouldLetOnlyOneOfTwoConcurrentRetriesThrough() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            long sensorId = round;
+            CountDownLatch start = new CountDownLatch(1);
+            Callable<Outcome> retry = () -> {
+                start.await();
+                return watermarks.reserve(sensorId, 2, 1000, 5, true);
+            };
+            ExecutorService threads = Executors.newFixedThreadPool(2);
+            Future<Outcome> first = threads.submit(retry);
+            Future<Outcome> second = threads.submit(retry);
+            start.countDown();
+
+            assertEquals(Set.of(Outcome.NEWER, Outcome.DUPLICATE), Set.of(first.get(), second.get()));
+            threads.shutdown();
+        }
+    }
+
+    @Test
+    void release_ShouldLetTheRetryOfAReadingThatWasNotWrittenThrough() {
+        for (int sequence = 1; sequence <= 5; sequence++) {
+            watermarks.record(1L, 2, 1000L * sequence, sequence, true);
+        }
+        assertEquals(Outcome.NEWER, watermarks.reserve(1L, 2, 6000, 6, true));
+        assertEquals(Outcome.DUPLICATE, watermarks.reserve(1L, 2, 6000, 6, true));
+
+        watermarks.release(1L, 2, 6000, 6, true);
+
+        assertEquals(Outcome.NEWER, watermarks.reserve(1L, 2, 6000, 6, true));
+        watermarks.record(1L, 2, 6000, 6, true);
+        // the other readings of the window are kept, oldest first
+        assertEquals(Outcome.DUPLICATE, watermarks.check(1L, 2, 3000, 3, true));
+        assertEquals(Outcome.LATE, watermarks.check(1L, 2, 2000, 2, true));
+        assertEquals(Outcome.LATE, watermarks.reserve(1L, 2, 5500, 7, true));
+    }
+
+    @Test
+    void isAhead_ShouldAllowTheConfiguredClockSkew() {
+        long now = System.currentTimeMillis();
+
+        assertFalse(watermarks.isAhead(now - 1000));
+        assertFalse(watermarks.isAhead(now + 30_000));
+        assertTrue(watermarks.isAhead(now + 120_000));
+        assertEquals(1, meterRegistry.get("sensors.readings.ahead").counter().count());
+    }
+
+    @Test
+    void record_ShouldTrackManySeriesAcrossStripes() {
+        for (long sensorId = 0; sensorId < 10_000; sensorId++) {
+            watermarks.record(sensorId, (int) (sensorId % 3), sensorId, sensorId, true);
+        }
+
+        assertEquals(10_000, watermarks.size());
+        for (long sensorId = 0; sensorId < 10_000; sensorId++) {
+            assertEquals(Outcome.DUPLICATE, watermarks.check(sensorId, (int) (sensorId % 3), sensorId, sensorId, true));
+            assertEquals(Outcome.LATE, watermarks.check(sensorId, (int) (sensorId % 3), sensorId - 1, NO_SEQUENCE, true));
+        }
+        // sensor ids that do not fit the key are not tracked
+        watermarks.record(Long.MAX_VALUE, 1, 1000, 1, true);
+        assertEquals(Outcome.NEWER, watermarks.check(Long.MAX_VALUE, 1, 1000, 1, true));
+    }
+}
@@ -0,0 +1,192 @@
+package com.energybox.backendcodingchallenge.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * Closed-loop load test of a running instance: every client sends a request of each endpoint in turn and
+ * sends the next one as soon as the response arrives. Prints the throughput and latency percentiles per
+ * endpoint and concurrency, one row per line so the runs of both modes can be put side by side.
+ * Not a unit test; start the application in the mode to measure and run:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.energybox.backendcodingchallenge.loadtest.HttpLoadTest \
+ *     -Dexec.args="http://localhost:8082/api/v1 servlet 30 64,512,4096 10000 100"
+ * </pre>
+ *
+ * The arguments are the base URL, a label for the mode, the seconds to run each concurrency, the comma
+ * separated concurrencies, the number of sensors and gateways to pick ids from, and optionally the comma
+ * separated endpoints to call out of {@code last-readings}, {@code gateway}, {@code sensors-page},
+ * {@code put-reading} and {@code put-batch}, all by default. {@code put-batch} sends 100 readings of consecutive
+ * sensors per request. Ids are drawn from {@code 0} up to these counts, so the database should hold them;
+ * unknown ids are counted as errors.
+ */
+public class HttpLoadTest {
+
+    private static final int MAX_SAMPLES = 1 << 21;
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8082/api/v1";
+        String label = args.length > 1 ? args[1] : "servlet";
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 30;
+        int[] concurrencies = Arrays.stream((args.length > 3 ? args[3] : "64,512,4096").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        long sensors = args.length > 4 ? Long.parseLong(args[4]) : 10_000;
+        long gateways = args.length > 5 ? Long.parseLong(args[5]) : 100;
+
+        Map<String, Endpoint> all = new LinkedHashMap<>();
+        all.put("last-readings",
+                new Endpoint("GET last readings", id -> get(baseUrl + "/sensors/get-last-readings/" + id), sensors));
+        all.put("gateway", new Endpoint("GET gateway", id -> get(baseUrl + "/gateways/gateway-id/" + id), gateways));
+        all.put("sensors-page", new Endpoint("GET sensors page", id -> get(baseUrl + "/sensors?limit=100"), 1));
+        all.put("put-reading",
+                new Endpoint("PUT reading", id -> HttpRequest.newBuilder(URI.create(baseUrl + "/sensors/add-last-readings/"))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(
+                                "{\"sensorId\":" + id + ",\"sensorType\":\"electricity\",\"reading\":" + id % 100 + "}"))
+                        .build(), sensors));
+        all.put("put-batch",
+                new Endpoint("PUT batch x100", id -> HttpRequest.newBuilder(URI.create(baseUrl + "/sensors/readings/batch"))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(batchBody(id, sensors)))
+                        .build(), sensors));
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String key : (args.length > 6 ? args[6] : String.join(",", all.keySet())).split(",")) {
+            Endpoint endpoint = all.get(key.trim());
+            if (endpoint == null) {
+                throw new IllegalArgumentException("Unknown endpoint " + key + ", expected one of " + all.keySet());
+            }
+            endpoints.add(endpoint);
+        }
+
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        System.out.printf("%-8s %-18s %11s %10s %8s %9s %9s %9s %9s %9s%n", "mode", "endpoint", "concurrency",
+                "req/s", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (int concurrency : concurrencies) {
+            run(client, endpoints, concurrency, TimeUnit.SECONDS.toNanos(Math.min(5, seconds)), false, label);
+            run(client, endpoints, concurrency, TimeUnit.SECONDS.toNanos(seconds), true, label);
+        }
+    }
+
+    private static void run(HttpClient client, List<Endpoint> endpoints, int concurrency, long nanos,
+                            boolean report, String label) throws InterruptedException {
+        endpoints.forEach(Endpoint::reset);
+        long start = System.nanoTime();
+        long deadline = start + nanos;
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int c = 0; c < concurrency; c++) {
+            send(client, endpoints, c % endpoints.size(), deadline, done);
+        }
+        done.await();
+        if (!report) {
+            return;
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        for (Endpoint endpoint : endpoints) {
+            long[] latencies = endpoint.latencies();
+            Arrays.sort(latencies);
+            System.out.printf("%-8s %-18s %11d %10.0f %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", label, endpoint.name,
+                    concurrency, endpoint.completed.get() / elapsed, endpoint.errors.get(),
+                    percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                    percentile(latencies, 0.999), percentile(latencies, 1.0));
+        }
+    }
+
+    private static void send(HttpClient client, List<Endpoint> endpoints, int next, long deadline, CountDownLatch done) {
+        if (System.nanoTime() >= deadline) {
+            done.countDown();
+            return;
+        }
+        Endpoint endpoint = endpoints.get(next);
+        HttpRequest request = endpoint.request.apply(ThreadLocalRandom.current().nextLong(endpoint.ids));
+        long sent = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+            endpoint.record(System.nanoTime() - sent, error == null && response.statusCode() < 400);
+            send(client, endpoints, (next + 1) % endpoints.size(), deadline, done);
+        });
+    }
+
+    private static HttpRequest get(String url) {
+        return HttpRequest.newBuilder(URI.create(url)).GET().build();
+    }
+
+    private static String batchBody(long first, long sensors) {
+        StringBuilder body = new StringBuilder("{\"readings\":[");
+        for (int i = 0; i < 100; i++) {
+            long id = (first + i) % sensors;
+            body.append(i == 0 ? "" : ",").append("{\"sensorId\":").append(id)
+                    .append(",\"sensorType\":\"electricity\",\"reading\":").append(id % 100).append('}');
+        }
+        return body.append("]}").toString();
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static final class Endpoint {
+
+        final String name;
+
+        final LongFunction<HttpRequest> request;
+
+        final long ids;
+
+        final AtomicLong completed = new AtomicLong();
+
+        final AtomicLong errors = new AtomicLong();
+
+        final AtomicInteger samples = new AtomicInteger();
+
+        // latencies beyond MAX_SAMPLES are counted but not kept
+        final long[] latencies = new long[MAX_SAMPLES];
+
+        Endpoint(String name, LongFunction<HttpRequest> request, long ids) {
+            this.name = name;
+            this.request = request;
+            this.ids = ids;
+        }
+
+        void record(long nanos, boolean ok) {
+            completed.incrementAndGet();
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+            int sample = samples.getAndIncrement();
+            if (sample < latencies.length) {
+                latencies[sample] = nanos;
+            }
+        }
+
+        long[] latencies() {
+            return Arrays.copyOf(latencies, Math.min(samples.get(), latencies.length));
+        }
+
+        void reset() {
+            completed.set(0);
+            errors.set(0);
+            samples.set(0);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.energybox.backendcodingchallenge.metrics;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.repository.SensorTypeRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+public class IngestedReadingsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final SensorTypeDictionary dictionary = new SensorTypeDictionary(mock(SensorTypeRepository.class), meterRegistry);
+
+    private final IngestedReadings ingestedReadings = new IngestedReadings(dictionary, meterRegistry);
+
+    @Test
+    void increment_ShouldCountReadingsPerType() {
+        int electricity = dictionary.code("electricity");
+        int humidity = dictionary.code("humidity");
+
+        ingestedReadings.increment(electricity);
+        ingestedReadings.increment(electricity);
+        ingestedReadings.increment(humidity);
+
+        assertEquals(2, meterRegistry.get(IngestedReadings.COUNTER).tag("type", "electricity").counter().count());
+        assertEquals(1, meterRegistry.get(IngestedReadings.COUNTER).tag("type", "humidity").counter().count());
+    }
+
+    @Test
+    void increment_ShouldGrowPastTheInitialCapacity() {
+        for (int i = 0; i < 100; i++) {
+            ingestedReadings.increment(dictionary.code("type-" + i));
+        }
+        ingestedReadings.increment(dictionary.code("type-99"));
+
+        assertEquals(100, meterRegistry.find(IngestedReadings.COUNTER).counters().size());
+        assertEquals(2, meterRegistry.get(IngestedReadings.COUNTER).tag("type", "type-99").counter().count());
+        assertEquals(1, meterRegistry.get(IngestedReadings.COUNTER).tag("type", "type-0").counter().count());
+    }
+}
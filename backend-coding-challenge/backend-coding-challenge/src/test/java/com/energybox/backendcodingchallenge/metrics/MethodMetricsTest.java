@@ -0,0 +1,156 @@
+package com.energybox.backendcodingchallenge.metrics;
+
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import com.energybox.backendcodingchallenge.exception.SensorNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.data.repository.Repository;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.HandlerMapping;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MethodMetricsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final Advisor advisor = new DefaultPointcutAdvisor(MethodMetrics.pointcut(), new MethodMetrics(() -> meterRegistry));
+
+    @BeforeEach
+    void setUp() {
+        EntityHydration.reset();
+    }
+
+    @Test
+    void invoke_ShouldTimeServiceMethodsTaggedWithTheException() {
+        ExampleService service = proxy(new ExampleService());
+
+        service.find(1L);
+        service.find(2L);
+        assertThrows(SensorNotFoundException.class, () -> service.find(-1L));
+        service.findLater();
+
+        assertEquals(2, meterRegistry.get(MethodMetrics.SERVICE_TIMER).tag("class", "ExampleService")
+                .tag("method", "find").tag("exception", "none").timer().count());
+        assertEquals(1, meterRegistry.get(MethodMetrics.SERVICE_TIMER).tag("method", "find")
+                .tag("exception", "SensorNotFoundException").timer().count());
+        // a publisher is timed by whoever subscribes to it
+        assertTrue(meterRegistry.find(MethodMetrics.SERVICE_TIMER).tag("method", "findLater").timers().isEmpty());
+        assertEquals(0, EntityHydration.count());
+    }
+
+    @Test
+    void invoke_ShouldTimeRepositoriesByInterfaceAndCountTheEntitiesTheyReturn() {
+        Sensor sensor = new Sensor("sensor", "location");
+        sensor.setTypes(Set.of(new SensorType("electricity"), new SensorType("humidity")));
+        sensor.setGateway(new Gateway("gateway"));
+        sensor.setLastReadings(Set.of(new LastReading(LocalDateTime.now(), 1.0)));
+        ExampleRepository repository = repository(sensor);
+
+        repository.findAll();
+        repository.findById(1L);
+        repository.findNames();
+
+        assertEquals(1, meterRegistry.get(MethodMetrics.REPOSITORY_TIMER).tag("class", "ExampleRepository")
+                .tag("method", "findAll").timer().count());
+        assertEquals(1, meterRegistry.get(MethodMetrics.REPOSITORY_TIMER).tag("method", "findById").timer().count());
+        // two sensors with two types, a last reading and a gateway each, then one more; names are not entities
+        assertEquals(15, EntityHydration.count());
+    }
+
+    @Test
+    void isInstrumented_ShouldOnlyMatchServicesAndRepositoriesOfTheApplication() {
+        assertTrue(MethodMetrics.isInstrumented(ExampleService.class));
+        assertTrue(MethodMetrics.isInstrumented(proxyClass(ExampleRepository.class)));
+        assertFalse(MethodMetrics.isInstrumented(EntityHydration.class));
+        assertFalse(MethodMetrics.isInstrumented(proxyClass(Runnable.class)));
+    }
+
+    @Test
+    void afterCompletion_ShouldRecordTheEntitiesOfTheRequestPerUri() {
+        HydrationInterceptor interceptor = new HydrationInterceptor(meterRegistry);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/sensors/{sensorId}");
+        ExampleRepository repository = repository(new Sensor("sensor", "location"));
+
+        interceptor.preHandle(request, new MockHttpServletResponse(), null);
+        repository.findAll();
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+        interceptor.preHandle(request, new MockHttpServletResponse(), null);
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+
+        assertEquals(2, meterRegistry.get(HydrationInterceptor.SUMMARY).tag("uri", "/sensors/{sensorId}").summary().count());
+        assertEquals(2, meterRegistry.get(HydrationInterceptor.SUMMARY).summary().totalAmount());
+    }
+
+    private Class<?> proxyClass(Class<?> type) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> null).getClass();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(T target) {
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(advisor);
+        return (T) proxyFactory.getProxy();
+    }
+
+    // stands in for a Spring Data repository proxy, answering every query with the given sensor
+    private ExampleRepository repository(Sensor sensor) {
+        Object target = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ExampleRepository.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "findAll":
+                            return List.of(sensor, sensor);
+                        case "findById":
+                            return Optional.of(sensor);
+                        default:
+                            return List.of("sensor");
+                    }
+                });
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.addInterface(ExampleRepository.class);
+        proxyFactory.addAdvisor(advisor);
+        return (ExampleRepository) proxyFactory.getProxy();
+    }
+
+    @Service
+    public static class ExampleService {
+
+        public Sensor find(Long id) {
+            if (id < 0) {
+                throw new SensorNotFoundException("Sensor not found");
+            }
+            return new Sensor("sensor", "location");
+        }
+
+        public Mono<Sensor> findLater() {
+            return Mono.empty();
+        }
+    }
+
+    public interface ExampleRepository extends Repository<Sensor, Long> {
+
+        List<Sensor> findAll();
+
+        Optional<Sensor> findById(Long id);
+
+        List<String> findNames();
+    }
+}
@@ -0,0 +1,212 @@
+package com.energybox.backendcodingchallenge.profiler;
+
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.exception.QueryPlanException;
+import com.energybox.backendcodingchallenge.model.QueryProfile;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Result;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Transaction;
+import org.neo4j.driver.Values;
+import org.neo4j.driver.summary.ProfiledPlan;
+import org.neo4j.driver.summary.ResultSummary;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class QueryProfilerTest {
+
+    @Mock
+    private Driver driver;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private Transaction transaction;
+
+    @Mock
+    private Result result;
+
+    @Mock
+    private ResultSummary summary;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private QueryProfiler queryProfiler;
+
+    @BeforeEach
+    void setUp() {
+        queryProfiler = profiler(true, 20, 100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        queryProfiler.shutdown();
+    }
+
+    @Test
+    void completed_ShouldFailAStrictQueryScanningMoreNodesThanAllowed() throws NoSuchMethodException {
+        profile(scan(5000));
+
+        QueryPlanException e = assertThrows(QueryPlanException.class,
+                () -> queryProfiler.completed(method("findByName"), new Object[]{"sensor"}, 1_000_000, List.of()));
+
+        assertTrue(e.getMessage().startsWith("ExampleRepository.findByName scans 5000 nodes of a label"));
+        assertTrue(e.getMessage().contains("NodeByLabelScan s:Sensor rows=5000 dbHits=5001"));
+        verify(transaction).run(eq("PROFILE MATCH (s:Sensor) WHERE s.name = $name RETURN s"),
+                eq(Map.of("name", Values.value("sensor"))));
+        verify(transaction).rollback();
+    }
+
+    @Test
+    void completed_ShouldKeepAnAllowedScanAndRenderItsPlan() throws NoSuchMethodException {
+        profile(scan(5000));
+
+        queryProfiler.completed(method("findPageAfter"), new Object[]{0L, 2}, 3_000_000, List.of("a", "b"));
+
+        QueryProfile profile = queryProfiler.worstPlans().get(0);
+        assertEquals("ExampleRepository", profile.getRepository());
+        assertEquals("findPageAfter", profile.getMethod());
+        assertEquals(3.0, profile.getElapsedMs());
+        assertEquals(2, profile.getRows());
+        assertEquals(5002, profile.getDbHits());
+        assertEquals(5000, profile.getMaxScannedNodes());
+        assertEquals(List.of("NodeByLabelScan s:Sensor rows=5000"), profile.getLabelScans());
+        assertEquals("ProduceResults s rows=2 dbHits=1\n  NodeByLabelScan s:Sensor rows=5000 dbHits=5001\n",
+                profile.getPlan());
+        assertEquals(2, meterRegistry.get(QueryProfiler.ROWS).tag("method", "findPageAfter").summary().totalAmount());
+        assertEquals(5002, meterRegistry.get(QueryProfiler.DB_HITS).tag("method", "findPageAfter").summary().totalAmount());
+    }
+
+    @Test
+    void worstPlans_ShouldKeepTheWorstPlanOfTheWorstQueries() throws NoSuchMethodException {
+        queryProfiler = profiler(true, 2, Long.MAX_VALUE);
+        profile(seek(10), seek(50), seek(20), seek(5), seek(5), seek(30));
+
+        queryProfiler.completed(method("findByName"), new Object[]{"a"}, 0, null);
+        queryProfiler.completed(method("findByName"), new Object[]{"b"}, 0, null);
+        queryProfiler.completed(method("findPageAfter"), new Object[]{0L, 1}, 0, null);
+        queryProfiler.completed(method("findPageAfter"), new Object[]{1L, 1}, 0, null);
+        // better than both kept plans, so it is not kept
+        queryProfiler.completed(method("countAll"), new Object[0], 0, null);
+        assertEquals(List.of(51L, 21L), dbHits(queryProfiler.worstPlans()));
+
+        queryProfiler.completed(method("countAll"), new Object[0], 0, null);
+        assertEquals(List.of(51L, 31L), dbHits(queryProfiler.worstPlans()));
+        assertEquals("countAll", queryProfiler.worstPlans().get(1).getMethod());
+
+        queryProfiler.clearPlans();
+        assertTrue(queryProfiler.worstPlans().isEmpty());
+    }
+
+    @Test
+    void completed_ShouldOnlyRecordTheRowsOfAFastUnsampledQuery() throws NoSuchMethodException {
+        queryProfiler = profiler(false, 20, 100);
+
+        queryProfiler.completed(method("findByName"), new Object[]{"sensor"}, 1_000_000, List.of("a", "b", "c"));
+
+        assertEquals(3, meterRegistry.get(QueryProfiler.ROWS).tag("class", "ExampleRepository").summary().totalAmount());
+        assertEquals(0, meterRegistry.get(QueryProfiler.SLOW).counter().count());
+        verifyNoInteractions(driver);
+    }
+
+    @Test
+    void rows_ShouldCountTheElementsOfTheResult() {
+        assertEquals(0, QueryProfiler.rows(null));
+        assertEquals(2, QueryProfiler.rows(List.of(1, 2)));
+        assertEquals(0, QueryProfiler.rows(Optional.empty()));
+        assertEquals(3, QueryProfiler.rows(new SliceImpl<>(List.of(1, 2, 3), PageRequest.of(0, 3), true)));
+        assertEquals(1, QueryProfiler.rows(42L));
+    }
+
+    @Test
+    void isProfiled_ShouldOnlyMatchMethodsWithAQuery() throws NoSuchMethodException {
+        assertTrue(QueryProfiler.isProfiled(method("findByName")));
+        assertFalse(QueryProfiler.isProfiled(ExampleRepository.class.getMethod("findById", Long.class)));
+    }
+
+    private QueryProfiler profiler(boolean strict, int maxPlans, long maxLabelScanRows) {
+        return new QueryProfiler(driver, meterRegistry, WorkerThreads.platform(), 0, 500, maxPlans, strict, maxLabelScanRows);
+    }
+
+    private void profile(ProfiledPlan plan, ProfiledPlan... plans) {
+        when(driver.session()).thenReturn(session);
+        when(session.beginTransaction()).thenReturn(transaction);
+        when(transaction.run(anyString(), anyMap())).thenReturn(result);
+        when(result.consume()).thenReturn(summary);
+        when(summary.hasProfile()).thenReturn(true);
+        when(summary.profile()).thenReturn(plan, plans);
+    }
+
+    private static ProfiledPlan scan(long nodes) {
+        return operator("ProduceResults@neo4j", "s", 2, 1,
+                operator("NodeByLabelScan@neo4j", "s:Sensor", nodes, nodes + 1));
+    }
+
+    private static ProfiledPlan seek(long dbHits) {
+        return operator("ProduceResults@neo4j", "s", 1, 1,
+                operator("NodeByIdSeek@neo4j", "s WHERE id(s) = $afterId", 1, dbHits));
+    }
+
+    private static ProfiledPlan operator(String type, String details, long records, long dbHits, ProfiledPlan... children) {
+        ProfiledPlan operator = mock(ProfiledPlan.class);
+        when(operator.operatorType()).thenReturn(type);
+        when(operator.arguments()).thenReturn(Map.of("Details", Values.value(details)));
+        when(operator.records()).thenReturn(records);
+        when(operator.dbHits()).thenReturn(dbHits);
+        when(operator.children()).thenAnswer(invocation -> List.of(children));
+        return operator;
+    }
+
+    private static Method method(String name) throws NoSuchMethodException {
+        for (Method method : ExampleRepository.class.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    private static List<Long> dbHits(List<QueryProfile> plans) {
+        return plans.stream().map(QueryProfile::getDbHits).collect(Collectors.toList());
+    }
+
+    public interface ExampleRepository extends Repository<Sensor, Long> {
+
+        @Query("MATCH (s:Sensor) WHERE s.name = $name RETURN s")
+        List<Sensor> findByName(@Param("name") String name);
+
+        @AllowLabelScan
+        @Query("MATCH (s:Sensor) WHERE id(s) > $afterId RETURN s ORDER BY id(s) LIMIT $limit")
+        List<Sensor> findPageAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+        @Query("MATCH (s:Sensor) RETURN count(s)")
+        long countAll();
+
+        Optional<Sensor> findById(Long id);
+    }
+}
@@ -5,6 +5,7 @@ import com.energybox.backendcodingchallenge.exception.GatewayNotFoundException;
 import com.energybox.backendcodingchallenge.model.GatewayRequest;
 import com.energybox.backendcodingchallenge.model.GatewayResponse;
 import com.energybox.backendcodingchallenge.repository.GatewayRepository;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -26,6 +27,9 @@ public class GatewayServiceTest {
     @Mock
     private GatewayRepository gatewayRepository;
 
+    @Mock
+    private TopologyRegistry topologyRegistry;
+
     @InjectMocks
     private GatewayService gatewayService;
 
@@ -52,11 +56,11 @@ public class GatewayServiceTest {
     }
 
     @Test
-    void fetchAllGateways_ShouldReturnListOfGateways() {
+    void fetchGateways_ShouldReturnPageOfGateways() {
         List<Gateway> gateways = Collections.singletonList(gateway);
-        when(gatewayRepository.findAll()).thenReturn(gateways);
+        when(gatewayRepository.findPageAfter(-1L, 100)).thenReturn(gateways);
 
-        List<Gateway> result = gatewayService.fetchAllGateways();
+        List<Gateway> result = gatewayService.fetchGateways(-1L, 100);
 
         assertNotNull(result);
         assertEquals(1, result.size());
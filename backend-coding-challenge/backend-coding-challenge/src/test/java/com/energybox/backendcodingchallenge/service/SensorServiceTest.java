@@ -1,27 +1,59 @@
 package com.energybox.backendcodingchallenge.service;
 
+import com.energybox.backendcodingchallenge.cache.LastReadingCache;
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
 import com.energybox.backendcodingchallenge.domain.Gateway;
 import com.energybox.backendcodingchallenge.domain.LastReading;
 import com.energybox.backendcodingchallenge.domain.Sensor;
 import com.energybox.backendcodingchallenge.domain.SensorType;
+import com.energybox.backendcodingchallenge.exception.InvalidRequestException;
+import com.energybox.backendcodingchallenge.exception.SensorAlreadyConnectedException;
 import com.energybox.backendcodingchallenge.exception.SensorNotFoundException;
+import com.energybox.backendcodingchallenge.history.ReadingHistoryStore;
+import com.energybox.backendcodingchallenge.history.RollupStore;
+import com.energybox.backendcodingchallenge.ingest.LastReadingBuffer;
+import com.energybox.backendcodingchallenge.ingest.ReadingWatermarks;
+import com.energybox.backendcodingchallenge.metrics.IngestedReadings;
+import com.energybox.backendcodingchallenge.model.BatchGatewayAssignmentResponse;
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.BulkSensorItem;
+import com.energybox.backendcodingchallenge.model.BulkSensorResponse;
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentOutcome;
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentResult;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
 import com.energybox.backendcodingchallenge.model.SensorRequest;
+import com.energybox.backendcodingchallenge.model.SensorGatewayRequest;
 import com.energybox.backendcodingchallenge.model.SensorResponse;
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import com.energybox.backendcodingchallenge.repository.GatewayAssignmentRepository;
 import com.energybox.backendcodingchallenge.repository.GatewayRepository;
+import com.energybox.backendcodingchallenge.repository.LastReadingRepository;
+import com.energybox.backendcodingchallenge.repository.SensorExportRepository;
+import com.energybox.backendcodingchallenge.repository.SensorProvisioningRepository;
 import com.energybox.backendcodingchallenge.repository.SensorRepository;
-import com.energybox.backendcodingchallenge.repository.SensorTypeRepository;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import com.energybox.backendcodingchallenge.wal.ReadingWal;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.function.LongFunction;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,11 +62,47 @@ public class SensorServiceTest {
     @Mock
     private SensorRepository sensorRepository;
 
+    @Mock
+    private LastReadingRepository lastReadingRepository;
+
     @Mock
     private GatewayRepository gatewayRepository;
 
     @Mock
-    private SensorTypeRepository sensorTypeRepository;
+    private SensorTypeDictionary sensorTypeDictionary;
+
+    @Mock
+    private LastReadingBuffer lastReadingBuffer;
+
+    @Mock
+    private ReadingHistoryStore readingHistoryStore;
+
+    @Mock
+    private RollupStore rollupStore;
+
+    @Mock
+    private SensorExportRepository sensorExportRepository;
+
+    @Mock
+    private TopologyRegistry topologyRegistry;
+
+    @Mock
+    private LastReadingCache lastReadingCache;
+
+    @Mock
+    private SensorProvisioningRepository sensorProvisioningRepository;
+
+    @Mock
+    private GatewayAssignmentRepository gatewayAssignmentRepository;
+
+    @Mock
+    private ReadingWal readingWal;
+
+    @Mock
+    private IngestedReadings ingestedReadings;
+
+    @Spy
+    private ReadingWatermarks readingWatermarks = new ReadingWatermarks(new SimpleMeterRegistry(), true, 8, 300_000);
 
     @InjectMocks
     private SensorService sensorService;
@@ -63,26 +131,106 @@ public class SensorServiceTest {
         sensorRequest.setType( Set.of("electricity"));
 
         when(sensorRepository.save(any(Sensor.class))).thenReturn(sensor);
-        when(sensorTypeRepository.findByName("electricity")).thenReturn(sensorType);
+        when(sensorTypeDictionary.ensureStored("electricity")).thenReturn(true);
 
         SensorResponse response = sensorService.createSensors(sensorRequest);
 
         assertNotNull(response);
         assertEquals(sensor.getId(), response.getSensorId());
-        verify(sensorRepository).save(any(Sensor.class));
-        verify(sensorTypeRepository).findByName("electricity");
+        verify(sensorRepository).save(argThat((Sensor saved) -> saved.getTypes().size() == 1
+                && saved.getTypes().iterator().next().getName().equals("electricity")));
+        verify(sensorTypeDictionary).ensureStored("electricity");
+        verify(topologyRegistry).typeSaved("electricity");
+        verify(topologyRegistry).sensorTypeAdded(1L, "electricity");
     }
 
     @Test
-    void fetchAllSensors_ShouldReturnListOfSensors() {
-        List<Sensor> sensors = Collections.singletonList(sensor);
-        when(sensorRepository.findAll()).thenReturn(sensors);
+    void createSensorsInBulk_ShouldResolveTypesOnceAndMapKeysToIds() {
+        when(gatewayRepository.findExistingIds(Set.of(10L, 11L))).thenReturn(List.of(10L));
+        when(sensorTypeDictionary.ensureStored(Set.of("electricity", "humidity"))).thenReturn(List.of("humidity"));
+        when(sensorProvisioningRepository.createSensors(anyList())).thenReturn(Map.of("a", 100L, "b", 101L));
+
+        BulkSensorResponse response = sensorService.createSensorsInBulk(Arrays.asList(
+                bulkItem("a", Set.of("electricity", "humidity"), 10L),
+                bulkItem("b", Set.of("electricity"), null),
+                bulkItem("a", Set.of(), null),
+                bulkItem("c", Set.of(), 11L),
+                bulkItem(null, Set.of(), null)));
+
+        assertEquals(5, response.getReceived());
+        assertEquals(2, response.getCreated());
+        assertEquals(Map.of("a", 100L, "b", 101L), response.getSensorIds());
+        assertEquals(3, response.getFailures().size());
+        assertEquals("Duplicate key", response.getFailures().get(0).getReason());
+        assertEquals("Gateway not found", response.getFailures().get(1).getReason());
+        assertEquals(4, response.getFailures().get(2).getIndex());
+        verify(sensorProvisioningRepository, times(1)).createSensors(argThat(rows -> rows.size() == 2));
+        verify(topologyRegistry).typeSaved("humidity");
+        verify(topologyRegistry).sensorAssigned(100L, 10L);
+        verify(topologyRegistry).sensorTypeAdded(101L, "electricity");
+        verify(sensorRepository, never()).save(any(Sensor.class));
+    }
 
-        List<Sensor> result = sensorService.fetchAllSensors();
+    @Test
+    void createSensorsInBulk_ShouldKeepTheIdsOfCommittedChunksWhenALaterChunkFails() {
+        List<BulkSensorItem> items = new ArrayList<>();
+        for (int i = 0; i < SensorService.SENSOR_BULK_CHUNK_SIZE + 2; i++) {
+            items.add(bulkItem("s" + i, Set.of(), null));
+        }
+        when(sensorProvisioningRepository.createSensors(anyList()))
+                .thenAnswer(invocation -> {
+                    Map<String, Long> ids = new HashMap<>();
+                    List<Map<String, Object>> rows = invocation.getArgument(0);
+                    for (Map<String, Object> row : rows) {
+                        ids.put((String) row.get("key"), (long) ids.size());
+                    }
+                    return ids;
+                })
+                .thenThrow(new RuntimeException("Connection lost"));
+
+        BulkSensorResponse response = sensorService.createSensorsInBulk(items);
+
+        assertEquals(SensorService.SENSOR_BULK_CHUNK_SIZE, response.getCreated());
+        assertEquals(2, response.getFailures().size());
+        assertEquals(SensorService.SENSOR_BULK_CHUNK_SIZE, response.getFailures().get(0).getIndex());
+        assertEquals("s" + SensorService.SENSOR_BULK_CHUNK_SIZE, response.getFailures().get(0).getKey());
+        assertEquals(SensorService.SENSOR_WRITE_FAILED, response.getFailures().get(1).getReason());
+    }
 
-        assertNotNull(result);
-        assertEquals(1, result.size());
-        assertEquals(sensor, result.get(0));
+    @Test
+    void fetchSensorSummaries_ShouldBeServedFromTheTopologyRegistryOnceLoaded() {
+        List<SensorSummary> summaries = List.of(new SensorSummary(1L, "Sensor1", "Location1"));
+        when(topologyRegistry.isReady()).thenReturn(true);
+        when(topologyRegistry.sensorsAfter(-1L, 10)).thenReturn(summaries);
+
+        assertEquals(summaries, sensorService.fetchSensorSummaries(-1L, 10));
+        verifyNoInteractions(sensorRepository);
+    }
+
+    @Test
+    void checkSensorExists_ShouldAskTheDatabaseOnlyForSensorsMissingFromTheRegistry() {
+        when(topologyRegistry.isReady()).thenReturn(true);
+        when(topologyRegistry.containsSensor(1L)).thenReturn(true);
+        when(topologyRegistry.containsSensor(2L)).thenReturn(false);
+        when(sensorRepository.existsById(2L)).thenReturn(false);
+
+        sensorService.checkSensorExists(1L);
+        assertThrows(SensorNotFoundException.class, () -> sensorService.checkSensorExists(2L));
+        verify(sensorRepository, never()).existsById(1L);
+    }
+
+    @Test
+    void fetchSensors_ShouldLoadThePageOfSensorsInIdOrder() {
+        Sensor other = new Sensor("Sensor2", "Location2");
+        other.setId(2L);
+        when(sensorRepository.findSummariesAfter(0L, 2)).thenReturn(List.of(
+                new SensorSummary(1L, "Sensor1", "Location1"), new SensorSummary(2L, "Sensor2", "Location2")));
+        when(sensorRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(other, sensor));
+
+        List<Sensor> result = sensorService.fetchSensors(0L, 2);
+
+        assertEquals(List.of(sensor, other), result);
+        verify(sensorRepository, never()).findAll();
     }
 
     @Test
@@ -104,13 +252,49 @@ public class SensorServiceTest {
 
     @Test
     void assignSensorToGateway_ShouldAssignSuccessfully() {
-        when(sensorRepository.findById(1L)).thenReturn(Optional.of(sensor));
-        when(gatewayRepository.findById(1L)).thenReturn(Optional.of(gateway));
+        when(gatewayAssignmentRepository.assign(Map.of(1L, 1L), false))
+                .thenReturn(List.of(new GatewayAssignmentResult(1L, 1L, null, GatewayAssignmentOutcome.ASSIGNED)));
 
         sensorService.assignSensorToGateway(1L, 1L);
 
-        assertEquals(gateway, sensor.getGateway());
-        verify(sensorRepository).save(sensor);
+        verify(topologyRegistry).sensorAssigned(1L, 1L);
+        verify(sensorRepository, never()).findById(any());
+        verify(sensorRepository, never()).save(any(Sensor.class));
+    }
+
+    @Test
+    void assignSensorToGateway_ShouldRefuseToMoveAConnectedSensor() {
+        when(gatewayAssignmentRepository.assign(Map.of(1L, 2L), false))
+                .thenReturn(List.of(new GatewayAssignmentResult(1L, 2L, 1L, GatewayAssignmentOutcome.ALREADY_CONNECTED)));
+
+        assertThrows(SensorAlreadyConnectedException.class, () -> sensorService.assignSensorToGateway(1L, 2L));
+        verifyNoInteractions(topologyRegistry);
+    }
+
+    @Test
+    void assignSensorsToGateways_ShouldReportAnOutcomePerSensorInRequestOrder() {
+        when(gatewayAssignmentRepository.assign(any(), eq(true))).thenAnswer(invocation -> {
+            Map<Long, Long> gatewayBySensor = invocation.getArgument(0);
+            assertEquals(List.of(1L, 2L, 3L), new ArrayList<>(gatewayBySensor.keySet()));
+            return List.of(new GatewayAssignmentResult(1L, 20L, 10L, GatewayAssignmentOutcome.MOVED),
+                    new GatewayAssignmentResult(2L, 20L, null, GatewayAssignmentOutcome.ASSIGNED),
+                    new GatewayAssignmentResult(3L, 20L, null, GatewayAssignmentOutcome.SENSOR_NOT_FOUND));
+        });
+
+        BatchGatewayAssignmentResponse response = sensorService.assignSensorsToGateways(Arrays.asList(
+                assignment(1L, 20L), assignment(2L, 20L), assignment(1L, 21L), assignment(null, 20L),
+                assignment(3L, 20L)), true);
+
+        assertEquals(5, response.getReceived());
+        assertEquals(2, response.getChanged());
+        assertEquals(List.of(GatewayAssignmentOutcome.MOVED, GatewayAssignmentOutcome.ASSIGNED,
+                        GatewayAssignmentOutcome.DUPLICATE, GatewayAssignmentOutcome.INVALID,
+                        GatewayAssignmentOutcome.SENSOR_NOT_FOUND),
+                response.getResults().stream().map(GatewayAssignmentResult::getOutcome).collect(Collectors.toList()));
+        assertEquals(10L, response.getResults().get(0).getPreviousGatewayId());
+        verify(topologyRegistry).sensorAssigned(1L, 20L);
+        verify(topologyRegistry).sensorAssigned(2L, 20L);
+        verify(topologyRegistry, never()).sensorAssigned(eq(3L), anyLong());
     }
 
     @Test
@@ -128,9 +312,9 @@ public class SensorServiceTest {
     @Test
     void getLastReadings_ShouldReturnListOfReadings() {
         LastReading lastReading = new LastReading(LocalDateTime.now(), 23.5);
-        sensor.addReading(sensorType, lastReading);
-
-        when(sensorRepository.findById(1L)).thenReturn(Optional.of(sensor));
+        readThroughCache();
+        when(sensorRepository.existsById(1L)).thenReturn(true);
+        when(lastReadingRepository.findLastReadings(1L)).thenReturn(List.of(lastReading));
 
         List<LastReading> result = sensorService.getLastReadings(1L);
 
@@ -141,9 +325,286 @@ public class SensorServiceTest {
 
     @Test
     void getLastReadings_ShouldThrowExceptionIfSensorNotFound() {
-        when(sensorRepository.findById(1L)).thenReturn(Optional.empty());
+        readThroughCache();
+        when(sensorRepository.existsById(1L)).thenReturn(false);
 
         assertThrows(SensorNotFoundException.class, () -> sensorService.getLastReadings(1L));
+        verify(lastReadingRepository, never()).findLastReadings(any());
+    }
+
+    @Test
+    void addOrUpdateReadings_ShouldReportUnknownSensorsAndInvalidReadings() {
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of(1L));
+
+        BatchReadingResponse response = sensorService.addOrUpdateReadings(Arrays.asList(
+                reading(1L, "electricity", 1.0),
+                reading(2L, "electricity", 2.0),
+                reading(1L, "humidity", null),
+                reading(1L, "electricity", 3.0)));
+
+        assertEquals(4, response.getReceived());
+        assertEquals(2, response.getAccepted());
+        assertEquals(2, response.getFailures().size());
+        assertEquals(1, response.getFailures().get(0).getIndex());
+        assertEquals("Sensor not found", response.getFailures().get(0).getReason());
+        assertEquals(2, response.getFailures().get(1).getIndex());
+        verify(sensorRepository, times(1)).upsertLastReadings(argThat(rows -> rows.size() == 2
+                && rows.get(0).get("reading").equals(3.0)));
+    }
+
+    @Test
+    void addOrUpdateReadings_ShouldKeepTheTimestampOfTheReading() {
+        LocalDateTime takenAt = LocalDateTime.of(2024, 3, 1, 12, 0);
+        ReadingRequest request = reading(1L, "electricity", 1.0);
+        request.setTimestamp(takenAt);
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of(1L));
+
+        sensorService.addOrUpdateReadings(List.of(request));
+
+        verify(sensorRepository).upsertLastReadings(argThat(rows -> rows.get(0).get("timestamp").equals(takenAt)));
+        verify(readingHistoryStore).append(eq(1L), anyInt(),
+                eq(takenAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()), eq(1.0));
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldUpsertOnlyTheReadingOfTheType() {
+        when(sensorRepository.upsertLastReading(eq(1L), eq("electricity"), any(LocalDateTime.class), eq(23.5))).thenReturn(1L);
+
+        sensorService.addOrUpdateReading(1L, "electricity", 23.5);
+
+        verify(sensorRepository, never()).findById(any());
+        verify(sensorRepository, never()).save(any(Sensor.class));
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldKeepAMissingReadingOutOfTheHistoryAndRollups() {
+        when(sensorRepository.upsertLastReading(eq(1L), eq("electricity"), any(LocalDateTime.class), isNull())).thenReturn(1L);
+
+        sensorService.addOrUpdateReading(1L, "electricity", null);
+
+        verifyNoInteractions(readingHistoryStore, rollupStore);
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldThrowExceptionIfSensorNotFound() {
+        when(sensorRepository.upsertLastReading(eq(1L), eq("electricity"), any(LocalDateTime.class), eq(23.5))).thenReturn(0L);
+
+        assertThrows(SensorNotFoundException.class, () -> sensorService.addOrUpdateReading(1L, "electricity", 23.5));
+        verifyNoInteractions(readingHistoryStore);
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldNotAssignACodeToTheTypeOfAnUnknownSensor() {
+        when(sensorTypeDictionary.find("made-up")).thenReturn(SensorTypeDictionary.UNKNOWN);
+        when(sensorRepository.upsertLastReading(eq(1L), eq("made-up"), any(LocalDateTime.class), eq(23.5))).thenReturn(0L);
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of());
+
+        assertThrows(SensorNotFoundException.class, () -> sensorService.addOrUpdateReading(1L, "made-up", 23.5));
+        sensorService.addOrUpdateReadings(List.of(reading(1L, "made-up", 23.5)));
+
+        verify(sensorTypeDictionary, never()).code(any());
+        verify(readingWatermarks, never()).reserve(anyLong(), anyInt(), anyLong(), anyLong(), anyBoolean());
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldBufferWhenWriteBehindIsEnabled() {
+        when(lastReadingBuffer.isEnabled()).thenReturn(true);
+        when(sensorRepository.existsById(1L)).thenReturn(true);
+        when(sensorTypeDictionary.code("electricity")).thenReturn(3);
+
+        sensorService.addOrUpdateReading(1L, "electricity", 23.5);
+
+        verify(lastReadingBuffer).put(eq(1L), eq(3), any(LocalDateTime.class), eq(23.5));
+        verify(sensorRepository, never()).save(any(Sensor.class));
+        verify(readingHistoryStore).append(eq(1L), eq(3), anyLong(), eq(23.5));
+        verify(rollupStore).add(eq(1L), eq(3), anyLong(), eq(23.5));
+        verify(lastReadingCache).update(eq(1L), eq(3), any(LocalDateTime.class), eq(23.5));
+        verify(sensorTypeDictionary).ensureStored("electricity");
+        verify(ingestedReadings).increment(3);
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldDropARetriedReadingWithoutWritingIt() {
+        LocalDateTime takenAt = LocalDateTime.of(2021, 1, 15, 10, 30);
+        when(sensorRepository.upsertLastReading(1L, "electricity", takenAt, 23.5)).thenReturn(1L);
+
+        sensorService.addOrUpdateReading(1L, "electricity", 23.5, takenAt, 7L);
+        sensorService.addOrUpdateReading(1L, "electricity", 23.5, takenAt, 7L);
+
+        verify(sensorRepository, times(1)).upsertLastReading(1L, "electricity", takenAt, 23.5);
+        verify(readingHistoryStore, times(1)).append(eq(1L), anyInt(), anyLong(), eq(23.5));
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldWriteARetryOfAReadingThatFailedToBeWritten() {
+        LocalDateTime takenAt = LocalDateTime.of(2021, 1, 15, 10, 30);
+        when(sensorRepository.upsertLastReading(1L, "electricity", takenAt, 23.5))
+                .thenThrow(new RuntimeException("database unavailable"))
+                .thenReturn(1L);
+
+        assertThrows(RuntimeException.class, () -> sensorService.addOrUpdateReading(1L, "electricity", 23.5, takenAt, 7L));
+        sensorService.addOrUpdateReading(1L, "electricity", 23.5, takenAt, 7L);
+
+        verify(sensorRepository, times(2)).upsertLastReading(1L, "electricity", takenAt, 23.5);
+        verify(readingHistoryStore, times(1)).append(eq(1L), anyInt(), anyLong(), eq(23.5));
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldRejectATimestampAheadOfTheServerClock() {
+        LocalDateTime farAhead = LocalDateTime.of(9999, 1, 1, 0, 0);
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of(1L));
+
+        assertThrows(InvalidRequestException.class,
+                () -> sensorService.addOrUpdateReading(1L, "electricity", 23.5, farAhead, null));
+        BatchReadingResponse response = sensorService.addOrUpdateReadings(List.of(timestamped(1L, 23.5, farAhead),
+                timestamped(1L, 24.5, LocalDateTime.now().plusMinutes(1))));
+
+        assertEquals(1, response.getAccepted());
+        assertEquals(1, response.getFailures().size());
+        assertEquals(0, response.getFailures().get(0).getIndex());
+        assertEquals(SensorService.TIMESTAMP_AHEAD, response.getFailures().get(0).getReason());
+        verify(sensorRepository, never()).upsertLastReading(any(), any(), any(), any());
+        verify(sensorRepository).upsertLastReadings(argThat(rows -> rows.size() == 1 && rows.get(0).get("reading").equals(24.5)));
+    }
+
+    @Test
+    void addOrUpdateReadings_ShouldCountARepeatedReadingWithinTheBatchAsADuplicate() {
+        LocalDateTime takenAt = LocalDateTime.of(2021, 1, 15, 10, 30);
+        ReadingRequest first = reading(1L, "electricity", 23.5);
+        first.setTimestamp(takenAt);
+        ReadingRequest repeated = reading(1L, "electricity", 23.5);
+        repeated.setTimestamp(takenAt);
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of(1L));
+
+        BatchReadingResponse response = sensorService.addOrUpdateReadings(List.of(first, repeated));
+
+        assertEquals(2, response.getAccepted());
+        assertEquals(1, response.getDuplicates());
+        verify(readingHistoryStore, times(1)).append(eq(1L), anyInt(), anyLong(), eq(23.5));
+        verify(rollupStore, times(1)).add(eq(1L), anyInt(), anyLong(), eq(23.5));
+    }
+
+    @Test
+    void addOrUpdateReadings_ShouldNotDropReadingsStampedOnArrivalInTheSameMillisecond() {
+        LocalDateTime arrivedAt = LocalDateTime.of(2021, 1, 15, 10, 30);
+        ReadingRequest first = reading(1L, "electricity", 1.0);
+        first.setTimestamp(arrivedAt);
+        first.setStampedOnArrival(true);
+        ReadingRequest second = reading(1L, "electricity", 2.0);
+        second.setTimestamp(arrivedAt);
+        second.setStampedOnArrival(true);
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of(1L));
+
+        sensorService.addOrUpdateReadings(List.of(first), false);
+        BatchReadingResponse response = sensorService.addOrUpdateReadings(List.of(second), false);
+
+        assertEquals(1, response.getAccepted());
+        assertEquals(0, response.getDuplicates());
+        verify(sensorRepository, times(2)).upsertLastReadings(anyList());
+        verify(readingHistoryStore, times(2)).append(eq(1L), anyInt(), anyLong(), anyDouble());
+    }
+
+    @Test
+    void addOrUpdateReadings_ShouldOnlyAppendLateReadingsToTheHistory() {
+        LocalDateTime takenAt = LocalDateTime.of(2021, 1, 15, 10, 30);
+        ReadingRequest newer = reading(1L, "electricity", 2.0);
+        newer.setTimestamp(takenAt);
+        ReadingRequest late = reading(1L, "electricity", 1.0);
+        late.setTimestamp(takenAt.minusMinutes(5));
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of(1L));
+
+        sensorService.addOrUpdateReadings(List.of(newer));
+        BatchReadingResponse response = sensorService.addOrUpdateReadings(List.of(late, newer));
+
+        assertEquals(2, response.getAccepted());
+        assertEquals(1, response.getDuplicates());
+        verify(sensorRepository, times(1)).upsertLastReadings(anyList());
+        verify(readingHistoryStore).append(eq(1L), anyInt(), eq(takenAt.minusMinutes(5).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()), eq(1.0));
+        verify(lastReadingCache, never()).update(anyLong(), anyInt(), eq(takenAt.minusMinutes(5)), anyDouble());
+    }
+
+    @Test
+    void addOrUpdateReadings_ShouldLogTheBufferedReadingsOfKnownSensorsToTheWal() {
+        when(lastReadingBuffer.isEnabled()).thenReturn(true);
+        when(readingWal.isEnabled()).thenReturn(true);
+        when(sensorRepository.findExistingIds(Set.of(1L, 2L))).thenReturn(List.of(1L));
+        when(readingWal.append(anyList())).thenReturn(new int[]{4});
+
+        sensorService.addOrUpdateReadings(List.of(reading(1L, "electricity", 1.0), reading(2L, "electricity", 2.0)));
+
+        verify(readingWal).append(argThat((List<ReadingRequest> records) -> records.size() == 1
+                && records.get(0).getSensorId() == 1L && records.get(0).getTimestamp() != null));
+        verify(lastReadingBuffer).put(eq(1L), anyInt(), any(LocalDateTime.class), eq(1.0));
+        verify(readingWal).handedOff(new int[]{4});
+    }
+
+    @Test
+    void addOrUpdateReadings_ShouldNotLogReadingsAlreadyInTheWal() {
+        lenient().when(readingWal.isEnabled()).thenReturn(true);
+        when(sensorRepository.upsertLastReadings(anyList())).thenReturn(List.of(1L));
+
+        sensorService.addOrUpdateReadings(List.of(reading(1L, "electricity", 1.0)), false);
+
+        verify(readingWal, never()).append(anyList());
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldNotLogReadingsOfUnknownSensors() {
+        when(readingWal.isEnabled()).thenReturn(true);
+        when(sensorRepository.existsById(1L)).thenReturn(false);
+
+        assertThrows(SensorNotFoundException.class, () -> sensorService.addOrUpdateReading(1L, "electricity", 23.5));
+        verify(readingWal, never()).append(anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void getLastReadings_ShouldPreferBufferedReadings() {
+        LastReading stored = new LastReading(LocalDateTime.now().minusMinutes(1), 20.0);
+        stored.setTypeName("electricity");
+        LastReading buffered = new LastReading(LocalDateTime.now(), 23.5);
+        buffered.setTypeName("electricity");
+        when(lastReadingCache.get(eq(1L), any())).thenReturn(List.of(stored));
+        when(lastReadingBuffer.getBuffered(1L)).thenReturn(Map.of("electricity", buffered));
+
+        List<LastReading> result = sensorService.getLastReadings(1L);
+
+        assertEquals(List.of(buffered), result);
+    }
+
+    private SensorGatewayRequest assignment(Long sensorId, Long gatewayId) {
+        SensorGatewayRequest request = new SensorGatewayRequest();
+        request.setSensorId(sensorId);
+        request.setGatewayId(gatewayId);
+        return request;
+    }
+
+    private BulkSensorItem bulkItem(String key, Set<String> types, Long gatewayId) {
+        BulkSensorItem item = new BulkSensorItem();
+        item.setKey(key);
+        item.setName("Sensor " + key);
+        item.setLocationCode("Location1");
+        item.setType(types);
+        item.setGatewayId(gatewayId);
+        return item;
+    }
+
+    private void readThroughCache() {
+        when(lastReadingCache.get(anyLong(), any())).thenAnswer(invocation ->
+                invocation.<LongFunction<List<LastReading>>>getArgument(1).apply(invocation.getArgument(0)));
+    }
+
+    private ReadingRequest reading(Long sensorId, String type, Double value) {
+        ReadingRequest request = new ReadingRequest();
+        request.setSensorId(sensorId);
+        request.setSensorType(type);
+        request.setReading(value);
+        return request;
+    }
+
+    private ReadingRequest timestamped(Long sensorId, Double value, LocalDateTime timestamp) {
+        ReadingRequest request = reading(sensorId, "electricity", value);
+        request.setTimestamp(timestamp);
+        return request;
     }
 
 }
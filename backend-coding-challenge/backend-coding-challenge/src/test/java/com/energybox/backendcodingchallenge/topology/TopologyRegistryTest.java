@@ -0,0 +1,164 @@
+package com.energybox.backendcodingchallenge.topology;
+
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.domain.Gateway;
+import com.energybox.backendcodingchallenge.model.SensorSummary;
+import com.energybox.backendcodingchallenge.model.TopologyConsistencyReport;
+import com.energybox.backendcodingchallenge.repository.SensorTypeRepository;
+import com.energybox.backendcodingchallenge.repository.TopologyRepository;
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TopologyRegistryTest {
+
+    @Mock
+    private TopologyRepository topologyRepository;
+
+    @Mock
+    private SensorTypeRepository sensorTypeRepository;
+
+    private TopologyRegistry registry;
+
+    private final List<Object[]> gateways = new ArrayList<>();
+
+    private final List<Object[]> sensors = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        registry = new TopologyRegistry(topologyRepository, new SensorTypeDictionary(sensorTypeRepository, meterRegistry),
+                meterRegistry, WorkerThreads.platform(), false, 60_000);
+        lenient().doAnswer(invocation -> {
+            TopologyRepository.GatewayRowConsumer consumer = invocation.getArgument(0);
+            gateways.forEach(row -> consumer.accept((Long) row[0], (String) row[1]));
+            return null;
+        }).when(topologyRepository).forEachGateway(any());
+        lenient().doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(0);
+            consumer.accept("Temperature");
+            return null;
+        }).when(topologyRepository).forEachTypeName(any());
+        lenient().doAnswer(invocation -> {
+            TopologyRepository.SensorRowConsumer consumer = invocation.getArgument(0);
+            sensors.forEach(row -> consumer.accept((Long) row[0], (String) row[1], (String) row[2], (Long) row[3],
+                    List.of((String[]) row[4])));
+            return null;
+        }).when(topologyRepository).forEachSensor(any());
+
+        gateways.add(new Object[]{10L, "North"});
+        gateways.add(new Object[]{11L, "South"});
+        sensors.add(new Object[]{1L, "S1", "L1", 10L, new String[]{"Temperature", "Humidity"}});
+        sensors.add(new Object[]{2L, "S2", "L2", 11L, new String[]{"Humidity"}});
+        sensors.add(new Object[]{3L, "S3", "L3", null, new String[]{"Temperature"}});
+    }
+
+    @Test
+    void reconcile_ShouldServeReadsFromTheLoadedTopology() {
+        assertFalse(registry.isReady());
+        registry.reconcile();
+
+        assertTrue(registry.isReady());
+        assertTrue(registry.containsSensor(2L));
+        assertFalse(registry.containsSensor(4L));
+        assertEquals(List.of(1L, 3L), ids(registry.sensorsOfType("Temperature")));
+        assertEquals(List.of(2L), ids(registry.sensorsOfGateway(11L)));
+        assertEquals(List.of(2L, 3L), ids(registry.sensorsAfter(1L, 10)));
+        assertEquals(List.of(1L), ids(registry.sensorsAfter(-1L, 1)));
+        assertEquals("North", registry.gateway(10L).getName());
+        assertEquals(List.of(10L, 11L), registry.gatewaysOfType("Humidity").stream()
+                .map(Gateway::getId).collect(Collectors.toList()));
+        assertEquals(List.of(11L), registry.gatewaysAfter(10L, 10).stream()
+                .map(Gateway::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void writes_ShouldUpdateTheRegistryAndMoveSensorsBetweenGateways() {
+        registry.reconcile();
+
+        registry.sensorSaved(0L, "S0", "L0");
+        registry.sensorTypeAdded(0L, "Pressure");
+        registry.sensorAssigned(0L, 11L);
+        registry.sensorAssigned(1L, 11L);
+
+        assertEquals(List.of(0L, 1L, 2L, 3L), ids(registry.sensorsAfter(-1L, 10)));
+        assertEquals(List.of(0L), ids(registry.sensorsOfType("Pressure")));
+        assertEquals(List.of(0L, 1L, 2L), ids(registry.sensorsOfGateway(11L)));
+        assertTrue(registry.sensorsOfGateway(10L).isEmpty());
+    }
+
+    @Test
+    void typeQueries_ShouldIntersectAndUniteTheTypeBitmaps() {
+        registry.reconcile();
+
+        assertEquals(List.of(1L), ids(registry.sensorsOfTypes(List.of("Temperature", "Humidity"), List.of())));
+        assertEquals(List.of(1L, 2L, 3L), ids(registry.sensorsOfTypes(List.of(), List.of("Temperature", "Humidity"))));
+        assertEquals(List.of(1L), ids(registry.sensorsOfTypes(List.of("Humidity"), List.of("Pressure", "Temperature"))));
+        assertTrue(registry.sensorsOfTypes(List.of("Temperature", "Unknown"), List.of()).isEmpty());
+        assertEquals(List.of(10L), gatewayIds(registry.gatewaysOfTypes(List.of("Temperature", "Humidity"), List.of())));
+        assertEquals(List.of(10L, 11L), gatewayIds(registry.gatewaysOfTypes(List.of(), List.of("Temperature", "Humidity"))));
+    }
+
+    @Test
+    void gatewaysOfTypes_ShouldFollowSensorsMovingBetweenGateways() {
+        registry.reconcile();
+
+        registry.sensorAssigned(3L, 11L);
+        assertEquals(List.of(10L, 11L), gatewayIds(registry.gatewaysOfTypes(List.of("Temperature"), List.of())));
+
+        registry.sensorAssigned(1L, 11L);
+        assertEquals(List.of(11L), gatewayIds(registry.gatewaysOfTypes(List.of("Temperature", "Humidity"), List.of())));
+        assertTrue(registry.gatewaysOfTypes(List.of(), List.of("Temperature", "Humidity")).stream()
+                .noneMatch(gateway -> gateway.getId() == 10L));
+
+        registry.sensorTypeAdded(2L, "Pressure");
+        assertEquals(List.of(11L), gatewayIds(registry.gatewaysOfTypes(List.of("Pressure"), List.of())));
+    }
+
+    @Test
+    void checkConsistency_ShouldReportDriftAndReconcileShouldRepairIt() {
+        registry.reconcile();
+        registry.sensorTypeAdded(3L, "Humidity");
+        sensors.remove(1);
+        gateways.set(0, new Object[]{10L, "Renamed"});
+
+        TopologyConsistencyReport report = registry.checkConsistency();
+
+        assertFalse(report.isConsistent());
+        assertEquals(1, report.getMismatchedSensors());
+        assertEquals(1, report.getUnexpectedSensors());
+        assertEquals(1, report.getMismatchedGateways());
+        assertEquals(List.of(3L, 2L), report.getSensorIds());
+
+        assertEquals(3, registry.reconcile());
+        assertTrue(registry.checkConsistency().isConsistent());
+    }
+
+    @Test
+    void checkConsistency_ShouldNotBeReadyBeforeTheFirstLoad() {
+        assertFalse(registry.checkConsistency().isReady());
+        verifyNoInteractions(topologyRepository);
+    }
+
+    private static List<Long> gatewayIds(List<Gateway> gateways) {
+        return gateways.stream().map(Gateway::getId).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(List<SensorSummary> summaries) {
+        return summaries.stream().map(SensorSummary::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,34 @@
+package com.energybox.backendcodingchallenge.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LongIntHashMapTest {
+
+    @Test
+    void put_ShouldKeepEveryKeyAcrossResizes() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextInt(100_000) - 50_000L;
+            map.put(key, i);
+            expected.put(key, i);
+        }
+
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals((int) value, map.get(key)));
+        assertEquals(LongIntHashMap.MISSING, map.get(1_000_000L));
+        assertFalse(map.containsKey(Long.MIN_VALUE));
+    }
+
+    @Test
+    void put_ShouldRejectNegativeValues() {
+        assertThrows(IllegalArgumentException.class, () -> new LongIntHashMap(16).put(1L, -1));
+    }
+}
@@ -0,0 +1,91 @@
+package com.energybox.backendcodingchallenge.wal;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures durable appends per second of the reading WAL for every durability setting and thread count.
+ * Not a unit test; run it on the disk the WAL will live on:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.energybox.backendcodingchallenge.wal.ReadingWalBenchmark -Dexec.args="data/wal-bench 5"
+ * </pre>
+ *
+ * The arguments are the directory to write to and the seconds to run each combination.
+ */
+public class ReadingWalBenchmark {
+
+    private static final int[] THREADS = {1, 8, 64};
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "target/wal-bench");
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 5;
+
+        System.out.printf("%-9s %7s %14s %12s %14s%n", "durability", "threads", "appends/s", "fsync p50 us", "records/fsync");
+        for (ReadingWal.Durability durability : ReadingWal.Durability.values()) {
+            for (int threads : THREADS) {
+                run(directory, durability, threads, seconds);
+            }
+        }
+    }
+
+    private static void run(Path directory, ReadingWal.Durability durability, int threads, long seconds) throws Exception {
+        clear(directory);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReadingWal wal = new ReadingWal(meterRegistry, true, directory.toString(), durability.name(), 100, 64);
+        wal.open();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        LocalDateTime timestamp = LocalDateTime.now();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long sensorId = t;
+            futures.add(pool.submit(() -> {
+                long appends = 0;
+                while (System.nanoTime() < deadline) {
+                    wal.handedOff(wal.append(sensorId, "temperature", timestamp, 21.5));
+                    appends++;
+                }
+                return appends;
+            }));
+        }
+        long appends = 0;
+        for (Future<Long> future : futures) {
+            appends += future.get();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        wal.close();
+
+        Timer sync = meterRegistry.get("sensors.wal.sync").timer();
+        DistributionSummary records = meterRegistry.get("sensors.wal.sync.records").summary();
+        System.out.printf("%-9s %7d %14.0f %12.0f %14.1f%n", durability.name().toLowerCase(), threads, appends / elapsed,
+                sync.takeSnapshot().percentileValues()[0].value(TimeUnit.MICROSECONDS), records.mean());
+        clear(directory);
+    }
+
+    private static void clear(Path directory) throws Exception {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.energybox.backendcodingchallenge.wal;
+
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReadingWalTest {
+
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2021, 1, 15, 10, 30, 0);
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ReadingWal wal;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (wal != null) {
+            wal.close();
+        }
+    }
+
+    @Test
+    void replay_ShouldReturnReadingsLoggedBeforeARestart() throws Exception {
+        wal = open("batch");
+        wal.append(1L, "temperature", TIMESTAMP, 21.5);
+        wal.append(2L, "humidity", TIMESTAMP.plusSeconds(1), null);
+        assertEquals(ReadingWal.NO_TICKET, wal.append(null, "humidity", TIMESTAMP, 1.0));
+        wal.close();
+
+        wal = open("batch");
+        assertEquals(List.of(0), wal.recoveredSegments());
+        List<String> records = new ArrayList<>();
+        assertEquals(2, wal.replay(0, (sensorId, typeName, timestamp, reading) ->
+                records.add(sensorId + "/" + typeName + "/" + timestamp + "/" + reading)));
+        assertEquals(List.of("1/temperature/2021-01-15T10:30/21.5", "2/humidity/2021-01-15T10:30:01/null"), records);
+
+        wal.deleteRecovered(0);
+        assertTrue(wal.recoveredSegments().isEmpty());
+        assertFalse(Files.exists(directory.resolve("wal-0000000000.log")));
+        assertTrue(Files.exists(directory.resolve("wal-0000000001.log")));
+    }
+
+    @Test
+    void replay_ShouldStopAtATornOrCorruptRecord() throws Exception {
+        wal = open("write");
+        for (long sensorId = 1; sensorId <= 3; sensorId++) {
+            wal.append(sensorId, "temperature", TIMESTAMP, 20.0);
+        }
+        wal.close();
+        wal = null;
+
+        Path segment = directory.resolve("wal-0000000000.log");
+        long recordBytes = Files.size(segment) / 3;
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            // tear the last record and flip a byte in the payload of the second
+            file.setLength(Files.size(segment) - 3);
+            file.seek(recordBytes + 12);
+            file.write(file.read() ^ 0xFF);
+        }
+
+        wal = open("write");
+        List<Long> sensorIds = new ArrayList<>();
+        assertEquals(1, wal.replay(0, (sensorId, typeName, timestamp, reading) -> sensorIds.add(sensorId)));
+        assertEquals(List.of(1L), sensorIds);
+    }
+
+    @Test
+    void append_ShouldMakeConcurrentAppendsDurableWithSharedForces() throws Exception {
+        wal = open("batch");
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long base = t * 1000L;
+            futures.add(threads.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    wal.handedOff(wal.append(base + i, "temperature", TIMESTAMP, (double) i));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        threads.shutdown();
+
+        // every record is covered by exactly one force, and no append returned before its force
+        DistributionSummary recordsPerSync = meterRegistry.get("sensors.wal.sync.records").summary();
+        assertEquals(1600, (long) recordsPerSync.totalAmount());
+        assertTrue(recordsPerSync.count() <= 1600);
+        wal.close();
+
+        wal = open("batch");
+        Set<Long> sensorIds = new HashSet<>();
+        assertEquals(1600, wal.replay(0, (sensorId, typeName, timestamp, reading) -> sensorIds.add(sensorId)));
+        assertEquals(1600, sensorIds.size());
+    }
+
+    @Test
+    void append_ShouldLogABatchWithASingleForce() throws Exception {
+        wal = open("batch");
+        List<ReadingRequest> readings = new ArrayList<>();
+        for (long sensorId = 1; sensorId <= 3; sensorId++) {
+            readings.add(reading(sensorId, "temperature"));
+        }
+        readings.add(reading(4L, null));
+
+        int[] tickets = wal.append(readings);
+
+        assertArrayEquals(new int[]{0, 0, 0, ReadingWal.NO_TICKET}, tickets);
+        DistributionSummary recordsPerSync = meterRegistry.get("sensors.wal.sync.records").summary();
+        assertEquals(1, recordsPerSync.count());
+        assertEquals(3, (long) recordsPerSync.totalAmount());
+        assertEquals(0, wal.checkpoint(() -> fail("must not flush"), 50));
+        wal.handedOff(tickets);
+        assertEquals(1, wal.checkpoint(() -> true, 50));
+    }
+
+    @Test
+    void checkpoint_ShouldDeleteSealedSegmentsOnceHandedOffAndFlushed() throws Exception {
+        wal = open("interval");
+        int ticket = wal.append(1L, "temperature", TIMESTAMP, 21.5);
+        Path sealed = directory.resolve("wal-" + String.format("%010d", ticket) + ".log");
+
+        // the reading has not reached the database or the buffer yet
+        assertEquals(0, wal.checkpoint(() -> fail("must not flush"), 50));
+        wal.handedOff(ticket);
+        assertEquals(0, wal.checkpoint(() -> false, 50));
+        assertTrue(Files.exists(sealed));
+
+        assertEquals(1, wal.checkpoint(() -> true, 50));
+        assertFalse(Files.exists(sealed));
+        assertEquals(0, wal.checkpoint(() -> fail("nothing to checkpoint"), 50));
+    }
+
+    private static ReadingRequest reading(Long sensorId, String typeName) {
+        ReadingRequest reading = new ReadingRequest();
+        reading.setSensorId(sensorId);
+        reading.setSensorType(typeName);
+        reading.setTimestamp(TIMESTAMP);
+        reading.setReading(1.0);
+        return reading;
+    }
+
+    private ReadingWal open(String durability) throws Exception {
+        ReadingWal readingWal = new ReadingWal(meterRegistry, true, directory.toString(), durability, 10, 16);
+        readingWal.open();
+        return readingWal;
+    }
+}
@@ -0,0 +1,45 @@
+package com.energybox.backendcodingchallenge;
+
+import com.energybox.backendcodingchallenge.threads.WorkerThreads;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "sensors.threads.virtual=true")
+class VirtualThreadModeTests {
+
+	@Autowired
+	private ServletWebServerApplicationContext context;
+
+	@Autowired
+	private WorkerThreads workerThreads;
+
+	@Autowired
+	@Qualifier("applicationTaskExecutor")
+	private AsyncTaskExecutor applicationTaskExecutor;
+
+	@Test
+	void requestsAndWorkersRunOnVirtualThreads() throws Exception {
+		Executor requestExecutor = ((TomcatWebServer) context.getWebServer()).getTomcat().getConnector()
+				.getProtocolHandler().getExecutor();
+
+		assertTrue(runsOnVirtualThread(requestExecutor));
+		assertTrue(runsOnVirtualThread(applicationTaskExecutor));
+		assertTrue(workerThreads.newThread("worker", () -> {}).isVirtual());
+	}
+
+	private static boolean runsOnVirtualThread(Executor executor) throws Exception {
+		CompletableFuture<Boolean> virtual = new CompletableFuture<>();
+		executor.execute(() -> virtual.complete(Thread.currentThread().isVirtual()));
+		return virtual.get();
+	}
+}
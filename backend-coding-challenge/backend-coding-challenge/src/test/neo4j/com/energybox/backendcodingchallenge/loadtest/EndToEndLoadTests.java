@@ -0,0 +1,150 @@
+package com.energybox.backendcodingchallenge.loadtest;
+
+import com.energybox.backendcodingchallenge.BackendCodingChallengeApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the application on a random port against {@link Neo4jHarness}, seeds a topology and runs
+ * {@link GatewayLoadGenerator} closed- and open-loop, printing a {@link LoadReport} per run. Only compiled with
+ * the {@code neo4j-harness} Maven profile.
+ *
+ * The defaults keep the run short; the size and the load are set with system properties, for example
+ *
+ * <pre>
+ * mvn -Pneo4j-harness test -Dtest=EndToEndLoadTests -Dload.gateways=100 -Dload.sensors-per-gateway=100 \
+ *     -Dload.types-per-sensor=3 -Dload.clients=64 -Dload.rate=2000 -Dload.seconds=60 \
+ *     -Dload.endpoints=report,last-readings -Dload.histogram-dir=target/load
+ * </pre>
+ */
+class EndToEndLoadTests {
+
+    private static final int GATEWAYS = Integer.getInteger("load.gateways", 10);
+
+    private static final int SENSORS_PER_GATEWAY = Integer.getInteger("load.sensors-per-gateway", 20);
+
+    private static final int TYPES_PER_SENSOR = Integer.getInteger("load.types-per-sensor", 3);
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 8);
+
+    private static final int RATE = Integer.getInteger("load.rate", 50);
+
+    private static final Duration DURATION = Duration.ofSeconds(Long.getLong("load.seconds", 3));
+
+    private static final Duration WARMUP = Duration.ofSeconds(Long.getLong("load.warmup-seconds", 1));
+
+    private static final List<String> ENDPOINTS = Arrays.asList(
+            System.getProperty("load.endpoints", String.join(",", GatewayLoadGenerator.ENDPOINTS)).split(","));
+
+    private static final String HISTOGRAM_DIR = System.getProperty("load.histogram-dir");
+
+    @TempDir
+    static Path dataDir;
+
+    private static Neo4jHarness neo4j;
+
+    private static SeededTopology topology;
+
+    private static ConfigurableApplicationContext context;
+
+    private static String baseUrl;
+
+    @BeforeAll
+    static void start() {
+        neo4j = Neo4jHarness.start();
+        topology = neo4j.seed(GATEWAYS, SENSORS_PER_GATEWAY, TYPES_PER_SENSOR);
+        context = new SpringApplicationBuilder(BackendCodingChallengeApplication.class)
+                .properties(neo4j.springProperties())
+                .properties("server.port=0")
+                // arguments, as properties are only defaults to application.yml
+                .run("--sensors.history.dir=" + dataDir.resolve("history"),
+                        "--sensors.wal.dir=" + dataDir.resolve("wal"),
+                        "--sensors.import.dir=" + dataDir.resolve("imports"));
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/v1";
+    }
+
+    @AfterAll
+    static void stop() {
+        if (context != null) {
+            context.close();
+        }
+        if (neo4j != null) {
+            neo4j.close();
+        }
+    }
+
+    @Test
+    void seededSensorsAreServedWithTheirTypesAndReadings() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        String lastReadings = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/sensors/get-last-readings/"
+                + topology.sensorId(GATEWAYS - 1, SENSORS_PER_GATEWAY - 1))).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        for (String type : topology.typesOf(GATEWAYS - 1, SENSORS_PER_GATEWAY - 1)) {
+            assertTrue(lastReadings.contains("\"" + type + "\""), lastReadings);
+        }
+        String gateways = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/gateways/"
+                + topology.typesOf(0, 0).get(0))).build(), HttpResponse.BodyHandlers.ofString()).body();
+        assertTrue(gateways.contains("\"gateway-0\""), gateways);
+    }
+
+    @Test
+    void prometheusEndpointServesTheTimersAndHistograms() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        long sensorId = topology.sensorId(0, 0);
+        client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/sensors/add-last-readings/"))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"sensorId\":" + sensorId + ",\"sensorType\":\""
+                        + topology.typesOf(0, 0).get(0) + "\",\"reading\":1.5}"))
+                .build(), HttpResponse.BodyHandlers.discarding());
+        client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/gateways/gateway-id/" + topology.gatewayId(0))).build(),
+                HttpResponse.BodyHandlers.discarding());
+
+        String scrape = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/prometheus")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+        for (String series : List.of("http_server_requests_seconds_bucket{",
+                "sensors_service_invocations_seconds_bucket{class=\"SensorService\"",
+                "sensors_repository_invocations_seconds_bucket{class=\"SensorTypeRepository\"",
+                "sensors_readings_ingested_total{type=\"" + topology.typesOf(0, 0).get(0) + "\"",
+                "sensors_hydration_entities_bucket{")) {
+            assertTrue(scrape.contains(series), series);
+        }
+    }
+
+    @Test
+    void closedLoop() throws Exception {
+        check(new GatewayLoadGenerator(baseUrl, topology, ENDPOINTS).runClosed(CLIENTS, WARMUP, DURATION), "closed");
+    }
+
+    @Test
+    void openLoop() throws Exception {
+        check(new GatewayLoadGenerator(baseUrl, topology, ENDPOINTS).runOpen(RATE, WARMUP, DURATION), "open");
+    }
+
+    private static void check(LoadReport report, String run) throws Exception {
+        report.print(System.out);
+        if (HISTOGRAM_DIR != null) {
+            report.writeHistograms(Path.of(HISTOGRAM_DIR, run));
+        }
+        assertEquals(ENDPOINTS, report.endpoints().keySet().stream().collect(Collectors.toList()));
+        report.endpoints().forEach((endpoint, result) -> {
+            assertTrue(result.calls > 0, endpoint);
+            assertEquals(0, result.errors, endpoint);
+        });
+    }
+}
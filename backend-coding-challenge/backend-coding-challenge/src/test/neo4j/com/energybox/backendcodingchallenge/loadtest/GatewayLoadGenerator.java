@@ -0,0 +1,241 @@
+package com.energybox.backendcodingchallenge.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the REST API of a running application with gateways of a {@link SeededTopology} reporting readings,
+ * interleaved with reads, and records the latency of every call in an HdrHistogram per endpoint.
+ *
+ * The endpoints are taken in turn out of:
+ * <ul>
+ * <li>{@code report}: a gateway sends the readings of all its sensors and types in one batch;</li>
+ * <li>{@code reading}: a gateway sends one reading of one of its sensors;</li>
+ * <li>{@code last-readings}: the last readings of one of the gateway's sensors;</li>
+ * <li>{@code gateway}: the gateway and its sensors;</li>
+ * <li>{@code gateways-by-type}: the gateways with sensors of one type.</li>
+ * </ul>
+ *
+ * {@link #runClosed} keeps a fixed number of clients, each sending its next call when the previous one is
+ * answered; it measures what the server sustains but slows down with it. {@link #runOpen} sends calls at a
+ * fixed rate whether or not earlier ones are answered, and measures each latency from the time the call was
+ * due rather than sent, so a stalled server shows up in the tail instead of being hidden by fewer calls.
+ */
+public class GatewayLoadGenerator {
+
+    public static final List<String> ENDPOINTS = List.of("report", "reading", "last-readings", "gateway",
+            "gateways-by-type");
+
+    private static final int MAX_READINGS_PER_REPORT = 10_000;
+
+    private final HttpClient client;
+
+    private final String baseUrl;
+
+    private final SeededTopology topology;
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+
+    /**
+     * @param baseUrl The API root, for example {@code http://localhost:8082/api/v1}.
+     * @param endpoints The endpoints to call in turn, out of {@link #ENDPOINTS}.
+     */
+    public GatewayLoadGenerator(String baseUrl, SeededTopology topology, List<String> endpoints) {
+        if (topology.sensorsPerGateway() * topology.typesPerSensor() > MAX_READINGS_PER_REPORT) {
+            throw new IllegalArgumentException("A gateway reports at most " + MAX_READINGS_PER_REPORT + " readings");
+        }
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        this.baseUrl = baseUrl;
+        this.topology = topology;
+        for (String name : endpoints) {
+            if (!ENDPOINTS.contains(name)) {
+                throw new IllegalArgumentException("Unknown endpoint " + name + ", expected one of " + ENDPOINTS);
+            }
+            this.endpoints.add(new Endpoint(name));
+        }
+    }
+
+    /**
+     * Runs {@code clients} closed-loop clients, client {@code c} playing gateway {@code c} modulo the gateways.
+     */
+    public LoadReport runClosed(int clients, Duration warmup, Duration duration) throws InterruptedException {
+        closed(clients, warmup.toNanos());
+        reset();
+        long start = System.nanoTime();
+        closed(clients, duration.toNanos());
+        return report("closed " + clients + " clients", System.nanoTime() - start);
+    }
+
+    /**
+     * Sends {@code ratePerSecond} calls per second, each for a random gateway.
+     */
+    public LoadReport runOpen(double ratePerSecond, Duration warmup, Duration duration) throws InterruptedException {
+        open(ratePerSecond, warmup.toNanos());
+        reset();
+        long start = System.nanoTime();
+        open(ratePerSecond, duration.toNanos());
+        return report("open " + ratePerSecond + "/s", System.nanoTime() - start);
+    }
+
+    private void closed(int clients, long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        Phaser done = new Phaser(1 + clients);
+        for (int c = 0; c < clients; c++) {
+            sendNext(c % topology.gateways(), c % endpoints.size(), deadline, done);
+        }
+        done.arriveAndAwaitAdvance();
+    }
+
+    private void sendNext(int gateway, int next, long deadline, Phaser done) {
+        long sent = System.nanoTime();
+        if (sent >= deadline) {
+            done.arriveAndDeregister();
+            return;
+        }
+        Endpoint endpoint = endpoints.get(next);
+        client.sendAsync(request(endpoint.name, gateway), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    endpoint.record(System.nanoTime() - sent, error == null && response.statusCode() < 400);
+                    sendNext(gateway, (next + 1) % endpoints.size(), deadline, done);
+                });
+    }
+
+    private void open(double ratePerSecond, long nanos) throws InterruptedException {
+        long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        long start = System.nanoTime();
+        // counted rather than registered with a phaser, which takes at most 65535 parties
+        AtomicLong inFlight = new AtomicLong();
+        for (long i = 0; ; i++) {
+            long due = start + i * interval;
+            if (due - start >= nanos) {
+                break;
+            }
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            Endpoint endpoint = endpoints.get((int) (i % endpoints.size()));
+            inFlight.incrementAndGet();
+            client.sendAsync(request(endpoint.name, ThreadLocalRandom.current().nextInt(topology.gateways())),
+                    HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        endpoint.record(System.nanoTime() - due, error == null && response.statusCode() < 400);
+                        inFlight.decrementAndGet();
+                    });
+        }
+        while (inFlight.get() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private HttpRequest request(String endpoint, int gateway) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int slot = random.nextInt(topology.sensorsPerGateway());
+        switch (endpoint) {
+            case "report":
+                return put("/sensors/readings/batch", report(gateway));
+            case "reading":
+                List<String> types = topology.typesOf(gateway, slot);
+                return put("/sensors/add-last-readings/", reading(topology.sensorId(gateway, slot),
+                        types.get(random.nextInt(types.size())), LocalDateTime.now()));
+            case "last-readings":
+                return get("/sensors/get-last-readings/" + topology.sensorId(gateway, slot));
+            case "gateway":
+                return get("/gateways/gateway-id/" + topology.gatewayId(gateway));
+            default:
+                return get("/gateways/" + topology.typesOf(gateway, slot).get(0));
+        }
+    }
+
+    private String report(int gateway) {
+        LocalDateTime now = LocalDateTime.now();
+        StringBuilder body = new StringBuilder("{\"readings\":[");
+        for (int slot = 0; slot < topology.sensorsPerGateway(); slot++) {
+            for (String type : topology.typesOf(gateway, slot)) {
+                body.append(reading(topology.sensorId(gateway, slot), type, now)).append(',');
+            }
+        }
+        body.setCharAt(body.length() - 1, ']');
+        return body.append('}').toString();
+    }
+
+    private static String reading(long sensorId, String type, LocalDateTime timestamp) {
+        return "{\"sensorId\":" + sensorId + ",\"sensorType\":\"" + type + "\",\"timestamp\":\"" + timestamp
+                + "\",\"reading\":" + ThreadLocalRandom.current().nextInt(1000) + "}";
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build();
+    }
+
+    private HttpRequest put(String path, String body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private void reset() {
+        endpoints.forEach(Endpoint::reset);
+    }
+
+    private LoadReport report(String label, long elapsedNanos) {
+        Map<String, LoadReport.EndpointResult> results = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            results.put(endpoint.name, new LoadReport.EndpointResult(endpoint.latencies.copy(),
+                    endpoint.completed.get(), endpoint.errors.get()));
+        }
+        return new LoadReport(label, elapsedNanos, results);
+    }
+
+    private static final class Endpoint {
+
+        final String name;
+
+        // microseconds
+        final ConcurrentHistogram latencies = new ConcurrentHistogram(3);
+
+        final AtomicLong completed = new AtomicLong();
+
+        final AtomicLong errors = new AtomicLong();
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, boolean ok) {
+            latencies.recordValue(TimeUnit.NANOSECONDS.toMicros(nanos));
+            completed.incrementAndGet();
+            if (!ok) {
+                errors.incrementAndGet();
+            }
+        }
+
+        void reset() {
+            latencies.reset();
+            completed.set(0);
+            errors.set(0);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.energybox.backendcodingchallenge.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Throughput and latency per endpoint of one {@link GatewayLoadGenerator} run. Latencies are kept in
+ * microseconds and printed in milliseconds.
+ */
+public class LoadReport {
+
+    private final String label;
+
+    private final long elapsedNanos;
+
+    private final Map<String, EndpointResult> endpoints;
+
+    LoadReport(String label, long elapsedNanos, Map<String, EndpointResult> endpoints) {
+        this.label = label;
+        this.elapsedNanos = elapsedNanos;
+        this.endpoints = endpoints;
+    }
+
+    public Map<String, EndpointResult> endpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Prints one line per endpoint with its calls per second, errors and latency percentiles.
+     */
+    public void print(PrintStream out) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%s, %.1f s%n", label, seconds);
+        out.printf("%-18s %10s %8s %10s %9s %9s %9s %9s %9s%n", "endpoint", "calls", "errors", "calls/s",
+                "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<String, EndpointResult> entry : endpoints.entrySet()) {
+            EndpointResult result = entry.getValue();
+            Histogram latencies = result.latencies;
+            out.printf("%-18s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(), result.calls,
+                    result.errors, result.calls / seconds, millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(90)), millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)), millis(latencies.getMaxValue()));
+        }
+    }
+
+    /**
+     * Writes the percentile distribution of every endpoint, in milliseconds, to {@code <endpoint>.hgrm} in the
+     * directory, in the format the HdrHistogram plotter reads.
+     */
+    public void writeHistograms(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (Map.Entry<String, EndpointResult> entry : endpoints.entrySet()) {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(entry.getKey() + ".hgrm")))) {
+                entry.getValue().latencies.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    public static final class EndpointResult {
+
+        public final Histogram latencies;
+
+        public final long calls;
+
+        public final long errors;
+
+        EndpointResult(Histogram latencies, long calls, long errors) {
+            this.latencies = latencies;
+            this.calls = calls;
+            this.errors = errors;
+        }
+    }
+}
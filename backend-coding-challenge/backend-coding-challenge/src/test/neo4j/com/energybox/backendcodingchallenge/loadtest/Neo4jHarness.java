@@ -0,0 +1,129 @@
+package com.energybox.backendcodingchallenge.loadtest;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-process Neo4j for integration and load tests, so they need neither Docker nor a database on the network.
+ * The database lives in a temporary directory and is dropped on {@link #close()}; its HTTP server is disabled and
+ * Bolt listens on a free port of the loopback interface, without authentication.
+ *
+ * {@link #seed} writes a topology straight through the embedded API, in the shape the repositories map.
+ */
+public class Neo4jHarness implements AutoCloseable {
+
+    public static final List<String> TYPE_NAMES = List.of("electricity", "humidity", "temperature", "pressure",
+            "co2", "occupancy", "light", "noise");
+
+    private static final int SEED_CHUNK_SIZE = 1000;
+
+    private final Neo4j neo4j;
+
+    private Neo4jHarness(Neo4j neo4j) {
+        this.neo4j = neo4j;
+    }
+
+    public static Neo4jHarness start() {
+        return new Neo4jHarness(Neo4jBuilders.newInProcessBuilder().withDisabledServer().build());
+    }
+
+    public URI boltUri() {
+        return neo4j.boltURI();
+    }
+
+    /**
+     * Spring properties pointing the application to this database.
+     */
+    public String[] springProperties() {
+        return new String[]{"spring.neo4j.uri=" + boltUri()};
+    }
+
+    public GraphDatabaseService database() {
+        return neo4j.defaultDatabaseService();
+    }
+
+    /**
+     * Creates {@code gateways} gateways with {@code sensorsPerGateway} sensors each. Each sensor has
+     * {@code typesPerSensor} of {@link #TYPE_NAMES}, shifted by one per sensor, and a last reading of 0 per type.
+     */
+    public SeededTopology seed(int gateways, int sensorsPerGateway, int typesPerSensor) {
+        if (typesPerSensor < 1 || typesPerSensor > TYPE_NAMES.size()) {
+            throw new IllegalArgumentException("Types per sensor must be between 1 and " + TYPE_NAMES.size());
+        }
+        GraphDatabaseService database = database();
+        database.executeTransactionally("UNWIND $names AS name MERGE (:SensorType {name: name})",
+                Map.of("names", TYPE_NAMES));
+        long[] gatewayIds = database.executeTransactionally(
+                "UNWIND range(0, $count - 1) AS g CREATE (gateway:Gateway {name: 'gateway-' + g}) RETURN id(gateway) AS id",
+                Map.of("count", gateways),
+                result -> result.stream().mapToLong(row -> (Long) row.get("id")).toArray());
+
+        LocalDateTime now = LocalDateTime.now();
+        long[][] sensorIds = new long[gateways][sensorsPerGateway];
+        List<Map<String, Object>> rows = new ArrayList<>(SEED_CHUNK_SIZE);
+        for (int g = 0; g < gateways; g++) {
+            for (int s = 0; s < sensorsPerGateway; s++) {
+                int sensor = g * sensorsPerGateway + s;
+                Map<String, Object> row = new HashMap<>();
+                row.put("gateway", g);
+                row.put("slot", s);
+                row.put("gatewayId", gatewayIds[g]);
+                row.put("name", "sensor-" + sensor);
+                row.put("locationCode", "location-" + sensor % 97);
+                row.put("types", typesOf(sensor, typesPerSensor));
+                rows.add(row);
+                if (rows.size() == SEED_CHUNK_SIZE) {
+                    createSensors(database, rows, now, sensorIds);
+                }
+            }
+        }
+        if (!rows.isEmpty()) {
+            createSensors(database, rows, now, sensorIds);
+        }
+        return new SeededTopology(gatewayIds, sensorIds, typesPerSensor);
+    }
+
+    private static void createSensors(GraphDatabaseService database, List<Map<String, Object>> rows, LocalDateTime now,
+                                      long[][] sensorIds) {
+        database.executeTransactionally("UNWIND $rows AS row "
+                        + "MATCH (g:Gateway) WHERE id(g) = row.gatewayId "
+                        + "CREATE (s:Sensor {name: row.name, locationCode: row.locationCode, lastReadingAt: $now})-[:CONNECTED_TO]->(g) "
+                        + "WITH s, row "
+                        + "UNWIND row.types AS typeName "
+                        + "MATCH (t:SensorType {name: typeName}) "
+                        + "CREATE (s)-[:HAS_TYPE]->(t), "
+                        + "(s)-[:HAS_LAST_READING]->(:LastReading {typeName: typeName, timestamp: $now, reading: 0.0}) "
+                        + "RETURN DISTINCT row.gateway AS gateway, row.slot AS slot, id(s) AS id",
+                Map.of("rows", rows, "now", now),
+                result -> {
+                    result.stream().forEach(row -> sensorIds[((Number) row.get("gateway")).intValue()]
+                            [((Number) row.get("slot")).intValue()] = (Long) row.get("id"));
+                    return null;
+                });
+        rows.clear();
+    }
+
+    /**
+     * @return The type names of the sensor at the given position of the seeded topology.
+     */
+    public static List<String> typesOf(int sensor, int typesPerSensor) {
+        List<String> types = new ArrayList<>(typesPerSensor);
+        for (int t = 0; t < typesPerSensor; t++) {
+            types.add(TYPE_NAMES.get((sensor + t) % TYPE_NAMES.size()));
+        }
+        return types;
+    }
+
+    @Override
+    public void close() {
+        neo4j.close();
+    }
+}
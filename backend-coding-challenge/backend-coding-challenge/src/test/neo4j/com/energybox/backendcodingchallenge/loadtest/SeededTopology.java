@@ -0,0 +1,47 @@
+package com.energybox.backendcodingchallenge.loadtest;
+
+import java.util.List;
+
+/**
+ * The ids of a topology written by {@link Neo4jHarness#seed}: gateway {@code g} has the sensors
+ * {@code sensorIds[g]}, and the sensor at position {@code g * sensorsPerGateway + s} has the types
+ * {@link Neo4jHarness#typesOf(int, int)}.
+ */
+public class SeededTopology {
+
+    private final long[] gatewayIds;
+
+    private final long[][] sensorIds;
+
+    private final int typesPerSensor;
+
+    SeededTopology(long[] gatewayIds, long[][] sensorIds, int typesPerSensor) {
+        this.gatewayIds = gatewayIds;
+        this.sensorIds = sensorIds;
+        this.typesPerSensor = typesPerSensor;
+    }
+
+    public int gateways() {
+        return gatewayIds.length;
+    }
+
+    public int sensorsPerGateway() {
+        return gatewayIds.length == 0 ? 0 : sensorIds[0].length;
+    }
+
+    public int typesPerSensor() {
+        return typesPerSensor;
+    }
+
+    public long gatewayId(int gateway) {
+        return gatewayIds[gateway];
+    }
+
+    public long sensorId(int gateway, int slot) {
+        return sensorIds[gateway][slot];
+    }
+
+    public List<String> typesOf(int gateway, int slot) {
+        return Neo4jHarness.typesOf(gateway * sensorsPerGateway() + slot, typesPerSensor);
+    }
+}
@@ -0,0 +1,182 @@
+package com.energybox.backendcodingchallenge.profiler;
+
+import com.energybox.backendcodingchallenge.BackendCodingChallengeApplication;
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.exception.QueryPlanException;
+import com.energybox.backendcodingchallenge.loadtest.Neo4jHarness;
+import com.energybox.backendcodingchallenge.loadtest.SeededTopology;
+import com.energybox.backendcodingchallenge.model.QueryProfile;
+import com.energybox.backendcodingchallenge.repository.GatewayRepository;
+import com.energybox.backendcodingchallenge.repository.LastReadingRepository;
+import com.energybox.backendcodingchallenge.repository.SensorRepository;
+import com.energybox.backendcodingchallenge.repository.SensorTypeRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neo4j.driver.Values;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.neo4j.repository.query.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs every query of the repositories against {@link Neo4jHarness} with the {@link QueryProfiler} in strict mode,
+ * so a query scanning more sensors or gateways than {@code max-label-scan-rows} fails here before it reaches a
+ * large database. Only compiled with the {@code neo4j-harness} Maven profile.
+ */
+class QueryPlanTests {
+
+    // more gateways and sensors than a query may scan
+    private static final int GATEWAYS = 60;
+
+    private static final int SENSORS_PER_GATEWAY = 5;
+
+    private static final int MAX_LABEL_SCAN_ROWS = 50;
+
+    @TempDir
+    static Path dataDir;
+
+    private static Neo4jHarness neo4j;
+
+    private static SeededTopology topology;
+
+    private static ConfigurableApplicationContext context;
+
+    @BeforeAll
+    static void start() {
+        neo4j = Neo4jHarness.start();
+        topology = neo4j.seed(GATEWAYS, SENSORS_PER_GATEWAY, 3);
+        context = new SpringApplicationBuilder(BackendCodingChallengeApplication.class)
+                .properties(neo4j.springProperties())
+                .properties("server.port=0")
+                // arguments, as properties are only defaults to application.yml
+                .run("--sensors.history.dir=" + dataDir.resolve("history"),
+                        "--sensors.wal.dir=" + dataDir.resolve("wal"),
+                        "--sensors.import.dir=" + dataDir.resolve("imports"),
+                        "--sensors.topology.enabled=false",
+                        "--sensors.profiler.strict=true",
+                        "--sensors.profiler.max-label-scan-rows=" + MAX_LABEL_SCAN_ROWS,
+                        "--sensors.profiler.max-plans=100");
+    }
+
+    @AfterAll
+    static void stop() {
+        if (context != null) {
+            context.close();
+        }
+        if (neo4j != null) {
+            neo4j.close();
+        }
+    }
+
+    @Test
+    void everyRepositoryQueryPassesTheStrictProfiler() {
+        SensorRepository sensors = context.getBean(SensorRepository.class);
+        GatewayRepository gateways = context.getBean(GatewayRepository.class);
+        long sensorId = topology.sensorId(1, 1);
+        long gatewayId = topology.gatewayId(1);
+        List<String> types = topology.typesOf(1, 1);
+        context.getBean(QueryProfiler.class).clearPlans();
+
+        assertEquals(SENSORS_PER_GATEWAY, sensors.findAllByGatewayId(gatewayId).size());
+        assertEquals(10, sensors.findSummariesAfter(sensorId, 10).size());
+        assertFalse(sensors.findSummariesByTypeName(types.get(0)).isEmpty());
+        assertEquals(SENSORS_PER_GATEWAY, sensors.findSummariesByGatewayId(gatewayId).size());
+        assertTrue(sensors.findSummariesByTypes(types, List.of()).stream().anyMatch(s -> s.getId() == sensorId));
+        assertTrue(sensors.findSummariesByTypes(List.of(), types).stream().anyMatch(s -> s.getId() == sensorId));
+        assertEquals(1, sensors.upsertLastReading(sensorId, types.get(0), LocalDateTime.now(), 1.0));
+        // called through upsertLastReadings the query is not profiled, a default method calls the repository itself
+        assertEquals(List.of(sensorId), sensors.upsertLastReadingValues(List.of(Values.value(Map.of("sensorId", sensorId,
+                "sensorType", types.get(1), "timestamp", LocalDateTime.now(), "reading", 2.0)))));
+        assertEquals(List.of(sensorId), sensors.findExistingIds(List.of(sensorId, -1L)));
+        assertTrue(gateways.findGatewaysWithSensorType(types.get(0)).stream().anyMatch(g -> g.getId() == gatewayId));
+        assertTrue(gateways.findGatewaysWithSensorTypes(types, List.of()).stream().anyMatch(g -> g.getId() == gatewayId));
+        assertTrue(gateways.findGatewaysWithSensorTypes(List.of(), types).stream().anyMatch(g -> g.getId() == gatewayId));
+        assertEquals(10, gateways.findPageAfter(-1, 10).size());
+        assertEquals(List.of(gatewayId), gateways.findExistingIds(List.of(gatewayId)));
+        assertEquals(3, context.getBean(LastReadingRepository.class).findLastReadings(sensorId).size());
+        context.getBean(SensorTypeRepository.class).mergeByName(types.get(0));
+        context.getBean(SensorTypeRepository.class).mergeByNames(types);
+
+        // every query was profiled, so a new one cannot slip past this test
+        Set<String> expected = new TreeSet<>();
+        for (Class<?> repository : List.of(SensorRepository.class, GatewayRepository.class,
+                LastReadingRepository.class, SensorTypeRepository.class)) {
+            for (Method method : repository.getMethods()) {
+                if (QueryProfiler.isProfiled(method)) {
+                    expected.add(repository.getSimpleName() + "." + method.getName());
+                }
+            }
+        }
+        Set<String> profiled = context.getBean(QueryProfiler.class).worstPlans().stream()
+                .map(profile -> profile.getRepository() + "." + profile.getMethod())
+                .collect(Collectors.toCollection(TreeSet::new));
+        assertEquals(expected, profiled);
+    }
+
+    @Test
+    void sensorsOfAGatewayAreHydrated() {
+        List<Sensor> sensors = context.getBean(SensorRepository.class).findAllByGatewayId(topology.gatewayId(2));
+
+        assertEquals(SENSORS_PER_GATEWAY, sensors.size());
+        for (Sensor sensor : sensors) {
+            assertEquals("gateway-2", sensor.getGateway().getName());
+            assertEquals(3, sensor.getTypes().size());
+            assertEquals(3, sensor.getLastReadings().size());
+        }
+    }
+
+    @Test
+    void queriesScanningTheSensorsFail() throws NoSuchMethodException {
+        QueryProfiler queryProfiler = context.getBean(QueryProfiler.class);
+
+        QueryPlanException e = assertThrows(QueryPlanException.class, () -> queryProfiler.completed(
+                ScanningQueries.class.getMethod("findAllByGatewayId", Long.class),
+                new Object[]{topology.gatewayId(0)}, 0, List.of()));
+        assertTrue(e.getMessage().contains("NodeByLabelScan"), e.getMessage());
+        assertThrows(QueryPlanException.class, () -> queryProfiler.completed(
+                ScanningQueries.class.getMethod("findSummariesByTypes", List.class, List.class),
+                new Object[]{topology.typesOf(0, 0), List.of()}, 0, List.of()));
+    }
+
+    @Test
+    void worstPlansAreServedOnTheAdminEndpoint() throws Exception {
+        context.getBean(SensorRepository.class).findSummariesByGatewayId(topology.gatewayId(0));
+
+        String plans = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create("http://localhost:"
+                        + context.getEnvironment().getProperty("local.server.port") + "/api/v1/admin/queries/plans")).build(),
+                HttpResponse.BodyHandlers.ofString()).body();
+
+        assertTrue(plans.contains("\"method\":\"findSummariesByGatewayId\""), plans);
+        assertTrue(plans.contains("NodeByIdSeek"), plans);
+    }
+
+    // the queries as they were before they were rewritten to seek their start nodes
+    interface ScanningQueries {
+
+        @Query("MATCH (s:Sensor)-[:CONNECTED_TO]->(g:Gateway) WHERE g.id = $gatewayId RETURN s")
+        List<QueryProfile> findAllByGatewayId(@Param("gatewayId") Long gatewayId);
+
+        @Query("MATCH (s:Sensor) "
+                + "WHERE all(name IN $all WHERE (s)-[:HAS_TYPE]->(:SensorType {name: name})) "
+                + "AND (size($any) = 0 OR any(name IN $any WHERE (s)-[:HAS_TYPE]->(:SensorType {name: name}))) "
+                + "RETURN s ORDER BY id(s)")
+        List<QueryProfile> findSummariesByTypes(@Param("all") List<String> all, @Param("any") List<String> any);
+    }
+}
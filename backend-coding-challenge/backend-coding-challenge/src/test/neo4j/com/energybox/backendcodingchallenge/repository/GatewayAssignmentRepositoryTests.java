@@ -0,0 +1,110 @@
+package com.energybox.backendcodingchallenge.repository;
+
+import com.energybox.backendcodingchallenge.loadtest.Neo4jHarness;
+import com.energybox.backendcodingchallenge.loadtest.SeededTopology;
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentOutcome;
+import com.energybox.backendcodingchallenge.model.GatewayAssignmentResult;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs concurrent assignment batches against {@link Neo4jHarness}, which a mocked driver cannot race.
+ * Only compiled with the {@code neo4j-harness} Maven profile.
+ */
+class GatewayAssignmentRepositoryTests {
+
+    private static final int BATCHES = 8;
+
+    private static final int SENSORS = 50;
+
+    private static Neo4jHarness neo4j;
+
+    private static SeededTopology topology;
+
+    private static Driver driver;
+
+    @BeforeAll
+    static void start() {
+        neo4j = Neo4jHarness.start();
+        topology = neo4j.seed(BATCHES, 1, 1);
+        driver = GraphDatabase.driver(neo4j.boltUri(), AuthTokens.none());
+    }
+
+    @AfterAll
+    static void stop() {
+        if (driver != null) {
+            driver.close();
+        }
+        if (neo4j != null) {
+            neo4j.close();
+        }
+    }
+
+    @Test
+    void assign_ShouldConnectASensorOnceWhenConcurrentBatchesAssignIt() throws Exception {
+        GatewayAssignmentRepository repository = new GatewayAssignmentRepository(driver);
+        ExecutorService pool = Executors.newFixedThreadPool(BATCHES);
+        try {
+            for (int round = 0; round < 5; round++) {
+                List<Long> sensorIds = neo4j.database().executeTransactionally(
+                        "UNWIND range(1, $count) AS i CREATE (s:Sensor {name: 'unassigned-' + i, locationCode: 'x'}) RETURN id(s) AS id",
+                        Map.of("count", SENSORS),
+                        result -> result.stream().map(row -> (Long) row.get("id")).collect(Collectors.toList()));
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<List<GatewayAssignmentResult>>> batches = new ArrayList<>();
+                for (int b = 0; b < BATCHES; b++) {
+                    Map<Long, Long> gatewayBySensor = new LinkedHashMap<>();
+                    long gatewayId = topology.gatewayId(b);
+                    // every batch claims the same sensors, half of them in reverse order
+                    List<Long> order = new ArrayList<>(sensorIds);
+                    if (b % 2 == 1) {
+                        Collections.reverse(order);
+                    }
+                    order.forEach(sensorId -> gatewayBySensor.put(sensorId, gatewayId));
+                    Callable<List<GatewayAssignmentResult>> batch = () -> {
+                        start.await();
+                        return repository.assign(gatewayBySensor, false);
+                    };
+                    batches.add(pool.submit(batch));
+                }
+                start.countDown();
+
+                Map<Long, Integer> assigned = new LinkedHashMap<>();
+                for (Future<List<GatewayAssignmentResult>> batch : batches) {
+                    for (GatewayAssignmentResult result : batch.get()) {
+                        if (result.getOutcome() == GatewayAssignmentOutcome.ASSIGNED) {
+                            assigned.merge(result.getSensorId(), 1, Integer::sum);
+                        }
+                    }
+                }
+                for (Long sensorId : sensorIds) {
+                    assertEquals(1, assigned.getOrDefault(sensorId, 0), "batches that assigned sensor " + sensorId);
+                }
+                long connections = neo4j.database().executeTransactionally(
+                        "UNWIND $ids AS id MATCH (s:Sensor)-[c:CONNECTED_TO]->(:Gateway) WHERE id(s) = id RETURN count(c) AS count",
+                        Map.of("ids", sensorIds), result -> (Long) result.next().get("count"));
+                assertEquals(SENSORS, connections);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.energybox.backendcodingchallenge;
+
+import com.energybox.backendcodingchallenge.controller.ReactiveGatewayController;
+import com.energybox.backendcodingchallenge.controller.ReactiveSensorController;
+import com.energybox.backendcodingchallenge.controller.SensorController;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.embedded.netty.NettyWebServer;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+class ReactiveModeTests {
+
+	@Autowired
+	private ReactiveWebServerApplicationContext context;
+
+	@Autowired
+	private WebTestClient client;
+
+	@Test
+	void contextLoadsOnNettyWithTheReactiveControllers() {
+		assertTrue(context.getWebServer() instanceof NettyWebServer);
+		assertEquals(1, context.getBeanNamesForType(ReactiveSensorController.class).length);
+		assertEquals(1, context.getBeanNamesForType(ReactiveGatewayController.class).length);
+		assertEquals(0, context.getBeanNamesForType(SensorController.class).length);
+	}
+
+	@Test
+	void endpointsKeepTheirPathsAndValidation() {
+		client.get().uri("/api/v1/gateways/by-types").exchange().expectStatus().isBadRequest();
+		client.get().uri("/api/v1/sensors/by-types").exchange().expectStatus().isBadRequest();
+		client.get().uri("/api/v1/sensors?limit=0").exchange().expectStatus().isBadRequest();
+		client.get().uri("/api/v1/sensors/1/readings?type=electricity&format=xml").exchange().expectStatus().isBadRequest();
+		client.put().uri("/api/v1/sensors/readings/batch").bodyValue("{\"readings\":[]}")
+				.header("Content-Type", "application/json")
+				.exchange().expectStatus().isBadRequest();
+	}
+}
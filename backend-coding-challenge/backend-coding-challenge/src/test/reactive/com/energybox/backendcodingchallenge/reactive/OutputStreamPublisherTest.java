@@ -0,0 +1,63 @@
+package com.energybox.backendcodingchallenge.reactive;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OutputStreamPublisherTest {
+
+    @Test
+    void publish_ShouldOnlyWriteWhatTheSubscriberAskedFor() {
+        AtomicInteger written = new AtomicInteger();
+        Flux<String> chunks = OutputStreamPublisher.publish(DefaultDataBufferFactory.sharedInstance, out -> {
+            for (int i = 0; i < 5; i++) {
+                out.write(("chunk" + i).getBytes(StandardCharsets.US_ASCII));
+                written.incrementAndGet();
+            }
+        }).map(OutputStreamPublisherTest::text);
+
+        StepVerifier.create(chunks, 2)
+                .expectNext("chunk0", "chunk1")
+                .expectNoEvent(Duration.ofMillis(100))
+                .then(() -> assertEquals(2, written.get()))
+                .thenRequest(3)
+                .expectNext("chunk2", "chunk3", "chunk4")
+                .verifyComplete();
+    }
+
+    @Test
+    void publish_ShouldStopTheWriterWhenTheSubscriberCancels() throws InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(1);
+        Flux<DataBuffer> chunks = OutputStreamPublisher.publish(DefaultDataBufferFactory.sharedInstance, out -> {
+            try {
+                while (true) {
+                    out.write('x');
+                }
+            } catch (IOException e) {
+                stopped.countDown();
+                throw e;
+            }
+        });
+
+        StepVerifier.create(chunks, 1)
+                .expectNextCount(1)
+                .thenCancel()
+                .verify();
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+    }
+
+    private static String text(DataBuffer buffer) {
+        return buffer.toString(StandardCharsets.US_ASCII);
+    }
+}
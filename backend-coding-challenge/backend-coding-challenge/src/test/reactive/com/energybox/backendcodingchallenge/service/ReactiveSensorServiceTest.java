@@ -0,0 +1,174 @@
+package com.energybox.backendcodingchallenge.service;
+
+import com.energybox.backendcodingchallenge.cache.LastReadingCache;
+import com.energybox.backendcodingchallenge.dictionary.SensorTypeDictionary;
+import com.energybox.backendcodingchallenge.domain.LastReading;
+import com.energybox.backendcodingchallenge.domain.Sensor;
+import com.energybox.backendcodingchallenge.domain.SensorType;
+import com.energybox.backendcodingchallenge.exception.SensorNotFoundException;
+import com.energybox.backendcodingchallenge.ingest.LastReadingBuffer;
+import com.energybox.backendcodingchallenge.ingest.ReadingWatermarks;
+import com.energybox.backendcodingchallenge.model.BatchReadingResponse;
+import com.energybox.backendcodingchallenge.model.ReadingRequest;
+import com.energybox.backendcodingchallenge.repository.reactive.ReactiveLastReadingRepository;
+import com.energybox.backendcodingchallenge.repository.reactive.ReactiveSensorRepository;
+import com.energybox.backendcodingchallenge.repository.reactive.ReactiveSensorTypeRepository;
+import com.energybox.backendcodingchallenge.topology.TopologyRegistry;
+import com.energybox.backendcodingchallenge.wal.ReadingWal;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveSensorServiceTest {
+
+    @Mock
+    private ReactiveSensorRepository sensorRepository;
+
+    @Mock
+    private ReactiveLastReadingRepository lastReadingRepository;
+
+    @Mock
+    private ReactiveSensorTypeRepository sensorTypeRepository;
+
+    @Mock
+    private SensorTypeDictionary sensorTypeDictionary;
+
+    @Mock
+    private TopologyRegistry topologyRegistry;
+
+    @Mock
+    private LastReadingCache lastReadingCache;
+
+    @Mock
+    private LastReadingBuffer lastReadingBuffer;
+
+    @Mock
+    private ReadingWal readingWal;
+
+    @Mock
+    private SensorService blockingService;
+
+    @InjectMocks
+    private ReactiveSensorService sensorService;
+
+    @Test
+    void getLastReadings_ShouldLoadAndCacheAMissAndFailForUnknownSensors() {
+        LastReading stored = new LastReading(LocalDateTime.now(), 23.5);
+        stored.setTypeName("electricity");
+        when(lastReadingCache.getIfPresent(anyLong())).thenReturn(null);
+        when(sensorRepository.existsById(1L)).thenReturn(Mono.just(true));
+        when(sensorRepository.existsById(2L)).thenReturn(Mono.just(false));
+        when(lastReadingRepository.findLastReadings(any())).thenReturn(Flux.just(stored));
+        when(lastReadingBuffer.getBuffered(1L)).thenReturn(Map.of());
+
+        StepVerifier.create(sensorService.getLastReadings(1L))
+                .expectNext(List.of(stored))
+                .verifyComplete();
+        StepVerifier.create(sensorService.getLastReadings(2L))
+                .expectError(SensorNotFoundException.class)
+                .verify();
+
+        verify(lastReadingCache).put(1L, List.of(stored));
+        verify(lastReadingCache, never()).put(eq(2L), any());
+    }
+
+    @Test
+    void addSensorType_ShouldMergeANewTypeOnceAndSaveTheSensor() {
+        Sensor sensor = new Sensor("Sensor", "LOC1");
+        sensor.setId(1L);
+        when(sensorRepository.findById(1L)).thenReturn(Mono.just(sensor));
+        when(sensorRepository.save(sensor)).thenReturn(Mono.just(sensor));
+        when(sensorTypeDictionary.isStored("humidity")).thenReturn(false);
+        when(sensorTypeDictionary.markStored("humidity")).thenReturn(true);
+        when(sensorTypeRepository.mergeByName("humidity")).thenReturn(Mono.just(new SensorType("humidity")));
+
+        StepVerifier.create(sensorService.addSensorType(1L, "humidity")).verifyComplete();
+
+        assertTrue(sensor.getTypes().contains(new SensorType("humidity")));
+        verify(topologyRegistry).typeSaved("humidity");
+        verify(topologyRegistry).sensorTypeAdded(1L, "humidity");
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldUpsertThroughTheReactiveRepository() {
+        LocalDateTime takenAt = LocalDateTime.now();
+        SensorService.AdmittedReading admitted = admitted(1L, takenAt);
+        when(blockingService.admitReading(1L, "electricity", 23.5, takenAt, null)).thenReturn(admitted);
+        when(sensorRepository.upsertLastReading(1L, "electricity", takenAt, 23.5)).thenReturn(Mono.just(1L));
+        when(sensorTypeDictionary.isStored("electricity")).thenReturn(true);
+
+        StepVerifier.create(sensorService.addOrUpdateReading(1L, "electricity", 23.5, takenAt, null)).verifyComplete();
+
+        verify(blockingService).acceptReading(admitted);
+        verify(blockingService, never()).releaseReading(any());
+        verify(readingWal).handedOff(ReadingWal.NO_TICKET);
+    }
+
+    @Test
+    void addOrUpdateReading_ShouldReleaseTheReadingOfAnUnknownSensor() {
+        LocalDateTime takenAt = LocalDateTime.now();
+        SensorService.AdmittedReading admitted = admitted(2L, takenAt);
+        when(blockingService.admitReading(2L, "electricity", 23.5, takenAt, null)).thenReturn(admitted);
+        when(sensorRepository.upsertLastReading(2L, "electricity", takenAt, 23.5)).thenReturn(Mono.just(0L));
+
+        StepVerifier.create(sensorService.addOrUpdateReading(2L, "electricity", 23.5, takenAt, null))
+                .expectError(SensorNotFoundException.class)
+                .verify();
+
+        verify(blockingService).releaseReading(admitted);
+        verify(blockingService, never()).acceptReading(any());
+    }
+
+    @Test
+    void addOrUpdateReadings_ShouldUpsertTheRowsThroughTheReactiveRepository() {
+        LocalDateTime now = LocalDateTime.now();
+        ReadingRequest request = new ReadingRequest();
+        request.setSensorId(1L);
+        request.setSensorType("electricity");
+        request.setReading(23.5);
+        Map<String, Object> row = new HashMap<>();
+        row.put("sensorId", 1L);
+        row.put("sensorType", "electricity");
+        row.put("timestamp", now);
+        row.put("reading", 23.5);
+        Map<String, Map<String, Object>> rows = new LinkedHashMap<>();
+        rows.put("1:electricity", row);
+        SensorService.AdmittedBatch batch = new SensorService.AdmittedBatch(List.of(request), now, new BatchReadingResponse(),
+                rows, Map.of(1L, List.of(0)), new ArrayList<>(), new boolean[1], 0);
+        BatchReadingResponse response = new BatchReadingResponse();
+        when(blockingService.admitReadings(List.of(request))).thenReturn(batch);
+        when(sensorRepository.upsertLastReadings(List.of(row))).thenReturn(Flux.just(1L));
+        when(sensorTypeDictionary.isStored("electricity")).thenReturn(true);
+        when(blockingService.acceptReadings(batch, Set.of(1L))).thenReturn(response);
+
+        StepVerifier.create(sensorService.addOrUpdateReadings(List.of(request)))
+                .expectNext(response)
+                .verifyComplete();
+
+        verify(blockingService, never()).releaseReadings(any());
+    }
+
+    private static SensorService.AdmittedReading admitted(Long sensorId, LocalDateTime takenAt) {
+        return new SensorService.AdmittedReading(sensorId, "electricity", 23.5, takenAt, ReadingWatermarks.NO_SEQUENCE,
+                false, 0, ReadingWatermarks.Outcome.NEWER);
+    }
+}